@@ -74,7 +74,11 @@ CREATE TABLE mw_mail_message (
   "sent_date" TIMESTAMP WITH TIME ZONE,      -- 邮件头中的原始发送日期
   "has_attachment" BOOLEAN DEFAULT FALSE,    -- 是否包含附件
   "size_in_bytes" INT NOT NULL,              -- 邮件大小 (字节)
-  "raw_content" TEXT NOT NULL,               -- 邮件的完整原始内容 (MIME格式)
+  "ref_count" INT NOT NULL DEFAULT 0,        -- 引用该消息的 mw_mail 行数，为 0 时由后台清理
+  "body_codec" SMALLINT NOT NULL DEFAULT 0,  -- 内容存储编码：0 原文 (raw_content)，1 deflate，2 deflate + 租户字典 (body_data)
+  "body_data" BYTEA,                         -- 压缩后的内容
+  "dict_id" BIGINT,                          -- 压缩字典 (关联 mw_mail_dict.id)
+  "raw_content" TEXT,                        -- 邮件的完整原始内容 (MIME格式)，压缩存储时为空
   "search_vector" TSVECTOR,                  -- 用于全文检索的 tsvector
   "remark" VARCHAR(256),
   "creator" VARCHAR(64) DEFAULT '',
@@ -96,7 +100,14 @@ COMMENT ON COLUMN mw_mail_message.cc_address IS '抄送';
 COMMENT ON COLUMN mw_mail_message.sent_date IS '邮件头中的原始发送日期';
 COMMENT ON COLUMN mw_mail_message.has_attachment IS '是否包含附件';
 COMMENT ON COLUMN mw_mail_message.size_in_bytes IS '邮件大小 (字节)';
-COMMENT ON COLUMN mw_mail_message.raw_content IS '邮件的完整原始内容 (MIME格式)';
+COMMENT ON COLUMN mw_mail_message.ref_count IS '引用该消息的 mw_mail 行数 (含逻辑删除未清理的)';
+COMMENT ON COLUMN mw_mail_message.raw_content IS '邮件的完整原始内容 (MIME格式)，body_codec 为 0 时使用';
+COMMENT ON COLUMN mw_mail_message.body_codec IS '内容存储编码 (0:原文, 1:deflate, 2:deflate+字典)';
+COMMENT ON COLUMN mw_mail_message.body_data IS '压缩后的内容 (raw deflate)';
+COMMENT ON COLUMN mw_mail_message.dict_id IS '压缩字典ID (关联 mw_mail_dict.id)';
+
+-- 已压缩的数据不再由 TOAST 压缩，按块读取时只取所需的 TOAST 块
+ALTER TABLE mw_mail_message ALTER COLUMN body_data SET STORAGE EXTERNAL;
 COMMENT ON COLUMN mw_mail_message.search_vector IS '全文检索向量';
 
 -- 为常用检索字段创建索引
@@ -104,6 +115,24 @@ CREATE INDEX idx_message_subject ON mw_mail_message USING GIN (to_tsvector('simp
 CREATE INDEX idx_message_from ON mw_mail_message(from_address);
 -- 为全文检索向量创建 GIN 索引，这是最高效的方式
 CREATE INDEX idx_message_search_vector ON mw_mail_message USING GIN (search_vector);
+-- 后台清理查找无人引用的消息
+CREATE INDEX idx_message_unreferenced ON mw_mail_message(id) WHERE ref_count <= 0;
+
+-- ----------------------------
+-- 3.1 邮件压缩字典表 (mw_mail_dict)
+-- 每个租户由样本邮件训练的 deflate 预置字典，写入后不再修改
+-- ----------------------------
+drop table if exists mw_mail_dict;
+CREATE TABLE mw_mail_dict (
+  "id" BIGINT NOT NULL PRIMARY KEY,
+  "tenant_id" BIGINT NOT NULL DEFAULT 0,
+  "dict" BYTEA NOT NULL,                     -- 字典内容，最长 32K
+  "sample_count" INT NOT NULL DEFAULT 0,     -- 训练所用的样本数
+  "create_time" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON TABLE mw_mail_dict IS '邮件压缩字典表';
+CREATE INDEX idx_mail_dict_tenant_id ON mw_mail_dict(tenant_id, id);
 
 -- ----------------------------
 -- 4. 邮件元数据/实例表 (mw_mail) - [修订]
@@ -142,14 +171,19 @@ CREATE INDEX idx_mail_user_id ON mw_mail(user_id);
 CREATE INDEX idx_mail_mailbox_id ON mw_mail(mailbox_id);
 CREATE INDEX idx_mail_message_id ON mw_mail(message_id);
 CREATE INDEX idx_mail_mailbox_id_modseq ON mw_mail(mailbox_id, modseq);
+-- 后台清理查找超过保留期的逻辑删除邮件
+CREATE INDEX idx_mail_purgeable ON mw_mail(update_time) WHERE deleted = 1;
 
 -- ----------------------------
 -- 5. 邮件标志表 (mw_mail_flag)
 -- 存储邮件的IMAP标志 (多对多关系)
 -- ----------------------------
 drop table if exists mw_mail_flag;
+drop sequence if exists mw_mail_flag_id_seq;
+-- 按消息集合批量 STORE 时在 SQL 中生成主键
+CREATE SEQUENCE mw_mail_flag_id_seq;
 CREATE TABLE mw_mail_flag (
-  "id" bigint primary key,
+  "id" bigint primary key default nextval('mw_mail_flag_id_seq'),
   "mail_id" BIGINT NOT NULL,
   "flag" VARCHAR(64) NOT NULL,
   UNIQUE(mail_id, flag)
@@ -160,4 +194,6 @@ COMMENT ON COLUMN mw_mail_flag.mail_id IS '邮件ID (关联 mw_mail.id)';
 COMMENT ON COLUMN mw_mail_flag.flag IS 'IMAP标志 (e.g., \Seen, \Answered, \Flagged)';
 
 -- 为按标志查询创建索引
-CREATE INDEX idx_mail_flag_flag ON mw_mail_flag(flag);
\ No newline at end of file
+CREATE INDEX idx_mail_flag_flag ON mw_mail_flag(flag);
+-- EXPUNGE 只查找带 \Deleted 的邮件
+CREATE INDEX idx_mail_flag_deleted ON mw_mail_flag(mail_id) WHERE flag = '\Deleted';
\ No newline at end of file
@@ -1,3 +1,4 @@
 truncate table mw_mail_message;
 truncate table mw_mail;
-truncate table mw_mail_flag;
\ No newline at end of file
+truncate table mw_mail_flag;
+truncate table mw_mail_dict;
@@ -0,0 +1,33 @@
+-- ----------------------------
+-- 已有数据库的升级语句，可重复执行
+-- ----------------------------
+
+-- mw_mail_flag.id 由序列生成，按消息集合批量 STORE 时不再需要在应用中逐条生成主键
+CREATE SEQUENCE IF NOT EXISTS mw_mail_flag_id_seq;
+ALTER TABLE mw_mail_flag ALTER COLUMN id SET DEFAULT nextval('mw_mail_flag_id_seq');
+
+-- EXPUNGE 通过部分索引查找带 \Deleted 的邮件，不再扫描整个邮箱
+CREATE INDEX IF NOT EXISTS idx_mail_flag_deleted ON mw_mail_flag(mail_id) WHERE flag = '\Deleted';
+
+-- mw_mail_message 引用计数，由后台清理任务据此删除无人引用的消息
+ALTER TABLE mw_mail_message ADD COLUMN IF NOT EXISTS ref_count INT NOT NULL DEFAULT 0;
+UPDATE mw_mail_message msg
+   SET ref_count = (SELECT COUNT(*) FROM mw_mail m WHERE m.message_id = msg.id)
+ WHERE ref_count = 0;
+CREATE INDEX IF NOT EXISTS idx_message_unreferenced ON mw_mail_message(id) WHERE ref_count <= 0;
+CREATE INDEX IF NOT EXISTS idx_mail_purgeable ON mw_mail(update_time) WHERE deleted = 1;
+
+-- 邮件内容压缩存储：已有消息保持原文 (body_codec = 0)，新消息按租户字典压缩
+ALTER TABLE mw_mail_message ADD COLUMN IF NOT EXISTS body_codec SMALLINT NOT NULL DEFAULT 0;
+ALTER TABLE mw_mail_message ADD COLUMN IF NOT EXISTS body_data BYTEA;
+ALTER TABLE mw_mail_message ADD COLUMN IF NOT EXISTS dict_id BIGINT;
+ALTER TABLE mw_mail_message ALTER COLUMN raw_content DROP NOT NULL;
+ALTER TABLE mw_mail_message ALTER COLUMN body_data SET STORAGE EXTERNAL;
+CREATE TABLE IF NOT EXISTS mw_mail_dict (
+  "id" BIGINT NOT NULL PRIMARY KEY,
+  "tenant_id" BIGINT NOT NULL DEFAULT 0,
+  "dict" BYTEA NOT NULL,
+  "sample_count" INT NOT NULL DEFAULT 0,
+  "create_time" TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+CREATE INDEX IF NOT EXISTS idx_mail_dict_tenant_id ON mw_mail_dict(tenant_id, id);
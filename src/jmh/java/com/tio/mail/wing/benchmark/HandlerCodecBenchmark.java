@@ -0,0 +1,190 @@
+package com.tio.mail.wing.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+import com.tio.mail.wing.handler.ImapDeflateCodec;
+import com.tio.mail.wing.handler.ImapServerAioHandler;
+import com.tio.mail.wing.handler.ImapSessionContext;
+import com.tio.mail.wing.handler.Pop3ServerAioHandler;
+import com.tio.mail.wing.handler.SmtpServerAioHandler;
+import com.tio.mail.wing.packet.ImapPacket;
+import com.tio.mail.wing.packet.Pop3Packet;
+import com.tio.mail.wing.packet.SmtpPacket;
+
+/**
+ * 三个协议处理器的 decode / encode，不经过网络。
+ * decode 每次调用解出一整批命令行：IMAP 为客户端同步时的常见命令，POP3 为一次收信会话，SMTP 为一封邮件的信封和 DATA 各行；
+ * encode 每次调用编码一个响应：IMAP 为一封邮件的 FETCH BODY[] 响应（compress=true 时经过 COMPRESS=DEFLATE），
+ * POP3 为 RETR 响应，SMTP 为单行回复。compress 只影响 imapEncode，level 为其压缩级别，结束时打印压缩前后的字节数。
+ * 配合 -prof gc 查看每次调用分配的字节数。
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="HandlerCodecBenchmark -p corpus=/data/eml"
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="HandlerCodecBenchmark.imapEncode -p compress=true -p level=1,3,6,9"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerCodecBenchmark {
+
+  private static final String[] IMAP_COMMANDS = { "a1 CAPABILITY", "a2 LOGIN user1@litong.xyz 00000000", "a3 SELECT INBOX",
+      "a4 UID FETCH 1:* (FLAGS)", "a5 UID SEARCH UNSEEN", "a6 UID FETCH 120:180 (UID RFC822.SIZE FLAGS BODY.PEEK[HEADER.FIELDS (From To Subject Date Message-ID)])",
+      "a7 UID FETCH 151 (UID RFC822.SIZE BODY.PEEK[])", "a8 UID STORE 151 +FLAGS.SILENT (\\Seen)", "a9 NOOP", "a10 IDLE", "DONE",
+      "a11 LOGOUT" };
+  private static final String[] POP3_COMMANDS = { "USER user1@litong.xyz", "PASS 00000000", "STAT", "LIST", "UIDL", "RETR 1", "DELE 1",
+      "RETR 2", "DELE 2", "QUIT" };
+
+  @Param({ "" })
+  public String corpus;
+
+  @Param({ "false", "true" })
+  public boolean compress;
+
+  @Param({ "6" })
+  public int level;
+
+  private ImapServerAioHandler imapHandler;
+  private Pop3ServerAioHandler pop3Handler;
+  private SmtpServerAioHandler smtpHandler;
+  private ServerTioConfig tioConfig;
+  private ChannelContext imapContext;
+  private ChannelContext plainContext;
+  private ImapDeflateCodec codec;
+
+  private ByteBuffer imapInput;
+  private ByteBuffer pop3Input;
+  private ByteBuffer[] smtpInputs;
+  private ImapPacket[] fetchResponses;
+  private Pop3Packet[] retrResponses;
+  private SmtpPacket smtpReply;
+  private int next;
+
+  @Setup
+  public void setup() throws IOException {
+    imapHandler = new ImapServerAioHandler();
+    pop3Handler = new Pop3ServerAioHandler();
+    smtpHandler = new SmtpServerAioHandler();
+    tioConfig = new ServerTioConfig("benchmark");
+    imapContext = new ServerChannelContext(tioConfig);
+    plainContext = new ServerChannelContext(tioConfig);
+    if (compress) {
+      ImapSessionContext session = new ImapSessionContext();
+      codec = new ImapDeflateCodec(level);
+      codec.activateDeflate();
+      session.setCompressCodec(codec);
+      imapContext.set("sessionContext", session);
+    }
+
+    imapInput = lines(IMAP_COMMANDS);
+    pop3Input = lines(POP3_COMMANDS);
+
+    List<String> mails = MailCorpus.load(corpus, 500);
+    smtpInputs = new ByteBuffer[mails.size()];
+    fetchResponses = new ImapPacket[mails.size()];
+    retrResponses = new Pop3Packet[mails.size()];
+    for (int i = 0; i < mails.size(); i++) {
+      String mail = mails.get(i);
+      int size = mail.getBytes(StandardCharsets.UTF_8).length;
+      String envelope = "EHLO client.example.com\r\nMAIL FROM:<sender@example.com>\r\nRCPT TO:<user1@litong.xyz>\r\nDATA\r\n";
+      smtpInputs[i] = ByteBuffer.wrap((envelope + mail + (mail.endsWith("\r\n") ? "" : "\r\n") + ".\r\n").getBytes(StandardCharsets.UTF_8));
+      fetchResponses[i] = new ImapPacket("* " + (i + 1) + " FETCH (UID " + (i + 1) + " RFC822.SIZE " + size + " BODY[] {" + size + "}\r\n"
+          + mail + ")\r\n");
+      retrResponses[i] = new Pop3Packet("+OK Message " + (i + 1) + " follows\r\n" + mail + "\r\n.\r\n");
+    }
+    smtpReply = new SmtpPacket("250 2.0.0 Ok: queued\r\n");
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (codec != null) {
+      long plain = codec.getPlainBytesOut();
+      long compressed = codec.getCompressedBytesOut();
+      if (plain > 0) {
+        System.out.printf("%nlevel=%d plain=%dB compressed=%dB (%.1f%%)%n", level, plain, compressed, compressed * 100.0 / plain);
+      }
+      codec.end();
+    }
+  }
+
+  private static ByteBuffer lines(String[] lines) {
+    StringBuilder sb = new StringBuilder();
+    for (String line : lines) {
+      sb.append(line).append("\r\n");
+    }
+    return ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private int nextIndex() {
+    int i = next;
+    next = i + 1 == fetchResponses.length ? 0 : i + 1;
+    return i;
+  }
+
+  private static int decodeAll(ServerAioHandler handler, ByteBuffer input, ChannelContext ctx, Blackhole bh) throws Exception {
+    input.rewind();
+    int n = 0;
+    Packet packet;
+    while ((packet = handler.decode(input, input.limit(), input.position(), input.remaining(), ctx)) != null) {
+      bh.consume(packet);
+      n++;
+    }
+    return n;
+  }
+
+  @Benchmark
+  public int imapDecode(Blackhole bh) throws Exception {
+    return decodeAll(imapHandler, imapInput, plainContext, bh);
+  }
+
+  @Benchmark
+  public int pop3Decode(Blackhole bh) throws Exception {
+    return decodeAll(pop3Handler, pop3Input, plainContext, bh);
+  }
+
+  @Benchmark
+  public int smtpDecode(Blackhole bh) throws Exception {
+    return decodeAll(smtpHandler, smtpInputs[nextIndex()], plainContext, bh);
+  }
+
+  @Benchmark
+  public ByteBuffer imapEncode() {
+    return imapHandler.encode(fetchResponses[nextIndex()], tioConfig, imapContext);
+  }
+
+  @Benchmark
+  public ByteBuffer pop3Encode() {
+    return pop3Handler.encode(retrResponses[nextIndex()], tioConfig, plainContext);
+  }
+
+  @Benchmark
+  public ByteBuffer smtpEncode() {
+    return smtpHandler.encode(smtpReply, tioConfig, plainContext);
+  }
+}
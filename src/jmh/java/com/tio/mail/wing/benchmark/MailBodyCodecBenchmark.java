@@ -0,0 +1,104 @@
+package com.tio.mail.wing.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.tio.mail.wing.utils.MailBodyCodec;
+
+/**
+ * 邮件内容压缩的存储收益和编解码开销。
+ * corpus 指向 .eml 文件目录（递归读取）时使用真实邮件，前一半训练字典、后一半测量；
+ * 为空时使用 {@link MailCorpus} 生成的样本。Setup 中打印原文、deflate、deflate+字典三种存储的总字节数，
+ * 即写入和读取一封邮件时需要的磁盘与 I/O 量。
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="MailBodyCodecBenchmark -p corpus=/data/eml"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailBodyCodecBenchmark {
+
+  @Param({ "" })
+  public String corpus;
+
+  @Param({ "6" })
+  public int level;
+
+  private byte[][] raws;
+  private byte[][] plain;
+  private byte[][] withDict;
+  private byte[] dict;
+
+  @Setup
+  public void setup() throws IOException {
+    List<String> mails = MailCorpus.load(corpus, 2000);
+    int half = mails.size() / 2;
+    dict = MailBodyCodec.trainDictionary(mails.subList(0, half), MailBodyCodec.MAX_DICT_SIZE);
+
+    List<String> test = mails.subList(half, mails.size());
+    raws = new byte[test.size()][];
+    plain = new byte[test.size()][];
+    withDict = new byte[test.size()][];
+    long rawBytes = 0;
+    long plainBytes = 0;
+    long dictBytes = 0;
+    for (int i = 0; i < raws.length; i++) {
+      raws[i] = test.get(i).getBytes(StandardCharsets.UTF_8);
+      plain[i] = MailBodyCodec.compress(raws[i], null, level);
+      withDict[i] = MailBodyCodec.compress(raws[i], dict, level);
+      rawBytes += raws[i].length;
+      plainBytes += plain[i].length;
+      dictBytes += withDict[i].length;
+    }
+    System.out.printf("%nmails=%d dict=%dB raw=%dB deflate=%dB (%.1f%%) deflate+dict=%dB (%.1f%%)%n", raws.length, dict.length,
+        rawBytes, plainBytes, plainBytes * 100.0 / rawBytes, dictBytes, dictBytes * 100.0 / rawBytes);
+  }
+
+  @Benchmark
+  public void compressDeflate(Blackhole bh) {
+    for (byte[] raw : raws) {
+      bh.consume(MailBodyCodec.compress(raw, null, level));
+    }
+  }
+
+  @Benchmark
+  public void compressDeflateDict(Blackhole bh) {
+    for (byte[] raw : raws) {
+      bh.consume(MailBodyCodec.compress(raw, dict, level));
+    }
+  }
+
+  @Benchmark
+  public void decompressDeflate(Blackhole bh) {
+    for (int i = 0; i < plain.length; i++) {
+      bh.consume(MailBodyCodec.decompressToString(plain[i], null, raws[i].length));
+    }
+  }
+
+  @Benchmark
+  public void decompressDeflateDict(Blackhole bh) {
+    for (int i = 0; i < withDict.length; i++) {
+      bh.consume(MailBodyCodec.decompressToString(withDict[i], dict, raws[i].length));
+    }
+  }
+}
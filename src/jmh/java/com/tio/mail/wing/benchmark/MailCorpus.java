@@ -0,0 +1,161 @@
+package com.tio.mail.wing.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试使用的邮件样本。
+ * 指定 .eml 目录时递归读取真实邮件；否则生成固定随机种子的样本，混合常见形态：
+ * 纯文本、HTML 通知、中文正文和编码主题、带 base64 附件的 multipart、长 Received 链和折行头部。
+ */
+public final class MailCorpus {
+
+  private MailCorpus() {
+  }
+
+  public static List<String> load(String dir, int syntheticCount) throws IOException {
+    return dir == null || dir.isEmpty() ? synthetic(syntheticCount) : load(Paths.get(dir));
+  }
+
+  private static List<String> load(Path dir) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      List<Path> paths = files.filter(p -> p.toString().endsWith(".eml")).sorted().collect(Collectors.toList());
+      List<String> mails = new ArrayList<>(paths.size());
+      for (Path p : paths) {
+        mails.add(new String(Files.readAllBytes(p), StandardCharsets.UTF_8));
+      }
+      if (mails.isEmpty()) {
+        throw new IOException("No .eml files under " + dir);
+      }
+      return mails;
+    }
+  }
+
+  public static List<String> synthetic(int n) {
+    Random random = new Random(42);
+    List<String> mails = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      StringBuilder sb = new StringBuilder(4096);
+      headers(sb, i, random);
+      switch (i % 5) {
+      case 0:
+        plain(sb, random);
+        break;
+      case 1:
+        html(sb, i, random);
+        break;
+      case 2:
+        chinese(sb, random);
+        break;
+      case 3:
+        attachment(sb, i, random);
+        break;
+      default:
+        reply(sb, random);
+        break;
+      }
+      mails.add(sb.toString());
+    }
+    return mails;
+  }
+
+  private static void headers(StringBuilder sb, int i, Random random) {
+    int hops = 1 + random.nextInt(6);
+    for (int h = 0; h < hops; h++) {
+      sb.append("Received: from mx").append(h).append(".example.com (mx").append(h).append(".example.com [10.0.")
+          .append(h).append('.').append(random.nextInt(255)).append("])\r\n")
+          .append("\tby mail.litong.xyz with ESMTPS id ").append(Long.toHexString(random.nextLong())).append("\r\n")
+          .append("\tfor <user").append(i % 97).append("@litong.xyz>; Mon, 6 Oct 2025 08:").append(10 + h)
+          .append(":00 +0000\r\n");
+    }
+    sb.append("DKIM-Signature: v=1; a=rsa-sha256; c=relaxed/relaxed; d=example.com; s=s1;\r\n")
+        .append("\th=from:to:subject:date:message-id; bh=").append(base64(random, 32)).append(";\r\n")
+        .append("\tb=").append(base64(random, 96)).append("\r\n");
+    sb.append("Message-ID: <").append(i).append('.').append(Long.toHexString(random.nextLong())).append("@example.com>\r\n");
+    sb.append("Date: Mon, 6 Oct 2025 08:").append(10 + i % 50).append(":00 +0000\r\n");
+    sb.append("From: \"Sender ").append(i % 13).append("\" <sender").append(i % 13).append("@example.com>\r\n");
+    sb.append("To: user").append(i % 97).append("@litong.xyz\r\n");
+    if (i % 3 == 0) {
+      sb.append("Cc: team@litong.xyz, ops@litong.xyz\r\n");
+    }
+    sb.append("MIME-Version: 1.0\r\n");
+  }
+
+  private static void plain(StringBuilder sb, Random random) {
+    sb.append("Subject: Weekly report ").append(random.nextInt(100)).append("\r\n");
+    sb.append("Content-Type: text/plain; charset=UTF-8; format=flowed\r\n\r\n");
+    int lines = 5 + random.nextInt(60);
+    for (int l = 0; l < lines; l++) {
+      sb.append("Line ").append(l).append(" of the report, value ").append(random.nextInt(100000)).append(".\r\n");
+    }
+    // 以 "." 开头的行用于覆盖 POP3 字节填充
+    sb.append(".signature\r\n");
+  }
+
+  private static void html(StringBuilder sb, int i, Random random) {
+    sb.append("Subject: Order ").append(i).append(" shipped\r\n");
+    sb.append("Content-Type: text/html; charset=UTF-8\r\n\r\n");
+    sb.append("<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\"></head><body>\r\n");
+    int rows = 5 + random.nextInt(30);
+    for (int row = 0; row < rows; row++) {
+      sb.append("<tr><td style=\"padding:8px;border-bottom:1px solid #eee\">Item ").append(random.nextInt(10000))
+          .append("</td><td align=\"right\">").append(random.nextInt(1000)).append(".00</td></tr>\r\n");
+    }
+    sb.append("</body></html>\r\n");
+  }
+
+  private static void chinese(StringBuilder sb, Random random) {
+    String subject = "会议纪要 第" + random.nextInt(100) + "期";
+    sb.append("Subject: =?UTF-8?B?").append(Base64.getEncoder().encodeToString(subject.getBytes(StandardCharsets.UTF_8)))
+        .append("?=\r\n");
+    sb.append("Content-Type: text/plain; charset=UTF-8\r\nContent-Transfer-Encoding: 8bit\r\n\r\n");
+    int lines = 5 + random.nextInt(40);
+    for (int l = 0; l < lines; l++) {
+      sb.append("第").append(l + 1).append("项：请各位在周五前确认排期，数量 ").append(random.nextInt(1000)).append("。\r\n");
+    }
+  }
+
+  private static void attachment(StringBuilder sb, int i, Random random) {
+    String boundary = "----=_Part_" + i + "_" + random.nextInt(1 << 20);
+    sb.append("Subject: Invoice ").append(i).append("\r\n");
+    sb.append("Content-Type: multipart/mixed;\r\n\tboundary=\"").append(boundary).append("\"\r\n\r\n");
+    sb.append("--").append(boundary).append("\r\nContent-Type: text/plain; charset=UTF-8\r\n\r\n");
+    sb.append("Please find the invoice attached.\r\n\r\n");
+    sb.append("--").append(boundary).append("\r\nContent-Type: application/pdf; name=\"invoice-").append(i).append(".pdf\"\r\n");
+    sb.append("Content-Transfer-Encoding: base64\r\n");
+    sb.append("Content-Disposition: attachment; filename=\"invoice-").append(i).append(".pdf\"\r\n\r\n");
+    String data = base64(random, 16 * 1024 + random.nextInt(192 * 1024));
+    for (int from = 0; from < data.length(); from += 76) {
+      sb.append(data, from, Math.min(from + 76, data.length())).append("\r\n");
+    }
+    sb.append("--").append(boundary).append("--\r\n");
+  }
+
+  private static void reply(StringBuilder sb, Random random) {
+    sb.append("Subject: Re: Re: deployment window\r\n");
+    sb.append("In-Reply-To: <").append(Long.toHexString(random.nextLong())).append("@example.com>\r\n");
+    sb.append("References: <").append(Long.toHexString(random.nextLong())).append("@example.com>\r\n")
+        .append(" <").append(Long.toHexString(random.nextLong())).append("@example.com>\r\n");
+    sb.append("Content-Type: text/plain; charset=UTF-8\r\n\r\n");
+    sb.append("Works for me.\r\n\r\n");
+    int quoted = 3 + random.nextInt(30);
+    for (int l = 0; l < quoted; l++) {
+      sb.append("> previous message line ").append(l).append(" with some quoted text ").append(random.nextInt(1000)).append("\r\n");
+    }
+  }
+
+  private static String base64(Random random, int bytes) {
+    byte[] data = new byte[bytes];
+    random.nextBytes(data);
+    return Base64.getEncoder().encodeToString(data);
+  }
+}
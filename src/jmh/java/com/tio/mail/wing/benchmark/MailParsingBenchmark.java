@@ -0,0 +1,115 @@
+package com.tio.mail.wing.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.model.MailRaw;
+import com.tio.mail.wing.service.ImapFetchService;
+import com.tio.mail.wing.utils.MailRawUtils;
+
+/**
+ * 邮件头解析和 FETCH 响应前缀的生成，每次调用处理样本中的下一封邮件。
+ * 配合 -prof gc 查看 gc.alloc.rate.norm，即每封邮件分配的字节数。
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="MailParsingBenchmark -p corpus=/data/eml"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailParsingBenchmark {
+
+  /** 与 ImapFetchService 中客户端列表视图请求的头部一致 */
+  private static final String[] HEADER_FIELDS = new String[] { "From", "To", "Cc", "Bcc", "Subject", "Date", "Message-ID", "Priority",
+      "X-Priority", "References", "Newsgroups", "In-Reply-To", "Content-Type", "Reply-To" };
+  private static final String ITEMS = "UID RFC822.SIZE FLAGS BODY.PEEK[HEADER.FIELDS (FROM TO CC BCC SUBJECT DATE MESSAGE-ID PRIORITY X-PRIORITY REFERENCES NEWSGROUPS IN-REPLY-TO CONTENT-TYPE REPLY-TO)]";
+
+  @Param({ "" })
+  public String corpus;
+
+  private ImapFetchService fetchService;
+  private String[] mails;
+  private Email[] emails;
+  private MailRaw[] raws;
+  private int next;
+
+  @Setup
+  public void setup() throws IOException {
+    fetchService = new ImapFetchService();
+    List<String> list = MailCorpus.load(corpus, 1000);
+    mails = list.toArray(new String[0]);
+    emails = new Email[mails.length];
+    raws = new MailRaw[mails.length];
+    for (int i = 0; i < mails.length; i++) {
+      Email e = new Email();
+      e.setUid(i + 1);
+      e.setSize(mails[i].getBytes(StandardCharsets.UTF_8).length);
+      e.setFlags(new HashSet<>());
+      if (i % 2 == 0) {
+        e.getFlags().add("\\Seen");
+      }
+      emails[i] = e;
+
+      Map<String, String> headers = MailRawUtils.parseHeaders(mails[i]);
+      int bodyStart = mails[i].indexOf("\r\n\r\n");
+      raws[i] = MailRaw.builder().from(headers.get("From")).to(headers.get("To")).subject(headers.get("Subject"))
+          .body(bodyStart < 0 ? "" : mails[i].substring(bodyStart + 4)).build();
+    }
+  }
+
+  private int nextIndex() {
+    int i = next;
+    next = i + 1 == mails.length ? 0 : i + 1;
+    return i;
+  }
+
+  @Benchmark
+  public String parseHeaderFields() {
+    return fetchService.parseHeaderFields(mails[nextIndex()], HEADER_FIELDS);
+  }
+
+  @Benchmark
+  public String prefixLine() {
+    int i = nextIndex();
+    return fetchService.prefixLine(i + 1, true, ITEMS, emails[i].getSize(), emails[i], false);
+  }
+
+  @Benchmark
+  public Map<String, String> emailGetHeaders() {
+    // getHeaders 会缓存结果，每次用新对象测首次解析
+    Email e = new Email();
+    e.setRawContent(mails[nextIndex()]);
+    return e.getHeaders();
+  }
+
+  @Benchmark
+  public Map<String, String> parseHeaders() {
+    return MailRawUtils.parseHeaders(mails[nextIndex()]);
+  }
+
+  @Benchmark
+  public String toRawContent() {
+    return MailRawUtils.toRawContent(raws[nextIndex()]);
+  }
+}
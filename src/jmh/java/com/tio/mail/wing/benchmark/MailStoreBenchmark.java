@@ -0,0 +1,120 @@
+package com.tio.mail.wing.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.litongjava.jfinal.aop.Aop;
+import com.tio.mail.wing.consts.MailBoxName;
+import com.tio.mail.wing.db.EmbeddedMailDb;
+import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.service.MailBoxService;
+import com.tio.mail.wing.service.MwUserService;
+import com.tio.mail.wing.store.EmbeddedMailStore;
+import com.tio.mail.wing.store.MailStore;
+import com.tio.mail.wing.store.PgMailStore;
+
+/**
+ * 存储引擎的单次操作耗时：投递一封邮件、列出收件箱元数据、按 UID 取一页邮件的原文（不经过原文缓存）。
+ * store=pg 为嵌入式 PostgreSQL 上的 {@link PgMailStore}，store=embedded 为临时目录中的 {@link EmbeddedMailStore}（不 fsync）。
+ * 收件箱预先写入 mails 封邮件，saveMail 运行期间邮件数会继续增长。
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="MailStoreBenchmark -p mails=10000"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MailStoreBenchmark {
+
+  private static final int PAGE = 20;
+
+  @Param({ "1000" })
+  public int mails;
+
+  @Param({ "4096" })
+  public int bodyBytes;
+
+  @Param({ "pg", "embedded" })
+  public String store;
+
+  private MailStore mailStore;
+  private String username;
+  private long userId;
+  private long inboxId;
+  private Random random;
+  private int next;
+
+  @Setup
+  public void setup() throws IOException {
+    random = new Random(42);
+    next = mails;
+    if ("embedded".equals(store)) {
+      mailStore = new EmbeddedMailStore(Files.createTempDirectory("mail-store-bench").toFile(), false, Long.MAX_VALUE);
+      username = "seed1@litong.xyz";
+      userId = 1;
+      inboxId = mailStore.findMailbox(userId, MailBoxName.INBOX).getLong("id");
+      for (int i = 0; i < mails; i++) {
+        mailStore.append(userId, 1, username, inboxId, MailBoxName.INBOX, EmbeddedMailDb.syntheticMail(username, i, bodyBytes, random));
+      }
+      return;
+    }
+    EmbeddedMailDb db = EmbeddedMailDb.start();
+    db.reset();
+    username = db.seed(1, mails, bodyBytes).get(0);
+    userId = Aop.get(MwUserService.class).getUserIdByUsername(username);
+    inboxId = Aop.get(MailBoxService.class).getMailboxIdByName(userId, MailBoxName.INBOX);
+    mailStore = new PgMailStore();
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (mailStore instanceof EmbeddedMailStore) {
+      ((EmbeddedMailStore) mailStore).close();
+    }
+  }
+
+  @Benchmark
+  public boolean saveMail() {
+    String raw = EmbeddedMailDb.syntheticMail(username, next++, bodyBytes, random);
+    return mailStore.append(userId, 1, username, inboxId, MailBoxName.INBOX, raw);
+  }
+
+  @Benchmark
+  public List<Email> listMailbox() {
+    return mailStore.listMessages(inboxId);
+  }
+
+  @Benchmark
+  public Map<Long, String> fetchPage() {
+    long from = 1 + random.nextInt(mails - PAGE + 1);
+    List<Email> page = mailStore.findByUids(inboxId, MessageSet.parse(from + ":" + (from + PAGE - 1)));
+    List<Long> contentIds = new ArrayList<>(page.size());
+    for (Email e : page) {
+      contentIds.add(e.getContentId());
+    }
+    return mailStore.loadBodies(contentIds);
+  }
+}
@@ -0,0 +1,87 @@
+package com.tio.mail.wing.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.model.UidIndex;
+
+/**
+ * 消息集合的解析、成员判断和序号到 UID 的换算。
+ * ranges 为客户端集合中的段数，"1,3,5,..." 这类逐条列出的集合段数等于邮件数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSetBenchmark {
+
+  @Param({ "1", "100", "10000" })
+  public int ranges;
+
+  private String text;
+  private MessageSet set;
+  private UidIndex index;
+  private long[] probes;
+
+  @Setup
+  public void setup() {
+    // 每隔一个 UID 取一段，互不相邻，合并后段数不变
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < ranges; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      long lo = i * 4L + 1;
+      sb.append(lo).append(':').append(lo + 1);
+    }
+    text = sb.toString();
+    set = MessageSet.parse(text);
+
+    long[] uids = new long[ranges * 4];
+    for (int i = 0; i < uids.length; i++) {
+      uids[i] = i * 3L + 100;
+    }
+    index = new UidIndex(uids);
+
+    probes = new long[1024];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = ThreadLocalRandom.current().nextLong(1, ranges * 4L + 1);
+    }
+  }
+
+  @Benchmark
+  public MessageSet parse() {
+    return MessageSet.parse(text);
+  }
+
+  @Benchmark
+  public int contains() {
+    int hits = 0;
+    for (long p : probes) {
+      if (set.contains(p)) {
+        hits++;
+      }
+    }
+    return hits;
+  }
+
+  @Benchmark
+  public MessageSet seqToUids() {
+    return index.toUids(set, false);
+  }
+}
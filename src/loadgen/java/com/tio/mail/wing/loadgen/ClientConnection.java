@@ -0,0 +1,386 @@
+package com.tio.mail.wing.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按脚本执行的一个非阻塞客户端连接。只做判断响应结束所需的最少解析：
+ * 按行切分，IMAP 字面量 {n} 按长度跳过，不为正文行创建字符串。
+ */
+final class ClientConnection {
+
+  private enum Phase {
+    CLOSED, GREETING, PRELUDE, LOOP, EPILOGUE
+  }
+
+  /** 只保留每行的前若干字节，足够判断状态码、tag 和字面量长度 */
+  private static final int LINE_LIMIT = 1024;
+  private static final byte[] ERR = "-ERR".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] BYE = "* BYE".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] OK = " OK".getBytes(StandardCharsets.US_ASCII);
+
+  private final ClientLoop loop;
+  private final LoadStats stats;
+  private final Script script;
+  private final InetSocketAddress address;
+  private final Command greeting;
+  /** 只有 IMAP 响应中有字面量 */
+  private final boolean imap;
+
+  private SocketChannel channel;
+  private SelectionKey key;
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+  private final byte[] line = new byte[LINE_LIMIT];
+  private int lineLength;
+  private long literalRemaining;
+  private ByteBuffer writeBuffer;
+
+  private Phase phase = Phase.CLOSED;
+  private int index;
+  private int iteration;
+  /** 定时器代数，连接关闭后旧的定时器作废 */
+  private int generation;
+  /** 等待响应的命令 */
+  private Command current;
+  /** 等待定时器发送的命令 */
+  private Command delayed;
+  private long sentAt;
+  private boolean multiLineStarted;
+  private byte[] tag;
+  private int tagSeq;
+
+  ClientConnection(ClientLoop loop, Script script, InetSocketAddress address) {
+    this.loop = loop;
+    this.stats = loop.stats;
+    this.script = script;
+    this.address = address;
+    this.greeting = Command.greeting(script.protocol, script.greeting);
+    this.imap = "IMAP".equals(script.protocol);
+  }
+
+  void connect() {
+    lineLength = 0;
+    literalRemaining = 0;
+    readBuffer.clear();
+    writeBuffer = null;
+    phase = Phase.GREETING;
+    current = greeting;
+    sentAt = System.nanoTime();
+    try {
+      channel = SocketChannel.open();
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      if (channel.connect(address)) {
+        key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+        stats.openConnections.incrementAndGet();
+      } else {
+        key = channel.register(loop.selector, SelectionKey.OP_CONNECT, this);
+      }
+    } catch (IOException e) {
+      fail();
+    }
+  }
+
+  void onReady(SelectionKey key) throws IOException {
+    if (!key.isValid()) {
+      return;
+    }
+    if (key.isConnectable()) {
+      channel.finishConnect();
+      key.interestOps(SelectionKey.OP_READ);
+      stats.openConnections.incrementAndGet();
+      return;
+    }
+    if (key.isWritable()) {
+      flush();
+    }
+    if (key.isValid() && key.isReadable()) {
+      read();
+    }
+  }
+
+  void onTimer(int timerGeneration) {
+    if (timerGeneration != generation) {
+      return;
+    }
+    if (phase == Phase.CLOSED) {
+      if (loop.isRunning()) {
+        connect();
+      }
+    } else if (delayed != null) {
+      Command c = delayed;
+      delayed = null;
+      write(c);
+    }
+  }
+
+  /**
+   * 连接失败或被服务端断开，稍后重连
+   */
+  void fail() {
+    stats.connectionErrors.increment();
+    close();
+    reconnectLater(1000);
+  }
+
+  void close() {
+    generation++;
+    if (channel != null) {
+      if (channel.isConnected()) {
+        stats.openConnections.decrementAndGet();
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // ignore
+      }
+      channel = null;
+      key = null;
+    }
+    phase = Phase.CLOSED;
+    current = null;
+    delayed = null;
+  }
+
+  private void reconnectLater(long delayMillis) {
+    if (loop.isRunning()) {
+      loop.schedule(this, generation, delayMillis);
+    }
+  }
+
+  private void read() throws IOException {
+    int n = channel.read(readBuffer);
+    if (n < 0) {
+      // 脚本结束前被断开，包括服务端空闲超时
+      fail();
+      return;
+    }
+    readBuffer.flip();
+    while (readBuffer.hasRemaining() && channel != null) {
+      if (literalRemaining > 0) {
+        int skip = (int) Math.min(literalRemaining, readBuffer.remaining());
+        readBuffer.position(readBuffer.position() + skip);
+        literalRemaining -= skip;
+        continue;
+      }
+      byte b = readBuffer.get();
+      if (b == '\n') {
+        int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+        lineLength = 0;
+        onLine(length);
+      } else if (lineLength < LINE_LIMIT) {
+        line[lineLength++] = b;
+      }
+    }
+    if (channel != null) {
+      readBuffer.clear();
+    }
+  }
+
+  private void onLine(int length) {
+    if (imap && length > 1 && line[length - 1] == '}') {
+      literalRemaining = literalLength(length);
+    }
+    if (current == null) {
+      // 未请求的响应，如 IDLE 期间的 EXISTS
+      return;
+    }
+    switch (current.reply) {
+    case LINE:
+      complete(startsWith(length, ERR) || startsWith(length, BYE));
+      break;
+    case SMTP:
+      if (length < 4 || line[3] != '-') {
+        complete(length < 3 || line[0] >= '4');
+      }
+      break;
+    case POP3_MULTI:
+      if (!multiLineStarted) {
+        if (startsWith(length, ERR)) {
+          complete(true);
+        } else {
+          multiLineStarted = true;
+        }
+      } else if (length == 1 && line[0] == '.') {
+        complete(false);
+      }
+      break;
+    case IMAP_TAGGED:
+      if (isTagged(length)) {
+        complete(!isTaggedOk(length));
+      }
+      break;
+    case IMAP_CONTINUATION:
+      if (length > 0 && line[0] == '+') {
+        complete(false);
+      } else if (isTagged(length)) {
+        complete(true);
+      }
+      break;
+    default:
+      break;
+    }
+  }
+
+  /**
+   * 行尾的 {n} 或非同步字面量 {n+}，返回 n，不是字面量返回 0
+   */
+  private long literalLength(int length) {
+    int end = length - 1;
+    if (line[end - 1] == '+') {
+      end--;
+    }
+    int start = end;
+    while (start > 0 && line[start - 1] >= '0' && line[start - 1] <= '9') {
+      start--;
+    }
+    if (start == end || start == 0 || line[start - 1] != '{') {
+      return 0;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      value = value * 10 + (line[i] - '0');
+    }
+    return value;
+  }
+
+  private boolean startsWith(int length, byte[] prefix) {
+    if (length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (line[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isTagged(int length) {
+    return tag != null && startsWith(length, tag) && length > tag.length && line[tag.length] == ' ';
+  }
+
+  private boolean isTaggedOk(int length) {
+    if (length < tag.length + OK.length) {
+      return false;
+    }
+    for (int i = 0; i < OK.length; i++) {
+      if (line[tag.length + i] != OK[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void complete(boolean error) {
+    Command done = current;
+    current = null;
+    stats.record(done.name, System.nanoTime() - sentAt, error);
+    if (error && (phase == Phase.GREETING || done.reply == Command.Reply.IMAP_CONTINUATION)) {
+      // 无法继续按脚本执行
+      close();
+      reconnectLater(script.reconnectPauseMillis);
+      return;
+    }
+    advance();
+  }
+
+  private void advance() {
+    long pause = 0;
+    index++;
+    while (true) {
+      List<Command> commands = commandsOf(phase);
+      if (index < commands.size()) {
+        send(commands.get(index), pause);
+        return;
+      }
+      switch (phase) {
+      case GREETING:
+        phase = Phase.PRELUDE;
+        index = 0;
+        break;
+      case PRELUDE:
+        phase = Phase.LOOP;
+        index = 0;
+        iteration = 0;
+        break;
+      case LOOP:
+        iteration++;
+        if (!script.loop.isEmpty() && (script.iterations < 0 || iteration < script.iterations)) {
+          index = 0;
+          pause = script.loopPauseMillis;
+        } else {
+          phase = Phase.EPILOGUE;
+          index = 0;
+        }
+        break;
+      default:
+        close();
+        reconnectLater(script.reconnectPauseMillis);
+        return;
+      }
+    }
+  }
+
+  private List<Command> commandsOf(Phase p) {
+    switch (p) {
+    case PRELUDE:
+      return script.prelude;
+    case LOOP:
+      return script.loop;
+    case EPILOGUE:
+      return script.epilogue;
+    default:
+      return Collections.emptyList();
+    }
+  }
+
+  private void send(Command command, long pause) {
+    long delay = pause + command.delayMillis;
+    if (delay > 0) {
+      delayed = command;
+      loop.schedule(this, generation, delay);
+    } else {
+      write(command);
+    }
+  }
+
+  private void write(Command command) {
+    current = command;
+    multiLineStarted = false;
+    if (command.tagged) {
+      tag = ("a" + (++tagSeq)).getBytes(StandardCharsets.US_ASCII);
+      writeBuffer = ByteBuffer.allocate(tag.length + 1 + command.bytes.length);
+      writeBuffer.put(tag).put((byte) ' ').put(command.bytes).flip();
+    } else {
+      writeBuffer = ByteBuffer.wrap(command.bytes);
+    }
+    sentAt = System.nanoTime();
+    try {
+      flush();
+    } catch (IOException e) {
+      fail();
+    }
+  }
+
+  private void flush() throws IOException {
+    if (writeBuffer == null) {
+      key.interestOps(SelectionKey.OP_READ);
+      return;
+    }
+    channel.write(writeBuffer);
+    if (writeBuffer.hasRemaining()) {
+      key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    } else {
+      writeBuffer = null;
+      key.interestOps(SelectionKey.OP_READ);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.tio.mail.wing.loadgen;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 一个线程、一个 Selector，驱动若干客户端连接；思考时间、IDLE 保持和重连由定时队列调度，
+ * 不为每个连接占用线程
+ */
+final class ClientLoop implements Runnable {
+
+  private static final class Timer {
+    final long due;
+    final ClientConnection connection;
+    final int generation;
+
+    Timer(long due, ClientConnection connection, int generation) {
+      this.due = due;
+      this.connection = connection;
+      this.generation = generation;
+    }
+  }
+
+  final Selector selector;
+  final LoadStats stats;
+  private final PriorityQueue<Timer> timers = new PriorityQueue<>((a, b) -> Long.compare(a.due - b.due, 0));
+  private final ConcurrentLinkedQueue<ClientConnection> added = new ConcurrentLinkedQueue<>();
+  private final List<ClientConnection> connections = new ArrayList<>();
+  private volatile boolean running = true;
+  /** Selector 本身出错导致线程退出，本次压测结果无效 */
+  private volatile IOException failure;
+
+  ClientLoop(LoadStats stats) throws IOException {
+    this.selector = Selector.open();
+    this.stats = stats;
+  }
+
+  /**
+   * 由其他线程调用，连接在本线程中发起
+   */
+  void add(ClientConnection connection) {
+    added.add(connection);
+    selector.wakeup();
+  }
+
+  /**
+   * 仅在本线程中调用
+   */
+  void schedule(ClientConnection connection, int generation, long delayMillis) {
+    timers.add(new Timer(System.nanoTime() + delayMillis * 1_000_000L, connection, generation));
+  }
+
+  boolean isRunning() {
+    return running;
+  }
+
+  IOException getFailure() {
+    return failure;
+  }
+
+  void stop() {
+    running = false;
+    selector.wakeup();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        long timeout = 0;
+        Timer first = timers.peek();
+        if (first != null) {
+          timeout = Math.max(1, (first.due - System.nanoTime()) / 1_000_000L + 1);
+        }
+        selector.select(timeout);
+
+        ClientConnection c;
+        while ((c = added.poll()) != null) {
+          connections.add(c);
+          c.connect();
+        }
+
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          SelectionKey key = it.next();
+          it.remove();
+          ClientConnection connection = (ClientConnection) key.attachment();
+          try {
+            connection.onReady(key);
+          } catch (IOException | CancelledKeyException e) {
+            connection.fail();
+          }
+        }
+
+        long now = System.nanoTime();
+        Timer t;
+        while ((t = timers.peek()) != null && t.due - now <= 0) {
+          timers.poll();
+          t.connection.onTimer(t.generation);
+        }
+      }
+    } catch (IOException e) {
+      failure = e;
+      running = false;
+      stats.connectionErrors.increment();
+    } finally {
+      for (ClientConnection c : connections) {
+        c.close();
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+}
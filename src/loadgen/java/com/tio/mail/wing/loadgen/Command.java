@@ -0,0 +1,91 @@
+package com.tio.mail.wing.loadgen;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 脚本中的一条客户端命令：发送的文本、响应的结束方式和统计名称
+ */
+public final class Command {
+
+  /**
+   * 如何判断响应已完整
+   */
+  public enum Reply {
+    /** 单行响应：POP3 单行、IMAP 问候 */
+    LINE,
+    /** SMTP 回复，"250-" 续行直到 "250 " */
+    SMTP,
+    /** POP3 多行响应，"-ERR" 或以 "." 单独一行结束 */
+    POP3_MULTI,
+    /** IMAP 带 tag 的完成响应，中间的字面量按长度跳过 */
+    IMAP_TAGGED,
+    /** IMAP 续行请求 "+"，用于 IDLE */
+    IMAP_CONTINUATION
+  }
+
+  final String name;
+  /** UTF-8 编码的命令文本，含 CRLF，IMAP tag 在发送时加在前面 */
+  final byte[] bytes;
+  final Reply reply;
+  /** IMAP 命令由连接加上 tag */
+  final boolean tagged;
+  /** 发送前等待的毫秒数，如 IDLE 保持时间 */
+  final long delayMillis;
+
+  private Command(String name, String text, Reply reply, boolean tagged, long delayMillis) {
+    this(name, text.getBytes(StandardCharsets.UTF_8), reply, tagged, delayMillis);
+  }
+
+  private Command(String name, byte[] bytes, Reply reply, boolean tagged, long delayMillis) {
+    this.name = name;
+    this.bytes = bytes;
+    this.reply = reply;
+    this.tagged = tagged;
+    this.delayMillis = delayMillis;
+  }
+
+  /**
+   * 连接建立到收到服务端问候，统计为 "&lt;协议&gt; CONNECT"
+   */
+  public static Command greeting(String protocol, Reply reply) {
+    return new Command(protocol + " CONNECT", "", reply, false, 0);
+  }
+
+  public static Command smtp(String name, String line) {
+    return new Command("SMTP " + name, line + "\r\n", Reply.SMTP, false, 0);
+  }
+
+  /**
+   * @param data 已做字节填充、以 CRLF 结尾的邮件内容，自动追加结束行
+   */
+  public static Command smtpData(String data) {
+    return new Command("SMTP MESSAGE", data + ".\r\n", Reply.SMTP, false, 0);
+  }
+
+  public static Command pop3(String name, String line, boolean multiLine) {
+    return new Command("POP3 " + name, line + "\r\n", multiLine ? Reply.POP3_MULTI : Reply.LINE, false, 0);
+  }
+
+  public static Command imap(String name, String command) {
+    return new Command("IMAP " + name, command + "\r\n", Reply.IMAP_TAGGED, true, 0);
+  }
+
+  public static Command imapIdle() {
+    return new Command("IMAP IDLE", "IDLE\r\n", Reply.IMAP_CONTINUATION, true, 0);
+  }
+
+  /**
+   * 结束 IDLE，等待 IDLE 命令的完成响应
+   */
+  public static Command imapDone(long idleMillis) {
+    return new Command("IMAP DONE", "DONE\r\n", Reply.IMAP_TAGGED, false, idleMillis);
+  }
+
+  public Command after(long delayMillis) {
+    return new Command(name, bytes, reply, tagged, delayMillis);
+  }
+
+  public String getName() {
+    return name;
+  }
+}
@@ -0,0 +1,118 @@
+package com.tio.mail.wing.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端压测工具：按场景启动大量非阻塞客户端连接真实的 SMTP、IMAP、POP3 端口，
+ * 结束时输出每条命令的耗时分位数，指定 --metrics-url 时同时输出服务端资源消耗。
+ *
+ * <pre>
+ * mvn -Ploadgen test-compile exec:exec -Dloadgen.args="--scenario imap-idle:2000,imap-sync:50,pop3-poll:50,smtp-ingest:20 --duration 120 --metrics-url http://127.0.0.1/metrics"
+ * </pre>
+ */
+public final class LoadGenerator {
+
+  private LoadGenerator() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    LoadOptions options;
+    try {
+      options = LoadOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(2);
+      return;
+    }
+    Scenarios scenarios = new Scenarios(options);
+    // 先构建全部脚本，场景名写错时在连接前失败
+    List<Script> scripts = new ArrayList<>();
+    for (Map.Entry<String, Integer> e : options.scenarios.entrySet()) {
+      for (int i = 0; i < e.getValue(); i++) {
+        scripts.add(scenarios.build(e.getKey(), i));
+      }
+    }
+
+    LoadStats stats = new LoadStats();
+    ServerMetrics serverMetrics = new ServerMetrics(options.metricsUrl);
+    serverMetrics.sample();
+
+    List<ClientLoop> loops = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < options.threads; i++) {
+      ClientLoop loop = new ClientLoop(stats);
+      Thread t = new Thread(loop, "loadgen-" + i);
+      loops.add(loop);
+      threads.add(t);
+      t.start();
+    }
+
+    System.out.printf("%d clients %s on %d threads against %s for %ds%n", scripts.size(), options.scenarios, options.threads,
+        options.host, options.durationSeconds);
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+    long nextReport = start + TimeUnit.SECONDS.toNanos(options.reportSeconds);
+    long lastCompleted = 0;
+    long lastReport = start;
+    int started = 0;
+    while (System.nanoTime() - deadline < 0 && !anyFailed(loops)) {
+      long now = System.nanoTime();
+      // 按 --ramp 匀速建立连接
+      long due = (long) ((now - start) / 1e9 * options.rampPerSecond) + 1;
+      while (started < scripts.size() && started < due) {
+        Script script = scripts.get(started);
+        ClientLoop loop = loops.get(started % loops.size());
+        loop.add(new ClientConnection(loop, script, new InetSocketAddress(options.host, script.port)));
+        started++;
+      }
+      if (now - nextReport >= 0) {
+        long completed = stats.getCompleted();
+        System.out.printf("%5ds  connections %6d  commands/s %9.1f  errors %d  connection errors %d%n",
+            TimeUnit.NANOSECONDS.toSeconds(now - start), stats.openConnections.get(), (completed - lastCompleted) / ((now - lastReport) / 1e9),
+            stats.getFailed(), stats.connectionErrors.sum());
+        lastCompleted = completed;
+        lastReport = now;
+        nextReport += TimeUnit.SECONDS.toNanos(options.reportSeconds);
+        serverMetrics.sample();
+      }
+      Thread.sleep(started < scripts.size() ? 10 : 100);
+    }
+
+    for (ClientLoop loop : loops) {
+      loop.stop();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    double elapsed = (System.nanoTime() - start) / 1e9;
+    serverMetrics.sample();
+
+    System.out.println();
+    stats.print(System.out, elapsed);
+    serverMetrics.print(System.out, elapsed);
+
+    if (anyFailed(loops)) {
+      for (int i = 0; i < loops.size(); i++) {
+        IOException failure = loops.get(i).getFailure();
+        if (failure != null) {
+          System.err.println("loadgen-" + i + " failed: " + failure);
+        }
+      }
+      System.exit(1);
+    }
+  }
+
+  private static boolean anyFailed(List<ClientLoop> loops) {
+    for (ClientLoop loop : loops) {
+      if (loop.getFailure() != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,122 @@
+package com.tio.mail.wing.loadgen;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 命令行参数，形如 --name value
+ */
+public final class LoadOptions {
+
+  /** 场景名到客户端数，按参数中的顺序 */
+  final Map<String, Integer> scenarios = new LinkedHashMap<>();
+  String host = "127.0.0.1";
+  int smtpPort = 25;
+  int imapPort = 143;
+  int pop3Port = 110;
+  List<String> users = new ArrayList<>();
+  String password = "00000000";
+  int durationSeconds = 60;
+  int rampPerSecond = 200;
+  int threads = Runtime.getRuntime().availableProcessors();
+  int reportSeconds = 10;
+  long thinkMillis = 1000;
+  long idleMillis = 60_000;
+  int messagesPerConnection = 10;
+  int messageBytes = 8192;
+  String corpus = "";
+  int fetchCount = 20;
+  int retrCount = 5;
+  String metricsUrl = "";
+  long seed = 42;
+
+  static LoadOptions parse(String[] args) {
+    LoadOptions o = new LoadOptions();
+    for (int i = 0; i < args.length; i++) {
+      String name = args[i];
+      if (!name.startsWith("--") || i + 1 >= args.length) {
+        throw new IllegalArgumentException("Expected --name value, got: " + name);
+      }
+      String value = args[++i];
+      switch (name.substring(2)) {
+      case "scenario":
+        for (String part : value.split(",")) {
+          String[] kv = part.split(":", 2);
+          o.scenarios.put(kv[0].trim(), kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 100);
+        }
+        break;
+      case "host":
+        o.host = value;
+        break;
+      case "smtp-port":
+        o.smtpPort = Integer.parseInt(value);
+        break;
+      case "imap-port":
+        o.imapPort = Integer.parseInt(value);
+        break;
+      case "pop3-port":
+        o.pop3Port = Integer.parseInt(value);
+        break;
+      case "users":
+        for (String u : value.split(",")) {
+          o.users.add(u.trim());
+        }
+        break;
+      case "password":
+        o.password = value;
+        break;
+      case "duration":
+        o.durationSeconds = Integer.parseInt(value);
+        break;
+      case "ramp":
+        o.rampPerSecond = Integer.parseInt(value);
+        break;
+      case "threads":
+        o.threads = Integer.parseInt(value);
+        break;
+      case "report":
+        o.reportSeconds = Integer.parseInt(value);
+        break;
+      case "think-ms":
+        o.thinkMillis = Long.parseLong(value);
+        break;
+      case "idle-seconds":
+        o.idleMillis = Long.parseLong(value) * 1000;
+        break;
+      case "messages":
+        o.messagesPerConnection = Integer.parseInt(value);
+        break;
+      case "message-bytes":
+        o.messageBytes = Integer.parseInt(value);
+        break;
+      case "corpus":
+        o.corpus = value;
+        break;
+      case "fetch":
+        o.fetchCount = Integer.parseInt(value);
+        break;
+      case "retr":
+        o.retrCount = Integer.parseInt(value);
+        break;
+      case "metrics-url":
+        o.metricsUrl = value;
+        break;
+      case "seed":
+        o.seed = Long.parseLong(value);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown option: " + name);
+      }
+    }
+    if (o.scenarios.isEmpty()) {
+      throw new IllegalArgumentException("--scenario is required, e.g. --scenario imap-idle:2000,smtp-ingest:50");
+    }
+    if (o.users.isEmpty()) {
+      o.users.add("user1@litong.xyz");
+      o.users.add("user2@litong.xyz");
+    }
+    return o;
+  }
+}
@@ -0,0 +1,60 @@
+package com.tio.mail.wing.loadgen;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.tio.mail.wing.metrics.LatencyHistogram;
+
+/**
+ * 按命令名统计耗时分布和错误数，所有客户端线程共享
+ */
+public final class LoadStats {
+
+  private static final class CommandStats {
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LongAdder errors = new LongAdder();
+  }
+
+  private final ConcurrentHashMap<String, CommandStats> commands = new ConcurrentHashMap<>();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  /** 连接失败或被服务端意外断开 */
+  final LongAdder connectionErrors = new LongAdder();
+  final AtomicInteger openConnections = new AtomicInteger();
+
+  void record(String name, long nanos, boolean error) {
+    CommandStats s = commands.computeIfAbsent(name, k -> new CommandStats());
+    s.latency.recordNanos(nanos);
+    completed.increment();
+    if (error) {
+      s.errors.increment();
+      failed.increment();
+    }
+  }
+
+  long getCompleted() {
+    return completed.sum();
+  }
+
+  long getFailed() {
+    return failed.sum();
+  }
+
+  void print(PrintStream out, double elapsedSeconds) {
+    out.printf("%-24s %10s %8s %10s %9s %9s %9s %9s %9s%n", "command", "count", "errors", "per sec", "mean ms", "p50 ms", "p90 ms",
+        "p99 ms", "p99.9 ms");
+    Map<String, CommandStats> sorted = new TreeMap<>(commands);
+    for (Map.Entry<String, CommandStats> e : sorted.entrySet()) {
+      LatencyHistogram h = e.getValue().latency;
+      long count = h.getCount();
+      out.printf("%-24s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", e.getKey(), count, e.getValue().errors.sum(),
+          count / elapsedSeconds, count == 0 ? 0 : h.getSum() / 1e3 / count, h.quantile(0.5) / 1e3, h.quantile(0.9) / 1e3,
+          h.quantile(0.99) / 1e3, h.quantile(0.999) / 1e3);
+    }
+    out.printf("connection errors: %d%n", connectionErrors.sum());
+  }
+}
@@ -0,0 +1,163 @@
+package com.tio.mail.wing.loadgen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 内置场景，每个客户端按编号轮流使用 --users 中的账号：
+ * <ul>
+ * <li>smtp-ingest：认证后每个连接连续投递 --messages 封邮件，再重连</li>
+ * <li>imap-idle：登录、SELECT INBOX 后反复 IDLE，每次保持 --idle-seconds</li>
+ * <li>imap-sync：登录、SELECT、拉取全部 UID 和标志、拉取前 --fetch 封的正文后退出，间隔 --think-ms 重连</li>
+ * <li>pop3-poll：认证、STAT/UIDL/LIST、RETR 前 --retr 封后退出，间隔 --think-ms 重连</li>
+ * </ul>
+ */
+public final class Scenarios {
+
+  public static final List<String> NAMES = Collections
+      .unmodifiableList(Arrays.asList("smtp-ingest", "imap-idle", "imap-sync", "pop3-poll"));
+
+  private final LoadOptions options;
+  private final List<Command> messages;
+
+  public Scenarios(LoadOptions options) throws IOException {
+    this.options = options;
+    this.messages = options.scenarios.containsKey("smtp-ingest") ? loadMessages() : Collections.emptyList();
+  }
+
+  public Script build(String name, int client) {
+    String user = options.users.get(client % options.users.size());
+    switch (name) {
+    case "smtp-ingest":
+      return smtpIngest(user, client);
+    case "imap-idle":
+      return imapIdle(user);
+    case "imap-sync":
+      return imapSync(user);
+    case "pop3-poll":
+      return pop3Poll(user);
+    default:
+      throw new IllegalArgumentException("Unknown scenario: " + name + ", expected one of " + NAMES);
+    }
+  }
+
+  private Script smtpIngest(String user, int client) {
+    List<Command> prelude = Arrays.asList(Command.smtp("EHLO", "EHLO loadgen"), Command.smtp("AUTH", "AUTH LOGIN"),
+        Command.smtp("AUTH_DATA", base64(user)), Command.smtp("AUTH_DATA", base64(options.password)));
+    // 收件人取下一个账号，多账号时邮件分散到各个邮箱
+    String recipient = options.users.get((client + 1) % options.users.size());
+    List<Command> loop = new ArrayList<>();
+    loop.add(Command.smtp("MAIL", "MAIL FROM:<" + user + ">"));
+    loop.add(Command.smtp("RCPT", "RCPT TO:<" + recipient + ">"));
+    loop.add(Command.smtp("DATA", "DATA"));
+    loop.add(messages.get(client % messages.size()));
+    return new Script("SMTP", options.smtpPort, Command.Reply.SMTP, prelude, loop, options.messagesPerConnection, 0,
+        Collections.singletonList(Command.smtp("QUIT", "QUIT")), 0);
+  }
+
+  private Script imapIdle(String user) {
+    List<Command> prelude = Arrays.asList(Command.imap("LOGIN", "LOGIN " + user + " " + options.password),
+        Command.imap("SELECT", "SELECT INBOX"));
+    List<Command> loop = Arrays.asList(Command.imapIdle(), Command.imapDone(options.idleMillis));
+    return new Script("IMAP", options.imapPort, Command.Reply.LINE, prelude, loop, -1, 0,
+        Collections.singletonList(Command.imap("LOGOUT", "LOGOUT")), 0);
+  }
+
+  private Script imapSync(String user) {
+    List<Command> prelude = Arrays.asList(Command.imap("LOGIN", "LOGIN " + user + " " + options.password),
+        Command.imap("SELECT", "SELECT INBOX"), Command.imap("UID FETCH FLAGS", "UID FETCH 1:* (UID FLAGS)"),
+        Command.imap("FETCH BODY", "FETCH 1:" + options.fetchCount + " (UID RFC822.SIZE BODY.PEEK[])"));
+    return new Script("IMAP", options.imapPort, Command.Reply.LINE, prelude, Collections.emptyList(), 0, 0,
+        Collections.singletonList(Command.imap("LOGOUT", "LOGOUT")), options.thinkMillis);
+  }
+
+  private Script pop3Poll(String user) {
+    List<Command> prelude = new ArrayList<>();
+    prelude.add(Command.pop3("USER", "USER " + user, false));
+    prelude.add(Command.pop3("PASS", "PASS " + options.password, false));
+    prelude.add(Command.pop3("STAT", "STAT", false));
+    prelude.add(Command.pop3("UIDL", "UIDL", true));
+    prelude.add(Command.pop3("LIST", "LIST", true));
+    for (int i = 1; i <= options.retrCount; i++) {
+      prelude.add(Command.pop3("RETR", "RETR " + i, true));
+    }
+    return new Script("POP3", options.pop3Port, Command.Reply.LINE, prelude, Collections.emptyList(), 0, 0,
+        Collections.singletonList(Command.pop3("QUIT", "QUIT", false)), options.thinkMillis);
+  }
+
+  /**
+   * 指定 --corpus 时读取目录下的 .eml，否则按 --message-bytes 生成固定种子的文本邮件
+   */
+  private List<Command> loadMessages() throws IOException {
+    List<String> mails = new ArrayList<>();
+    if (!options.corpus.isEmpty()) {
+      try (Stream<Path> files = Files.walk(Paths.get(options.corpus))) {
+        for (Path p : files.filter(p -> p.toString().endsWith(".eml")).sorted().collect(Collectors.toList())) {
+          mails.add(new String(Files.readAllBytes(p), StandardCharsets.UTF_8));
+        }
+      }
+      if (mails.isEmpty()) {
+        throw new IOException("No .eml files under " + options.corpus);
+      }
+    } else {
+      Random random = new Random(options.seed);
+      for (int i = 0; i < 64; i++) {
+        mails.add(synthetic(i, random));
+      }
+    }
+    List<Command> commands = new ArrayList<>(mails.size());
+    for (String mail : mails) {
+      commands.add(Command.smtpData(dotStuff(mail)));
+    }
+    return commands;
+  }
+
+  private String synthetic(int i, Random random) {
+    StringBuilder sb = new StringBuilder(options.messageBytes + 512);
+    sb.append("Message-ID: <loadgen.").append(i).append('.').append(Long.toHexString(random.nextLong())).append("@litong.xyz>\r\n");
+    sb.append("Date: Mon, 6 Oct 2025 08:00:00 +0000\r\n");
+    sb.append("From: loadgen@litong.xyz\r\n");
+    sb.append("Subject: Load test message ").append(i).append("\r\n");
+    sb.append("MIME-Version: 1.0\r\n");
+    sb.append("Content-Type: text/plain; charset=UTF-8\r\n\r\n");
+    int line = 0;
+    while (sb.length() < options.messageBytes) {
+      sb.append("Line ").append(line++).append(" of the load test message, value ").append(random.nextInt(100000)).append(".\r\n");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * SMTP DATA 字节填充：以 "." 开头的行前面再加一个 "."，并保证以 CRLF 结尾
+   */
+  static String dotStuff(String mail) {
+    String normalized = mail.replace("\r\n", "\n").replace("\n", "\r\n");
+    StringBuilder sb = new StringBuilder(normalized.length() + 16);
+    int start = 0;
+    while (start < normalized.length()) {
+      int end = normalized.indexOf("\r\n", start);
+      end = end < 0 ? normalized.length() : end;
+      if (normalized.charAt(start) == '.') {
+        sb.append('.');
+      }
+      sb.append(normalized, start, end).append("\r\n");
+      start = end + 2;
+    }
+    return sb.toString();
+  }
+
+  private static String base64(String s) {
+    return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,34 @@
+package com.tio.mail.wing.loadgen;
+
+import java.util.List;
+
+/**
+ * 一个客户端连接的脚本：连接后等待问候，执行一次 prelude，循环 loop（每轮之间暂停），
+ * 再执行 epilogue 并断开；reconnect 时暂停后重新连接，从头开始。
+ */
+public final class Script {
+
+  final String protocol;
+  final int port;
+  final Command.Reply greeting;
+  final List<Command> prelude;
+  final List<Command> loop;
+  /** 每个连接执行 loop 的轮数，-1 表示直到压测结束 */
+  final int iterations;
+  final long loopPauseMillis;
+  final List<Command> epilogue;
+  final long reconnectPauseMillis;
+
+  public Script(String protocol, int port, Command.Reply greeting, List<Command> prelude, List<Command> loop, int iterations,
+      long loopPauseMillis, List<Command> epilogue, long reconnectPauseMillis) {
+    this.protocol = protocol;
+    this.port = port;
+    this.greeting = greeting;
+    this.prelude = prelude;
+    this.loop = loop;
+    this.iterations = iterations;
+    this.loopPauseMillis = loopPauseMillis;
+    this.epilogue = epilogue;
+    this.reconnectPauseMillis = reconnectPauseMillis;
+  }
+}
@@ -0,0 +1,120 @@
+package com.tio.mail.wing.loadgen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 采集服务端 /metrics，压测前后取差值得到 CPU、GC、SQL 和流量的消耗，期间定期采样取内存、线程、会话的峰值
+ */
+final class ServerMetrics {
+
+  private final String url;
+  private Map<String, Double> first;
+  private Map<String, Double> last;
+  private final Map<String, Double> peaks = new HashMap<>();
+
+  ServerMetrics(String url) {
+    this.url = url;
+  }
+
+  boolean isEnabled() {
+    return !url.isEmpty();
+  }
+
+  void sample() {
+    if (!isEnabled()) {
+      return;
+    }
+    Map<String, Double> m;
+    try {
+      m = scrape();
+    } catch (IOException e) {
+      System.err.println("Failed to scrape " + url + ": " + e);
+      return;
+    }
+    if (first == null) {
+      first = m;
+    }
+    last = m;
+    peak(m, "mw_jvm_memory_used_bytes{area=\"heap\"}", "heap bytes");
+    peak(m, "mw_jvm_memory_used_bytes{area=\"direct\"}", "direct bytes");
+    peak(m, "mw_jvm_threads", "threads");
+    peaks.merge("sessions", sum(m, "mw_sessions_active"), Math::max);
+  }
+
+  void print(PrintStream out, double elapsedSeconds) {
+    if (first == null || last == first) {
+      return;
+    }
+    double cpu = delta("mw_process_cpu_seconds_total");
+    out.printf("server cpu: %.1f s (%.2f cores)%n", cpu, cpu / elapsedSeconds);
+    out.printf("server gc: %.0f collections, %.2f s%n", delta("mw_jvm_gc_collections_total"), delta("mw_jvm_gc_seconds_total"));
+    double sqlCalls = delta("mw_sql_calls_total");
+    out.printf("server sql: %.0f calls (%.1f/s)%n", sqlCalls, sqlCalls / elapsedSeconds);
+    out.printf("server bytes: %.0f in, %.0f out%n", delta("mw_bytes_received_total"), delta("mw_bytes_sent_total"));
+    out.printf("server peak: heap %.1f MB, direct %.1f MB, %.0f threads, %.0f sessions%n", peaks.getOrDefault("heap bytes", 0d) / 1e6,
+        peaks.getOrDefault("direct bytes", 0d) / 1e6, peaks.getOrDefault("threads", 0d), peaks.getOrDefault("sessions", 0d));
+  }
+
+  private void peak(Map<String, Double> m, String series, String name) {
+    Double v = m.get(series);
+    if (v != null) {
+      peaks.merge(name, v, Math::max);
+    }
+  }
+
+  /**
+   * 指标所有标签组合的差值之和
+   */
+  private double delta(String metric) {
+    return sum(last, metric) - sum(first, metric);
+  }
+
+  private static double sum(Map<String, Double> m, String metric) {
+    double total = 0;
+    for (Map.Entry<String, Double> e : m.entrySet()) {
+      String series = e.getKey();
+      if (series.equals(metric) || series.startsWith(metric + "{")) {
+        total += e.getValue();
+      }
+    }
+    return total;
+  }
+
+  /**
+   * 解析 Prometheus 文本格式，键为 "名称{标签}"
+   */
+  private Map<String, Double> scrape() throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    conn.setConnectTimeout(5000);
+    conn.setReadTimeout(10000);
+    Map<String, Double> m = new HashMap<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.charAt(0) == '#') {
+          continue;
+        }
+        int space = line.lastIndexOf(' ');
+        if (space <= 0) {
+          continue;
+        }
+        try {
+          m.put(line.substring(0, space), Double.parseDouble(line.substring(space + 1)));
+        } catch (NumberFormatException e) {
+          // NaN 等以外的非法值，跳过
+        }
+      }
+    } finally {
+      conn.disconnect();
+    }
+    return m;
+  }
+}
@@ -0,0 +1,72 @@
+package com.tio.mail.wing.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * 认证结果缓存。
+ * 只缓存认证成功的结果，key 为用户名，value 中保存 "进程级随机盐 + 用户名 + 密码" 的 SHA-256 摘要，
+ * 命中时只需做一次摘要比较，避免重复的数据库查询和 PBKDF 风格的慢速密码校验。
+ * 明文密码和数据库里的 password_hash 都不会进入缓存。
+ */
+public class AuthResultCache {
+
+  private final byte[] salt = new byte[16];
+  private final LruTtlCache<String, CachedCredential> cache;
+
+  public AuthResultCache(int maxSize, long ttlMillis) {
+    new SecureRandom().nextBytes(salt);
+    this.cache = new LruTtlCache<>("auth", maxSize, ttlMillis);
+  }
+
+  /**
+   * @return 缓存命中且密码一致时返回用户ID，否则返回 null
+   */
+  public Long get(String username, String password) {
+    CachedCredential credential = cache.get(username);
+    if (credential == null) {
+      return null;
+    }
+    if (MessageDigest.isEqual(credential.digest, digest(username, password))) {
+      return credential.userId;
+    }
+    return null;
+  }
+
+  public void put(String username, String password, Long userId) {
+    cache.put(username, new CachedCredential(digest(username, password), userId));
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  public LruTtlCache<String, CachedCredential> getCache() {
+    return cache;
+  }
+
+  private byte[] digest(String username, String password) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      md.update(salt);
+      md.update(username.getBytes(StandardCharsets.UTF_8));
+      md.update((byte) 0);
+      md.update(password.getBytes(StandardCharsets.UTF_8));
+      return md.digest();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static class CachedCredential {
+    private final byte[] digest;
+    private final Long userId;
+
+    CachedCredential(byte[] digest, Long userId) {
+      this.digest = digest;
+      this.userId = userId;
+    }
+  }
+}
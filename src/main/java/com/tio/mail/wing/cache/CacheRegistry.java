@@ -0,0 +1,21 @@
+package com.tio.mail.wing.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 登记进程内的共享缓存，便于统一输出命中率等指标
+ */
+public class CacheRegistry {
+
+  private static final List<CacheStats> caches = new CopyOnWriteArrayList<>();
+
+  public static <C extends CacheStats> C register(C cache) {
+    caches.add(cache);
+    return cache;
+  }
+
+  public static List<CacheStats> getCaches() {
+    return caches;
+  }
+}
@@ -0,0 +1,17 @@
+package com.tio.mail.wing.cache;
+
+/**
+ * 缓存的命中率统计，登记到 {@link CacheRegistry} 后由 /metrics 统一输出
+ */
+public interface CacheStats {
+
+  String getName();
+
+  long getHits();
+
+  long getMisses();
+
+  long getEvictions();
+
+  int size();
+}
@@ -0,0 +1,73 @@
+package com.tio.mail.wing.cache;
+
+/**
+ * 登录失败限流。
+ * 按 (用户名, 客户端 IP) 计数：同一来源在窗口期内连续失败达到阈值后进入锁定期，锁定期内该来源的认证请求直接拒绝，
+ * 不再访问数据库，也不做密码校验，防止暴力破解拖垮数据库。
+ * 其它 IP 上的同一用户不受影响，故意输错密码不能把正常用户锁在门外。
+ */
+public class LoginThrottle {
+
+  private final int maxFailures;
+  private final long windowMillis;
+  private final long lockoutMillis;
+  private final LruTtlCache<String, Attempts> attempts;
+
+  public LoginThrottle(int maxFailures, long windowMillis, long lockoutMillis, int maxTrackedUsers) {
+    this.maxFailures = maxFailures;
+    this.windowMillis = windowMillis;
+    this.lockoutMillis = lockoutMillis;
+    this.attempts = new LruTtlCache<>("login-throttle", maxTrackedUsers, Math.max(windowMillis, lockoutMillis));
+  }
+
+  /**
+   * @param clientIp 客户端 IP，未知时为 null，此时只按用户名计数
+   */
+  public boolean isBlocked(String username, String clientIp) {
+    if (maxFailures <= 0) {
+      return false;
+    }
+    Attempts a = attempts.get(key(username, clientIp));
+    return a != null && a.lockedUntil > System.currentTimeMillis();
+  }
+
+  public void recordFailure(String username, String clientIp) {
+    if (maxFailures <= 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    // 在缓存锁内替换为新的不可变计数，并发失败不会丢失；每次写入刷新过期时间，条目至少存活到锁定期结束
+    attempts.compute(key(username, clientIp), (k, a) -> next(a, now));
+  }
+
+  public void recordSuccess(String username, String clientIp) {
+    attempts.remove(key(username, clientIp));
+  }
+
+  private Attempts next(Attempts a, long now) {
+    if (a == null || now - a.windowStart > windowMillis) {
+      a = new Attempts(now, 0, a == null ? 0 : a.lockedUntil);
+    }
+    int failures = a.failures + 1;
+    if (failures >= maxFailures) {
+      return new Attempts(now, 0, now + lockoutMillis);
+    }
+    return new Attempts(a.windowStart, failures, a.lockedUntil);
+  }
+
+  private static String key(String username, String clientIp) {
+    return clientIp == null ? username : username + "|" + clientIp;
+  }
+
+  private static class Attempts {
+    final long windowStart;
+    final int failures;
+    final long lockedUntil;
+
+    Attempts(long windowStart, int failures, long lockedUntil) {
+      this.windowStart = windowStart;
+      this.failures = failures;
+      this.lockedUntil = lockedUntil;
+    }
+  }
+}
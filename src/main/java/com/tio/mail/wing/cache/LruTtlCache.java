@@ -0,0 +1,140 @@
+package com.tio.mail.wing.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * 有容量上限和过期时间的 LRU 缓存，线程安全。
+ * 超过容量时淘汰最久未访问的条目，过期条目在读取时惰性清除。
+ */
+public class LruTtlCache<K, V> implements CacheStats {
+
+  private final String name;
+  private final int maxSize;
+  private final long ttlMillis;
+  private final LinkedHashMap<K, Entry<V>> map;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * @param name      缓存名称，用于日志和指标
+   * @param maxSize   最大条目数
+   * @param ttlMillis 条目存活时间，<=0 表示不过期
+   */
+  public LruTtlCache(String name, int maxSize, long ttlMillis) {
+    this.name = name;
+    this.maxSize = maxSize;
+    this.ttlMillis = ttlMillis;
+    this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        if (size() > LruTtlCache.this.maxSize) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public V get(K key) {
+    synchronized (map) {
+      Entry<V> entry = map.get(key);
+      if (entry == null) {
+        misses.incrementAndGet();
+        return null;
+      }
+      if (entry.isExpired(System.currentTimeMillis())) {
+        map.remove(key);
+        misses.incrementAndGet();
+        return null;
+      }
+      hits.incrementAndGet();
+      return entry.value;
+    }
+  }
+
+  public void put(K key, V value) {
+    long expireAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+    synchronized (map) {
+      map.put(key, new Entry<>(value, expireAt));
+    }
+  }
+
+  /**
+   * 在锁内根据当前值（不存在或已过期时为 null）计算新值并放入，同时刷新过期时间；新值为 null 时删除条目
+   */
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> fn) {
+    long now = System.currentTimeMillis();
+    synchronized (map) {
+      Entry<V> entry = map.get(key);
+      V old = entry == null || entry.isExpired(now) ? null : entry.value;
+      V value = fn.apply(key, old);
+      if (value == null) {
+        map.remove(key);
+      } else {
+        map.put(key, new Entry<>(value, ttlMillis > 0 ? now + ttlMillis : Long.MAX_VALUE));
+      }
+      return value;
+    }
+  }
+
+  public void remove(K key) {
+    synchronized (map) {
+      map.remove(key);
+    }
+  }
+
+  public void clear() {
+    synchronized (map) {
+      map.clear();
+    }
+  }
+
+  @Override
+  public int size() {
+    synchronized (map) {
+      return map.size();
+    }
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public long getHits() {
+    return hits.get();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.get();
+  }
+
+  @Override
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  private static class Entry<V> {
+    final V value;
+    final long expireAt;
+
+    Entry(V value, long expireAt) {
+      this.value = value;
+      this.expireAt = expireAt;
+    }
+
+    boolean isExpired(long now) {
+      return now >= expireAt;
+    }
+  }
+}
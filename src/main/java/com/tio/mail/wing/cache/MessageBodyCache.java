@@ -0,0 +1,202 @@
+package com.tio.mail.wing.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 邮件原文缓存，key 为 mw_mail_message.id，按 UTF-8 字节数计容量，线程安全。
+ * 采用分段 LRU (SLRU)：新条目进入试用段，再次命中时晋升到保护段；保护段超出其份额时最久未访问的条目降回试用段，
+ * 淘汰只从试用段末尾开始。一次性扫描（如客户端首次同步整个邮箱）只会冲刷试用段，反复读取的邮件留在保护段。
+ * 消息内容写入后不再修改、ID 不复用，条目无需失效，被后台清理删除的消息随 LRU 自然淘汰。
+ * offHeap 为 true 时内容保存在直接内存中，不计入堆、不增加 GC 扫描量，需保证 -XX:MaxDirectMemorySize 大于 maxBytes。
+ */
+public class MessageBodyCache implements CacheStats {
+
+  private final String name;
+  private final long maxBytes;
+  private final long maxProtectedBytes;
+  private final long maxEntryBytes;
+  private final boolean offHeap;
+
+  private final LinkedHashMap<Long, Object> probation = new LinkedHashMap<>(256, 0.75f, true);
+  private final LinkedHashMap<Long, Object> protectedSegment = new LinkedHashMap<>(256, 0.75f, true);
+  private long probationBytes;
+  private long protectedBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * @param name             缓存名称，用于指标
+   * @param maxBytes         总容量（字节）
+   * @param protectedPercent 保护段占总容量的百分比
+   * @param maxEntryBytes    超过该大小的邮件不缓存
+   * @param offHeap          是否保存在直接内存中
+   */
+  public MessageBodyCache(String name, long maxBytes, int protectedPercent, long maxEntryBytes, boolean offHeap) {
+    this.name = name;
+    this.maxBytes = maxBytes;
+    this.maxProtectedBytes = maxBytes * protectedPercent / 100;
+    this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+    this.offHeap = offHeap;
+  }
+
+  public String get(long messageId) {
+    Object value;
+    synchronized (this) {
+      Long key = messageId;
+      value = protectedSegment.get(key);
+      if (value == null) {
+        value = probation.remove(key);
+        if (value != null) {
+          probationBytes -= weight(value);
+          promote(key, value);
+        }
+      }
+    }
+    if (value == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return decode(value);
+  }
+
+  /**
+   * 在确定需要缓存前判断大小，避免为放不下的邮件拼接原文
+   */
+  public boolean accepts(long bytes) {
+    return bytes > 0 && bytes <= maxEntryBytes;
+  }
+
+  public void put(long messageId, String body) {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    if (!accepts(bytes.length)) {
+      return;
+    }
+    Object value = offHeap ? ByteBuffer.allocateDirect(bytes.length).put(bytes) : bytes;
+    synchronized (this) {
+      Long key = messageId;
+      if (protectedSegment.containsKey(key) || probation.containsKey(key)) {
+        return;
+      }
+      probation.put(key, value);
+      probationBytes += bytes.length;
+      evict();
+    }
+  }
+
+  public synchronized void remove(long messageId) {
+    Long key = messageId;
+    Object value = probation.remove(key);
+    if (value != null) {
+      probationBytes -= weight(value);
+    }
+    value = protectedSegment.remove(key);
+    if (value != null) {
+      protectedBytes -= weight(value);
+    }
+  }
+
+  public synchronized void clear() {
+    probation.clear();
+    protectedSegment.clear();
+    probationBytes = 0;
+    protectedBytes = 0;
+  }
+
+  private void promote(Long key, Object value) {
+    protectedSegment.put(key, value);
+    protectedBytes += weight(value);
+    Iterator<Map.Entry<Long, Object>> it = protectedSegment.entrySet().iterator();
+    while (protectedBytes > maxProtectedBytes && it.hasNext()) {
+      Map.Entry<Long, Object> eldest = it.next();
+      if (eldest.getKey().equals(key)) {
+        break;
+      }
+      it.remove();
+      long w = weight(eldest.getValue());
+      protectedBytes -= w;
+      probation.put(eldest.getKey(), eldest.getValue());
+      probationBytes += w;
+    }
+    evict();
+  }
+
+  private void evict() {
+    evictFrom(probation, true);
+    evictFrom(protectedSegment, false);
+  }
+
+  private void evictFrom(LinkedHashMap<Long, Object> segment, boolean isProbation) {
+    Iterator<Object> it = segment.values().iterator();
+    while (probationBytes + protectedBytes > maxBytes && it.hasNext()) {
+      long w = weight(it.next());
+      it.remove();
+      if (isProbation) {
+        probationBytes -= w;
+      } else {
+        protectedBytes -= w;
+      }
+      evictions.incrementAndGet();
+    }
+  }
+
+  private static long weight(Object value) {
+    return value instanceof byte[] ? ((byte[]) value).length : ((ByteBuffer) value).capacity();
+  }
+
+  private static String decode(Object value) {
+    if (value instanceof byte[]) {
+      return new String((byte[]) value, StandardCharsets.UTF_8);
+    }
+    ByteBuffer buf = ((ByteBuffer) value).duplicate();
+    buf.clear();
+    return StandardCharsets.UTF_8.decode(buf).toString();
+  }
+
+  /**
+   * 当前缓存的字节数
+   */
+  public synchronized long bytes() {
+    return probationBytes + protectedBytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public long getHits() {
+    return hits.get();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.get();
+  }
+
+  @Override
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  @Override
+  public synchronized int size() {
+    return probation.size() + protectedSegment.size();
+  }
+}
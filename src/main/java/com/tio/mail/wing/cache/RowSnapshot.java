@@ -0,0 +1,36 @@
+package com.tio.mail.wing.cache;
+
+import com.litongjava.db.activerecord.Row;
+
+/**
+ * 缓存中保存的只读行快照。
+ * Row 是可变的，缓存直接持有它时，任何调用方对返回行的 set/remove 都会被其它会话看到；
+ * 这里只在放入时复制一次列值，每次取出时再生成新的 Row。
+ */
+public final class RowSnapshot {
+
+  private final String[] names;
+  private final Object[] values;
+
+  private RowSnapshot(String[] names, Object[] values) {
+    this.names = names;
+    this.values = values;
+  }
+
+  public static RowSnapshot of(Row row) {
+    String[] names = row.getColumnNames();
+    Object[] values = new Object[names.length];
+    for (int i = 0; i < names.length; i++) {
+      values[i] = row.get(names[i]);
+    }
+    return new RowSnapshot(names, values);
+  }
+
+  public Row toRow() {
+    Row row = new Row();
+    for (int i = 0; i < names.length; i++) {
+      row.set(names[i], values[i]);
+    }
+    return row;
+  }
+}
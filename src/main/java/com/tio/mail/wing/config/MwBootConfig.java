@@ -1,10 +1,14 @@
 package com.tio.mail.wing.config;
 
 import com.litongjava.context.BootConfiguration;
+import com.litongjava.jfinal.aop.Aop;
 import com.litongjava.tio.boot.admin.config.TioAdminDbConfiguration;
 import com.litongjava.tio.boot.server.TioBootServer;
 import com.litongjava.tio.http.server.router.HttpRequestRouter;
 import com.tio.mail.wing.handler.ErrorAlarmHandler;
+import com.tio.mail.wing.handler.MetricsHandler;
+import com.tio.mail.wing.handler.TraceHandler;
+import com.tio.mail.wing.service.MailGcService;
 
 public class MwBootConfig implements BootConfiguration {
   public void config() {
@@ -12,11 +16,17 @@ public class MwBootConfig implements BootConfiguration {
     new TioAdminDbConfiguration().config();
     // mail server
     new MwProtectConfig().config();
+    // 后台清理已删除的邮件和无人引用的消息
+    Aop.get(MailGcService.class).start();
 
     HttpRequestRouter r = TioBootServer.me().getRequestRouter();
     if (r != null) {
       ErrorAlarmHandler errorAlarmHandler = new ErrorAlarmHandler();
       r.add("/alarm", errorAlarmHandler::send);
+      MetricsHandler metricsHandler = new MetricsHandler();
+      r.add("/metrics", metricsHandler::index);
+      TraceHandler traceHandler = new TraceHandler();
+      r.add("/trace", traceHandler::index);
     }
   }
 }
@@ -0,0 +1,34 @@
+package com.tio.mail.wing.consts;
+
+/**
+ * IMAP STORE 的三种操作：FLAGS、+FLAGS、-FLAGS
+ */
+public enum StoreMode {
+  /** FLAGS：用给定列表替换 */
+  REPLACE,
+  /** +FLAGS：添加 */
+  ADD,
+  /** -FLAGS：移除 */
+  REMOVE;
+
+  /**
+   * @param item STORE 的数据项名称，如 "+FLAGS.SILENT"
+   * @return 无法识别时返回 null
+   */
+  public static StoreMode of(String item) {
+    String s = item.toUpperCase();
+    if (s.endsWith(".SILENT")) {
+      s = s.substring(0, s.length() - 7);
+    }
+    switch (s) {
+    case "FLAGS":
+      return REPLACE;
+    case "+FLAGS":
+      return ADD;
+    case "-FLAGS":
+      return REMOVE;
+    default:
+      return null;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.tio.mail.wing.db;
+
+import java.util.Collection;
+
+/**
+ * 生成 PostgreSQL 数组字面量，配合 ?::bigint[] / ?::text[] 以单个参数绑定整个列表。
+ * 语句形状不随元素个数变化，驱动的服务端预编译缓存和执行计划可以复用。
+ */
+public class PgArrays {
+
+  public static String ofLongs(long[] values) {
+    StringBuilder sb = new StringBuilder(values.length * 6 + 2).append('{');
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(values[i]);
+    }
+    return sb.append('}').toString();
+  }
+
+  public static String ofLongs(Collection<Long> values) {
+    StringBuilder sb = new StringBuilder(values.size() * 6 + 2).append('{');
+    boolean first = true;
+    for (Long v : values) {
+      if (!first) {
+        sb.append(',');
+      }
+      sb.append(v);
+      first = false;
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * 每个元素都加双引号，反斜杠和双引号转义，例如 \Seen 写作 "\\Seen"
+   */
+  public static String ofTexts(Collection<String> values) {
+    StringBuilder sb = new StringBuilder().append('{');
+    boolean first = true;
+    for (String v : values) {
+      if (!first) {
+        sb.append(',');
+      }
+      sb.append('"');
+      for (int i = 0; i < v.length(); i++) {
+        char c = v.charAt(i);
+        if (c == '\\' || c == '"') {
+          sb.append('\\');
+        }
+        sb.append(c);
+      }
+      sb.append('"');
+      first = false;
+    }
+    return sb.append('}').toString();
+  }
+}
@@ -0,0 +1,84 @@
+package com.tio.mail.wing.db;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.tio.mail.wing.metrics.LatencyHistogram;
+import com.tio.mail.wing.metrics.MwMetrics;
+
+/**
+ * 按语句名汇总的 SQL 统计：调用次数、返回/影响行数、失败次数和耗时直方图
+ */
+public class SqlStats implements MwMetrics.MetricsSource {
+
+  private static final SqlStats instance = new SqlStats();
+
+  static {
+    MwMetrics.register(instance);
+  }
+
+  private final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+
+  public static SqlStats me() {
+    return instance;
+  }
+
+  public void record(String name, long nanos, long rows, boolean error) {
+    StatementStats s = statements.computeIfAbsent(name, StatementStats::new);
+    s.latency.recordNanos(nanos);
+    s.rows.add(rows);
+    if (error) {
+      s.errors.increment();
+    }
+  }
+
+  public Map<String, StatementStats> getStatements() {
+    return statements;
+  }
+
+  @Override
+  public void writeTo(StringBuilder sb) {
+    Map<String, StatementStats> sorted = new TreeMap<>(statements);
+    MwMetrics.header(sb, "mw_sql_calls_total", "counter", "SQL statement executions");
+    for (StatementStats s : sorted.values()) {
+      MwMetrics.sample(sb, "mw_sql_calls_total", s.labels, s.latency.getCount());
+    }
+    MwMetrics.header(sb, "mw_sql_rows_total", "counter", "Rows returned or affected");
+    for (StatementStats s : sorted.values()) {
+      MwMetrics.sample(sb, "mw_sql_rows_total", s.labels, s.rows.sum());
+    }
+    MwMetrics.header(sb, "mw_sql_errors_total", "counter", "SQL statements that threw");
+    for (StatementStats s : sorted.values()) {
+      MwMetrics.sample(sb, "mw_sql_errors_total", s.labels, s.errors.sum());
+    }
+    MwMetrics.header(sb, "mw_sql_duration_seconds", "summary", "SQL statement latency");
+    for (StatementStats s : sorted.values()) {
+      MwMetrics.summary(sb, "mw_sql_duration_seconds", s.labels, s.latency);
+    }
+  }
+
+  public static class StatementStats {
+    private final String labels;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    StatementStats(String name) {
+      this.labels = "statement=\"" + MwMetrics.escape(name) + "\"";
+    }
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    public long getRows() {
+      return rows.sum();
+    }
+
+    public long getErrors() {
+      return errors.sum();
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.tio.mail.wing.db;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.litongjava.template.SqlTemplates;
+
+/**
+ * 缓存 SqlTemplates 解析（含 #include 展开）后的 SQL 文本，热路径上不再重复解析模板
+ */
+public class SqlTemplateCache {
+
+  private static final Map<String, String> cache = new ConcurrentHashMap<>();
+
+  public static String get(String name) {
+    return cache.computeIfAbsent(name, SqlTemplates::get);
+  }
+
+  public static void clear() {
+    cache.clear();
+  }
+}
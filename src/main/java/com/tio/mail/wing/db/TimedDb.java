@@ -0,0 +1,132 @@
+package com.tio.mail.wing.db;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.litongjava.db.activerecord.Db;
+import com.litongjava.db.activerecord.Row;
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.tio.mail.wing.metrics.MwMetrics;
+
+/**
+ * 带计时的 Db 访问入口，方法与 Db 一一对应，多一个语句名参数。
+ * 语句名使用 SqlTemplates 的模板名（如 mailbox.getActiveMessages），非模板 SQL 使用 "服务.用途" 形式的名称。
+ * <ul>
+ * <li>耗时累加到当前正在执行的协议命令上</li>
+ * <li>按语句名统计调用次数、行数和耗时，见 {@link SqlStats}</li>
+ * <li>超过 mail.db.slow.threshold.ms 的语句写入 "mail.sql.slow" 日志，只记录参数类型和个数，不记录参数值</li>
+ * </ul>
+ */
+public class TimedDb {
+
+  private static final Logger slowLog = LoggerFactory.getLogger("mail.sql.slow");
+  private static final long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(EnvUtils.getInt("mail.db.slow.threshold.ms", 200));
+
+  public static List<Row> find(String name, String sql, Object... paras) {
+    return timed(name, paras, () -> Db.find(sql, paras), List::size);
+  }
+
+  public static Row findFirst(String name, String sql, Object... paras) {
+    return timed(name, paras, () -> Db.findFirst(sql, paras), r -> r == null ? 0 : 1);
+  }
+
+  public static int updateBySql(String name, String sql, Object... paras) {
+    return timed(name, paras, () -> Db.updateBySql(sql, paras), n -> n);
+  }
+
+  public static Long queryLong(String name, String sql, Object... paras) {
+    return timed(name, paras, () -> Db.queryLong(sql, paras), v -> v == null ? 0 : 1);
+  }
+
+  public static List<Long> queryListLong(String name, String sql, Object... paras) {
+    return timed(name, paras, () -> Db.queryListLong(sql, paras), List::size);
+  }
+
+  public static boolean existsBySql(String name, String sql, Object... paras) {
+    return timed(name, paras, () -> Db.existsBySql(sql, paras), b -> 1);
+  }
+
+  public static boolean save(String tableName, String primaryKey, Row row) {
+    return timed("save." + tableName, null, () -> Db.save(tableName, primaryKey, row), b -> b ? 1 : 0);
+  }
+
+  public static boolean save(String tableName, Row row) {
+    return timed("save." + tableName, null, () -> Db.save(tableName, row), b -> b ? 1 : 0);
+  }
+
+  private static <T> T timed(String name, Object[] paras, Supplier<T> call, ToLongFunction<T> rowCounter) {
+    long start = System.nanoTime();
+    T result = null;
+    boolean error = true;
+    try {
+      result = call.get();
+      error = false;
+      return result;
+    } finally {
+      long cost = System.nanoTime() - start;
+      MwMetrics.addDbNanos(cost);
+      long rows = result == null ? 0 : rowCounter.applyAsLong(result);
+      SqlStats.me().record(name, cost, rows, error);
+      if (cost >= slowThresholdNanos) {
+        slowLog.warn("{} took {}ms, rows={}, error={}, params={}", name, TimeUnit.NANOSECONDS.toMillis(cost), rows, error, shapeOf(paras));
+      }
+    }
+  }
+
+  /**
+   * 参数形状：类型和个数，连续相同类型合并，如 [Long, String x3, Object[](12)]
+   */
+  static String shapeOf(Object[] paras) {
+    if (paras == null) {
+      return "[]";
+    }
+    StringBuilder sb = new StringBuilder("[");
+    String last = null;
+    int repeat = 0;
+    for (Object p : paras) {
+      String shape = shapeOf(p);
+      if (shape.equals(last)) {
+        repeat++;
+        continue;
+      }
+      appendShape(sb, last, repeat);
+      last = shape;
+      repeat = 1;
+    }
+    appendShape(sb, last, repeat);
+    return sb.append(']').toString();
+  }
+
+  private static String shapeOf(Object p) {
+    if (p == null) {
+      return "null";
+    }
+    if (p instanceof Object[]) {
+      return p.getClass().getComponentType().getSimpleName() + "[](" + ((Object[]) p).length + ")";
+    }
+    if (p instanceof String) {
+      // 文本只记录长度区间，避免泄露内容
+      int len = ((String) p).length();
+      return len <= 16 ? "String" : len <= 1024 ? "String(<=1K)" : "String(>1K)";
+    }
+    return p.getClass().getSimpleName();
+  }
+
+  private static void appendShape(StringBuilder sb, String shape, int repeat) {
+    if (shape == null) {
+      return;
+    }
+    if (sb.length() > 1) {
+      sb.append(", ");
+    }
+    sb.append(shape);
+    if (repeat > 1) {
+      sb.append(" x").append(repeat);
+    }
+  }
+}
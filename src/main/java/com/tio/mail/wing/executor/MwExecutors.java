@@ -0,0 +1,153 @@
+package com.tio.mail.wing.executor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.litongjava.hook.HookCan;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.utils.environment.EnvUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 业务线程池。
+ * tio 的 worker 线程只负责解码和分发，数据库访问、外发 SMTP 等阻塞操作都放到这里执行。
+ * 执行模式由 app.properties 中的 mail.server.executor.mode 选择：
+ * <ul>
+ * <li>pool: 有界线程池，队列满时拒绝新命令，由协议处理器回复服务器繁忙，不在 tio worker 线程上执行（Java 8 默认）</li>
+ * <li>virtual: SMTP、POP3 每个连接一个虚拟线程处理命令；IMAP 的流水线需要同一会话内并发执行只读命令，
+ * 每条命令一个虚拟线程。需要 Java 21+ 且从多版本 JAR 启动，否则回退到 pool</li>
+ * </ul>
+ */
+@Slf4j
+public class MwExecutors {
+
+  public static final String MODE_POOL = "pool";
+  public static final String MODE_VIRTUAL = "virtual";
+
+  private static final String SERIAL_EXECUTOR_KEY = "serialExecutor";
+
+  private static volatile ExecutorService businessExecutor;
+  private static volatile Boolean virtualMode;
+
+  /**
+   * 是否以每连接一个虚拟线程的方式运行
+   */
+  public static boolean isVirtualMode() {
+    Boolean mode = virtualMode;
+    if (mode == null) {
+      String configured = EnvUtils.getStr("mail.server.executor.mode", MODE_POOL);
+      mode = MODE_VIRTUAL.equalsIgnoreCase(configured) && VirtualThreads.isSupported();
+      if (MODE_VIRTUAL.equalsIgnoreCase(configured) && !mode) {
+        if (javaFeatureVersion() >= 21) {
+          log.warn("Running on Java {} but the Java 8 VirtualThreads was loaded; virtual threads only work when started from the multi-release jar built with -Pjava21, "
+              + "not from target/classes or a repackaged jar without Multi-Release: true. Falling back to thread pool", System.getProperty("java.version"));
+        } else {
+          log.warn("Virtual threads require Java 21+, running on {}; falling back to thread pool", System.getProperty("java.version"));
+        }
+      }
+      virtualMode = mode;
+    }
+    return mode;
+  }
+
+  private static int javaFeatureVersion() {
+    String version = System.getProperty("java.specification.version", "1.8");
+    try {
+      return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+    } catch (NumberFormatException e) {
+      return 8;
+    }
+  }
+
+  public static ExecutorService business() {
+    ExecutorService executor = businessExecutor;
+    if (executor == null) {
+      synchronized (MwExecutors.class) {
+        executor = businessExecutor;
+        if (executor == null) {
+          executor = create();
+          businessExecutor = executor;
+          HookCan.me().addDestroyMethod(MwExecutors::shutdown);
+        }
+      }
+    }
+    return executor;
+  }
+
+  /**
+   * 获取连接的串行执行器，同一连接的命令按到达顺序执行
+   */
+  public static Executor serial(ChannelContext ctx) {
+    Executor serial = (Executor) ctx.get(SERIAL_EXECUTOR_KEY);
+    if (serial == null) {
+      // 同一连接的 handler 由 tio 串行调用，这里不会并发创建
+      if (isVirtualMode()) {
+        serial = new VirtualConnectionExecutor("mw-conn-" + ctx.getId());
+      } else {
+        serial = new SerialExecutor(business());
+      }
+      ctx.set(SERIAL_EXECUTOR_KEY, serial);
+    }
+    return serial;
+  }
+
+  /**
+   * 连接关闭时释放其执行器
+   */
+  public static void release(ChannelContext ctx) {
+    Object serial = ctx.get(SERIAL_EXECUTOR_KEY);
+    if (serial instanceof VirtualConnectionExecutor) {
+      ((VirtualConnectionExecutor) serial).shutdown();
+    }
+  }
+
+  public static void shutdown() {
+    ExecutorService executor = businessExecutor;
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static ExecutorService create() {
+    if (isVirtualMode()) {
+      log.info("Business executor: virtual threads");
+      return VirtualThreads.newThreadPerTaskExecutor();
+    }
+
+    int threads = EnvUtils.getInt("mail.server.executor.threads", Runtime.getRuntime().availableProcessors() * 8);
+    int queueSize = EnvUtils.getInt("mail.server.executor.queue.size", 10000);
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), new NamedThreadFactory("mw-biz-"),
+        // 队列满时抛出 RejectedExecutionException，阻塞的数据库操作不能落到 tio worker 线程上
+        new ThreadPoolExecutor.AbortPolicy());
+    pool.allowCoreThreadTimeOut(true);
+    log.info("Business executor: thread pool, threads={}, queue={}", threads, queueSize);
+    return pool;
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger seq = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, prefix + seq.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.tio.mail.wing.executor;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 连接级串行执行器。
+ * 同一连接提交的任务按提交顺序依次在业务线程池上执行，保证协议命令和响应的顺序，
+ * 不同连接之间并行执行。
+ * 业务线程池已满时 execute 抛出 RejectedExecutionException，由协议处理器回复服务器繁忙。
+ */
+@Slf4j
+public class SerialExecutor implements Executor {
+
+  /** 单次占用业务线程最多连续执行的任务数，超过后让出线程，避免单个连接长时间独占 */
+  private static final int MAX_TASKS_PER_DRAIN = 64;
+
+  private final Executor executor;
+  private final Queue<Runnable> tasks = new ArrayDeque<>();
+  private boolean running;
+
+  public SerialExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    boolean schedule;
+    synchronized (this) {
+      tasks.add(task);
+      schedule = !running;
+      if (schedule) {
+        running = true;
+      }
+    }
+    if (schedule) {
+      try {
+        executor.execute(this::drain);
+      } catch (RejectedExecutionException e) {
+        // 同一连接的任务由 tio 串行提交，此时队列中只有这一个任务
+        synchronized (this) {
+          tasks.remove(task);
+          running = false;
+        }
+        throw e;
+      }
+    }
+  }
+
+  public synchronized int getPendingTasks() {
+    return tasks.size();
+  }
+
+  private void drain() {
+    while (true) {
+      for (int i = 0; i < MAX_TASKS_PER_DRAIN; i++) {
+        Runnable task;
+        synchronized (this) {
+          task = tasks.poll();
+          if (task == null) {
+            running = false;
+            return;
+          }
+        }
+        try {
+          task.run();
+        } catch (Throwable e) {
+          log.error("Error running session task", e);
+        }
+      }
+      // 仍有积压任务，重新排队，把线程让给其他连接；线程池已满时在当前业务线程上继续执行，已接收的命令不丢弃
+      try {
+        executor.execute(this::drain);
+        return;
+      } catch (RejectedExecutionException e) {
+        continue;
+      }
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.tio.mail.wing.executor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 每个连接独占一个虚拟线程，按顺序处理该连接的命令。
+ * 空闲时虚拟线程挂起在队列上，几乎不占用平台线程，
+ * 同步阻塞的 MailService、SmtpSendService 等代码无需改写即可支撑大量并发会话。
+ */
+@Slf4j
+public class VirtualConnectionExecutor implements Executor {
+
+  private static final Runnable SHUTDOWN = () -> {
+  };
+
+  private final LinkedBlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+  private volatile boolean shutdown;
+
+  public VirtualConnectionExecutor(String name) {
+    VirtualThreads.newThread(name, this::loop).start();
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    if (shutdown) {
+      return;
+    }
+    tasks.add(task);
+  }
+
+  /**
+   * 连接关闭时调用，已提交的命令执行完后线程退出
+   */
+  public void shutdown() {
+    shutdown = true;
+    tasks.add(SHUTDOWN);
+  }
+
+  private void loop() {
+    while (true) {
+      Runnable task;
+      try {
+        task = tasks.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (task == SHUTDOWN) {
+        return;
+      }
+      try {
+        task.run();
+      } catch (Throwable e) {
+        log.error("Error running session task", e);
+      }
+    }
+  }
+}
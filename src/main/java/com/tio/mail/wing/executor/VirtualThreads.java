@@ -0,0 +1,31 @@
+package com.tio.mail.wing.executor;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 虚拟线程工厂的 Java 8 版本，始终返回不支持。
+ * 在 JDK 21+ 上构建时，src/main/java21 下的同名类会被编译进 META-INF/versions/21，
+ * 运行在 Java 21+ 时由多版本 JAR 自动加载那个实现。
+ * 只有直接运行该 JAR 时才会加载：从 target/classes 启动（IDE、mvn exec）或重新打包后丢失 Multi-Release 清单的 fat jar 都只能看到本类。
+ * 调用方先检查 {@link #isSupported()}。
+ */
+public class VirtualThreads {
+
+  public static boolean isSupported() {
+    return false;
+  }
+
+  /**
+   * @return 不支持时为 null
+   */
+  public static Thread newThread(String name, Runnable task) {
+    return null;
+  }
+
+  /**
+   * @return 不支持时为 null
+   */
+  public static ExecutorService newThreadPerTaskExecutor() {
+    return null;
+  }
+}
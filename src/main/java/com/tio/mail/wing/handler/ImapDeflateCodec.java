@@ -0,0 +1,150 @@
+package com.tio.mail.wing.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * RFC 4978 COMPRESS=DEFLATE 的会话级编解码器。
+ * 每个连接持有一对可复用的 Deflater/Inflater（raw deflate，不带 zlib 头），
+ * 出站数据按包做 SYNC_FLUSH，入站数据流式解压后按 CRLF 切分成命令行。
+ */
+public class ImapDeflateCodec {
+
+  /** 最后一个换行之后允许缓存的最大解压字节数，防止恶意客户端用不换行的数据撑爆内存 */
+  private static final int MAX_PENDING_BYTES = 1024 * 1024;
+
+  private final Deflater deflater;
+  private final Inflater inflater = new Inflater(true);
+  private final byte[] deflateChunk = new byte[8192];
+
+  /** 已解压但尚未组成完整行的入站数据 */
+  private byte[] pending = new byte[1024];
+  private int pendingLength;
+  /** pending 中以换行结束的完整行的总长度，之后是不完整的尾部 */
+  private int completeLength;
+
+  /**
+   * 出站压缩在 "OK DEFLATE active" 响应发出之后才开启，
+   * 由编码线程在写完该响应后切换。
+   */
+  private volatile boolean deflateActive;
+
+  private long plainBytesOut;
+  private long compressedBytesOut;
+
+  public ImapDeflateCodec(int level) {
+    this.deflater = new Deflater(level, true);
+  }
+
+  public boolean isDeflateActive() {
+    return deflateActive;
+  }
+
+  public void activateDeflate() {
+    this.deflateActive = true;
+  }
+
+  /**
+   * 压缩一个出站包，并 SYNC_FLUSH 使客户端能立即解出完整响应。
+   */
+  public synchronized byte[] deflate(byte[] input) {
+    deflater.setInput(input);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 2));
+    int n;
+    do {
+      n = deflater.deflate(deflateChunk, 0, deflateChunk.length, Deflater.SYNC_FLUSH);
+      out.write(deflateChunk, 0, n);
+      // SYNC_FLUSH 模式下输出缓冲被写满时必须以同样参数再次调用
+    } while (n == deflateChunk.length);
+
+    byte[] compressed = out.toByteArray();
+    plainBytesOut += input.length;
+    compressedBytesOut += compressed.length;
+    return compressed;
+  }
+
+  /**
+   * 将网络上读到的压缩数据全部解压到内部缓冲区。
+   * 完整行不受 {@link #MAX_PENDING_BYTES} 限制，只有最后一个换行之后的尾部超过上限时报错。
+   */
+  public synchronized void inflate(ByteBuffer in) throws DataFormatException {
+    byte[] input = new byte[in.remaining()];
+    in.get(input);
+    inflater.setInput(input);
+    while (true) {
+      ensureCapacity(pendingLength + 4096);
+      int n = inflater.inflate(pending, pendingLength, pending.length - pendingLength);
+      for (int i = pendingLength + n - 1; i >= pendingLength; i--) {
+        if (pending[i] == '\n') {
+          completeLength = i + 1;
+          break;
+        }
+      }
+      pendingLength += n;
+      if (pendingLength - completeLength > MAX_PENDING_BYTES) {
+        throw new DataFormatException("Compressed IMAP line exceeds " + MAX_PENDING_BYTES + " bytes");
+      }
+      if (n == 0 && (inflater.needsInput() || inflater.finished() || inflater.needsDictionary())) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * 取出缓冲区中所有完整的行（不含行尾 CRLF），不完整的部分留待下次解压后继续拼接。
+   */
+  public synchronized List<String> drainLines(String charset) throws UnsupportedEncodingException {
+    List<String> lines = null;
+    int start = 0;
+    for (int i = 0; i < completeLength; i++) {
+      if (pending[i] == '\n') {
+        int end = i > start && pending[i - 1] == '\r' ? i - 1 : i;
+        if (lines == null) {
+          lines = new ArrayList<>(2);
+        }
+        lines.add(new String(pending, start, end - start, charset));
+        start = i + 1;
+      }
+    }
+    if (start > 0) {
+      System.arraycopy(pending, start, pending, 0, pendingLength - start);
+      pendingLength -= start;
+      completeLength = 0;
+    }
+    if (lines == null) {
+      return Collections.emptyList();
+    }
+    return lines;
+  }
+
+  public synchronized long getPlainBytesOut() {
+    return plainBytesOut;
+  }
+
+  public synchronized long getCompressedBytesOut() {
+    return compressedBytesOut;
+  }
+
+  /**
+   * 释放 native zlib 资源，连接关闭时调用。
+   */
+  public synchronized void end() {
+    deflater.end();
+    inflater.end();
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > pending.length) {
+      byte[] bigger = new byte[Math.max(capacity, pending.length * 2)];
+      System.arraycopy(pending, 0, bigger, 0, pendingLength);
+      pending = bigger;
+    }
+  }
+}
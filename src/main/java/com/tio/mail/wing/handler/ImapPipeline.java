@@ -0,0 +1,260 @@
+package com.tio.mail.wing.handler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.Tio;
+import com.tio.mail.wing.metrics.MwMetrics;
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.packet.ImapPacket;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 单个 IMAP 会话的命令流水线 (RFC 3501 5.5)。
+ * <ul>
+ * <li>只读且不改变会话状态的命令（STATUS、LIST、FETCH ... PEEK 等）在业务线程上并发执行</li>
+ * <li>其它命令作为屏障：等待之前所有命令完成后才执行，之后的命令也要等它完成。
+ * 会刷新会话 UID 索引的命令（SELECT、NOOP、CHECK、IDLE、EXPUNGE 等）都是屏障，序号类命令不会与它们并发</li>
+ * <li>消息集合有重叠且其中一方会修改标志的命令（STORE、非 PEEK 的 FETCH）按到达顺序串行；SEARCH 与所有修改标志的命令串行</li>
+ * <li>无论执行顺序如何，响应都按命令到达的顺序写回客户端</li>
+ * </ul>
+ * 命令由 tio 对该连接的 handler 串行提交；服务端主动发出的通知可由其它线程通过 {@link #submitTask} 提交，调度方法均加锁。
+ */
+@Slf4j
+public class ImapPipeline {
+
+  private final Executor executor;
+  private final boolean concurrent;
+  private final Consumer<ImapPacket> writer;
+
+  /** 最近一个屏障命令，所有后续命令都依赖它 */
+  private CompletableFuture<?> barrier = CompletableFuture.completedFuture(null);
+  /** 上一个屏障之后仍在执行的非屏障命令 */
+  private final List<InFlight> inFlight = new ArrayList<>();
+  /** 响应写出链，保证响应按命令到达顺序发出 */
+  private CompletableFuture<?> writeTail = CompletableFuture.completedFuture(null);
+
+  public ImapPipeline(ChannelContext ctx, Executor executor, boolean concurrent) {
+    this(executor, concurrent, packet -> write(ctx, packet));
+  }
+
+  /**
+   * @param writer 按命令到达顺序调用，写出响应包
+   */
+  ImapPipeline(Executor executor, boolean concurrent, Consumer<ImapPacket> writer) {
+    this.executor = executor;
+    this.concurrent = concurrent;
+    this.writer = writer;
+  }
+
+  /**
+   * @param line    客户端发来的一行命令
+   * @param command 实际执行命令并返回要发送的响应包，可返回 null
+   */
+  public synchronized void submit(String line, Function<String, ImapPacket> command) {
+    CommandClass cc = concurrent ? classify(line) : CommandClass.BARRIER;
+    enqueue(cc, line, () -> command.apply(line), () -> busy(line));
+  }
+
+  /**
+   * 提交服务端主动发出的通知（如 IDLE 期间其它连接造成的 EXPUNGE），作为屏障执行：
+   * 不与任何命令并发，输出排在已提交命令的响应之后
+   *
+   * @param task 在业务线程上执行，返回要发送的响应包，可返回 null
+   */
+  public synchronized void submitTask(String name, Supplier<ImapPacket> task) {
+    // 被拒绝时不发送，排队的通知在下一次 NOOP、IDLE 时补发
+    enqueue(CommandClass.BARRIER, name, task, () -> null);
+  }
+
+  /**
+   * @param onRejected 业务线程池已满、任务未能执行时要发送的响应
+   */
+  private void enqueue(CommandClass cc, String name, Supplier<ImapPacket> task, Supplier<ImapPacket> onRejected) {
+    List<CompletableFuture<?>> deps = new ArrayList<>();
+    deps.add(barrier);
+    Iterator<InFlight> it = inFlight.iterator();
+    while (it.hasNext()) {
+      InFlight f = it.next();
+      if (f.future.isDone()) {
+        it.remove();
+      } else if (cc.barrier || cc.conflictsWith(f.cc)) {
+        deps.add(f.future);
+      }
+    }
+
+    CompletableFuture<ImapPacket> result = CompletableFuture.allOf(deps.toArray(new CompletableFuture<?>[0]))
+        // 依赖的命令即使异常也不影响后续命令的执行
+        .handle((v, e) -> null).thenApplyAsync(v -> run(name, task), executor)
+        // run 自己捕获命令异常，这里只会是 RejectedExecutionException
+        .exceptionally(e -> {
+          MwMetrics.rejected("IMAP");
+          return onRejected.get();
+        });
+
+    if (cc.barrier) {
+      barrier = result;
+      inFlight.clear();
+    } else {
+      inFlight.add(new InFlight(cc, result));
+    }
+
+    writeTail = writeTail.thenCombine(result, (v, packet) -> packet).thenAccept(writer).handle((v, e) -> {
+      if (e != null) {
+        log.error("Error writing IMAP response", e);
+      }
+      return null;
+    });
+  }
+
+  private ImapPacket run(String name, Supplier<ImapPacket> task) {
+    try {
+      return task.get();
+    } catch (Throwable e) {
+      log.error("Error handling IMAP command: " + name, e);
+      return null;
+    }
+  }
+
+  /**
+   * 业务线程池已满时的响应 (RFC 5530)，连接保持，客户端可稍后重试
+   */
+  private static ImapPacket busy(String line) {
+    String tag = line.split("\\s+", 2)[0];
+    return new ImapPacket(tag + " NO [UNAVAILABLE] Server busy, try again later\r\n");
+  }
+
+  private static void write(ChannelContext ctx, ImapPacket packet) {
+    if (packet == null) {
+      return;
+    }
+    if (packet.getLine() != null) {
+      Tio.bSend(ctx, packet);
+    }
+    if (packet.isCloseAfterSend()) {
+      Tio.close(ctx, "logout");
+    }
+  }
+
+  /**
+   * 根据命令名和参数判断能否与其它命令并发执行
+   */
+  static CommandClass classify(String line) {
+    String[] parts = line.split("\\s+", 3);
+    String command = parts.length > 1 ? parts[1].toUpperCase() : "";
+    String args = parts.length > 2 ? parts[2] : "";
+    boolean uid = false;
+    if ("UID".equals(command)) {
+      String[] sub = args.split("\\s+", 2);
+      command = sub[0].toUpperCase();
+      args = sub.length > 1 ? sub[1] : "";
+      uid = true;
+    }
+
+    switch (command) {
+    case "CAPABILITY":
+    case "STATUS":
+    case "LIST":
+    case "LSUB":
+    case "ID":
+      return CommandClass.READ_ONLY;
+    case "SEARCH":
+      // SEARCH 和 UID SEARCH 都只读会话的 UID 索引，但要看到之前 STORE 的结果，按涉及全部邮件处理
+      return CommandClass.SEARCH;
+    case "FETCH": {
+      String[] setAndItems = args.split("\\s+", 2);
+      String items = setAndItems.length > 1 ? setAndItems[1].toUpperCase() : "";
+      return new CommandClass(false, setsSeenFlag(items), uid, parseSet(setAndItems[0]));
+    }
+    case "STORE":
+      return new CommandClass(false, true, uid, parseSet(args.split("\\s+", 2)[0]));
+    default:
+      // SELECT、NOOP、CHECK、IDLE、EXPUNGE 会刷新 UID 索引；它们和 COPY、AUTHENTICATE 及其续行、无法识别的命令一律作为屏障
+      return CommandClass.BARRIER;
+    }
+  }
+
+  /**
+   * 不带 .PEEK 的 BODY[...] 以及 RFC822 / RFC822.TEXT 会隐式设置 \Seen
+   */
+  public static boolean setsSeenFlag(String items) {
+    // BODY.PEEK[...] 不包含 "BODY[" 子串
+    if (items.contains("BODY[")) {
+      return true;
+    }
+    int from = 0;
+    int idx;
+    while ((idx = items.indexOf("RFC822", from)) >= 0) {
+      from = idx + 6;
+      if (!items.startsWith("RFC822.HEADER", idx) && !items.startsWith("RFC822.SIZE", idx)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 解析消息集合，* 保持为无穷大
+   */
+  static MessageSet parseSet(String set) {
+    try {
+      return MessageSet.parse(set);
+    } catch (IllegalArgumentException e) {
+      // 无法解析的集合按全集处理，保证不会和其它命令错误地并发
+      return MessageSet.ALL;
+    }
+  }
+
+  static class CommandClass {
+    static final CommandClass BARRIER = new CommandClass(true, true, false, null);
+    static final CommandClass READ_ONLY = new CommandClass(false, false, false, null);
+    static final CommandClass SEARCH = new CommandClass(false, false, true, MessageSet.ALL);
+
+    final boolean barrier;
+    final boolean writes;
+    final boolean uid;
+    final MessageSet set;
+
+    CommandClass(boolean barrier, boolean writes, boolean uid, MessageSet set) {
+      this.barrier = barrier;
+      this.writes = writes;
+      this.uid = uid;
+      this.set = set;
+    }
+
+    /**
+     * 两个命令都只读时可以并发；否则消息集合有交集就必须串行。
+     * 序号和 UID 无法直接比较，按有交集处理。
+     */
+    boolean conflictsWith(CommandClass other) {
+      if (!writes && !other.writes) {
+        return false;
+      }
+      if (set == null || other.set == null) {
+        return false;
+      }
+      if (uid != other.uid) {
+        return true;
+      }
+      return set.intersects(other.set);
+    }
+  }
+
+  private static class InFlight {
+    final CommandClass cc;
+    final CompletableFuture<?> future;
+
+    InFlight(CommandClass cc, CompletableFuture<?> future) {
+      this.cc = cc;
+      this.future = future;
+    }
+  }
+}
@@ -1,20 +1,26 @@
 package com.tio.mail.wing.handler;
 
+import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
 
 import com.litongjava.aio.Packet;
 import com.litongjava.db.activerecord.ActiveRecordException;
 import com.litongjava.jfinal.aop.Aop;
 import com.litongjava.tio.core.ChannelContext;
-import com.litongjava.tio.core.Tio;
 import com.litongjava.tio.core.TioConfig;
 import com.litongjava.tio.core.exception.LengthOverflowException;
 import com.litongjava.tio.core.exception.TioDecodeException;
 import com.litongjava.tio.core.utils.ByteBufferUtils;
 import com.litongjava.tio.server.intf.ServerAioHandler;
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.tio.mail.wing.executor.MwExecutors;
+import com.tio.mail.wing.metrics.MwMetrics;
+import com.tio.mail.wing.metrics.MwMetrics.CommandScope;
 import com.tio.mail.wing.packet.ImapPacket;
 import com.tio.mail.wing.service.ImapFetchService;
 import com.tio.mail.wing.service.ImapService;
+import com.tio.mail.wing.trace.ProtocolTracer;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -22,10 +28,24 @@ import lombok.extern.slf4j.Slf4j;
 public class ImapServerAioHandler implements ServerAioHandler {
 
   private ImapService imapService = Aop.get(ImapService.class);
+  private boolean pipelineEnabled = EnvUtils.getBoolean("mail.server.imap.pipeline.enabled", true);
 
   @Override
   public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) throws TioDecodeException {
     String charset = ctx.getTioConfig().getCharset();
+    ImapSessionContext session = (ImapSessionContext) ctx.get("sessionContext");
+    ImapDeflateCodec codec = session == null ? null : session.getCompressCodec();
+    if (codec != null) {
+      // 压缩模式下读到的字节必须全部交给 Inflater，不能返回 null 让 tio 回退缓冲区
+      try {
+        codec.inflate(buffer);
+        return new ImapPacket(codec.drainLines(charset));
+      } catch (DataFormatException | UnsupportedEncodingException e) {
+        log.error("Inflate error", e);
+        throw new TioDecodeException(e.getMessage());
+      }
+    }
+
     String line = null;
     try {
       line = ByteBufferUtils.readLine(buffer, charset);
@@ -40,31 +60,98 @@ public class ImapServerAioHandler implements ServerAioHandler {
     String charset = ctx.getTioConfig().getCharset();
     ImapPacket imapPacket = (ImapPacket) packet;
     try {
-      return ByteBuffer.wrap(imapPacket.getLine().getBytes(charset));
+      byte[] bytes = imapPacket.getLine().getBytes(charset);
+      ImapSessionContext session = (ImapSessionContext) ctx.get("sessionContext");
+      ImapDeflateCodec codec = session == null ? null : session.getCompressCodec();
+      if (codec != null) {
+        if (codec.isDeflateActive()) {
+          bytes = codec.deflate(bytes);
+        } else if (imapPacket.isStartCompression()) {
+          // "OK DEFLATE active" 本身以明文发出，之后的数据全部压缩
+          codec.activateDeflate();
+        }
+      }
+      MwMetrics.bytesOut("IMAP", bytes.length);
+      return ByteBuffer.wrap(bytes);
     } catch (Exception e) {
       log.error("Encoding error", e);
       return null;
     }
   }
 
+  /**
+   * 命令交给会话的流水线在业务线程上处理，tio worker 线程不做阻塞的数据库操作。
+   * 可并发的命令同时执行，响应仍按命令到达顺序写回。
+   */
   @Override
   public void handler(Packet packet, ChannelContext ctx) throws Exception {
     ImapPacket imapPacket = (ImapPacket) packet;
-    String line = imapPacket.getLine().trim();
+    ImapPipeline pipeline = getPipeline(ctx);
+    if (imapPacket.getLines() != null) {
+      for (String line : imapPacket.getLines()) {
+        pipeline.submit(line.trim(), l -> handleLine(l, ctx));
+      }
+      return;
+    }
+    pipeline.submit(imapPacket.getLine().trim(), l -> handleLine(l, ctx));
+  }
+
+  private ImapPipeline getPipeline(ChannelContext ctx) {
+    ImapPipeline pipeline = (ImapPipeline) ctx.get("imapPipeline");
+    if (pipeline == null) {
+      pipeline = new ImapPipeline(ctx, MwExecutors.business(), pipelineEnabled);
+      ctx.set("imapPipeline", pipeline);
+    }
+    return pipeline;
+  }
+
+  /**
+   * 执行一行命令，返回要发送的响应包
+   */
+  private ImapPacket handleLine(String line, ChannelContext ctx) {
     ImapSessionContext session = (ImapSessionContext) ctx.get("sessionContext");
-    String username = session.getUsername();
-    if (username != null) {
-      log.info("user {} <<< {}", username, line);
-    } else {
-      log.info("<<< {}", line);
+    CommandScope scope = MwMetrics.begin("IMAP", commandName(line, session));
+    try {
+      return executeLine(line, session, ctx);
+    } finally {
+      scope.end();
     }
+  }
 
+  private String commandName(String line, ImapSessionContext session) {
     if (session.getState() == ImapSessionContext.State.AUTH_WAIT_USERNAME || session.getState() == ImapSessionContext.State.AUTH_WAIT_PASSWORD) {
+      return "AUTH_DATA";
+    }
+    if (session.getIdleTag() != null && "DONE".equalsIgnoreCase(line.trim())) {
+      return "DONE";
+    }
+    String[] parts = line.split("\\s+", 4);
+    if (parts.length < 2) {
+      return "";
+    }
+    String command = parts[1].toUpperCase();
+    if ("UID".equals(command) && parts.length > 2) {
+      return command + " " + parts[2].toUpperCase();
+    }
+    return command;
+  }
+
+  private ImapPacket executeLine(String line, ImapSessionContext session, ChannelContext ctx) {
+    String username = session.getUsername();
+
+    if (session.getState() == ImapSessionContext.State.AUTH_WAIT_USERNAME || session.getState() == ImapSessionContext.State.AUTH_WAIT_PASSWORD) {
+      ProtocolTracer.inSecret(ctx, "IMAP", username);
       String reply = imapService.handleAuthData(session, line, ctx);
-      if (reply != null) {
-        Tio.bSend(ctx, new ImapPacket(reply));
-      }
-      return;
+      ProtocolTracer.out(ctx, "IMAP", session.getUsername(), reply);
+      return reply == null ? null : new ImapPacket(reply);
+    }
+
+    ProtocolTracer.in(ctx, "IMAP", username, line);
+
+    if (session.getIdleTag() != null && "DONE".equalsIgnoreCase(line.trim())) {
+      String reply = imapService.handleIdleDone(session);
+      ProtocolTracer.out(ctx, "IMAP", session.getUsername(), reply);
+      return new ImapPacket(reply);
     }
 
     String[] parts = line.split("\\s+", 3);
@@ -78,27 +165,37 @@ public class ImapServerAioHandler implements ServerAioHandler {
       case "CAPABILITY":
         reply = imapService.handleCapability(tag);
         break;
+      case "COMPRESS":
+        reply = imapService.handleCompress(session, tag, args);
+        ImapDeflateCodec codec = session.getCompressCodec();
+        if (codec != null && !codec.isDeflateActive()) {
+          ProtocolTracer.out(ctx, "IMAP", username, reply);
+          ImapPacket okPacket = new ImapPacket(reply);
+          okPacket.setStartCompression(true);
+          return okPacket;
+        }
+        break;
       case "ID":
         reply = imapService.handleId(tag);
         break;
       case "IDLE":
-        reply = imapService.handleIdle();
+        reply = imapService.handleIdle(session, tag);
         break;
       case "AUTHENTICATE":
         reply = imapService.handleAuthenticate(session, tag, args);
         break;
       case "LOGIN":
-        reply = imapService.handleLogin(session, tag, args);
+        reply = imapService.handleLogin(session, tag, args, ctx);
         break;
       case "LOGOUT":
         reply = imapService.handleLogout(session, tag);
-        if (reply != null) {
-          Tio.bSend(ctx, new ImapPacket(reply));
-        }
-        Tio.close(ctx, "logout");
-        return;
+        ProtocolTracer.out(ctx, "IMAP", username, reply);
+        ImapPacket byePacket = new ImapPacket(reply);
+        byePacket.setCloseAfterSend(true);
+        return byePacket;
       case "CLOSE":
         reply = imapService.handleClose(session, tag);
+        break;
       case "LIST":
         reply = imapService.handleList(session, tag, args);
         break;
@@ -122,7 +219,7 @@ public class ImapServerAioHandler implements ServerAioHandler {
         reply = imapService.handleStatus(session, tag, args);
         break;
       case "CHECK":
-        reply = tag + " OK CHECK completed.\r\n";
+        reply = imapService.handleCheck(session, tag);
         break;
       case "FETCH":
         // 传递 isUidCommand = false
@@ -133,11 +230,15 @@ public class ImapServerAioHandler implements ServerAioHandler {
         // 传递 isUidCommand = false
         reply = imapService.handleStore(session, tag, args, false);
         break;
+      case "SEARCH":
+        reply = imapService.handleSearch(session, tag, args, false);
+        break;
       case "UID":
         reply = imapService.handleUid(session, tag, args);
         break;
       case "NOOP":
-        reply = tag + " OK NOOP";
+        reply = imapService.handleNoop(session, tag);
+        break;
       case "EXPUNGE":
         reply = imapService.handleExpunge(session, tag);
         break;
@@ -145,6 +246,7 @@ public class ImapServerAioHandler implements ServerAioHandler {
         reply = tag + " BAD Unknown or unimplemented command.\r\n";
       }
     } catch (Exception e) {
+      MwMetrics.error();
       reply = tag + " BAD Internal server error.\r\n";
       if (e instanceof ActiveRecordException) {
         ActiveRecordException ae = (ActiveRecordException) e;
@@ -155,9 +257,10 @@ public class ImapServerAioHandler implements ServerAioHandler {
     }
 
     if (reply != null) {
-      log.info(reply);
-      Tio.bSend(ctx, new ImapPacket(reply));
+      ProtocolTracer.out(ctx, "IMAP", session.getUsername(), reply);
+      return new ImapPacket(reply);
     }
+    return null;
   }
 
 }
\ No newline at end of file
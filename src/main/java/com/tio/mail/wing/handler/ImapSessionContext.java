@@ -1,5 +1,11 @@
 package com.tio.mail.wing.handler;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.model.UidIndex;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -26,8 +32,43 @@ public class ImapSessionContext {
   private String selectedMailbox;
   private Long selectedMailboxId;
 
+  /**
+   * 客户端 IP，登录失败限流按 (用户名, IP) 计数
+   */
+  private String clientIp;
+
+  /**
+   * 通过 EXAMINE 打开的邮箱为只读，FETCH 不会隐式设置 \Seen
+   */
+  private boolean readOnly;
+
+  /**
+   * 已选邮箱的 UID 索引，SELECT、EXPUNGE、NOOP 等命令时刷新
+   */
+  private volatile UidIndex uidIndex;
+
+  /**
+   * 其它连接删除的邮件 UID，等到允许发送 EXPUNGE 时（NOOP、CHECK、IDLE）由本会话的流水线取出
+   */
+  private final Queue<MessageSet> pendingExpunges = new ConcurrentLinkedQueue<>();
+
+  /**
+   * 最近一次告知客户端的 RECENT 数，SELECT 时设置，新邮件加入视图时累加
+   */
+  private int recentCount;
+
   /**
    * 用于暂存 AUTHENTICATE 命令的 tag，以便在多步交互后能正确响应
    */
   private String currentCommandTag;
-}
\ No newline at end of file
+
+  /**
+   * IDLE 命令的 tag，收到 DONE 后以它完成 IDLE；未在 IDLE 时为 null
+   */
+  private volatile String idleTag;
+
+  /**
+   * COMPRESS=DEFLATE 生效后的压缩编解码器，未启用时为 null
+   */
+  private volatile ImapDeflateCodec compressCodec;
+}
@@ -0,0 +1,18 @@
+package com.tio.mail.wing.handler;
+
+import com.litongjava.tio.boot.http.TioRequestContext;
+import com.litongjava.tio.http.common.HttpRequest;
+import com.litongjava.tio.http.common.HttpResponse;
+import com.litongjava.tio.http.server.util.Resps;
+import com.tio.mail.wing.metrics.MwMetrics;
+
+/**
+ * Prometheus 抓取入口
+ */
+public class MetricsHandler {
+
+  public HttpResponse index(HttpRequest request) {
+    HttpResponse response = TioRequestContext.getResponse();
+    return Resps.txt(response, MwMetrics.scrape());
+  }
+}
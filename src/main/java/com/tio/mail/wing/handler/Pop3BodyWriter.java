@@ -0,0 +1,102 @@
+package com.tio.mail.wing.handler;
+
+import java.util.function.Consumer;
+
+/**
+ * POP3 多行响应的流式写出 (RFC 1939 RETR / TOP)。
+ * 邮件内容按块送入，逐字符完成以 "." 开头的行的字节填充、裸 LF 补成 CRLF，
+ * 攒够一块后交给 sink 发送；sink 使用阻塞发送时，读取速度即受连接写出速度约束。
+ * TOP 在头部之后写满指定的正文行数即停止，{@link #write(CharSequence)} 返回 false 通知调用方不再读取。
+ * 非线程安全，每个响应一个实例。
+ */
+public class Pop3BodyWriter {
+
+  private final Consumer<String> sink;
+  private final int chunkChars;
+  /** 正文最多写出的行数，-1 表示全部 */
+  private final int maxBodyLines;
+
+  private final StringBuilder buf;
+  private boolean lineStart = true;
+  private int lineLength;
+  private char prev;
+  private boolean inBody;
+  private int bodyLines;
+  private boolean done;
+
+  public Pop3BodyWriter(Consumer<String> sink, int chunkChars, int maxBodyLines) {
+    this.sink = sink;
+    this.chunkChars = chunkChars;
+    this.maxBodyLines = maxBodyLines;
+    this.buf = new StringBuilder(Math.min(chunkChars, 1 << 16) + 64);
+  }
+
+  /**
+   * 状态行，与第一块内容一起发送；不做字节填充
+   */
+  public void status(String line) {
+    buf.append(line);
+  }
+
+  /**
+   * @return 是否还需要后续内容
+   */
+  public boolean write(CharSequence chunk) {
+    for (int i = 0, n = chunk.length(); i < n && !done; i++) {
+      char c = chunk.charAt(i);
+      if (c == '\n') {
+        if (prev != '\r') {
+          buf.append('\r');
+        }
+        buf.append('\n');
+        endLine();
+      } else {
+        if (lineStart && c == '.') {
+          buf.append('.');
+        }
+        buf.append(c);
+        if (c != '\r') {
+          lineLength++;
+        }
+        lineStart = false;
+      }
+      prev = c;
+    }
+    if (buf.length() >= chunkChars) {
+      flush();
+    }
+    return !done;
+  }
+
+  private void endLine() {
+    if (inBody) {
+      bodyLines++;
+    } else if (lineLength == 0) {
+      // 头部与正文之间的空行
+      inBody = true;
+    }
+    lineStart = true;
+    lineLength = 0;
+    if (inBody && maxBodyLines >= 0 && bodyLines >= maxBodyLines) {
+      done = true;
+    }
+  }
+
+  /**
+   * 补齐最后一行的 CRLF，写出结束行 "." 并发送剩余内容
+   */
+  public void finish() {
+    if (!lineStart) {
+      buf.append("\r\n");
+    }
+    buf.append(".\r\n");
+    flush();
+  }
+
+  private void flush() {
+    if (buf.length() > 0) {
+      sink.accept(buf.toString());
+      buf.setLength(0);
+    }
+  }
+}
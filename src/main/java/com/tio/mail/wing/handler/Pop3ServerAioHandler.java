@@ -1,6 +1,7 @@
 package com.tio.mail.wing.handler;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.litongjava.aio.Packet;
 import com.litongjava.jfinal.aop.Aop;
@@ -11,8 +12,12 @@ import com.litongjava.tio.core.exception.LengthOverflowException;
 import com.litongjava.tio.core.exception.TioDecodeException;
 import com.litongjava.tio.core.utils.ByteBufferUtils;
 import com.litongjava.tio.server.intf.ServerAioHandler;
+import com.tio.mail.wing.executor.MwExecutors;
+import com.tio.mail.wing.metrics.MwMetrics;
+import com.tio.mail.wing.metrics.MwMetrics.CommandScope;
 import com.tio.mail.wing.packet.Pop3Packet;
 import com.tio.mail.wing.service.Pop3Service;
+import com.tio.mail.wing.trace.ProtocolTracer;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -52,6 +57,7 @@ public class Pop3ServerAioHandler implements ServerAioHandler {
     String line = pop3Packet.getLine();
     try {
       byte[] bytes = line.getBytes(charset);
+      MwMetrics.bytesOut("POP3", bytes.length);
       ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
       buffer.put(bytes);
       return buffer;
@@ -66,13 +72,36 @@ public class Pop3ServerAioHandler implements ServerAioHandler {
    */
   @Override
   public void handler(Packet packet, ChannelContext channelContext) throws Exception {
+    // 阻塞的数据库/外发操作放到业务线程，同一连接的命令仍按顺序执行
+    try {
+      MwExecutors.serial(channelContext).execute(() -> {
+        String line = ((Pop3Packet) packet).getLine().trim();
+        CommandScope scope = MwMetrics.begin("POP3", line.split("\\s+", 2)[0].toUpperCase());
+        try {
+          process(packet, channelContext);
+        } catch (RuntimeException e) {
+          MwMetrics.error();
+          throw e;
+        } finally {
+          scope.end();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // 业务线程池已满：回复临时错误 (RFC 3206 SYS/TEMP) 后关闭连接，未 QUIT 的删除不生效
+      MwMetrics.rejected("POP3");
+      Tio.send(channelContext, new Pop3Packet("-ERR [SYS/TEMP] Server busy, try again later\r\n"));
+      Tio.close(channelContext, "busy");
+    }
+  }
+
+  private void process(Packet packet, ChannelContext channelContext) {
 
     Pop3Packet pop3Packet = (Pop3Packet) packet;
     String commandLine = pop3Packet.getLine().trim();
-    log.info("POP3 <<< {}", commandLine);
 
     // 获取或创建会日志上下文
     Pop3SessionContext sessionContext = (Pop3SessionContext) channelContext.get("sessionContext");
+    ProtocolTracer.in(channelContext, "POP3", sessionContext.getUsername(), commandLine);
 
     String[] parts = commandLine.split("\\s+", 2);
     String command = parts[0].toUpperCase();
@@ -84,24 +113,24 @@ public class Pop3ServerAioHandler implements ServerAioHandler {
       reply = pop3Service.handleAuthorizationState(command, parts, sessionContext);
       break;
     case TRANSACTION:
-      reply = pop3Service.handleTransactionState(command, parts, sessionContext);
+      reply = pop3Service.handleTransactionState(command, parts, sessionContext, channelContext);
       break;
     case UPDATE:
       // 在 UPDATE 状态，通常只响应 QUIT
       if ("QUIT".equals(command)) {
         reply = pop3Service.handleQuit(sessionContext);
-        if (reply != null) {
-          Tio.send(channelContext, new Pop3Packet(reply));
-        }
-        Tio.close(channelContext, "quit");
       } else {
         reply = "-ERR Command not allowed in UPDATE state.\r\n";
-
       }
       break;
     }
     if (reply != null) {
+      ProtocolTracer.out(channelContext, "POP3", sessionContext.getUsername(), reply);
       Tio.send(channelContext, new Pop3Packet(reply));
     }
+    // 任何状态下 QUIT 应答之后都关闭连接
+    if ("QUIT".equals(command)) {
+      Tio.close(channelContext, "quit");
+    }
   }
 }
\ No newline at end of file
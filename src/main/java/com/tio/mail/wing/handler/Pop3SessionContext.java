@@ -1,5 +1,7 @@
 package com.tio.mail.wing.handler;
 
+import com.tio.mail.wing.model.Pop3Maildrop;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -25,4 +27,14 @@ public class Pop3SessionContext {
   private State state = State.AUTHORIZATION;
   private Long userId;
   private String username;
+
+  /**
+   * 客户端 IP，登录失败限流按 (用户名, IP) 计数
+   */
+  private String clientIp;
+
+  /**
+   * 进入 TRANSACTION 状态时加载的邮箱快照
+   */
+  private Pop3Maildrop maildrop;
 }
\ No newline at end of file
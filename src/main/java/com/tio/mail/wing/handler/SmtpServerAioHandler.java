@@ -1,6 +1,7 @@
 package com.tio.mail.wing.handler;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.litongjava.aio.Packet;
 import com.litongjava.jfinal.aop.Aop;
@@ -11,8 +12,12 @@ import com.litongjava.tio.core.exception.LengthOverflowException;
 import com.litongjava.tio.core.exception.TioDecodeException;
 import com.litongjava.tio.core.utils.ByteBufferUtils;
 import com.litongjava.tio.server.intf.ServerAioHandler;
+import com.tio.mail.wing.executor.MwExecutors;
+import com.tio.mail.wing.metrics.MwMetrics;
+import com.tio.mail.wing.metrics.MwMetrics.CommandScope;
 import com.tio.mail.wing.packet.SmtpPacket;
 import com.tio.mail.wing.service.SmtpService;
+import com.tio.mail.wing.trace.ProtocolTracer;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -43,7 +48,9 @@ public class SmtpServerAioHandler implements ServerAioHandler {
     SmtpPacket smtpPacket = (SmtpPacket) packet;
     String line = smtpPacket.getLine();
     try {
-      return ByteBuffer.wrap(line.getBytes(charset));
+      byte[] bytes = line.getBytes(charset);
+      MwMetrics.bytesOut("SMTP", bytes.length);
+      return ByteBuffer.wrap(bytes);
     } catch (Exception e) {
       log.error("Encoding error", e);
       return null;
@@ -52,15 +59,69 @@ public class SmtpServerAioHandler implements ServerAioHandler {
 
   @Override
   public void handler(Packet packet, ChannelContext ctx) throws Exception {
+    // 阻塞的数据库/外发操作放到业务线程，同一连接的命令仍按顺序执行
+    try {
+      MwExecutors.serial(ctx).execute(() -> {
+        SmtpSessionContext session = (SmtpSessionContext) ctx.get("sessionContext");
+        CommandScope scope = session.getDataScope();
+        if (scope == null) {
+          scope = MwMetrics.begin("SMTP", commandName((SmtpPacket) packet, session));
+        } else {
+          scope.resume();
+        }
+        try {
+          process(packet, ctx);
+        } catch (RuntimeException e) {
+          MwMetrics.error();
+          throw e;
+        } finally {
+          if (session.getState() == SmtpSessionContext.State.DATA_RECEIVING) {
+            session.setDataScope(scope);
+            scope.suspend();
+          } else {
+            session.setDataScope(null);
+            scope.end();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // 业务线程池已满：421 后关闭连接 (RFC 5321 4.2.2)，客户端稍后重试，进行中的邮件事务作废
+      MwMetrics.rejected("SMTP");
+      Tio.send(ctx, new SmtpPacket("421 4.3.2 Server busy, try again later\r\n"));
+      Tio.close(ctx, "busy");
+    }
+  }
+
+  private String commandName(SmtpPacket packet, SmtpSessionContext session) {
+    switch (session.getState()) {
+    case AUTH_WAIT_USERNAME:
+    case AUTH_WAIT_PASSWORD:
+      return "AUTH_DATA";
+    default:
+      return packet.getLine().trim().split("\\s+", 2)[0].toUpperCase();
+    }
+  }
+
+  private void process(Packet packet, ChannelContext ctx) {
     SmtpPacket smtpPacket = (SmtpPacket) packet;
     String line = smtpPacket.getLine().trim();
-    log.info("SMTP <<< {}", line);
 
     SmtpSessionContext session = (SmtpSessionContext) ctx.get("sessionContext");
+    if (session.getState() == SmtpSessionContext.State.AUTH_WAIT_USERNAME || session.getState() == SmtpSessionContext.State.AUTH_WAIT_PASSWORD) {
+      ProtocolTracer.inSecret(ctx, "SMTP", session.getUsername());
+    } else if (session.getState() == SmtpSessionContext.State.DATA_RECEIVING) {
+      // 邮件内容不逐行记录，结束时记录一条带大小的事件
+      if (".".equals(line)) {
+        ProtocolTracer.in(ctx, "SMTP", session.getUsername(), "(" + session.getMailContent().length() + " chars of message data) .");
+      }
+    } else {
+      ProtocolTracer.in(ctx, "SMTP", session.getUsername(), line);
+    }
 
     // 特殊处理：DATA 状态
     if (session.getState() == SmtpSessionContext.State.DATA_RECEIVING) {
       String reply = smtpService.handleDataReceiving(line, session);
+      ProtocolTracer.out(ctx, "SMTP", session.getUsername(), reply);
       if (reply != null) {
         Tio.send(ctx, new SmtpPacket(reply));
       }
@@ -90,6 +151,7 @@ public class SmtpServerAioHandler implements ServerAioHandler {
       break;
     case "QUIT":
       reply = smtpService.handleQuit(session);
+      ProtocolTracer.out(ctx, "SMTP", session.getUsername(), reply);
       if (reply != null) {
         Tio.send(ctx, new SmtpPacket(reply));
       }
@@ -108,6 +170,7 @@ public class SmtpServerAioHandler implements ServerAioHandler {
     }
 
     if (reply != null) {
+      ProtocolTracer.out(ctx, "SMTP", session.getUsername(), reply);
       Tio.send(ctx, new SmtpPacket(reply));
     }
   }
@@ -4,6 +4,8 @@ package com.tio.mail.wing.handler;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.tio.mail.wing.metrics.MwMetrics.CommandScope;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -36,11 +38,21 @@ public class SmtpSessionContext {
   private String username; // 认证后的用户名
   private Long userId;
 
+  /**
+   * 客户端 IP，登录失败限流按 (用户名, IP) 计数
+   */
+  private String clientIp;
+
   // 用于一封邮件的临时数据
   private String fromAddress;
   private List<String> toAddresses = new ArrayList<>();
   private StringBuilder mailContent = new StringBuilder();
 
+  /**
+   * DATA 命令的计时范围，从 DATA 持续到结束的 "."，期间的邮件内容行不单独计数
+   */
+  private CommandScope dataScope;
+
   /**
    * 重置邮件事务状态，以便在同一连接中发送下一封邮件
    */
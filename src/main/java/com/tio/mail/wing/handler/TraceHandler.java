@@ -0,0 +1,84 @@
+package com.tio.mail.wing.handler;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.litongjava.tio.boot.http.TioRequestContext;
+import com.litongjava.tio.http.common.HttpRequest;
+import com.litongjava.tio.http.common.HttpResponse;
+import com.litongjava.tio.http.server.util.Resps;
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.tio.mail.wing.trace.ProtocolTracer;
+
+/**
+ * 运行时开关协议跟踪。
+ * /trace?user=alice@litong.xyz&enable=true
+ * /trace?client=1.2.3.4&enable=false
+ * /trace?all=true&rate=0.01
+ * 跟踪记录包含用户的邮件命令，只接受本机请求；配置 mail.trace.token 后，
+ * 其它地址需在请求头 mail-trace-token 中带上该值。
+ */
+public class TraceHandler {
+
+  private final String token = EnvUtils.getStr("mail.trace.token");
+
+  public HttpResponse index(HttpRequest request) {
+    HttpResponse response = TioRequestContext.getResponse();
+    if (!isAllowed(request)) {
+      response.setStatus(403);
+      return response;
+    }
+    boolean enable = !"false".equalsIgnoreCase(request.getParam("enable"));
+
+    String user = request.getParam("user");
+    if (user != null) {
+      if (enable) {
+        ProtocolTracer.enableUser(user);
+      } else {
+        ProtocolTracer.disableUser(user);
+      }
+    }
+    String client = request.getParam("client");
+    if (client != null) {
+      if (enable) {
+        ProtocolTracer.enableClient(client);
+      } else {
+        ProtocolTracer.disableClient(client);
+      }
+    }
+    String all = request.getParam("all");
+    if (all != null) {
+      String rate = request.getParam("rate");
+      ProtocolTracer.setAll(Boolean.parseBoolean(all), rate == null ? 1.0 : Double.parseDouble(rate));
+    }
+
+    Map<String, Object> state = new HashMap<>();
+    state.put("users", ProtocolTracer.getUsers());
+    state.put("clients", ProtocolTracer.getClients());
+    state.put("dropped", ProtocolTracer.getDropped());
+    return Resps.json(response, state);
+  }
+
+  private boolean isAllowed(HttpRequest request) {
+    if (token != null && !token.isEmpty()) {
+      String given = request.getHeader("mail-trace-token");
+      if (given != null && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), given.getBytes(StandardCharsets.UTF_8))) {
+        return true;
+      }
+    }
+    String ip = request.getClientIp();
+    if (ip == null) {
+      return false;
+    }
+    try {
+      // IP 字面量不会触发 DNS 查询
+      return InetAddress.getByName(ip).isLoopbackAddress();
+    } catch (UnknownHostException e) {
+      return false;
+    }
+  }
+}
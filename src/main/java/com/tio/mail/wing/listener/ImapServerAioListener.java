@@ -4,7 +4,9 @@ import com.litongjava.aio.Packet;
 import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.Tio;
 import com.litongjava.tio.server.intf.ServerAioListener;
+import com.tio.mail.wing.executor.MwExecutors;
 import com.tio.mail.wing.handler.ImapSessionContext;
+import com.tio.mail.wing.metrics.MwMetrics;
 import com.tio.mail.wing.packet.ImapPacket;
 
 import lombok.extern.slf4j.Slf4j;
@@ -16,7 +18,10 @@ public class ImapServerAioListener implements ServerAioListener {
   public void onAfterConnected(ChannelContext channelContext, boolean isConnected, boolean isReconnect) throws Exception {
     if (isConnected) {
       log.info("IMAP client connected: {}", channelContext.getClientNode());
-      channelContext.set("sessionContext", new ImapSessionContext());
+      MwMetrics.connected("IMAP");
+      ImapSessionContext sessionContext = new ImapSessionContext();
+      sessionContext.setClientIp(channelContext.getClientNode() == null ? null : channelContext.getClientNode().getIp());
+      channelContext.set("sessionContext", sessionContext);
       // 发送欢迎消息
       Tio.send(channelContext, new ImapPacket("* OK tio-mail-wing IMAP4rev1 server ready \r\n"));
     }
@@ -25,6 +30,12 @@ public class ImapServerAioListener implements ServerAioListener {
   @Override
   public void onBeforeClose(ChannelContext channelContext, Throwable throwable, String remark, boolean isRemove) throws Exception {
     log.info("IMAP client disconnected: {}", channelContext.getClientNode());
+    MwExecutors.release(channelContext);
+    MwMetrics.disconnected("IMAP");
+    ImapSessionContext session = (ImapSessionContext) channelContext.get("sessionContext");
+    if (session != null && session.getCompressCodec() != null) {
+      session.getCompressCodec().end();
+    }
   }
 
   @Override
@@ -35,20 +46,20 @@ public class ImapServerAioListener implements ServerAioListener {
 
   @Override
   public void onAfterReceivedBytes(ChannelContext channelContext, int receivedBytes) throws Exception {
-    // TODO Auto-generated method stub
-
+    MwMetrics.bytesIn("IMAP", receivedBytes);
   }
 
   @Override
   public void onAfterSent(ChannelContext channelContext, Packet packet, boolean isSentSuccess) throws Exception {
-    // TODO Auto-generated method stub
-
+    // 发送字节数在 encode 中按实际写出的字节统计（IMAP 压缩后为压缩字节）
+    if (!isSentSuccess) {
+      MwMetrics.sendFailed("IMAP");
+    }
   }
 
   @Override
   public void onAfterHandled(ChannelContext channelContext, Packet packet, long cost) throws Exception {
-    // TODO Auto-generated method stub
-
+    // handler 只负责把命令派发到业务线程，命令耗时在业务线程上记录，见 MwMetrics
   }
 
   @Override
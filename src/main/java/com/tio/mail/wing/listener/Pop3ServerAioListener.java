@@ -4,7 +4,9 @@ import com.litongjava.aio.Packet;
 import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.Tio;
 import com.litongjava.tio.server.intf.ServerAioListener;
+import com.tio.mail.wing.executor.MwExecutors;
 import com.tio.mail.wing.handler.Pop3SessionContext;
+import com.tio.mail.wing.metrics.MwMetrics;
 import com.tio.mail.wing.packet.Pop3Packet;
 
 import lombok.extern.slf4j.Slf4j;
@@ -16,8 +18,10 @@ public class Pop3ServerAioListener implements ServerAioListener {
   public void onAfterConnected(ChannelContext channelContext, boolean isConnected, boolean isReconnect) throws Exception {
     if (isConnected) {
       log.info("POP3 client connected: {}", channelContext.getClientNode());
+      MwMetrics.connected("POP3");
       // 1. 创建会话上下文
       Pop3SessionContext sessionContext = new Pop3SessionContext();
+      sessionContext.setClientIp(channelContext.getClientNode() == null ? null : channelContext.getClientNode().getIp());
       channelContext.set("sessionContext", sessionContext);
 
       // 2. 立即发送欢迎消息
@@ -34,22 +38,27 @@ public class Pop3ServerAioListener implements ServerAioListener {
 
   @Override
   public void onAfterReceivedBytes(ChannelContext channelContext, int receivedBytes) throws Exception {
-    // Do nothing
+    MwMetrics.bytesIn("POP3", receivedBytes);
   }
 
   @Override
   public void onAfterSent(ChannelContext channelContext, Packet packet, boolean isSentSuccess) throws Exception {
-    // Do nothing
+    // 发送字节数在 encode 中统计
+    if (!isSentSuccess) {
+      MwMetrics.sendFailed("POP3");
+    }
   }
 
   @Override
   public void onAfterHandled(ChannelContext channelContext, Packet packet, long cost) throws Exception {
-    // Do nothing
+    // handler 只负责把命令派发到业务线程，命令耗时在业务线程上记录，见 MwMetrics
   }
 
   @Override
   public void onBeforeClose(ChannelContext channelContext, Throwable throwable, String remark, boolean isRemove) throws Exception {
     log.info("POP3 client disconnected: {}", channelContext.getClientNode());
+    MwExecutors.release(channelContext);
+    MwMetrics.disconnected("POP3");
   }
 
   @Override
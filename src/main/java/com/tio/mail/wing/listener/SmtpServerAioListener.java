@@ -4,7 +4,9 @@ import com.litongjava.aio.Packet;
 import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.Tio;
 import com.litongjava.tio.server.intf.ServerAioListener;
+import com.tio.mail.wing.executor.MwExecutors;
 import com.tio.mail.wing.handler.SmtpSessionContext;
+import com.tio.mail.wing.metrics.MwMetrics;
 import com.tio.mail.wing.packet.SmtpPacket;
 
 import lombok.extern.slf4j.Slf4j;
@@ -16,8 +18,10 @@ public class SmtpServerAioListener implements ServerAioListener {
   public void onAfterConnected(ChannelContext channelContext, boolean isConnected, boolean isReconnect) throws Exception {
     if (isConnected) {
       log.info("SMTP client connected: {}", channelContext.getClientNode());
+      MwMetrics.connected("SMTP");
       // 1. 创建会话上下文
       SmtpSessionContext sessionContext = new SmtpSessionContext();
+      sessionContext.setClientIp(channelContext.getClientNode() == null ? null : channelContext.getClientNode().getIp());
       channelContext.set("sessionContext", sessionContext);
 
       // 2. 发送欢迎消息 (220)
@@ -30,6 +34,8 @@ public class SmtpServerAioListener implements ServerAioListener {
   @Override
   public void onBeforeClose(ChannelContext channelContext, Throwable throwable, String remark, boolean isRemove) throws Exception {
     log.info("SMTP client disconnected: {}", channelContext.getClientNode());
+    MwExecutors.release(channelContext);
+    MwMetrics.disconnected("SMTP");
   }
 
   @Override
@@ -40,20 +46,20 @@ public class SmtpServerAioListener implements ServerAioListener {
 
   @Override
   public void onAfterReceivedBytes(ChannelContext channelContext, int receivedBytes) throws Exception {
-    // TODO Auto-generated method stub
-
+    MwMetrics.bytesIn("SMTP", receivedBytes);
   }
 
   @Override
   public void onAfterSent(ChannelContext channelContext, Packet packet, boolean isSentSuccess) throws Exception {
-    // TODO Auto-generated method stub
-
+    // 发送字节数在 encode 中统计
+    if (!isSentSuccess) {
+      MwMetrics.sendFailed("SMTP");
+    }
   }
 
   @Override
   public void onAfterHandled(ChannelContext channelContext, Packet packet, long cost) throws Exception {
-    // TODO Auto-generated method stub
-
+    // handler 只负责把命令派发到业务线程，命令耗时在业务线程上记录，见 MwMetrics
   }
 
   @Override
@@ -0,0 +1,51 @@
+package com.tio.mail.wing.metrics;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * 进程资源使用：CPU 时间、堆和直接内存、线程数、GC 次数与耗时，
+ * 压测时与命令耗时一起采集，用于估算每秒命令数对应的资源消耗
+ */
+public class JvmMetrics implements MwMetrics.MetricsSource {
+
+  @Override
+  public void writeTo(StringBuilder sb) {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      long cpuNanos = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+      if (cpuNanos >= 0) {
+        MwMetrics.header(sb, "mw_process_cpu_seconds_total", "counter", "Process CPU time");
+        MwMetrics.sample(sb, "mw_process_cpu_seconds_total", "", cpuNanos / 1e9);
+      }
+    }
+
+    MwMetrics.header(sb, "mw_jvm_memory_used_bytes", "gauge", "Heap, non-heap and direct buffer memory in use");
+    MwMetrics.sample(sb, "mw_jvm_memory_used_bytes", "area=\"heap\"", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    MwMetrics.sample(sb, "mw_jvm_memory_used_bytes", "area=\"nonheap\"",
+        ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage().getUsed());
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if ("direct".equals(pool.getName())) {
+        MwMetrics.sample(sb, "mw_jvm_memory_used_bytes", "area=\"direct\"", pool.getMemoryUsed());
+      }
+    }
+
+    MwMetrics.header(sb, "mw_jvm_threads", "gauge", "Live threads");
+    MwMetrics.sample(sb, "mw_jvm_threads", "", ManagementFactory.getThreadMXBean().getThreadCount());
+
+    MwMetrics.header(sb, "mw_jvm_gc_collections_total", "counter", "GC collections");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      MwMetrics.sample(sb, "mw_jvm_gc_collections_total", gcLabel(gc), Math.max(gc.getCollectionCount(), 0));
+    }
+    MwMetrics.header(sb, "mw_jvm_gc_seconds_total", "counter", "Time spent in GC");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      MwMetrics.sample(sb, "mw_jvm_gc_seconds_total", gcLabel(gc), Math.max(gc.getCollectionTime(), 0) / 1e3);
+    }
+  }
+
+  private static String gcLabel(GarbageCollectorMXBean gc) {
+    return "gc=\"" + MwMetrics.escape(gc.getName()) + "\"";
+  }
+}
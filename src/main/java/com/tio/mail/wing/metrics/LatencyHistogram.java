@@ -0,0 +1,98 @@
+package com.tio.mail.wing.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR 风格的对数-线性直方图，单位微秒，线程安全且记录时无锁。
+ * 每个 2 的幂区间再均分为 32 个子桶，相对误差约 3%，可覆盖 1us 到约 25 天。
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BITS = 5;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int MAX_EXPONENT = 41;
+  private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+
+  public void recordNanos(long nanos) {
+    record(nanos / 1000);
+  }
+
+  /**
+   * @param micros 微秒
+   */
+  public void record(long micros) {
+    long v = Math.min(Math.max(micros, 0), MAX_VALUE);
+    counts.incrementAndGet(indexOf(v));
+    count.increment();
+    sum.add(v);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * @return 所有记录值之和，微秒
+   */
+  public long getSum() {
+    return sum.sum();
+  }
+
+  /**
+   * @param q 0~1
+   * @return 分位数，微秒
+   */
+  public long quantile(double q) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(q * total);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank && snapshot[i] > 0) {
+        return midpointOf(i);
+      }
+    }
+    return midpointOf(BUCKETS - 1);
+  }
+
+  static int indexOf(long v) {
+    if (v < SUB_COUNT) {
+      return (int) v;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(v);
+    int shift = exponent - SUB_BITS;
+    int sub = (int) ((v >>> shift) & (SUB_COUNT - 1));
+    return (shift + 1) * SUB_COUNT + sub;
+  }
+
+  static long lowerBoundOf(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_COUNT - 1;
+    int sub = index % SUB_COUNT;
+    return (long) (SUB_COUNT + sub) << shift;
+  }
+
+  private static long midpointOf(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_COUNT - 1;
+    return lowerBoundOf(index) + ((1L << shift) >> 1);
+  }
+}
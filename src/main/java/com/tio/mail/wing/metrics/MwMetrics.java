@@ -0,0 +1,309 @@
+package com.tio.mail.wing.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.tio.mail.wing.cache.CacheRegistry;
+import com.tio.mail.wing.cache.CacheStats;
+
+/**
+ * 进程内指标，按 Prometheus 文本格式输出。
+ * <ul>
+ * <li>按协议、命令统计次数、错误数、耗时直方图和命令内的数据库耗时</li>
+ * <li>按协议统计收发字节数和当前会话数</li>
+ * <li>共享缓存的命中、未命中和淘汰次数</li>
+ * <li>进程 CPU、内存、线程和 GC</li>
+ * </ul>
+ * 命令在业务线程上执行，begin/end 之间同一线程上的数据库耗时通过 addDbNanos 累加到该命令。
+ */
+public class MwMetrics {
+
+  /** 命令名种类上限，防止异常输入撑大标签基数 */
+  private static final int MAX_COMMANDS = 256;
+  private static final String OTHER = "OTHER";
+  private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+  private static final Map<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+  private static final Map<String, ProtocolMetrics> protocols = new ConcurrentHashMap<>();
+  private static final List<MetricsSource> sources = new CopyOnWriteArrayList<>();
+  private static final ThreadLocal<CommandScope> currentScope = new ThreadLocal<>();
+
+  static {
+    register(new JvmMetrics());
+  }
+
+  public static CommandScope begin(String protocol, String command) {
+    CommandScope scope = new CommandScope(command(protocol, command));
+    currentScope.set(scope);
+    return scope;
+  }
+
+  /**
+   * 数据库访问层调用，累加到当前线程正在执行的命令
+   */
+  public static void addDbNanos(long nanos) {
+    CommandScope scope = currentScope.get();
+    if (scope != null) {
+      scope.dbNanos += nanos;
+    }
+  }
+
+  /**
+   * 标记当前线程正在执行的命令失败
+   */
+  public static void error() {
+    CommandScope scope = currentScope.get();
+    if (scope != null) {
+      scope.error = true;
+    }
+  }
+
+  public static void connected(String protocol) {
+    protocol(protocol).sessions.incrementAndGet();
+  }
+
+  public static void disconnected(String protocol) {
+    protocol(protocol).sessions.decrementAndGet();
+  }
+
+  public static void bytesIn(String protocol, long bytes) {
+    protocol(protocol).bytesIn.add(bytes);
+  }
+
+  public static void bytesOut(String protocol, long bytes) {
+    protocol(protocol).bytesOut.add(bytes);
+  }
+
+  public static void sendFailed(String protocol) {
+    protocol(protocol).sendFailures.increment();
+  }
+
+  /**
+   * 业务线程池已满，命令被拒绝并回复服务器繁忙
+   */
+  public static void rejected(String protocol) {
+    protocol(protocol).rejected.increment();
+  }
+
+  /**
+   * 登记额外的指标来源，例如 SQL 模板统计
+   */
+  public static void register(MetricsSource source) {
+    sources.add(source);
+  }
+
+  /**
+   * 输出 Prometheus 文本格式
+   */
+  public static String scrape() {
+    StringBuilder sb = new StringBuilder(8192);
+    Map<String, CommandMetrics> sorted = new TreeMap<>(commands);
+
+    header(sb, "mw_commands_total", "counter", "Commands executed");
+    for (CommandMetrics m : sorted.values()) {
+      sample(sb, "mw_commands_total", m.labels, m.latency.getCount());
+    }
+    header(sb, "mw_command_errors_total", "counter", "Commands that failed with an internal error");
+    for (CommandMetrics m : sorted.values()) {
+      sample(sb, "mw_command_errors_total", m.labels, m.errors.sum());
+    }
+    header(sb, "mw_command_duration_seconds", "summary", "Command latency on the business executor");
+    for (CommandMetrics m : sorted.values()) {
+      summary(sb, "mw_command_duration_seconds", m.labels, m.latency);
+    }
+    header(sb, "mw_command_db_seconds", "summary", "Database time spent per command");
+    for (CommandMetrics m : sorted.values()) {
+      summary(sb, "mw_command_db_seconds", m.labels, m.db);
+    }
+
+    Map<String, ProtocolMetrics> sortedProtocols = new TreeMap<>(protocols);
+    header(sb, "mw_sessions_active", "gauge", "Open connections");
+    for (Map.Entry<String, ProtocolMetrics> e : sortedProtocols.entrySet()) {
+      sample(sb, "mw_sessions_active", protocolLabel(e.getKey()), e.getValue().sessions.get());
+    }
+    header(sb, "mw_bytes_received_total", "counter", "Bytes received from clients");
+    for (Map.Entry<String, ProtocolMetrics> e : sortedProtocols.entrySet()) {
+      sample(sb, "mw_bytes_received_total", protocolLabel(e.getKey()), e.getValue().bytesIn.sum());
+    }
+    header(sb, "mw_bytes_sent_total", "counter", "Bytes sent to clients");
+    for (Map.Entry<String, ProtocolMetrics> e : sortedProtocols.entrySet()) {
+      sample(sb, "mw_bytes_sent_total", protocolLabel(e.getKey()), e.getValue().bytesOut.sum());
+    }
+    header(sb, "mw_send_failures_total", "counter", "Packets that failed to send");
+    for (Map.Entry<String, ProtocolMetrics> e : sortedProtocols.entrySet()) {
+      sample(sb, "mw_send_failures_total", protocolLabel(e.getKey()), e.getValue().sendFailures.sum());
+    }
+    header(sb, "mw_commands_rejected_total", "counter", "Commands rejected because the business executor was saturated");
+    for (Map.Entry<String, ProtocolMetrics> e : sortedProtocols.entrySet()) {
+      sample(sb, "mw_commands_rejected_total", protocolLabel(e.getKey()), e.getValue().rejected.sum());
+    }
+
+    List<CacheStats> caches = CacheRegistry.getCaches();
+    header(sb, "mw_cache_hits_total", "counter", "Cache hits");
+    for (CacheStats c : caches) {
+      sample(sb, "mw_cache_hits_total", cacheLabel(c), c.getHits());
+    }
+    header(sb, "mw_cache_misses_total", "counter", "Cache misses");
+    for (CacheStats c : caches) {
+      sample(sb, "mw_cache_misses_total", cacheLabel(c), c.getMisses());
+    }
+    header(sb, "mw_cache_evictions_total", "counter", "Cache evictions");
+    for (CacheStats c : caches) {
+      sample(sb, "mw_cache_evictions_total", cacheLabel(c), c.getEvictions());
+    }
+    header(sb, "mw_cache_size", "gauge", "Cache entries");
+    for (CacheStats c : caches) {
+      sample(sb, "mw_cache_size", cacheLabel(c), c.size());
+    }
+
+    for (MetricsSource source : sources) {
+      source.writeTo(sb);
+    }
+    return sb.toString();
+  }
+
+  public static void header(StringBuilder sb, String name, String type, String help) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  public static void sample(StringBuilder sb, String name, String labels, double value) {
+    sb.append(name).append('{').append(labels).append("} ");
+    if (value == Math.rint(value) && !Double.isInfinite(value)) {
+      sb.append((long) value);
+    } else {
+      sb.append(value);
+    }
+    sb.append('\n');
+  }
+
+  /**
+   * 以 summary 形式输出直方图，单位秒
+   */
+  public static void summary(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+    for (double q : QUANTILES) {
+      sample(sb, name, labels + ",quantile=\"" + q + "\"", histogram.quantile(q) / 1e6);
+    }
+    sample(sb, name + "_sum", labels, histogram.getSum() / 1e6);
+    sample(sb, name + "_count", labels, histogram.getCount());
+  }
+
+  public static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static String protocolLabel(String protocol) {
+    return "protocol=\"" + protocol + "\"";
+  }
+
+  private static String cacheLabel(CacheStats cache) {
+    return "cache=\"" + escape(cache.getName()) + "\"";
+  }
+
+  private static CommandMetrics command(String protocol, String command) {
+    String key = protocol + " " + command;
+    CommandMetrics m = commands.get(key);
+    if (m != null) {
+      return m;
+    }
+    if (commands.size() >= MAX_COMMANDS || !isCommandName(command)) {
+      key = protocol + " " + OTHER;
+      command = OTHER;
+    }
+    String name = command;
+    return commands.computeIfAbsent(key, k -> new CommandMetrics(protocol, name));
+  }
+
+  private static boolean isCommandName(String command) {
+    if (command.isEmpty() || command.length() > 24) {
+      return false;
+    }
+    for (int i = 0; i < command.length(); i++) {
+      char c = command.charAt(i);
+      if (!(c >= 'A' && c <= 'Z') && c != ' ' && c != '_') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static ProtocolMetrics protocol(String protocol) {
+    return protocols.computeIfAbsent(protocol, k -> new ProtocolMetrics());
+  }
+
+  /**
+   * 一次命令执行的计时范围
+   */
+  public static class CommandScope {
+    private final CommandMetrics metrics;
+    private final long start = System.nanoTime();
+    private long dbNanos;
+    private boolean error;
+
+    CommandScope(CommandMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    public void error() {
+      this.error = true;
+    }
+
+    /**
+     * 跨多个数据包的命令（SMTP DATA）处理后续数据包前调用，数据库耗时继续累加到本命令
+     */
+    public void resume() {
+      currentScope.set(this);
+    }
+
+    /**
+     * 一个数据包处理完但命令尚未结束，从当前线程摘下，不记录耗时
+     */
+    public void suspend() {
+      if (currentScope.get() == this) {
+        currentScope.remove();
+      }
+    }
+
+    public void end() {
+      metrics.latency.recordNanos(System.nanoTime() - start);
+      metrics.db.recordNanos(dbNanos);
+      if (error) {
+        metrics.errors.increment();
+      }
+      if (currentScope.get() == this) {
+        currentScope.remove();
+      }
+    }
+  }
+
+  /**
+   * 额外的指标来源
+   */
+  public interface MetricsSource {
+    void writeTo(StringBuilder sb);
+  }
+
+  private static class CommandMetrics {
+    final String labels;
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LatencyHistogram db = new LatencyHistogram();
+    final LongAdder errors = new LongAdder();
+
+    CommandMetrics(String protocol, String command) {
+      this.labels = "protocol=\"" + protocol + "\",command=\"" + command + "\"";
+    }
+  }
+
+  private static class ProtocolMetrics {
+    final AtomicInteger sessions = new AtomicInteger();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    final LongAdder sendFailures = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+  }
+}
@@ -46,9 +46,16 @@ public class Email {
    * 邮件的完整原始内容 (MIME 格式)
    * 存储在数据库中通常使用 TEXT 或 BLOB 类型。
    * 为了性能，有时会将其存储在文件系统或对象存储中，数据库只存路径。
+   * 列表查询只返回元数据，此字段为 null，需要原文时由 MailBodyService.loadBodies 按 contentId 从缓存或数据库补齐。
    */
   private String rawContent;
 
+  /**
+   * 邮件内容 ID (mw_mail_message.id)
+   * 同一内容可被多个邮箱中的邮件引用，邮件原文缓存以此为 key。
+   */
+  private Long contentId;
+
   /**
    * 邮件大小 (单位：字节)
    * 在存入时计算一次，避免重复计算。
@@ -101,20 +108,22 @@ public class Email {
    */
   public Map<String, String> getHeaders() {
     if (headers == null) {
+      if (rawContent == null) {
+        // 原文尚未加载，不缓存空结果
+        return new HashMap<>();
+      }
       headers = new HashMap<>();
-      if (rawContent != null) {
-        String[] lines = rawContent.split("\\r?\\n");
-        for (String line : lines) {
-          if (line.isEmpty()) {
-            break; // 邮件头结束
-          }
-          int colonIndex = line.indexOf(':');
-          if (colonIndex > 0) {
-            String key = line.substring(0, colonIndex).trim();
-            String value = line.substring(colonIndex + 1).trim();
-            // 只存第一个同名header，或拼接，根据需要
-            headers.putIfAbsent(key.toUpperCase(), value);
-          }
+      String[] lines = rawContent.split("\\r?\\n");
+      for (String line : lines) {
+        if (line.isEmpty()) {
+          break; // 邮件头结束
+        }
+        int colonIndex = line.indexOf(':');
+        if (colonIndex > 0) {
+          String key = line.substring(0, colonIndex).trim();
+          String value = line.substring(colonIndex + 1).trim();
+          // 只存第一个同名header，或拼接，根据需要
+          headers.putIfAbsent(key.toUpperCase(), value);
         }
       }
     }
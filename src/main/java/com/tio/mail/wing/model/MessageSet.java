@@ -0,0 +1,317 @@
+package com.tio.mail.wing.model;
+
+import java.util.Arrays;
+
+/**
+ * 解析后的 IMAP 消息集合 (RFC 3501 sequence-set)，如 "1,3:5,10:*"。
+ * 内部是按起点排序、互不重叠也不相邻的闭区间，存放在两个 long 数组中；
+ * 无论客户端发来多少段，绑定到 SQL 时都只是两个 bigint[] 参数。
+ * 序号集合和 UID 集合共用这一表示，* 在解析时记为 {@link #STAR}，由 {@link UidIndex} 按会话视图解析。
+ * 实例不可变，线程安全。
+ */
+public final class MessageSet {
+
+  /** 尚未解析的 * */
+  public static final long STAR = Long.MAX_VALUE;
+
+  public static final MessageSet EMPTY = new MessageSet(new long[0], new long[0]);
+
+  /** 1:* */
+  public static final MessageSet ALL = new MessageSet(new long[] { 1 }, new long[] { STAR });
+
+  private final long[] los;
+  private final long[] his;
+
+  private MessageSet(long[] los, long[] his) {
+    this.los = los;
+    this.his = his;
+  }
+
+  /**
+   * 解析客户端发来的集合，n:m 与 m:n 等价
+   *
+   * @throws IllegalArgumentException 语法错误或出现 0
+   */
+  public static MessageSet parse(String set) {
+    if (set == null || set.isEmpty()) {
+      throw new IllegalArgumentException("Empty message set");
+    }
+    int n = 1;
+    for (int i = 0; i < set.length(); i++) {
+      if (set.charAt(i) == ',') {
+        n++;
+      }
+    }
+    long[] los = new long[n];
+    long[] his = new long[n];
+    int count = 0;
+    int pos = 0;
+    int len = set.length();
+    while (pos <= len) {
+      int end = set.indexOf(',', pos);
+      if (end < 0) {
+        end = len;
+      }
+      int colon = set.indexOf(':', pos);
+      long a;
+      long b;
+      if (colon < 0 || colon > end) {
+        a = b = parseNumber(set, pos, end);
+      } else {
+        a = parseNumber(set, pos, colon);
+        b = parseNumber(set, colon + 1, end);
+      }
+      los[count] = Math.min(a, b);
+      his[count] = Math.max(a, b);
+      count++;
+      pos = end + 1;
+    }
+    return normalize(los, his, count);
+  }
+
+  /**
+   * 由任意区间构造，区间可以无序、重叠
+   */
+  public static MessageSet of(long[] los, long[] his) {
+    if (los.length != his.length) {
+      throw new IllegalArgumentException("Range bounds differ in length");
+    }
+    return normalize(los.clone(), his.clone(), los.length);
+  }
+
+  /**
+   * 由升序且不重复的值构造，连续的值合并为一个区间
+   */
+  public static MessageSet ofSorted(long[] values, int length) {
+    if (length == 0) {
+      return EMPTY;
+    }
+    long[] los = new long[length];
+    long[] his = new long[length];
+    int n = 0;
+    los[0] = his[0] = values[0];
+    for (int i = 1; i < length; i++) {
+      long v = values[i];
+      if (v == his[n] + 1) {
+        his[n] = v;
+      } else {
+        n++;
+        los[n] = his[n] = v;
+      }
+    }
+    return new MessageSet(Arrays.copyOf(los, n + 1), Arrays.copyOf(his, n + 1));
+  }
+
+  private static long parseNumber(String s, int from, int to) {
+    if (from >= to) {
+      throw new IllegalArgumentException("Invalid message set: " + s);
+    }
+    if (to - from == 1 && s.charAt(from) == '*') {
+      return STAR;
+    }
+    if (to - from > 18) {
+      throw new IllegalArgumentException("Invalid message set: " + s);
+    }
+    long v = 0;
+    for (int i = from; i < to; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new IllegalArgumentException("Invalid message set: " + s);
+      }
+      v = v * 10 + (c - '0');
+    }
+    if (v == 0) {
+      throw new IllegalArgumentException("Invalid message set: " + s);
+    }
+    return v;
+  }
+
+  /**
+   * 排序并合并重叠或相邻的区间，los/his 会被就地修改
+   */
+  private static MessageSet normalize(long[] los, long[] his, int count) {
+    if (count == 0) {
+      return EMPTY;
+    }
+    boolean sorted = true;
+    for (int i = 1; i < count; i++) {
+      if (los[i] < los[i - 1]) {
+        sorted = false;
+        break;
+      }
+    }
+    if (!sorted) {
+      // 客户端几乎总是按升序发送，乱序时才排序
+      Integer[] order = new Integer[count];
+      for (int i = 0; i < count; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (x, y) -> Long.compare(los[x], los[y]));
+      long[] sl = new long[count];
+      long[] sh = new long[count];
+      for (int i = 0; i < count; i++) {
+        sl[i] = los[order[i]];
+        sh[i] = his[order[i]];
+      }
+      return merge(sl, sh, count);
+    }
+    return merge(los, his, count);
+  }
+
+  private static MessageSet merge(long[] los, long[] his, int count) {
+    int n = 0;
+    for (int i = 1; i < count; i++) {
+      // his[n] + 1 在 STAR 处会溢出，先判断
+      if (his[n] == STAR || los[i] <= his[n] + 1) {
+        his[n] = Math.max(his[n], his[i]);
+      } else {
+        n++;
+        los[n] = los[i];
+        his[n] = his[i];
+      }
+    }
+    n++;
+    if (n == los.length) {
+      return new MessageSet(los, his);
+    }
+    return new MessageSet(Arrays.copyOf(los, n), Arrays.copyOf(his, n));
+  }
+
+  /**
+   * 是否包含尚未解析的 *
+   */
+  public boolean hasStar() {
+    return los.length > 0 && his[his.length - 1] == STAR;
+  }
+
+  /**
+   * 把 * 替换为 max。
+   * 合并后只有最后一个区间可能以 * 结尾，n:* 变为 n:max（n 大于 max 时为 max:n）；
+   * 同一区间中大于 max 的部分在邮箱中并不存在，直接截掉。
+   */
+  public MessageSet resolveStar(long max) {
+    if (!hasStar()) {
+      return this;
+    }
+    int last = los.length - 1;
+    long lo = los[last];
+    long[] nl = los.clone();
+    long[] nh = his.clone();
+    if (lo == STAR) {
+      nl[last] = nh[last] = max;
+    } else {
+      nl[last] = Math.min(lo, max);
+      nh[last] = Math.max(lo, max);
+    }
+    return normalize(nl, nh, nl.length);
+  }
+
+  /**
+   * 与 {@link #resolveStar(long)} 相同，但区间上界保持开放。
+   * 用于 UID 集合：会话视图之后新到的邮件也应被 n:* 选中。
+   */
+  public MessageSet resolveStarOpen(long max) {
+    if (!hasStar()) {
+      return this;
+    }
+    int last = los.length - 1;
+    long[] nl = los.clone();
+    nl[last] = Math.min(nl[last], max);
+    return normalize(nl, his.clone(), nl.length);
+  }
+
+  public boolean contains(long value) {
+    int i = Arrays.binarySearch(los, value);
+    if (i >= 0) {
+      return true;
+    }
+    // 插入点之前的区间是唯一可能包含 value 的区间
+    int before = -i - 2;
+    return before >= 0 && value <= his[before];
+  }
+
+  /**
+   * 两个集合是否有交集，线性归并
+   */
+  public boolean intersects(MessageSet other) {
+    int i = 0;
+    int j = 0;
+    while (i < los.length && j < other.los.length) {
+      if (los[i] <= other.his[j] && other.los[j] <= his[i]) {
+        return true;
+      }
+      if (his[i] < other.his[j]) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return false;
+  }
+
+  public boolean isEmpty() {
+    return los.length == 0;
+  }
+
+  /**
+   * 区间个数
+   */
+  public int rangeCount() {
+    return los.length;
+  }
+
+  /**
+   * 区间起点，调用方不得修改
+   */
+  public long[] getLos() {
+    return los;
+  }
+
+  /**
+   * 区间终点，调用方不得修改
+   */
+  public long[] getHis() {
+    return his;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof MessageSet)) {
+      return false;
+    }
+    MessageSet other = (MessageSet) o;
+    return Arrays.equals(los, other.los) && Arrays.equals(his, other.his);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(los) + Arrays.hashCode(his);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < los.length; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      append(sb, los[i]);
+      if (his[i] != los[i]) {
+        sb.append(':');
+        append(sb, his[i]);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void append(StringBuilder sb, long v) {
+    if (v == STAR) {
+      sb.append('*');
+    } else {
+      sb.append(v);
+    }
+  }
+}
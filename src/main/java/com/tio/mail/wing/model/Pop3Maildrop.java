@@ -0,0 +1,117 @@
+package com.tio.mail.wing.model;
+
+import java.util.BitSet;
+
+/**
+ * POP3 会话的邮箱快照 (RFC 1939)。
+ * 进入 TRANSACTION 状态时加载一次，消息编号 n 对应下标 n-1，会话期间编号不变；
+ * STAT、LIST、UIDL 直接由快照回答，RETR、TOP 按邮件 ID 读取单封邮件内容。
+ * DELE 只在快照中做删除标记，RSET 撤销，QUIT 时一次性删除。
+ * 只由所属连接的命令串行访问。
+ */
+public class Pop3Maildrop {
+
+  private final long mailboxId;
+  private final long[] mailIds;
+  /** mw_mail_message.id，用于邮件原文缓存 */
+  private final long[] contentIds;
+  private final long[] uids;
+  private final int[] sizes;
+  private final long totalSize;
+
+  private final BitSet deleted = new BitSet();
+  private long deletedSize;
+
+  public Pop3Maildrop(long mailboxId, long[] mailIds, long[] contentIds, long[] uids, int[] sizes) {
+    this.mailboxId = mailboxId;
+    this.mailIds = mailIds;
+    this.contentIds = contentIds;
+    this.uids = uids;
+    this.sizes = sizes;
+    long total = 0;
+    for (int size : sizes) {
+      total += size;
+    }
+    this.totalSize = total;
+  }
+
+  public long getMailboxId() {
+    return mailboxId;
+  }
+
+  /**
+   * 快照中的邮件数，包括已标记删除的，即最大消息编号
+   */
+  public int count() {
+    return mailIds.length;
+  }
+
+  /**
+   * 未标记删除的邮件数，用于 STAT
+   */
+  public int undeletedCount() {
+    return mailIds.length - deleted.cardinality();
+  }
+
+  /**
+   * 未标记删除的邮件总大小，用于 STAT
+   */
+  public long undeletedSize() {
+    return totalSize - deletedSize;
+  }
+
+  /**
+   * 消息编号在快照范围内且未标记删除
+   */
+  public boolean exists(int msgNumber) {
+    return msgNumber >= 1 && msgNumber <= mailIds.length && !deleted.get(msgNumber - 1);
+  }
+
+  /**
+   * @return 编号不存在或已标记删除时返回 false
+   */
+  public boolean markDeleted(int msgNumber) {
+    if (!exists(msgNumber)) {
+      return false;
+    }
+    deleted.set(msgNumber - 1);
+    deletedSize += sizes[msgNumber - 1];
+    return true;
+  }
+
+  /**
+   * RSET：撤销所有删除标记
+   */
+  public void reset() {
+    deleted.clear();
+    deletedSize = 0;
+  }
+
+  /**
+   * 已标记删除的邮件 ID
+   */
+  public long[] deletedMailIds() {
+    long[] ids = new long[deleted.cardinality()];
+    int n = 0;
+    for (int i = deleted.nextSetBit(0); i >= 0; i = deleted.nextSetBit(i + 1)) {
+      ids[n++] = mailIds[i];
+    }
+    return ids;
+  }
+
+  public long mailId(int msgNumber) {
+    return mailIds[msgNumber - 1];
+  }
+
+  public long contentId(int msgNumber) {
+    return contentIds[msgNumber - 1];
+  }
+
+  public long uid(int msgNumber) {
+    return uids[msgNumber - 1];
+  }
+
+  public int size(int msgNumber) {
+    return sizes[msgNumber - 1];
+  }
+}
@@ -0,0 +1,254 @@
+package com.tio.mail.wing.model;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * IMAP SEARCH 条件 (RFC 3501 6.4.4) 的解析和匹配。
+ * 支持消息集合、UID、ALL、标志类条件、KEYWORD/UNKEYWORD、按接收日期的 BEFORE/ON/SINCE，以及 NOT、OR 和括号；
+ * 按邮件头或正文检索的条件不支持，解析时报错。
+ * 序号集合在解析时通过会话的 UID 索引换算为 UID 集合（* 结尾时上界开放），匹配只依赖邮件的 UID、标志和接收日期。
+ */
+public final class SearchCriteria {
+
+  private static final DateTimeFormatter DATE = new DateTimeFormatterBuilder().parseCaseInsensitive().appendPattern("d-MMM-yyyy")
+      .toFormatter(Locale.ENGLISH);
+
+  private final Key root;
+
+  private SearchCriteria(Key root) {
+    this.root = root;
+  }
+
+  /**
+   * @param criteria SEARCH 命令的参数，可以以 CHARSET 开头
+   * @param index    会话视图的 UID 索引，用于换算序号集合
+   * @throws IllegalArgumentException 语法错误或不支持的条件
+   */
+  public static SearchCriteria parse(String criteria, UidIndex index) {
+    Parser parser = new Parser(tokenize(criteria), index);
+    if (parser.peekIs("CHARSET")) {
+      parser.next();
+      String charset = parser.next();
+      if (!"US-ASCII".equalsIgnoreCase(charset) && !"UTF-8".equalsIgnoreCase(charset)) {
+        throw new IllegalArgumentException("Unsupported charset: " + charset);
+      }
+    }
+    List<Key> keys = new ArrayList<>();
+    while (parser.hasNext()) {
+      keys.add(parser.key());
+    }
+    if (keys.isEmpty()) {
+      throw new IllegalArgumentException("Missing search criteria");
+    }
+    return new SearchCriteria(and(keys));
+  }
+
+  public boolean matches(Email email) {
+    return root.matches(email);
+  }
+
+  private static List<String> tokenize(String s) {
+    List<String> tokens = new ArrayList<>();
+    int i = 0;
+    int n = s.length();
+    while (i < n) {
+      char c = s.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '(' || c == ')') {
+        tokens.add(String.valueOf(c));
+        i++;
+      } else if (c == '"') {
+        int end = s.indexOf('"', i + 1);
+        if (end < 0) {
+          throw new IllegalArgumentException("Unterminated quoted string");
+        }
+        tokens.add(s.substring(i + 1, end));
+        i = end + 1;
+      } else {
+        int start = i;
+        while (i < n && !Character.isWhitespace(s.charAt(i)) && s.charAt(i) != '(' && s.charAt(i) != ')') {
+          i++;
+        }
+        tokens.add(s.substring(start, i));
+      }
+    }
+    return tokens;
+  }
+
+  private static Key and(List<Key> keys) {
+    if (keys.size() == 1) {
+      return keys.get(0);
+    }
+    return e -> {
+      for (Key k : keys) {
+        if (!k.matches(e)) {
+          return false;
+        }
+      }
+      return true;
+    };
+  }
+
+  private static Key flag(String flag, boolean set) {
+    return e -> hasFlag(e, flag) == set;
+  }
+
+  private static boolean hasFlag(Email e, String flag) {
+    for (String f : e.getFlags()) {
+      if (f.equalsIgnoreCase(flag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static LocalDate dateOf(Email e) {
+    return e.getInternalDate() == null ? null : e.getInternalDate().toLocalDate();
+  }
+
+  private interface Key {
+    boolean matches(Email email);
+  }
+
+  private static class Parser {
+    private final List<String> tokens;
+    private final UidIndex index;
+    private int pos;
+
+    Parser(List<String> tokens, UidIndex index) {
+      this.tokens = tokens;
+      this.index = index;
+    }
+
+    boolean hasNext() {
+      return pos < tokens.size();
+    }
+
+    boolean peekIs(String token) {
+      return hasNext() && tokens.get(pos).equalsIgnoreCase(token);
+    }
+
+    String next() {
+      if (!hasNext()) {
+        throw new IllegalArgumentException("Unexpected end of search criteria");
+      }
+      return tokens.get(pos++);
+    }
+
+    Key key() {
+      String token = next();
+      if ("(".equals(token)) {
+        List<Key> keys = new ArrayList<>();
+        while (!peekIs(")")) {
+          keys.add(key());
+        }
+        next();
+        if (keys.isEmpty()) {
+          throw new IllegalArgumentException("Empty search list");
+        }
+        return and(keys);
+      }
+      if (token.isEmpty()) {
+        throw new IllegalArgumentException("Empty search key");
+      }
+      char first = token.charAt(0);
+      if (Character.isDigit(first) || first == '*') {
+        return uidSet(seqsToUids(MessageSet.parse(token)));
+      }
+      switch (token.toUpperCase()) {
+      case "ALL":
+        return e -> true;
+      case "ANSWERED":
+        return flag("\\Answered", true);
+      case "UNANSWERED":
+        return flag("\\Answered", false);
+      case "DELETED":
+        return flag("\\Deleted", true);
+      case "UNDELETED":
+        return flag("\\Deleted", false);
+      case "DRAFT":
+        return flag("\\Draft", true);
+      case "UNDRAFT":
+        return flag("\\Draft", false);
+      case "FLAGGED":
+        return flag("\\Flagged", true);
+      case "UNFLAGGED":
+        return flag("\\Flagged", false);
+      case "SEEN":
+        return flag("\\Seen", true);
+      case "UNSEEN":
+        return flag("\\Seen", false);
+      case "RECENT":
+        return flag("\\Recent", true);
+      case "OLD":
+        return flag("\\Recent", false);
+      case "NEW":
+        return e -> hasFlag(e, "\\Recent") && !hasFlag(e, "\\Seen");
+      case "KEYWORD":
+        return flag(next(), true);
+      case "UNKEYWORD":
+        return flag(next(), false);
+      case "UID":
+        return uidSet(index.toUids(MessageSet.parse(next()), true));
+      case "BEFORE": {
+        LocalDate d = date(next());
+        return e -> dateOf(e) != null && dateOf(e).isBefore(d);
+      }
+      case "ON": {
+        LocalDate d = date(next());
+        return e -> d.equals(dateOf(e));
+      }
+      case "SINCE": {
+        LocalDate d = date(next());
+        return e -> dateOf(e) != null && !dateOf(e).isBefore(d);
+      }
+      case "NOT": {
+        Key k = key();
+        return e -> !k.matches(e);
+      }
+      case "OR": {
+        Key a = key();
+        Key b = key();
+        return e -> a.matches(e) || b.matches(e);
+      }
+      default:
+        throw new IllegalArgumentException("Unsupported search key: " + token);
+      }
+    }
+
+    /**
+     * 序号集合换算为 UID 集合；以 * 结尾时上界保持开放，与 UID 集合一样包含索引建立之后新到的邮件
+     */
+    private MessageSet seqsToUids(MessageSet seqs) {
+      MessageSet uids = index.toUids(seqs, false);
+      if (!seqs.hasStar()) {
+        return uids;
+      }
+      long[] los = Arrays.copyOf(uids.getLos(), uids.rangeCount() + 1);
+      long[] his = Arrays.copyOf(uids.getHis(), uids.rangeCount() + 1);
+      los[los.length - 1] = index.lastUid() + 1;
+      his[his.length - 1] = MessageSet.STAR;
+      return MessageSet.of(los, his);
+    }
+
+    private static Key uidSet(MessageSet uids) {
+      return e -> uids.contains(e.getUid());
+    }
+
+    private static LocalDate date(String s) {
+      try {
+        return LocalDate.parse(s, DATE);
+      } catch (DateTimeParseException e) {
+        throw new IllegalArgumentException("Invalid date: " + s);
+      }
+    }
+  }
+}
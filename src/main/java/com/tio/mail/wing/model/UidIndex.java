@@ -0,0 +1,146 @@
+package com.tio.mail.wing.model;
+
+import java.util.Arrays;
+
+/**
+ * IMAP 会话视图中的 UID 索引：第 i 个元素是序号 i+1 的邮件 UID，严格升序。
+ * SELECT 时从数据库加载一次，之后序号与 UID 的换算、* 的解析都在内存中完成，
+ * 不再为每条命令查询最大 UID 或用窗口函数计算序号。
+ * 实例不可变，刷新时整体替换。
+ */
+public final class UidIndex {
+
+  public static final UidIndex EMPTY = new UidIndex(new long[0]);
+
+  private final long[] uids;
+
+  /**
+   * @param uids 升序排列的 UID，直接持有不复制
+   */
+  public UidIndex(long[] uids) {
+    this.uids = uids;
+  }
+
+  /**
+   * 邮件数，即最大序号
+   */
+  public int size() {
+    return uids.length;
+  }
+
+  public long uidAt(int seq) {
+    return uids[seq - 1];
+  }
+
+  /**
+   * @return 序号，不在索引中时返回 0
+   */
+  public int seqOf(long uid) {
+    int i = Arrays.binarySearch(uids, uid);
+    return i >= 0 ? i + 1 : 0;
+  }
+
+  public long lastUid() {
+    return uids.length == 0 ? 0 : uids[uids.length - 1];
+  }
+
+  /**
+   * 把客户端的消息集合换算为 UID 区间。
+   * 序号区间 [a, b] 对应 UID 区间 [uid(a), uid(b)]：UID 严格升序，区间内不会混入视图之外的邮件，
+   * 超出邮件数的序号忽略。UID 集合中的 n:* 上界保持开放，以包含索引建立之后新到的邮件。
+   */
+  public MessageSet toUids(MessageSet set, boolean isUid) {
+    if (isUid) {
+      return set.resolveStarOpen(lastUid());
+    }
+    if (uids.length == 0) {
+      return MessageSet.EMPTY;
+    }
+    MessageSet seqs = set.resolveStar(uids.length);
+    long[] los = seqs.getLos();
+    long[] his = seqs.getHis();
+    long[] uidLos = new long[los.length];
+    long[] uidHis = new long[los.length];
+    int n = 0;
+    for (int i = 0; i < los.length; i++) {
+      if (los[i] > uids.length) {
+        break;
+      }
+      uidLos[n] = uids[(int) los[i] - 1];
+      uidHis[n] = uids[(int) Math.min(his[i], uids.length) - 1];
+      n++;
+    }
+    return MessageSet.of(Arrays.copyOf(uidLos, n), Arrays.copyOf(uidHis, n));
+  }
+
+  /**
+   * 给定 UID 中位于索引内的序号，降序排列，即逐条发送 EXPUNGE 的顺序：
+   * 先删大序号，前面邮件的序号不受影响
+   */
+  public int[] seqsDescending(MessageSet removed) {
+    int[] seqs = new int[uids.length];
+    int n = 0;
+    for (int i = uids.length - 1; i >= 0; i--) {
+      if (removed.contains(uids[i])) {
+        seqs[n++] = i + 1;
+      }
+    }
+    return Arrays.copyOf(seqs, n);
+  }
+
+  /**
+   * 本索引中不在 newer 里的邮件序号，降序排列，用于刷新索引时补发其它连接造成的 EXPUNGE
+   */
+  public int[] seqsMissingFrom(UidIndex newer) {
+    int[] seqs = new int[uids.length];
+    int n = 0;
+    int j = newer.uids.length - 1;
+    for (int i = uids.length - 1; i >= 0; i--) {
+      while (j >= 0 && newer.uids[j] > uids[i]) {
+        j--;
+      }
+      if (j < 0 || newer.uids[j] != uids[i]) {
+        seqs[n++] = i + 1;
+      }
+    }
+    return Arrays.copyOf(seqs, n);
+  }
+
+  /**
+   * 本索引中不在 newer 里的 UID
+   */
+  public MessageSet uidsMissingFrom(UidIndex newer) {
+    int[] seqs = seqsMissingFrom(newer);
+    long[] missing = new long[seqs.length];
+    for (int i = 0; i < seqs.length; i++) {
+      missing[seqs.length - 1 - i] = uids[seqs[i] - 1];
+    }
+    return MessageSet.ofSorted(missing, missing.length);
+  }
+
+  /**
+   * 追加一封新投递的邮件后的新索引；uid 不大于 lastUid 时（已在索引中，或重新加载的索引已包含它）返回本索引
+   */
+  public UidIndex append(long uid) {
+    if (uid <= lastUid()) {
+      return this;
+    }
+    long[] grown = Arrays.copyOf(uids, uids.length + 1);
+    grown[uids.length] = uid;
+    return new UidIndex(grown);
+  }
+
+  /**
+   * 去掉给定 UID 后的新索引
+   */
+  public UidIndex remove(MessageSet removed) {
+    long[] kept = new long[uids.length];
+    int n = 0;
+    for (long uid : uids) {
+      if (!removed.contains(uid)) {
+        kept[n++] = uid;
+      }
+    }
+    return n == uids.length ? this : new UidIndex(Arrays.copyOf(kept, n));
+  }
+}
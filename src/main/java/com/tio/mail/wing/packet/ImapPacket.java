@@ -1,16 +1,57 @@
 package com.tio.mail.wing.packet;
 
+import java.util.List;
+
 import com.litongjava.aio.Packet;
 
 @SuppressWarnings("serial")
 public class ImapPacket extends Packet {
   private String line;
 
+  /**
+   * COMPRESS=DEFLATE 生效后，一次解压可能得到多行命令，按顺序放在这里
+   */
+  private List<String> lines;
+
+  /**
+   * 为 true 时该包按明文发出，发出后连接的出站数据切换为 deflate 压缩
+   */
+  private boolean startCompression;
+
+  /**
+   * 为 true 时该包发出后关闭连接（LOGOUT）
+   */
+  private boolean closeAfterSend;
+
   public ImapPacket(String line) {
     this.line = line;
   }
 
+  public ImapPacket(List<String> lines) {
+    this.lines = lines;
+  }
+
   public String getLine() {
     return line;
   }
-}
\ No newline at end of file
+
+  public List<String> getLines() {
+    return lines;
+  }
+
+  public boolean isStartCompression() {
+    return startCompression;
+  }
+
+  public void setStartCompression(boolean startCompression) {
+    this.startCompression = startCompression;
+  }
+
+  public boolean isCloseAfterSend() {
+    return closeAfterSend;
+  }
+
+  public void setCloseAfterSend(boolean closeAfterSend) {
+    this.closeAfterSend = closeAfterSend;
+  }
+}
@@ -4,6 +4,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -11,8 +12,10 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.litongjava.jfinal.aop.Aop;
+import com.tio.mail.wing.handler.ImapPipeline;
 import com.tio.mail.wing.handler.ImapSessionContext;
 import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.model.MessageSet;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -24,6 +27,8 @@ public class ImapFetchService {
   private static final Pattern UID_FETCH_PATTERN = Pattern.compile("([\\d\\*:,\\-]+)\\s+\\((.*)\\)", Pattern.CASE_INSENSITIVE);
 
   private final MailService mailboxService = Aop.get(MailService.class);
+  private final MailBodyService mailBodyService = Aop.get(MailBodyService.class);
+  private final ImapService imapService = Aop.get(ImapService.class);
 
   public String handleFetch(ImapSessionContext session, String tag, String args, boolean isUid) {
     if (session.getState() != ImapSessionContext.State.SELECTED) {
@@ -34,46 +39,62 @@ public class ImapFetchService {
       return tag + " BAD Invalid FETCH arguments: " + args + "\r\n";
     }
 
-    String user = session.getUsername();
     Long userId = session.getUserId();
-    String box = session.getSelectedMailbox();
     Long mailBoxId = session.getSelectedMailboxId();
     String set = m.group(1);
     String items = m.group(2).toUpperCase();
-    log.info("userId:{},mailBoxId:{},args:{},set:{},items:{}", userId, mailBoxId, args, set, items);
+    log.debug("userId:{},mailBoxId:{},args:{},set:{},items:{}", userId, mailBoxId, args, set, items);
     
-    List<Email> toFetch = null;
-    if (isUid) {
-      toFetch = mailboxService.findEmailsByUidSet(user, box, set);
-    } else {
-      toFetch = mailboxService.findEmailsBySeqSet(user, box, set);
+    MessageSet uids;
+    try {
+      uids = imapService.resolveMessageSet(session, set, isUid);
+    } catch (IllegalArgumentException e) {
+      return tag + " BAD Invalid message set: " + set + "\r\n";
+    }
+    // 还未以 EXISTS 告知客户端的新邮件不返回，也不隐式设置 \Seen
+    List<Email> toFetch = new ArrayList<>();
+    for (Email e : mailboxService.findEmailsByUids(mailBoxId, uids)) {
+      int seq = imapService.seqOf(session, e.getUid());
+      if (seq > 0) {
+        e.setSequenceNumber(seq);
+        toFetch.add(e);
+      }
     }
 
     StringBuilder sb = new StringBuilder();
-    if (toFetch == null || toFetch.isEmpty()) {
+    if (toFetch.isEmpty()) {
       sb.append(tag).append(" OK FETCH completed.\r\n");
       return sb.toString();
     }
 
+    Set<Long> seenChanged = Collections.emptySet();
     if (items.equalsIgnoreCase("FLAGS") || items.equalsIgnoreCase("UID FLAGS")) {
       //UID fetch 1:* (FLAGS)
       sb = fetchFlags(userId, mailBoxId, items, isUid, toFetch);
 
     } else if (items.contains("BODY.PEEK[]")) {
+      mailBodyService.loadBodies(toFetch);
       sb = fetchBodyPeek(userId, mailBoxId, items, isUid, toFetch);
 
     } else if (items.contains("BODY[]")) {
-      sb = fetchBody(userId, mailBoxId, items, isUid, toFetch);
+      mailBodyService.loadBodies(toFetch);
+      seenChanged = markSeen(session, items, toFetch);
+      sb = fetchBody(userId, mailBoxId, items, isUid, toFetch, seenChanged);
     } else {
       Matcher b = BODY_FETCH_PATTERN.matcher(items);
       if (b.find()) {
         //UID fetch 1:6 (UID RFC822.SIZE FLAGS BODY.PEEK[HEADER.FIELDS (From To Cc Bcc Subject Date Message-ID Priority X-Priority References Newsgroups In-Reply-To Content-Type Reply-To)])
         String partToken = b.group(0);
         partToken = partToken.replace("BODY.PEEK", "BODY");
-        sb = fetchHeader(userId, mailBoxId, items, isUid, partToken, toFetch);
+        mailBodyService.loadBodies(toFetch);
+        seenChanged = markSeen(session, items, toFetch);
+        sb = fetchHeader(userId, mailBoxId, items, isUid, partToken, toFetch, seenChanged);
       }
     }
 
+    // 整条命令的隐式 \Seen 一次写入
+    mailboxService.addFlag(seenChanged, "\\Seen");
+
     sb.append(tag).append(" OK FETCH completed.\r\n");
     return sb.toString();
   }
@@ -81,12 +102,11 @@ public class ImapFetchService {
   private StringBuilder fetchFlags(Long userId, Long mailBoxId, String items, boolean isUid, List<Email> toFetch) {
 
     StringBuilder sb = new StringBuilder();
-    List<Long> allUids = mailboxService.listUids(userId, mailBoxId);
 
     for (int i = 0; i < toFetch.size(); i++) {
 
       Email e = toFetch.get(i);
-      int seq = allUids.indexOf(e.getUid()) + 1;
+      int seq = e.getSequenceNumber();
 
       List<String> parts = new ArrayList<>();
       parts.add("UID " + e.getUid());
@@ -104,19 +124,18 @@ public class ImapFetchService {
     return sb;
   }
 
-  private StringBuilder fetchHeader(Long userId, Long mailBoxId, String items, boolean isUid, String partToken, List<Email> toFetch) {
+  private StringBuilder fetchHeader(Long userId, Long mailBoxId, String items, boolean isUid, String partToken, List<Email> toFetch, Set<Long> seenChanged) {
     StringBuilder sb = new StringBuilder();
-    List<Long> allUids = mailboxService.listUids(userId, mailBoxId);
     for (int i = 0; i < toFetch.size(); i++) {
       Email e = toFetch.get(i);
-      int seq = allUids.indexOf(e.getUid()) + 1;
+      int seq = e.getSequenceNumber();
 
       // 先把整封 raw byte[] 读出来，用于大小计算
       String rawContent = e.getRawContent();
       byte[] raw = rawContent.getBytes(StandardCharsets.UTF_8);
       int fullSize = raw.length;
 
-      String prefix = prefixLine(seq, isUid, items, fullSize, e);
+      String prefix = prefixLine(seq, isUid, items, fullSize, e, seenChanged.contains(e.getId()));
 
       String hdr = parseHeaderFields(rawContent, EMAIL_HEADER_FIELDS);
       byte[] hdrBytes = hdr.getBytes(StandardCharsets.UTF_8);
@@ -128,21 +147,19 @@ public class ImapFetchService {
     return sb;
   }
 
-  private StringBuilder fetchBody(Long userId, Long mailBoxId, String items, boolean isUid, List<Email> toFetch) {
+  private StringBuilder fetchBody(Long userId, Long mailBoxId, String items, boolean isUid, List<Email> toFetch, Set<Long> seenChanged) {
     StringBuilder sb = new StringBuilder();
-    List<Long> allUids = mailboxService.listUids(userId, mailBoxId);
     for (int i = 0; i < toFetch.size(); i++) {
       Email e = toFetch.get(i);
-      int seq = allUids.indexOf(e.getUid()) + 1;
+      int seq = e.getSequenceNumber();
 
       // 先把整封 raw byte[] 读出来，用于大小计算
       String rawContent = e.getRawContent();
       byte[] raw = rawContent.getBytes(StandardCharsets.UTF_8);
       int fullSize = raw.length;
 
-      String prefix = prefixLine(seq, isUid, items, fullSize, e);
+      String prefix = prefixLine(seq, isUid, items, fullSize, e, seenChanged.contains(e.getId()));
 
-      mailboxService.storeFlags(e.getId(), Collections.singleton("\\Seen"), true);
       sb.append(prefix);
       sb.append(" BODY[] {").append(fullSize).append("}\r\n");
       sb.append(rawContent);
@@ -154,17 +171,16 @@ public class ImapFetchService {
 
   private StringBuilder fetchBodyPeek(Long userId, Long mailBoxId, String items, boolean isUid, List<Email> toFetch) {
     StringBuilder sb = new StringBuilder();
-    List<Long> allUids = mailboxService.listUids(userId, mailBoxId);
     for (int i = 0; i < toFetch.size(); i++) {
 
       Email e = toFetch.get(i);
-      int seq = allUids.indexOf(e.getUid()) + 1;
+      int seq = e.getSequenceNumber();
       // 先把整封 raw byte[] 读出来，用于大小计算
       String rawContent = e.getRawContent();
       byte[] raw = rawContent.getBytes(StandardCharsets.UTF_8);
       int fullSize = raw.length;
 
-      String prefix = prefixLine(seq, isUid, items, fullSize, e);
+      String prefix = prefixLine(seq, isUid, items, fullSize, e, false);
 
       sb.append(prefix);
       sb.append(" BODY[] {").append(fullSize).append("}\r\n");
@@ -174,8 +190,30 @@ public class ImapFetchService {
     return sb;
   }
 
+  /**
+   * 不带 .PEEK 的正文读取隐式设置 \Seen (RFC 3501 6.4.5)。
+   * 这里只更新内存中的标志用于本次响应，命令结束时再把涉及的邮件一次写入数据库。
+   *
+   * @return 标志被改变的邮件 ID
+   */
+  private Set<Long> markSeen(ImapSessionContext session, String items, List<Email> toFetch) {
+    if (session.isReadOnly() || !ImapPipeline.setsSeenFlag(items)) {
+      return Collections.emptySet();
+    }
+    Set<Long> changed = new HashSet<>();
+    for (Email e : toFetch) {
+      if (e.getFlags() == null) {
+        e.setFlags(new HashSet<>());
+      }
+      if (e.getFlags().add("\\Seen")) {
+        changed.add(e.getId());
+      }
+    }
+    return changed;
+  }
+
   //* 1 FETCH (UID 1 RFC822.SIZE 262 FLAGS (\Seen) BODY[HEADER.FIELDS (FROM TO CC BCC SUBJECT DATE MESSAGE-ID PRIORITY X-PRIORITY REFERENCES NEWSGROUPS IN-REPLY-TO CONTENT-TYPE REPLY-TO)] {211}
-  private String prefixLine(int seq, boolean isUid, String items, int fullSize, Email email) {
+  public String prefixLine(int seq, boolean isUid, String items, int fullSize, Email email, boolean flagsChanged) {
     // 按 固定顺序 UID → RFC822.SIZE → FLAGS 构造 parts 列表
     List<String> parts = new ArrayList<>();
     if (isUid || items.contains("UID")) {
@@ -184,7 +222,8 @@ public class ImapFetchService {
     if (items.contains("RFC822.SIZE")) {
       parts.add("RFC822.SIZE " + fullSize);
     }
-    if (items.contains("FLAGS")) {
+    // 标志因本次 FETCH 改变时，即使客户端没有请求也要返回 FLAGS
+    if (items.contains("FLAGS") || flagsChanged) {
       Set<String> flags = email.getFlags();
       if (flags != null) {
         parts.add("FLAGS (" + String.join(" ", flags) + ")");
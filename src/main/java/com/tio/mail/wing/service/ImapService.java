@@ -1,19 +1,29 @@
 package com.tio.mail.wing.service;
 
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import com.litongjava.db.activerecord.Row;
 import com.litongjava.jfinal.aop.Aop;
 import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.Tio;
 import com.litongjava.tio.utils.base64.Base64Utils;
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.litongjava.tio.utils.lock.SetWithLock;
+import com.tio.mail.wing.config.ImapServerConfig;
 import com.tio.mail.wing.consts.MailBoxName;
+import com.tio.mail.wing.consts.StoreMode;
+import com.tio.mail.wing.handler.ImapDeflateCodec;
+import com.tio.mail.wing.handler.ImapPipeline;
 import com.tio.mail.wing.handler.ImapSessionContext;
 import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.model.SearchCriteria;
+import com.tio.mail.wing.model.UidIndex;
+import com.tio.mail.wing.packet.ImapPacket;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -24,27 +34,40 @@ public class ImapService {
   private final MailService mailService = Aop.get(MailService.class);
   private MailBoxService mailBoxService = Aop.get(MailBoxService.class);
 
+  private final boolean compressEnabled = EnvUtils.getBoolean("mail.server.imap.compress.enabled", true);
+  private final int compressLevel = EnvUtils.getInt("mail.server.imap.compress.level", 6);
+
   /**
    * EXPUNGE: 逻辑删除并通知客户端
    */
   public String handleExpunge(ImapSessionContext session, String tag) {
-    String username = session.getUsername();
-    String mailbox = session.getSelectedMailbox();
-    StringBuilder sb = new StringBuilder();
-
-    // 查询所有待 EXPUNGE 的 seq_num
-    List<Integer> seqs = mailService.getExpungeSeqNums(username, mailbox);
-    // 逻辑删除数据
-    mailService.expunge(username, mailbox);
+    return expunge(session, tag, MessageSet.ALL, "EXPUNGE");
+  }
 
-    // 通知客户端
-    for (int seq : seqs) {
+  /**
+   * 删除 uids 中带 \Deleted 的邮件。序号由会话的 UID 索引换算，按降序逐条发送 EXPUNGE，
+   * 同一用户选中该邮箱的其它连接也会收到通知
+   */
+  private String expunge(ImapSessionContext session, String tag, MessageSet uids, String command) {
+    if (session.isReadOnly()) {
+      return tag + " NO " + command + " failed: Mailbox is read-only\r\n";
+    }
+    StringBuilder sb = new StringBuilder();
+    MessageSet removed = expungeDeleted(session, uids);
+    UidIndex index = uidIndex(session);
+    for (int seq : index.seqsDescending(removed)) {
       sb.append("* ").append(seq).append(" EXPUNGE").append("\r\n");
     }
-    sb.append(tag).append(" OK EXPUNGE completed.").append("\r\n");
+    session.setUidIndex(index.remove(removed));
+    notifyExpunged(session.getUserId(), session.getSelectedMailboxId(), removed);
+    sb.append(tag).append(" OK ").append(command).append(" completed.").append("\r\n");
     return sb.toString();
   }
 
+  private MessageSet expungeDeleted(ImapSessionContext session, MessageSet uids) {
+    return mailService.expungeDeleted(session.getUserId(), session.getSelectedMailbox(), session.getSelectedMailboxId(), uids);
+  }
+
   /**
    * CREATE: 在数据库中创建新邮箱目录
    */
@@ -79,11 +102,29 @@ public class ImapService {
 
   public String handleCapability(String tag) {
     StringBuilder sb = new StringBuilder();
-    sb.append("* CAPABILITY IMAP4rev1 AUTH=LOGIN AUTH=PLAIN IDLE UIDPLUS ID LITERAL+ MOVE").append("\r\n");
+    sb.append("* CAPABILITY IMAP4rev1 AUTH=LOGIN AUTH=PLAIN IDLE UIDPLUS ID LITERAL+ MOVE");
+    if (compressEnabled) {
+      sb.append(" COMPRESS=DEFLATE");
+    }
+    sb.append("\r\n");
     sb.append(tag).append(" OK CAPABILITY").append("\r\n");
     return sb.toString();
   }
 
+  /**
+   * COMPRESS DEFLATE (RFC 4978): 创建会话级压缩器，OK 响应发出后连接双向压缩
+   */
+  public String handleCompress(ImapSessionContext session, String tag, String args) {
+    if (!compressEnabled || !"DEFLATE".equalsIgnoreCase(args.trim())) {
+      return tag + " BAD Unsupported compression mechanism\r\n";
+    }
+    if (session.getCompressCodec() != null) {
+      return tag + " NO [COMPRESSIONACTIVE] DEFLATE active via COMPRESS\r\n";
+    }
+    session.setCompressCodec(new ImapDeflateCodec(compressLevel));
+    return tag + " OK DEFLATE active\r\n";
+  }
+
   public String handleId(String tag) {
     StringBuilder sb = new StringBuilder();
     sb.append("* ID (\"name\" \"tio-mail-wing\")").append("\r\n");
@@ -91,8 +132,189 @@ public class ImapService {
     return sb.toString();
   }
 
-  public String handleIdle() {
-    return "+ idling" + "\r\n";
+  /**
+   * 进入 IDLE，先发出已排队的 EXPUNGE；IDLE 期间其它连接的删除由 notifyExpunged 提交到流水线发出
+   */
+  public String handleIdle(ImapSessionContext session, String tag) {
+    session.setIdleTag(tag);
+    return "+ idling" + "\r\n" + flushExpunges(session);
+  }
+
+  /**
+   * IDLE 期间客户端发送 DONE，完成 IDLE 命令
+   */
+  public String handleIdleDone(ImapSessionContext session) {
+    String tag = session.getIdleTag();
+    session.setIdleTag(null);
+    return pollMailbox(session) + tag + " OK IDLE terminated.\r\n";
+  }
+
+  public String handleNoop(ImapSessionContext session, String tag) {
+    return pollMailbox(session) + tag + " OK NOOP completed.\r\n";
+  }
+
+  public String handleCheck(ImapSessionContext session, String tag) {
+    return pollMailbox(session) + tag + " OK CHECK completed.\r\n";
+  }
+
+  /**
+   * 刷新已选邮箱的 UID 索引，与客户端当前视图比较：
+   * 被其它连接删除的邮件按降序逐条返回 EXPUNGE，之后有未通知过的新邮件时返回 EXISTS 和 RECENT
+   */
+  private String pollMailbox(ImapSessionContext session) {
+    if (session.getState() != ImapSessionContext.State.SELECTED) {
+      return "";
+    }
+    UidIndex old = session.getUidIndex();
+    // 重新加载的索引已反映排队的删除，下面的比较会一并发出
+    session.getPendingExpunges().clear();
+    UidIndex index = refreshUidIndex(session);
+    if (old == null) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder();
+    int[] expunged = old.seqsMissingFrom(index);
+    for (int seq : expunged) {
+      sb.append("* ").append(seq).append(" EXPUNGE\r\n");
+    }
+    int added = index.size() - (old.size() - expunged.length);
+    if (added > 0) {
+      session.setRecentCount(session.getRecentCount() + added);
+      sb.append("* ").append(index.size()).append(" EXISTS\r\n");
+      sb.append("* ").append(session.getRecentCount()).append(" RECENT\r\n");
+    }
+    return sb.toString();
+  }
+
+  public UidIndex refreshUidIndex(ImapSessionContext session) {
+    UidIndex index = mailService.loadUidIndex(session.getSelectedMailboxId());
+    session.setUidIndex(index);
+    return index;
+  }
+
+  /**
+   * 其它连接或协议（如 POP3 QUIT）删除了邮件后调用。变更只记入同一用户选中该邮箱的 IMAP 会话，
+   * 不在调用方线程上改写其它会话的 UID 索引或写出响应：RFC 3501 7.4.1 不允许在 FETCH、STORE、SEARCH 期间发送 EXPUNGE。
+   * 处于 IDLE 的会话由自己的流水线立即发出，其它会话在下一次 NOOP、CHECK 或 IDLE 时发出
+   */
+  public void notifyExpunged(Long userId, long mailboxId, MessageSet uids) {
+    if (uids.isEmpty()) {
+      return;
+    }
+    forEachSelected(userId, mailboxId, (session, pipeline) -> {
+      session.getPendingExpunges().add(uids);
+      if (session.getIdleTag() != null && pipeline != null) {
+        pipeline.submitTask("IDLE EXPUNGE", () -> {
+          // 任务执行前客户端可能已发送 DONE，此时交给 pollMailbox
+          String reply = session.getIdleTag() != null ? flushExpunges(session) : "";
+          return reply.isEmpty() ? null : new ImapPacket(reply);
+        });
+      }
+    });
+  }
+
+  /**
+   * 新邮件投递到邮箱后调用。和 notifyExpunged 一样不在调用方线程上改写会话：
+   * 同一用户选中该邮箱的会话由自己的流水线把 UID 追加到索引，并按索引发出 EXISTS 和 RECENT，
+   * 之后的序号命令（FETCH 11、FETCH 1:*、STORE）都能访问到新邮件。
+   * 任务被拒绝时不发送，下一次 NOOP、CHECK 或 IDLE 结束时由 pollMailbox 补发
+   */
+  public void notifyAppended(Long userId, long mailboxId, long uid) {
+    forEachSelected(userId, mailboxId, (session, pipeline) -> {
+      if (pipeline != null) {
+        pipeline.submitTask("EXISTS", () -> {
+          String reply = appendToView(session, mailboxId, uid);
+          return reply.isEmpty() ? null : new ImapPacket(reply);
+        });
+      }
+    });
+  }
+
+  private void forEachSelected(Long userId, long mailboxId, BiConsumer<ImapSessionContext, ImapPipeline> action) {
+    SetWithLock<ChannelContext> channelContexts = Tio.getByUserId(ImapServerConfig.serverTioConfig, userId.toString());
+    if (channelContexts == null) {
+      return;
+    }
+    Set<ChannelContext> ctxs = channelContexts.getObj();
+    if (ctxs == null) {
+      return;
+    }
+    for (ChannelContext ctx : ctxs) {
+      ImapSessionContext session = (ImapSessionContext) ctx.get("sessionContext");
+      if (session == null || session.getState() != ImapSessionContext.State.SELECTED) {
+        continue;
+      }
+      Long selected = session.getSelectedMailboxId();
+      if (selected == null || selected != mailboxId) {
+        continue;
+      }
+      action.accept(session, (ImapPipeline) ctx.get("imapPipeline"));
+    }
+  }
+
+  /**
+   * 把新邮件追加到会话的 UID 索引，返回 EXISTS 和 RECENT。只在会话的流水线上以屏障方式调用；
+   * 任务执行前会话可能已经切换邮箱，或 NOOP 重新加载的索引已包含该邮件，此时不输出。
+   * EXISTS 取自索引而不是重新统计数据库：排队中尚未发出 EXPUNGE 的邮件仍在索引里，数目不会小于客户端的视图
+   */
+  private String appendToView(ImapSessionContext session, long mailboxId, long uid) {
+    Long selected = session.getSelectedMailboxId();
+    UidIndex index = session.getUidIndex();
+    if (session.getState() != ImapSessionContext.State.SELECTED || selected == null || selected != mailboxId || index == null) {
+      return "";
+    }
+    UidIndex grown = index.append(uid);
+    if (grown == index) {
+      return "";
+    }
+    session.setUidIndex(grown);
+    session.setRecentCount(session.getRecentCount() + 1);
+    return "* " + grown.size() + " EXISTS\r\n* " + session.getRecentCount() + " RECENT\r\n";
+  }
+
+  /**
+   * 取出排队的删除，按降序返回 EXPUNGE 并同步更新会话的 UID 索引。只在会话的流水线上以屏障方式调用
+   */
+  private String flushExpunges(ImapSessionContext session) {
+    UidIndex index = session.getUidIndex();
+    StringBuilder sb = new StringBuilder();
+    MessageSet uids;
+    while ((uids = session.getPendingExpunges().poll()) != null) {
+      if (index == null) {
+        continue;
+      }
+      for (int seq : index.seqsDescending(uids)) {
+        sb.append("* ").append(seq).append(" EXPUNGE\r\n");
+      }
+      index = index.remove(uids);
+    }
+    if (index != null) {
+      session.setUidIndex(index);
+    }
+    return sb.toString();
+  }
+
+  private UidIndex uidIndex(ImapSessionContext session) {
+    UidIndex index = session.getUidIndex();
+    return index != null ? index : refreshUidIndex(session);
+  }
+
+  /**
+   * 把客户端的序号或 UID 集合解析并换算为 UID 集合
+   *
+   * @throws IllegalArgumentException 集合语法错误
+   */
+  public MessageSet resolveMessageSet(ImapSessionContext session, String set, boolean isUid) {
+    return uidIndex(session).toUids(MessageSet.parse(set), isUid);
+  }
+
+  /**
+   * 邮件在会话视图中的序号，只查内存中的 UID 索引。
+   * 新邮件由 notifyAppended 提交的任务加入索引，之前数据库里已有、但还未以 EXISTS 告知客户端的邮件返回 0，
+   * 调用方不为它输出 FETCH 响应 (RFC 3501 7.4.1)
+   */
+  public int seqOf(ImapSessionContext session, long uid) {
+    return uidIndex(session).seqOf(uid);
   }
 
   public String handleAuthenticate(ImapSessionContext session, String tag, String mech) {
@@ -134,7 +356,7 @@ public class ImapService {
           user = session.getUsername();
           pass = decoded;
         }
-        Long userId = userService.authenticate(user, pass);
+        Long userId = userService.authenticate(user, pass, session.getClientIp());
         if (userId != null) {
           session.setUsername(user);
           session.setUserId(userId);
@@ -155,19 +377,20 @@ public class ImapService {
     return sb.toString();
   }
 
-  public String handleLogin(ImapSessionContext session, String tag, String args) {
+  public String handleLogin(ImapSessionContext session, String tag, String args, ChannelContext channelContext) {
     String[] parts = args.split("\\s+", 2);
     if (parts.length < 2) {
       return tag + " BAD login arguments invalid" + "\r\n";
     }
     String user = unquote(parts[0]);
     String pass = unquote(parts[1]);
-    Long userId = userService.authenticate(user, pass);
+    Long userId = userService.authenticate(user, pass, session.getClientIp());
     if (userId != null) {
       session.setUsername(user);
       session.setUserId(userId);
 
       session.setState(ImapSessionContext.State.AUTHENTICATED);
+      Tio.bindUserId(channelContext, userId.toString());
       return tag + " OK LOGIN completed." + "\r\n";
     } else {
       return tag + " NO LOGIN failed: Authentication failed" + "\r\n";
@@ -179,10 +402,15 @@ public class ImapService {
       Long selectedMailboxId = session.getSelectedMailboxId();
 
       mailService.clearRecentFlags(selectedMailboxId);
-      mailService.expunge(session.getUsername(), session.getSelectedMailbox());
+      if (!session.isReadOnly()) {
+        MessageSet removed = expungeDeleted(session, MessageSet.ALL);
+        session.setUidIndex(null);
+        notifyExpunged(session.getUserId(), selectedMailboxId, removed);
+      }
 
       session.setSelectedMailbox(null);
       session.setSelectedMailboxId(null);
+      session.setUidIndex(null);
     }
     StringBuilder sb = new StringBuilder();
     sb.append("* BYE tio-mail-wing IMAP4rev1 server signing off").append("\r\n");
@@ -206,7 +434,10 @@ public class ImapService {
     }
     session.setSelectedMailbox(mailbox);
     session.setSelectedMailboxId(mailBoxId);
+    session.setReadOnly(readOnly);
     session.setState(ImapSessionContext.State.SELECTED);
+    session.getPendingExpunges().clear();
+    refreshUidIndex(session);
 
     Row meta = mailBoxService.getMailboxById(userId, mailBoxId);
     if (meta == null) {
@@ -239,7 +470,8 @@ public class ImapService {
 
     long uv = meta.getLong("uid_next");
     long un = meta.getLong("uid_validity");
-    log.info("exists:{},recent:{},uv:{},un:{}", exists, recent, uv, un);
+    log.debug("exists:{},recent:{},uv:{},un:{}", exists, recent, uv, un);
+    session.setRecentCount(recent);
 
     sb.append("* FLAGS (\\Answered \\Flagged \\Deleted \\Seen \\Draft)").append("\r\n");
     sb.append("* OK [PERMANENTFLAGS (\\Answered \\Flagged \\Deleted \\Seen \\Draft \\*)] Flags permitted.").append("\r\n");
@@ -272,30 +504,34 @@ public class ImapService {
       return tag + " BAD Invalid STORE arguments" + "\r\n";
     }
     String set = p[0];
-    String op = p[1];
-    String flagsStr = p[2].replaceAll("[()]", "");
-    boolean add = op.startsWith("+");
-    Set<String> addFlags = new HashSet<>(Arrays.asList(flagsStr.split("\\s+")));
-
-    Long selectedMailboxId = session.getSelectedMailboxId();
+    StoreMode mode = StoreMode.of(p[1]);
+    if (mode == null) {
+      return tag + " BAD Invalid STORE data item" + "\r\n";
+    }
+    boolean silent = p[1].toUpperCase().endsWith(".SILENT");
+    Set<String> flags = new LinkedHashSet<>();
+    for (String flag : p[2].replaceAll("[()]", "").split("\\s+")) {
+      if (!flag.isEmpty()) {
+        flags.add(flag);
+      }
+    }
 
-    List<Email> toUpd = null;
-    if (isUid) {
-      toUpd = mailService.findEmailsByUidSet(selectedMailboxId, set);
-    } else {
-      toUpd = mailService.findEmailsBySeqSet(selectedMailboxId, set);
+    MessageSet uids;
+    try {
+      uids = resolveMessageSet(session, set, isUid);
+    } catch (IllegalArgumentException e) {
+      return tag + " BAD Invalid message set" + "\r\n";
     }
+    List<Email> updated = mailService.storeFlags(session.getSelectedMailboxId(), uids, mode, flags, silent);
 
     StringBuilder sb = new StringBuilder();
-    for (Email e : toUpd) {
-      mailService.storeFlags(e.getId(), addFlags, add);
-      if (!op.contains(".SILENT")) {
-        Set<String> flags = e.getFlags();
-        flags.addAll(addFlags);
-        String f = String.join(" ", flags);
-        int seq = toUpd.indexOf(e) + 1;
-        sb.append("* ").append(seq).append(" FETCH (FLAGS (" + f + ") UID " + e.getUid() + ")").append("\r\n");
+    for (Email e : updated) {
+      int seq = seqOf(session, e.getUid());
+      if (seq == 0) {
+        continue;
       }
+      sb.append("* ").append(seq).append(" FETCH (FLAGS (").append(String.join(" ", e.getFlags()));
+      sb.append(") UID ").append(e.getUid()).append(")\r\n");
     }
     sb.append(tag).append(" OK STORE completed.").append("\r\n");
     return sb.toString();
@@ -319,27 +555,50 @@ public class ImapService {
     case "MOVE":
       return handleMove(session, tag, sub, true);
     case "SEARCH":
-      return handleSearch(session, tag, sub, parts);
+      return handleSearch(session, tag, sub, true);
+    case "EXPUNGE":
+      // UIDPLUS (RFC 4315)：只删除给定 UID 集合中带 \Deleted 的邮件
+      MessageSet uids;
+      try {
+        uids = resolveMessageSet(session, sub.trim(), true);
+      } catch (IllegalArgumentException e) {
+        return tag + " BAD Invalid UID set\r\n";
+      }
+      return expunge(session, tag, uids, "UID EXPUNGE");
     default:
       return tag + " BAD Unsupported UID command: " + cmd + "\r\n";
     }
   }
 
-  private String handleSearch(ImapSessionContext session, String tag, String criteria, String[] parts) {
-    // parts[1] 可能是 "1:4 NOT DELETED"，我们只取 "1:4"
-    String setSpec = criteria.split("\\s+", 2)[0]; // "1:4"
-
-    // 直接复用 findEmailsByUidSet
-    List<Email> matches = mailService.findEmailsByUidSet(session.getSelectedMailboxId(), setSpec);
+  /**
+   * SEARCH / UID SEARCH：在存储中尚未 EXPUNGE 的邮件上匹配条件，序号集合按会话视图换算。
+   * 会话索引建立之后新到的邮件没有序号，只出现在 UID SEARCH 的结果中
+   */
+  public String handleSearch(ImapSessionContext session, String tag, String criteria, boolean isUid) {
+    String command = isUid ? "UID SEARCH" : "SEARCH";
+    if (session.getState() != ImapSessionContext.State.SELECTED) {
+      return tag + " NO " + command + " failed: No mailbox selected\r\n";
+    }
+    UidIndex index = uidIndex(session);
+    SearchCriteria search;
+    try {
+      search = SearchCriteria.parse(criteria, index);
+    } catch (IllegalArgumentException e) {
+      return tag + " BAD " + command + " failed: " + e.getMessage() + "\r\n";
+    }
 
-    // 构造 SEARCH 响应
     StringBuilder sb = new StringBuilder();
     sb.append("* SEARCH");
-    for (Email e : matches) {
-      sb.append(" ").append(e.getUid());
+    for (Email e : mailService.listSearchCandidates(session.getSelectedMailboxId())) {
+      // 还未以 EXISTS 告知客户端的新邮件不返回
+      int seq = index.seqOf(e.getUid());
+      if (seq == 0 || !search.matches(e)) {
+        continue;
+      }
+      sb.append(" ").append(isUid ? e.getUid() : seq);
     }
     sb.append("\r\n");
-    sb.append(tag).append(" OK UID SEARCH completed.\r\n");
+    sb.append(tag).append(" OK ").append(command).append(" completed.\r\n");
     return sb.toString();
   }
 
@@ -357,16 +616,20 @@ public class ImapService {
     String set = p[0];
     String destMailbox = unquote(p[1]);
     Long userId = session.getUserId();
-    String srcMailbox = session.getSelectedMailbox();
     try {
-      mailService.moveEmailsByUidSet(userId, srcMailbox, set, destMailbox);
-      return tag + " OK MOVE completed.\r\n";
+      MessageSet uids = resolveMessageSet(session, set, isUid);
+      UidIndex before = uidIndex(session);
+      mailService.moveEmails(userId, session.getSelectedMailboxId(), uids, destMailbox);
+      // 移走的邮件按降序发送 EXPUNGE (RFC 6851)，选中该邮箱的其它连接也会收到
+      String expunges = pollMailbox(session);
+      notifyExpunged(userId, session.getSelectedMailboxId(), before.uidsMissingFrom(session.getUidIndex()));
+      return expunges + tag + " OK MOVE completed.\r\n";
     } catch (Exception e) {
       return tag + " NO MOVE failed: " + e.getMessage() + "\r\n";
     }
   }
 
-  private String handleCopy(ImapSessionContext session, String tag, String args, boolean b) {
+  private String handleCopy(ImapSessionContext session, String tag, String args, boolean isUid) {
     if (session.getState() != ImapSessionContext.State.SELECTED) {
       return tag + " NO COPY failed: No mailbox selected\r\n";
     }
@@ -378,11 +641,10 @@ public class ImapService {
     String set = p[0];
     String destMailbox = unquote(p[1]);
     String user = session.getUsername();
-    String srcMailbox = session.getSelectedMailbox();
 
     try {
-      // 调用新加的接口
-      mailService.copyEmailsByUidSet(user, srcMailbox, set, destMailbox);
+      MessageSet uids = resolveMessageSet(session, set, isUid);
+      mailService.copyEmails(user, session.getSelectedMailboxId(), uids, destMailbox);
       return tag + " OK COPY completed.\r\n";
     } catch (Exception e) {
       return tag + " NO COPY failed: " + e.getMessage() + "\r\n";
@@ -397,25 +659,21 @@ public class ImapService {
       return tag + " BAD CLOSE failed: No mailbox selected\r\n";
     }
 
-    String user = session.getUsername();
-    String box = session.getSelectedMailbox();
-
-    // 1) 找出待 expunge 的 seq nums，发出 untagged EXPUNGE
-    List<Integer> seqs = mailService.getExpungeSeqNums(user, box);
-    StringBuilder sb = new StringBuilder();
-    for (int seq : seqs) {
-      sb.append("* ").append(seq).append(" EXPUNGE").append("\r\n");
+    // 1) 静默删除带 \Deleted 的邮件，本连接不发送 EXPUNGE (RFC 3501 6.4.2)，只读打开时不删除
+    if (!session.isReadOnly()) {
+      MessageSet removed = expungeDeleted(session, MessageSet.ALL);
+      session.setUidIndex(null);
+      notifyExpunged(session.getUserId(), session.getSelectedMailboxId(), removed);
     }
+    StringBuilder sb = new StringBuilder();
 
-    // 2) 真正逻辑删除
-    mailService.expunge(user, box);
-
-    // 3) 取消 selected state
+    // 2) 取消 selected state
     session.setSelectedMailbox(null);
     session.setSelectedMailboxId(null);
+    session.setUidIndex(null);
     session.setState(ImapSessionContext.State.AUTHENTICATED);
 
-    // 4) 返回 OK
+    // 3) 返回 OK
     sb.append(tag).append(" OK CLOSE completed").append("\r\n");
     return sb.toString();
   }
@@ -0,0 +1,329 @@
+package com.tio.mail.wing.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+import com.litongjava.db.activerecord.Row;
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.litongjava.tio.utils.snowflake.SnowflakeIdUtils;
+import com.tio.mail.wing.cache.CacheRegistry;
+import com.tio.mail.wing.cache.MessageBodyCache;
+import com.tio.mail.wing.db.SqlTemplateCache;
+import com.tio.mail.wing.db.TimedDb;
+import com.tio.mail.wing.metrics.MwMetrics;
+import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.store.MailStores;
+import com.tio.mail.wing.utils.MailBodyCodec;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 邮件内容的压缩存储。
+ * 写入时按租户字典做 deflate 压缩，压缩收益不足（已压缩的附件、很小的邮件）时保留原文；
+ * 读取时按 body_codec 透明解压，POP3 等流式读取按块从数据库取压缩数据、边取边解压。
+ * size_in_bytes 始终是原文大小。
+ * 解码后的原文按内容 ID 缓存在 {@link MessageBodyCache} 中，IMAP FETCH 和 POP3 RETR/TOP 先查缓存。
+ */
+@Slf4j
+public class MailBodyService {
+
+  private final boolean compressEnabled = EnvUtils.getBoolean("mail.body.compress.enabled", true);
+  private final int level = EnvUtils.getInt("mail.body.compress.level", 6);
+  private final int minBytes = EnvUtils.getInt("mail.body.compress.min.bytes", 512);
+  private final int maxPercent = EnvUtils.getInt("mail.body.compress.max.percent", 90);
+  private final boolean dictEnabled = EnvUtils.getBoolean("mail.body.dict.enabled", true);
+  private final int dictSamples = EnvUtils.getInt("mail.body.dict.samples", 500);
+  private final int dictMinSamples = EnvUtils.getInt("mail.body.dict.min.samples", 100);
+  private final long dictRetryMillis = EnvUtils.getInt("mail.body.dict.retry.minutes", 60) * 60_000L;
+
+  /** 字典写入后不再修改，按 ID 永久缓存 */
+  private final Map<Long, byte[]> dicts = new ConcurrentHashMap<>();
+  private final Map<Long, TenantDict> tenants = new ConcurrentHashMap<>();
+  private final Set<Long> training = ConcurrentHashMap.newKeySet();
+  /** 关闭时为 null */
+  private final MessageBodyCache bodyCache = newBodyCache();
+
+  private final ExecutorService trainer = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "mw-dict-trainer");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private static MessageBodyCache newBodyCache() {
+    if (!EnvUtils.getBoolean("mail.cache.body.enabled", true)) {
+      return null;
+    }
+    MessageBodyCache cache = CacheRegistry.register(new MessageBodyCache("message.body",
+        EnvUtils.getInt("mail.cache.body.max.mb", 256) * 1024L * 1024L, EnvUtils.getInt("mail.cache.body.protected.percent", 80),
+        EnvUtils.getInt("mail.cache.body.max.entry.kb", 1024) * 1024L, EnvUtils.getBoolean("mail.cache.body.offheap", false)));
+    MwMetrics.register(sb -> {
+      MwMetrics.header(sb, "mw_cache_bytes", "gauge", "Bytes held by the message body cache");
+      MwMetrics.sample(sb, "mw_cache_bytes", "cache=\"" + cache.getName() + "\",offheap=\"" + cache.isOffHeap() + "\"", cache.bytes());
+    });
+    return cache;
+  }
+
+  /**
+   * @return 未缓存或缓存关闭时返回 null
+   */
+  public String cachedBody(long contentId) {
+    return bodyCache == null ? null : bodyCache.get(contentId);
+  }
+
+  /**
+   * 流式读取前判断读完后是否值得放入缓存，不值得时不必拼接原文
+   */
+  public boolean isCacheable(long size) {
+    return bodyCache != null && bodyCache.accepts(size);
+  }
+
+  public void cacheBody(long contentId, String body) {
+    if (bodyCache != null) {
+      bodyCache.put(contentId, body);
+    }
+  }
+
+  /**
+   * 为只查了元数据的邮件补齐原文：先查缓存，未命中的按内容 ID 一次从存储读取，放入缓存
+   */
+  public void loadBodies(List<Email> emails) {
+    Map<Long, List<Email>> missing = new HashMap<>();
+    for (Email e : emails) {
+      if (e.getRawContent() != null || e.getContentId() == null) {
+        continue;
+      }
+      String body = cachedBody(e.getContentId());
+      if (body != null) {
+        e.setRawContent(body);
+      } else {
+        missing.computeIfAbsent(e.getContentId(), k -> new ArrayList<>(1)).add(e);
+      }
+    }
+    if (missing.isEmpty()) {
+      return;
+    }
+    // PgMailStore 依赖本类解码，不能在字段中持有
+    for (Map.Entry<Long, String> entry : MailStores.get().loadBodies(missing.keySet()).entrySet()) {
+      cacheBody(entry.getKey(), entry.getValue());
+      for (Email e : missing.get(entry.getKey())) {
+        e.setRawContent(entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * 设置新消息的内容列：raw_content 或 body_codec / body_data / dict_id
+   */
+  public void encode(Row message, String rawContent, byte[] raw, long tenantId) {
+    if (compressEnabled && raw.length >= minBytes) {
+      long dictId = tenantDictId(tenantId);
+      byte[] dict = dictId == 0 ? null : dictionary(dictId);
+      byte[] compressed = MailBodyCodec.compress(raw, dict, level);
+      if ((long) compressed.length * 100 <= (long) raw.length * maxPercent) {
+        message.set("body_codec", dict == null ? MailBodyCodec.DEFLATE : MailBodyCodec.DEFLATE_DICT);
+        message.set("body_data", compressed);
+        message.set("dict_id", dict == null ? null : dictId);
+        return;
+      }
+    }
+    message.set("body_codec", MailBodyCodec.RAW).set("raw_content", rawContent);
+  }
+
+  /**
+   * 由查询行还原邮件原文，行中需包含 raw_content、body_codec、body_data、dict_id、size_in_bytes
+   */
+  public String decode(Row row) {
+    int codec = codecOf(row);
+    if (codec == MailBodyCodec.RAW) {
+      return row.getStr("raw_content");
+    }
+    Long dictId = row.getLong("dict_id");
+    Integer size = row.getInt("size_in_bytes");
+    return MailBodyCodec.decompressToString(row.getBytes("body_data"), dictId == null ? null : dictionary(dictId),
+        size == null ? 0 : size);
+  }
+
+  public static int codecOf(Row row) {
+    Object codec = row.get("body_codec");
+    return codec == null ? MailBodyCodec.RAW : ((Number) codec).intValue();
+  }
+
+  /**
+   * 流式读取压缩存储的消息：每次从数据库取 chunkChars 字节压缩数据，解压后按最多 chunkChars 个字符交给 chunkConsumer
+   *
+   * @param chunkConsumer 返回 false 时停止读取，之后的压缩数据不再查询
+   */
+  public void readCompressed(long messageId, Long dictId, int chunkChars, Predicate<String> chunkConsumer) {
+    InputStream compressed = new BodyDataInputStream(messageId, chunkChars);
+    byte[] dict = dictId == null ? null : dictionary(dictId);
+    try (Reader reader = new InputStreamReader(MailBodyCodec.decompress(compressed, dict), StandardCharsets.UTF_8)) {
+      char[] buf = new char[chunkChars];
+      while (true) {
+        int n = 0;
+        int r;
+        while (n < buf.length && (r = reader.read(buf, n, buf.length - n)) > 0) {
+          n += r;
+        }
+        if (n == 0 || !chunkConsumer.test(new String(buf, 0, n)) || n < buf.length) {
+          return;
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read compressed message " + messageId, e);
+    }
+  }
+
+  private byte[] dictionary(long dictId) {
+    byte[] dict = dicts.get(dictId);
+    if (dict != null) {
+      return dict;
+    }
+    String sql = SqlTemplateCache.get("mailbox.dict.byId");
+    Row row = TimedDb.findFirst("mailbox.dict.byId", sql, dictId);
+    if (row == null) {
+      throw new IllegalStateException("Mail dictionary not found: " + dictId);
+    }
+    dict = row.getBytes("dict");
+    dicts.put(dictId, dict);
+    return dict;
+  }
+
+  /**
+   * 租户当前字典的 ID，没有时返回 0 并在后台训练；没有字典的结果在 dictRetryMillis 内复用
+   */
+  private long tenantDictId(long tenantId) {
+    if (!dictEnabled) {
+      return 0;
+    }
+    long now = System.currentTimeMillis();
+    TenantDict cached = tenants.get(tenantId);
+    if (cached != null && (cached.dictId != 0 || now - cached.checkedAt < dictRetryMillis)) {
+      return cached.dictId;
+    }
+    String sql = SqlTemplateCache.get("mailbox.dict.latestByTenant");
+    Row row = TimedDb.findFirst("mailbox.dict.latestByTenant", sql, tenantId);
+    long dictId = 0;
+    if (row != null) {
+      dictId = row.getLong("id");
+      dicts.putIfAbsent(dictId, row.getBytes("dict"));
+    } else if (training.add(tenantId)) {
+      trainer.execute(() -> {
+        try {
+          train(tenantId);
+        } catch (Exception e) {
+          log.error("Failed to train mail dictionary for tenant {}", tenantId, e);
+        } finally {
+          training.remove(tenantId);
+        }
+      });
+    }
+    tenants.put(tenantId, new TenantDict(dictId, now));
+    return dictId;
+  }
+
+  /**
+   * 用租户最近的邮件训练字典，样本不足时不生成
+   */
+  public void train(long tenantId) {
+    String sql = SqlTemplateCache.get("mailbox.dict.samples");
+    List<Row> rows = TimedDb.find("mailbox.dict.samples", sql, tenantId, dictSamples);
+    if (rows.size() < dictMinSamples) {
+      return;
+    }
+    List<String> samples = new ArrayList<>(rows.size());
+    for (Row row : rows) {
+      samples.add(decode(row));
+    }
+    byte[] dict = MailBodyCodec.trainDictionary(samples, MailBodyCodec.MAX_DICT_SIZE);
+    if (dict.length == 0) {
+      return;
+    }
+    long id = SnowflakeIdUtils.id();
+    TimedDb.save("mw_mail_dict", "id", Row.by("id", id).set("tenant_id", tenantId).set("dict", dict).set("sample_count", rows.size()));
+    dicts.put(id, dict);
+    tenants.put(tenantId, new TenantDict(id, System.currentTimeMillis()));
+    log.info("Trained mail dictionary {} for tenant {} from {} samples, {} bytes", id, tenantId, rows.size(), dict.length);
+  }
+
+  private static class TenantDict {
+    final long dictId;
+    final long checkedAt;
+
+    TenantDict(long dictId, long checkedAt) {
+      this.dictId = dictId;
+      this.checkedAt = checkedAt;
+    }
+  }
+
+  /**
+   * 按需分块查询 body_data，解压方停止读取后不再查询
+   */
+  private static class BodyDataInputStream extends InputStream {
+    private final String sql = SqlTemplateCache.get("mailbox.bodyDataChunk");
+    private final long messageId;
+    private final int chunkBytes;
+    private int offset = 1;
+    private byte[] buf = new byte[0];
+    private int pos;
+    private boolean eof;
+
+    BodyDataInputStream(long messageId, int chunkBytes) {
+      this.messageId = messageId;
+      this.chunkBytes = chunkBytes;
+    }
+
+    @Override
+    public int read() {
+      if (pos >= buf.length && !fetch()) {
+        return -1;
+      }
+      return buf[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (pos >= buf.length && !fetch()) {
+        return -1;
+      }
+      int n = Math.min(len, buf.length - pos);
+      System.arraycopy(buf, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    private boolean fetch() {
+      if (eof) {
+        return false;
+      }
+      Row row = TimedDb.findFirst("mailbox.bodyDataChunk", sql, offset, chunkBytes, messageId);
+      byte[] chunk = row == null ? null : row.getBytes("chunk");
+      if (chunk == null || chunk.length == 0) {
+        eof = true;
+        return false;
+      }
+      if (chunk.length < chunkBytes) {
+        eof = true;
+      }
+      offset += chunk.length;
+      buf = chunk;
+      pos = 0;
+      return true;
+    }
+  }
+}
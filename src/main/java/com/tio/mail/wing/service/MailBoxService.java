@@ -1,23 +1,60 @@
 package com.tio.mail.wing.service;
 
-import com.litongjava.db.activerecord.Db;
 import com.litongjava.db.activerecord.Row;
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.tio.mail.wing.cache.CacheRegistry;
+import com.tio.mail.wing.cache.LruTtlCache;
+import com.tio.mail.wing.cache.RowSnapshot;
+import com.tio.mail.wing.store.MailStore;
+import com.tio.mail.wing.store.MailStores;
 
 public class MailBoxService {
 
+  private final MailStore store = MailStores.get();
+
+  /**
+   * (userId, mailboxName) -> 邮箱行。
+   * 只缓存不会变化的字段 (id, user_id, name, uid_validity)，uid_next 随每次投递变化，需要时单独查询。
+   * 缓存只读快照，每次返回新的 Row。
+   */
+  private final LruTtlCache<String, RowSnapshot> mailboxesByName = CacheRegistry.register(new LruTtlCache<>("mailbox.byName",
+      //
+      EnvUtils.getInt("mail.cache.meta.size", 50000), EnvUtils.getInt("mail.cache.meta.ttl.seconds", 600) * 1000L));
+
   public Row getMailboxByName(long userId, String mailboxName) {
-    String sql = "SELECT id, uid_validity, uid_next FROM mw_mailbox WHERE user_id = ? AND name = ? AND deleted = 0";
-    return Db.findFirst(sql, userId, mailboxName);
+    String key = cacheKey(userId, mailboxName);
+    RowSnapshot cached = mailboxesByName.get(key);
+    if (cached != null) {
+      return cached.toRow();
+    }
+    Row mailbox = store.findMailbox(userId, mailboxName);
+    if (mailbox != null) {
+      mailboxesByName.put(key, RowSnapshot.of(mailbox));
+    }
+    return mailbox;
   }
 
+  /**
+   * 返回包含最新 uid_next 的邮箱行，不走缓存
+   */
   public Row getMailboxById(long userId, long mailboxId) {
-    String sql = "SELECT id, uid_validity, uid_next FROM mw_mailbox WHERE user_id = ? AND id = ? AND deleted = 0";
-    return Db.findFirst(sql, userId, mailboxId);
+    return store.findMailboxById(userId, mailboxId);
   }
 
   public Long getMailboxIdByName(long userId, String mailboxName) {
-    String sql = "SELECT id WHERE user_id = ? AND name = ? AND deleted = 0";
-    return Db.queryLong(sql, userId, mailboxName);
+    Row mailbox = getMailboxByName(userId, mailboxName);
+    return mailbox == null ? null : mailbox.getLong("id");
+  }
+
+  /**
+   * 邮箱创建、删除、改名时调用
+   */
+  public void invalidate(long userId, String mailboxName) {
+    mailboxesByName.remove(cacheKey(userId, mailboxName));
+  }
+
+  private String cacheKey(long userId, String mailboxName) {
+    return userId + "/" + mailboxName;
   }
 
 }
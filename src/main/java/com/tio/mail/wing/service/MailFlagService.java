@@ -4,19 +4,16 @@ import java.time.OffsetDateTime;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
-import com.litongjava.db.activerecord.Db;
 import com.litongjava.db.activerecord.Row;
-import com.litongjava.template.SqlTemplates;
 import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.store.MailStores;
 
 public class MailFlagService {
-  
+
   public List<Email> getActiveMailFlags(Long mailboxId) {
-    String sql = SqlTemplates.get("mailbox.getActiveMailFlags");
-    List<Row> mailRows = Db.find(sql, mailboxId);
-    return mailRows.stream().map(this::rowToEmailWithAggregatedFlags).collect(Collectors.toList());
+    // PgMailStore 依赖本类转换查询行，不能在字段中持有
+    return MailStores.get().listFlags(mailboxId);
   }
   
   /**
@@ -26,7 +23,8 @@ public class MailFlagService {
     Email email = new Email();
     email.setId(row.getLong("id"));
     email.setUid(row.getLong("uid"));
-    email.setRawContent(row.getStr("raw_content"));
+    // 列表查询只含元数据，原文由 MailBodyService.loadBodies 按内容 ID 补齐
+    email.setContentId(row.getLong("message_id"));
     Integer sizeInBytes = row.getInt("size_in_bytes");
     if (sizeInBytes != null) {
       email.setSize(sizeInBytes);
@@ -0,0 +1,113 @@
+package com.tio.mail.wing.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.tio.mail.wing.db.SqlTemplateCache;
+import com.tio.mail.wing.db.TimedDb;
+import com.tio.mail.wing.store.MailStores;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 后台清理任务：
+ * 1. 删除超过保留期的逻辑删除邮件 (mw_mail.deleted = 1) 及其标志，同时减少对应消息的引用计数；
+ * 2. 删除引用计数为 0 的邮件消息 (mw_mail_message)。
+ * 每批一条语句、一个事务，批与批之间暂停，已被在线请求锁定的行直接跳过，不与在线流量争用。
+ * 只用于 PostgreSQL 存储 (mail.store.type=pg)。
+ */
+@Slf4j
+public class MailGcService {
+
+  private final boolean enabled = EnvUtils.getBoolean("mail.gc.enabled", true);
+  private final int intervalSeconds = EnvUtils.getInt("mail.gc.interval.seconds", 300);
+  private final long retentionSeconds = EnvUtils.getInt("mail.gc.retention.hours", 168) * 3600L;
+  private final int batchSize = EnvUtils.getInt("mail.gc.batch.size", 500);
+  private final long pauseMillis = EnvUtils.getInt("mail.gc.batch.pause.ms", 200);
+  private final int maxBatches = EnvUtils.getInt("mail.gc.max.batches", 200);
+
+  private ScheduledExecutorService scheduler;
+
+  public synchronized void start() {
+    if (!enabled || scheduler != null) {
+      return;
+    }
+    if (!MailStores.PG.equals(MailStores.type())) {
+      // 嵌入式存储中已删除的邮件不保留，死数据在启动时压缩
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "mw-mail-gc");
+      t.setDaemon(true);
+      t.setPriority(Thread.MIN_PRIORITY);
+      return t;
+    });
+    scheduler.scheduleWithFixedDelay(this::runSafely, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    log.info("Mail GC started, interval={}s, retention={}s, batch={}", intervalSeconds, retentionSeconds, batchSize);
+  }
+
+  public synchronized void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+  }
+
+  private void runSafely() {
+    try {
+      runOnce();
+    } catch (Exception e) {
+      log.error("Mail GC failed", e);
+    }
+  }
+
+  /**
+   * 执行一轮清理，每类最多 maxBatches 批，剩余的留到下一轮
+   *
+   * @return 删除的邮件数和消息数
+   */
+  public long[] runOnce() {
+    String purgeMails = SqlTemplateCache.get("mailbox.gc.purgeMails");
+    long mails = 0;
+    for (int i = 0; i < maxBatches; i++) {
+      Long n = TimedDb.queryLong("mailbox.gc.purgeMails", purgeMails, retentionSeconds, batchSize);
+      mails += n == null ? 0 : n;
+      if (n == null || n < batchSize || !pause()) {
+        break;
+      }
+    }
+
+    String purgeMessages = SqlTemplateCache.get("mailbox.gc.purgeMessages");
+    long messages = 0;
+    for (int i = 0; i < maxBatches; i++) {
+      int n = TimedDb.updateBySql("mailbox.gc.purgeMessages", purgeMessages, batchSize);
+      messages += n;
+      if (n < batchSize || !pause()) {
+        break;
+      }
+    }
+
+    if (mails > 0 || messages > 0) {
+      log.info("Mail GC purged {} mails and {} messages", mails, messages);
+    }
+    return new long[] { mails, messages };
+  }
+
+  /**
+   * @return 被中断时返回 false
+   */
+  private boolean pause() {
+    if (pauseMillis <= 0) {
+      return true;
+    }
+    try {
+      Thread.sleep(pauseMillis);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -5,12 +5,13 @@ import java.sql.SQLException;
 import java.util.Date;
 import java.util.Map;
 
-import com.litongjava.db.activerecord.Db;
 import com.litongjava.db.activerecord.Row;
+import com.litongjava.jfinal.aop.Aop;
 import com.litongjava.model.db.IAtom;
-import com.litongjava.template.SqlTemplates;
 import com.litongjava.tio.utils.digest.Sha256Utils;
 import com.litongjava.tio.utils.snowflake.SnowflakeIdUtils;
+import com.tio.mail.wing.db.SqlTemplateCache;
+import com.tio.mail.wing.db.TimedDb;
 import com.tio.mail.wing.utils.MailRawUtils;
 
 import lombok.extern.slf4j.Slf4j;
@@ -23,9 +24,13 @@ public class MailSaveAtom implements IAtom {
   private Long mailboxId;
   private String mailboxName;
   private String rawContent;
+  private long tenantId;
+  /** 提交后为新邮件的 UID */
+  private long uid;
 
-  public MailSaveAtom(Long userId, String username, Long mailboxId, String mailboxName, String rawContent) {
+  public MailSaveAtom(Long userId, long tenantId, String username, Long mailboxId, String mailboxName, String rawContent) {
     this.userId = userId;
+    this.tenantId = tenantId;
     this.username = username;
     this.mailboxId = mailboxId;
     this.mailboxName = mailboxName;
@@ -37,9 +42,10 @@ public class MailSaveAtom implements IAtom {
 
     // 2. 处理邮件内容，实现去重 (mw_mail_message)
     String contentHash = Sha256Utils.digestToHex(rawContent);
-    int sizeInBytes = rawContent.getBytes(StandardCharsets.UTF_8).length;
+    byte[] raw = rawContent.getBytes(StandardCharsets.UTF_8);
+    int sizeInBytes = raw.length;
 
-    Row message = Db.findFirst(SqlTemplates.get("mailbox.message.findByHash"), contentHash);
+    Row message = TimedDb.findFirst("mailbox.message.acquireByHash", SqlTemplateCache.get("mailbox.message.acquireByHash"), contentHash);
     long messageId;
     long id = SnowflakeIdUtils.id();
     if (message == null) {
@@ -52,16 +58,18 @@ public class MailSaveAtom implements IAtom {
           //
           .set("from_address", headers.get("From")).set("to_address", headers.get("To"))
           //
-          .set("size_in_bytes", sizeInBytes).set("raw_content", rawContent);
-      Db.save("mw_mail_message", "id", newMessage);
+          .set("size_in_bytes", sizeInBytes).set("ref_count", 1).set("tenant_id", tenantId);
+      // 内容按租户字典压缩存储，size_in_bytes 仍为原文大小
+      Aop.get(MailBodyService.class).encode(newMessage, rawContent, raw, tenantId);
+      TimedDb.save("mw_mail_message", "id", newMessage);
       messageId = newMessage.getLong("id");
     } else {
       messageId = message.getLong("id");
     }
 
     // 3. 原子地获取并更新邮箱的下一个UID (mw_mailbox)
-    String updateSql = SqlTemplates.get("mailbox.updateUidNextAndGet");
-    Row result = Db.findFirst(updateSql, mailboxId);
+    String updateSql = SqlTemplateCache.get("mailbox.updateUidNextAndGet");
+    Row result = TimedDb.findFirst("mailbox.updateUidNextAndGet", updateSql, mailboxId);
     if (result == null) {
       throw new SQLException("Failed to increment and retrieve uid_next for mailbox " + mailboxId);
     }
@@ -69,14 +77,19 @@ public class MailSaveAtom implements IAtom {
 
     // 4. 创建邮件实例 (mw_mail)
     Row mailInstance = Row.by("id", id).set("user_id", userId).set("mailbox_id", mailboxId).set("message_id", messageId).set("uid", nextUid).set("internal_date", new Date());
-    Db.save("mw_mail", "id", mailInstance);
+    TimedDb.save("mw_mail", "id", mailInstance);
 
     // 5. 为新邮件设置 \Recent 标志 (mw_mail_flag)
     long flagId = SnowflakeIdUtils.id();
     Row recentFlag = Row.by("id", flagId).set("mail_id", id).set("flag", "\\Recent");
-    Db.save("mw_mail_flag", recentFlag);
+    TimedDb.save("mw_mail_flag", recentFlag);
+    this.uid = nextUid;
     log.info("Saved new email for {} in mailbox {} with UID {}. Mail instance ID: {}", username, mailboxName, nextUid, id);
     return true;
   }
 
+  public long getUid() {
+    return uid;
+  }
+
 }
@@ -1,20 +1,12 @@
 package com.tio.mail.wing.service;
 
-import java.util.List;
-import java.util.Set;
-
-import com.litongjava.db.activerecord.Db;
 import com.litongjava.db.activerecord.Row;
 import com.litongjava.jfinal.aop.Aop;
-import com.litongjava.model.db.IAtom;
-import com.litongjava.tio.core.ChannelContext;
-import com.litongjava.tio.core.Tio;
-import com.litongjava.tio.utils.lock.SetWithLock;
-import com.tio.mail.wing.config.ImapServerConfig;
 import com.tio.mail.wing.consts.MailBoxName;
-import com.tio.mail.wing.model.Email;
 import com.tio.mail.wing.model.MailRaw;
-import com.tio.mail.wing.packet.ImapPacket;
+import com.tio.mail.wing.store.MailStore;
+import com.tio.mail.wing.store.MailStoreListener;
+import com.tio.mail.wing.store.MailStores;
 import com.tio.mail.wing.utils.MailRawUtils;
 
 import lombok.extern.slf4j.Slf4j;
@@ -24,7 +16,17 @@ public class MailSaveService {
   private MwUserService mwUserService = Aop.get(MwUserService.class);
   private MailBoxService mailBoxService = Aop.get(MailBoxService.class);
   MailFlagService mailFlagService = Aop.get(MailFlagService.class);
-  
+  private final MailStore store = MailStores.get();
+
+  public MailSaveService() {
+    store.addListener(new MailStoreListener() {
+      @Override
+      public void onAppend(long userId, long mailboxId, long uid) {
+        Aop.get(ImapService.class).notifyAppended(userId, mailboxId, uid);
+      }
+    });
+  }
+
   public boolean saveEmail(String toUser, MailRaw mail) {
     
     String rawContent = MailRawUtils.toRawContent(mail);
@@ -44,8 +46,7 @@ public class MailSaveService {
   }
 
   /**
-   * 内部核心的邮件保存方法。
-   * 优化：使用事务和原子性UID更新。
+   * 内部核心的邮件保存方法，UID 由存储原子分配。
    */
   public boolean saveEmailInternal(String username, String mailboxName, String rawContent) {
     // 1. 获取用户和邮箱信息
@@ -65,52 +66,13 @@ public class MailSaveService {
     }
 
     Long mailboxId = mailbox.getLong("id");
-    return saveEmailInternal(username, mailboxName, rawContent, userId, mailboxId);
+    Long tenantId = user.getLong("tenant_id");
+    return saveEmailInternal(username, mailboxName, rawContent, userId, tenantId == null ? 0 : tenantId, mailboxId);
   }
 
-  private boolean saveEmailInternal(String username, String mailboxName, String rawContent, Long userId, Long mailboxId) {
-    IAtom atom = new MailSaveAtom(userId, username, mailboxId, mailboxName, rawContent);
+  private boolean saveEmailInternal(String username, String mailboxName, String rawContent, Long userId, long tenantId, Long mailboxId) {
     try {
-      boolean result = Db.tx(atom);
-      if (!result) {
-        return result;
-      }
-
-      // 通知客户端
-
-      SetWithLock<ChannelContext> channelContexts = Tio.getByUserId(ImapServerConfig.serverTioConfig, userId.toString());
-      if (channelContexts == null) {
-        return true;
-      }
-      Set<ChannelContext> ctxs = channelContexts.getObj();
-      if (ctxs != null && ctxs.size() > 0) {
-        List<Email> all = mailFlagService.getActiveMailFlags(mailboxId);
-        long exists = all.size();
-        int recent = 0;
-        for (Email e : all) {
-          Set<String> flags = e.getFlags();
-          if (flags.size() > 0) {
-            if (flags.contains("\\Recent")) {
-              recent++;
-            }
-          }
-        }
-
-        StringBuffer sb = new StringBuffer();
-        sb.append("* ").append(exists).append(" EXISTS").append("\r\n");
-        sb.append("* ").append(recent).append(" RECENT").append("\r\n");
-
-        ImapPacket imapPacket = new ImapPacket(sb.toString());
-
-        for (ChannelContext ctx : ctxs) {
-          //* 9 EXISTS  
-          //* 1 RECENT
-          Tio.send(ctx, imapPacket);
-        }
-
-      }
-
-      return result;
+      return store.append(userId, tenantId, username, mailboxId, mailboxName, rawContent);
     } catch (Exception e) {
       log.error("Error saving email for user '{}' in mailbox '{}'", username, mailboxName, e);
       return false;
@@ -1,22 +1,24 @@
 package com.tio.mail.wing.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import com.litongjava.db.activerecord.Db;
 import com.litongjava.db.activerecord.Row;
 import com.litongjava.jfinal.aop.Aop;
-import com.litongjava.template.SqlTemplates;
 import com.litongjava.tio.utils.hutool.StrUtil;
-import com.litongjava.tio.utils.snowflake.SnowflakeIdUtils;
 import com.tio.mail.wing.consts.MailBoxName;
+import com.tio.mail.wing.consts.StoreMode;
 import com.tio.mail.wing.model.Email;
-import com.tio.mail.wing.result.WhereClauseResult;
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.model.Pop3Maildrop;
+import com.tio.mail.wing.model.UidIndex;
+import com.tio.mail.wing.store.MailStore;
+import com.tio.mail.wing.store.MailStores;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -26,105 +28,8 @@ public class MailService {
   private MwUserService mwUserService = Aop.get(MwUserService.class);
   private MailBoxService mailBoxService = Aop.get(MailBoxService.class);
   private MailSaveService mailSaveService = Aop.get(MailSaveService.class);
-  private MailFlagService mailFlagService = Aop.get(MailFlagService.class);
-
-  /**
-   * 单独的 * → 匹配所有序号
-     n:* → 序号 ≥ n
-     *:n → 序号 ≤ n
-     n:m → 正常范围
-     *:* → 匹配所有
-   * @param messageSet
-   * @param mailboxId
-   * @return
-   */
-  private WhereClauseResult buildSeqWhereClause(String messageSet, long mailboxId) {
-    StringBuilder clause = new StringBuilder();
-    List<Object> params = new ArrayList<>();
-
-    String[] parts = messageSet.split(",");
-    for (String rawPart : parts) {
-      String part = rawPart.trim();
-      if (clause.length() > 0) {
-        clause.append(" OR ");
-      }
-
-      if (part.contains(":")) {
-        String[] range = part.split(":", 2);
-        String startStr = range[0].trim();
-        String endStr = range[1].trim();
-        boolean startIsStar = "*".equals(startStr);
-        boolean endIsStar = "*".equals(endStr);
-
-        if (startIsStar && endIsStar) {
-          // *:* → 全部
-          clause.append("TRUE");
-        } else if (startIsStar) {
-          // *:n → seq_num <= n
-          int end = Integer.parseInt(endStr);
-          clause.append("seq_num <= ?");
-          params.add(end);
-        } else if (endIsStar) {
-          // n:* → seq_num >= n
-          int start = Integer.parseInt(startStr);
-          clause.append("seq_num >= ?");
-          params.add(start);
-        } else {
-          // n:m → BETWEEN
-          int start = Integer.parseInt(startStr);
-          int end = Integer.parseInt(endStr);
-          clause.append("seq_num BETWEEN ? AND ?");
-          params.add(Math.min(start, end));
-          params.add(Math.max(start, end));
-        }
-      } else {
-        if ("*".equals(part)) {
-          // 单独的 * → 全部
-          clause.append("TRUE");
-        } else {
-          // 单个序号
-          clause.append("seq_num = ?");
-          params.add(Integer.parseInt(part));
-        }
-      }
-    }
-
-    return new WhereClauseResult(clause.toString(), params);
-  }
-
-  /**
-   * 将 IMAP UID 集合字符串（如 "1,2,5:7"）解析为具体的 UID 列表。
-   * 支持单个 UID、逗号分隔的多段、数字范围，以及 "*" 通配符（代表最大 UID）。
-   *
-   * @param uidSet      IMAP UID set，比如 "1,2,5:7,*"
-   * @param mailboxId   用于查询最大 UID（处理 '*' 通配符）
-   * @return            按顺序展开的 UID 列表
-   */
-  public List<Long> parseUidSet(String uidSet, long mailboxId) {
-    // 拿到当前 mailbox 的最大 UID，用于 '*' 扩展
-    long maxUid = getMaxUid(mailboxId);
-    List<Long> uids = new ArrayList<>();
-    String[] parts = uidSet.split(",");
-    for (String raw : parts) {
-      String part = raw.trim();
-      if (part.contains(":")) {
-        String[] range = part.split(":", 2);
-        long start = "*".equals(range[0]) ? maxUid : Long.parseLong(range[0]);
-        long end = "*".equals(range[1]) ? maxUid : Long.parseLong(range[1]);
-        long min = Math.min(start, end), max = Math.max(start, end);
-        for (long uid = min; uid <= max; uid++) {
-          uids.add(uid);
-        }
-      } else if ("*".equals(part)) {
-        // 单独的 '*' → 取最大那条
-        uids.add(maxUid);
-      } else {
-        // 单个数字
-        uids.add(Long.parseLong(part));
-      }
-    }
-    return uids;
-  }
+  private MailBodyService mailBodyService = Aop.get(MailBodyService.class);
+  private final MailStore store = MailStores.get();
 
   /**
    * [兼容POP3] 获取用户收件箱(INBOX)中所有未删除的邮件。
@@ -154,13 +59,7 @@ public class MailService {
     if (mailbox == null)
       return new int[] { 0, 0 };
 
-    String sql = SqlTemplates.get("mailbox.getStat");
-    Row statRow = Db.findFirst(sql, mailbox.getLong("id"));
-
-    if (statRow == null) {
-      return new int[] { 0, 0 };
-    }
-    return new int[] { statRow.getLong("message_count").intValue(), statRow.getBigDecimal("total_size").intValue() };
+    return store.stat(mailbox.getLong("id"));
   }
 
   /**
@@ -170,6 +69,7 @@ public class MailService {
   public String getMessageContent(String username, int msgNumber) {
     List<Email> emails = findEmailsBySeqSet(username, MailBoxName.INBOX, String.valueOf(msgNumber));
     if (emails != null && !emails.isEmpty()) {
+      mailBodyService.loadBodies(emails);
       return emails.get(0).getRawContent();
     }
     return null;
@@ -191,24 +91,92 @@ public class MailService {
   }
 
   /**
-   * [IMAP核心] 获取用户【指定邮箱】中所有未被标记为删除的邮件。
-   * 优化：使用单个SQL查询，将邮件、内容和标志一次性获取。
+   * [POP3] 加载收件箱快照，只读取邮件 ID、UID 和大小
+   */
+  public Pop3Maildrop loadMaildrop(Long userId) {
+    Long mailboxId = mailBoxService.getMailboxIdByName(userId, MailBoxName.INBOX);
+    if (mailboxId == null) {
+      return new Pop3Maildrop(0L, new long[0], new long[0], new long[0], new int[0]);
+    }
+    return store.loadMaildrop(mailboxId);
+  }
+
+  /**
+   * [POP3] UPDATE 状态：删除给定邮件并推进邮箱的 highest_modseq，二者在同一事务中完成。
+   *
+   * @return 实际被删除的邮件 UID（已被其它会话删除的不计），升序
+   */
+  public MessageSet expungeMails(Long userId, long mailboxId, long[] mailIds) {
+    if (mailIds.length == 0) {
+      return MessageSet.EMPTY;
+    }
+    MessageSet uids = store.expungeMails(mailboxId, mailIds);
+    mailBoxService.invalidate(userId, MailBoxName.INBOX);
+    return uids;
+  }
+
+  /**
+   * [IMAP] EXPUNGE / UID EXPUNGE / CLOSE：按邮箱 ID 删除给定 UID 区间内带 \Deleted 标志的邮件，没有目标时不推进 highest_modseq。
+   *
+   * @return 实际被删除的邮件 UID，升序
+   */
+  public MessageSet expungeDeleted(Long userId, String mailboxName, long mailboxId, MessageSet uids) {
+    MessageSet expunged = store.expungeDeleted(mailboxId, uids);
+    if (!expunged.isEmpty()) {
+      mailBoxService.invalidate(userId, mailboxName);
+    }
+    return expunged;
+  }
+
+  /**
+   * 按块读取单封邮件内容，每块最多 chunkChars 个字符。
+   * 原文缓存命中时直接从缓存分块，不再确认邮件是否已被其它会话删除（POP3 会话按快照回答）；
+   * 未命中时从存储流式读取，可缓存的大小在完整读完后放入缓存，TOP 等中途停止的读取不缓存。
+   *
+   * @param contentId     内容 ID (mw_mail_message.id)
+   * @param size          原文字节数
+   * @param chunkConsumer 返回 false 时停止读取
+   * @return 邮件不存在或已删除时返回 false
+   */
+  public boolean readRawContent(long mailId, long contentId, int size, int chunkChars, Predicate<String> chunkConsumer) {
+    String cached = mailBodyService.cachedBody(contentId);
+    if (cached != null) {
+      for (int from = 0; from < cached.length(); from += chunkChars) {
+        if (!chunkConsumer.test(cached.substring(from, Math.min(from + chunkChars, cached.length())))) {
+          break;
+        }
+      }
+      return true;
+    }
+    if (!mailBodyService.isCacheable(size)) {
+      return store.readBody(mailId, chunkChars, chunkConsumer);
+    }
+    StringBuilder body = new StringBuilder(size);
+    boolean[] stopped = new boolean[1];
+    boolean found = store.readBody(mailId, chunkChars, chunk -> {
+      body.append(chunk);
+      stopped[0] = !chunkConsumer.test(chunk);
+      return !stopped[0];
+    });
+    if (found && !stopped[0]) {
+      mailBodyService.cacheBody(contentId, body.toString());
+    }
+    return found;
+  }
+
+  /**
+   * [IMAP核心] 获取用户【指定邮箱】中所有未被标记为删除的邮件，只含元数据和标志，不读取邮件原文。
    */
   public List<Email> getActiveMessages(Long userId, String mailboxName) {
     Row mailbox = mailBoxService.getMailboxByName(userId, mailboxName);
     if (mailbox == null)
       return Collections.emptyList();
 
-    String sql = SqlTemplates.get("mailbox.getActiveMessages");
-    List<Row> mailRows = Db.find(sql, mailbox.getLong("id"));
-
-    return mailRows.stream().map(mailFlagService::rowToEmailWithAggregatedFlags).collect(Collectors.toList());
+    return store.listMessages(mailbox.getLong("id"));
   }
 
   public List<Email> getActiveMessages(Long mailboxId) {
-    String sql = SqlTemplates.get("mailbox.getActiveMessages");
-    List<Row> mailRows = Db.find(sql, mailboxId);
-    return mailRows.stream().map(mailFlagService::rowToEmailWithAggregatedFlags).collect(Collectors.toList());
+    return store.listMessages(mailboxId);
   }
 
   /**
@@ -233,7 +201,6 @@ public class MailService {
 
   /**
    * [IMAP核心] 根据 UID 获取邮件。
-   * 优化：使用单个SQL查询，直接获取目标邮件。
    */
   public Email getMessageByUid(String username, String mailboxName, long uid) {
     Row user = mwUserService.getUserByUsername(username);
@@ -243,35 +210,26 @@ public class MailService {
     if (mailbox == null)
       return null;
 
-    String sql = SqlTemplates.get("mailbox.getMessageByUid");
-    Row row = Db.findFirst(sql, mailbox.getLong("id"), uid);
-    if (row == null)
-      return null;
-
-    return mailFlagService.rowToEmailWithAggregatedFlags(row);
+    return store.findByUid(mailbox.getLong("id"), uid);
   }
 
   /**
-   * [IMAP核心] 修改邮件标志。
-   * 优化：使用批量、原子的SQL操作。
+   * [IMAP核心] 给多封邮件添加同一个标志。
+   * 用于 FETCH 隐式设置 \Seen 等按邮件 ID 批量修改的场景。
    */
-  public void storeFlags(Long mailId, Set<String> newFlags, boolean add) {
-
-    if (add) {
-      String sql = SqlTemplates.get("mailbox.flags.addBatch");
-      for (String flag : newFlags) {
-        Db.updateBySql(sql, SnowflakeIdUtils.id(), mailId, flag);
-      }
-
-    } else {
-      String flagPlaceholders = String.join(",", Collections.nCopies(newFlags.size(), "?"));
-      String sql = String.format(SqlTemplates.get("mailbox.flags.removeBatch"), flagPlaceholders);
+  public void addFlag(Collection<Long> mailIds, String flag) {
+    store.addFlag(mailIds, flag);
+  }
 
-      List<Object> params = new ArrayList<>();
-      params.add(mailId);
-      params.addAll(newFlags);
-      Db.updateBySql(sql, params.toArray());
-    }
+  /**
+   * [IMAP核心] 按消息集合修改标志，不加载邮件内容；silent 为 false 时返回
+   * 每封邮件的 UID 和修改后的标志，用于 FETCH 响应。
+   *
+   * @param uids 已换算为 UID 的消息集合
+   * @return silent 时返回空列表，否则按 UID 升序排列
+   */
+  public List<Email> storeFlags(long mailboxId, MessageSet uids, StoreMode mode, Set<String> flags, boolean silent) {
+    return store.storeFlags(mailboxId, uids, mode, flags, silent);
   }
 
   /**
@@ -297,101 +255,28 @@ public class MailService {
   }
 
   public void clearRecentFlags(Long mailBoxId) {
-    String sql = SqlTemplates.get("mailbox.flags.clearRecent");
-    Db.updateBySql(sql, mailBoxId);
+    store.clearRecent(mailBoxId);
   }
 
   /**
-  * [IMAP核心] 根据UID集合获取邮件列表。
-  * 优化：将过滤逻辑下推到数据库，避免在内存中操作大列表。
-  */
-  public List<Email> findEmailsByUidSet(String username, String mailboxName, String messageSet) {
-    Row user = mwUserService.getUserByUsername(username);
-    if (user == null) {
-      return Collections.emptyList();
-    }
-
-    Row mailbox = mailBoxService.getMailboxByName(user.getLong("id"), mailboxName);
-    if (mailbox == null) {
-      return Collections.emptyList();
-    }
-
-    long mailboxId = mailbox.getLong("id");
-
-    return findEmailsByUidSet(mailboxId, messageSet);
+   * [IMAP核心] 根据 UID 集合获取邮件列表，按 UID 升序。
+   * 只返回元数据，需要原文时调用 {@link MailBodyService#loadBodies(List)}。
+   *
+   * @param uids 已解析 * 的 UID 集合
+   */
+  public List<Email> findEmailsByUids(long mailboxId, MessageSet uids) {
+    return store.findByUids(mailboxId, uids);
   }
 
-  public List<Email> findEmailsByUidSet(long mailboxId, String messageSet) {
-    // —— 1. 查库
-    WhereClauseResult where = buildUidWhereClause(messageSet, mailboxId);
-    if (where.getClause().isEmpty()) {
-      return Collections.emptyList();
-    }
-    String sql = String.format(SqlTemplates.get("mailbox.findEmails.baseQuery"), where.getClause());
-    List<Object> params = new ArrayList<>();
-    params.add(mailboxId);
-    params.addAll(where.getParams());
-    List<Email> emails = new ArrayList<>();
-    for (Row r : Db.find(sql, params.toArray())) {
-      emails.add(mailFlagService.rowToEmailWithAggregatedFlags(r));
-    }
-
-    // —— 2. 按客户端顺序展开 messageSet ——  
-    // 支持 "5"、"1:4"、"4:1"、"*"、"10:*"、"*:20" 等格式
-    List<Long> requestedOrder = new ArrayList<>();
-    Long maxUid = null;
-    for (String part0 : messageSet.split(",")) {
-      String part = part0.trim();
-      // 2.1 range
-      if (part.contains(":")) {
-        String[] ss = part.split(":", 2);
-        // 懒加载 maxUid
-        if (maxUid == null) {
-          maxUid = getMaxUid(mailboxId);
-        }
-        long start = ss[0].equals("*") ? maxUid : Long.parseLong(ss[0]);
-        long end = ss[1].equals("*") ? maxUid : Long.parseLong(ss[1]);
-        if (start <= end) {
-          for (long u = start; u <= end; u++) {
-            requestedOrder.add(u);
-          }
-        } else {
-          for (long u = start; u >= end; u--) {
-            requestedOrder.add(u);
-          }
-        }
-      }
-      // 2.2 wildcard "*"
-      else if (part.equals("*")) {
-        if (maxUid == null) {
-          maxUid = getMaxUid(mailboxId);
-        }
-        requestedOrder.add(maxUid);
-      }
-      // 2.3 单个 UID
-      else {
-        requestedOrder.add(Long.parseLong(part));
-      }
-    }
-
-    // —— 3. 再次重排查询到的结果 ——  
-    Map<Long, Email> byUid = new HashMap<>(emails.size());
-    for (Email e : emails) {
-      byUid.put(e.getUid(), e);
-    }
-    List<Email> ordered = new ArrayList<>(requestedOrder.size());
-    for (Long uid : requestedOrder) {
-      Email e = byUid.get(uid);
-      if (e != null) {
-        ordered.add(e);
-      }
-    }
-    return ordered;
+  /**
+   * SEARCH 的候选邮件，包括带 \Deleted 尚未 EXPUNGE 的，只有 ID、UID、接收时间和标志
+   */
+  public List<Email> listSearchCandidates(long mailboxId) {
+    return store.listSearchFlags(mailboxId);
   }
 
   /**
   * [IMAP核心] 根据序号集合获取邮件列表。
-  * 优化：使用窗口函数在数据库中过滤，避免内存操作。
   */
   public List<Email> findEmailsBySeqSet(String username, String mailboxName, String messageSet) {
     Row user = mwUserService.getUserByUsername(username);
@@ -410,81 +295,18 @@ public class MailService {
   }
 
   public List<Email> findEmailsBySeqSet(long mailboxId, String messageSet) {
-    // 解析 messageSet 并构建 SQL 条件
-    WhereClauseResult whereClause = buildSeqWhereClause(messageSet, mailboxId);
-    if (whereClause.getClause().isEmpty()) {
-      return Collections.emptyList();
+    MessageSet seqs = MessageSet.parse(messageSet);
+    if (seqs.hasStar()) {
+      seqs = seqs.resolveStar(store.countMessages(mailboxId));
     }
-
-    // 使用 SqlTemplates 动态解析 #include
-    String resolvedBaseQuery = SqlTemplates.get("mailbox.findEmails.BySeqSet");
-    String finalSql = String.format(resolvedBaseQuery, whereClause.getClause());
-
-    List<Object> params = new ArrayList<>();
-    params.add(mailboxId); // 这是子查询中的 '?'
-    params.addAll(whereClause.getParams()); // 这是外部WHERE条件的参数
-
-    List<Row> mailRows = Db.find(finalSql, params.toArray());
-    return mailRows.stream().map(mailFlagService::rowToEmailWithAggregatedFlags).collect(Collectors.toList());
-  }
-
-  private WhereClauseResult buildUidWhereClause(String messageSet, long mailboxId) {
-    StringBuilder clause = new StringBuilder();
-    List<Object> params = new ArrayList<>();
-    Long maxUid = null; // Lazy-loaded max UID
-
-    String[] parts = messageSet.split(",");
-    for (String part : parts) {
-      part = part.trim();
-      if (clause.length() > 0)
-        clause.append(" OR ");
-
-      if (part.contains(":")) {
-        String[] range = part.split(":", 2);
-        if ("*".equals(range[0]) || "*".equals(range[1])) {
-          if (maxUid == null)
-            maxUid = getMaxUid(mailboxId);
-        }
-        long start = "*".equals(range[0]) ? maxUid : Long.parseLong(range[0]);
-        long end = "*".equals(range[1]) ? maxUid : Long.parseLong(range[1]);
-        clause.append("m.uid BETWEEN ? AND ?");
-        params.add(Math.min(start, end));
-        params.add(Math.max(start, end));
-      } else {
-        if ("*".equals(part)) {
-          if (maxUid == null)
-            maxUid = getMaxUid(mailboxId);
-          clause.append("m.uid = ?");
-          params.add(maxUid);
-        } else {
-          clause.append("m.uid = ?");
-          params.add(Long.parseLong(part));
-        }
-      }
-    }
-    return new WhereClauseResult(clause.toString(), params);
-  }
-
-  private Long getMaxUid(long mailboxId) {
-    Row row = Db.findFirst(SqlTemplates.get("mailbox.getMaxUid"), mailboxId);
-    return (row != null && row.getLong("max") != null) ? row.getLong("max") : 0L;
-  }
-
-  /**
-   * 获取待 EXPUNGE 的邮件序号列表
-   */
-  public List<Integer> getExpungeSeqNums(String username, String mailboxName) {
-    String sql = SqlTemplates.get("mailbox.getExpungeSeqNums");
-    List<Row> rows = Db.find(sql, username, mailboxName);
-    return rows.stream().map(r -> r.getInt("seq_num")).collect(Collectors.toList());
+    return store.findBySeqs(mailboxId, seqs);
   }
 
   /**
-   * 逻辑删除所有已标记 \Deleted 的邮件实例
+   * 加载 IMAP 会话视图的 UID 索引，只读取 UID 列
    */
-  public void expunge(String username, String mailboxName) {
-    String sql = SqlTemplates.get("mailbox.expunge");
-    Db.updateBySql(sql, username, mailboxName);
+  public UidIndex loadUidIndex(long mailboxId) {
+    return new UidIndex(store.loadUids(mailboxId));
   }
 
   /**
@@ -495,10 +317,7 @@ public class MailService {
     if (user == null) {
       return new ArrayList<>(0);
     }
-    Long userId = user.getLong("id");
-    String sql = "SELECT name FROM mw_mailbox WHERE user_id = ? AND deleted = 0";
-    List<Row> rows = Db.find(sql, userId);
-    return rows.stream().map(r -> r.getStr("name")).collect(Collectors.toList());
+    return store.listMailboxNames(user.getLong("id"));
   }
 
   /**
@@ -512,25 +331,20 @@ public class MailService {
     if (user == null) {
       throw new IllegalStateException("User not found: " + username);
     }
-    long mailboxId = SnowflakeIdUtils.id();
     long userId = user.getLong("id");
-
-    Row newMailbox = Row.by("id", mailboxId).set("user_id", userId).set("name", mailboxName)
-        //
-        .set("uid_validity", mailboxId).set("uid_next", 1).set("creator", "system").set("updater", "system")
-        //
-        .set("tenant_id", user.getLong("tenant_id"));
-
-    Db.save("mw_mailbox", "id", newMailbox);
+    Long tenantId = user.getLong("tenant_id");
+    long mailboxId = store.createMailbox(userId, tenantId == null ? 0 : tenantId, mailboxName);
+    mailBoxService.invalidate(userId, mailboxName);
     log.info("Created mailbox '{}' (id={}) for user {}", mailboxName, mailboxId, username);
   }
 
-  public void copyEmailsByUidSet(String username, String srcMailboxName, String uidSet, String destMailboxName) {
+  public void copyEmails(String username, long srcMailboxId, MessageSet uids, String destMailboxName) {
     // 1. 找到要复制的邮件
-    List<Email> toCopy = findEmailsByUidSet(username, srcMailboxName, uidSet);
+    List<Email> toCopy = findEmailsByUids(srcMailboxId, uids);
     if (toCopy.isEmpty()) {
       return;
     }
+    mailBodyService.loadBodies(toCopy);
     // 2. 对每封邮件，重新用 saveEmailInternal 插入到目标 mailbox
     for (Email e : toCopy) {
       // rawContent 来自 Email.getRawContent()
@@ -539,55 +353,31 @@ public class MailService {
   }
 
   public boolean exitsMailBox(Long userId, String mailboxName) {
-    String sql = "select count(1) from mw_mailbox where user_id=? and name=?";
-    return Db.existsBySql(sql, userId, mailboxName);
+    return mailBoxService.getMailboxByName(userId, mailboxName) != null;
   }
 
   public Long queryMailBoxId(Long userId, String mailboxName) {
-    String sql = "select id from mw_mailbox where user_id=? and name=?";
-    return Db.queryLong(sql, userId, mailboxName);
+    return mailBoxService.getMailboxIdByName(userId, mailboxName);
   }
 
-  public void moveEmailsByUidSet(Long userId, String src, String uidSet, String dest) {
-    long srcMailboxId = mailBoxService.getMailboxByName(userId, src).getLong("id");
+  public void moveEmails(Long userId, long srcMailboxId, MessageSet uids, String dest) {
     long destMailboxId = mailBoxService.getMailboxByName(userId, dest).getLong("id");
-
-    // 1. 解析 UID set
-    List<Long> uids = parseUidSet(uidSet, srcMailboxId); // 比如 [42L, 43L, 44L]
-    // 2. 计算要 bump 的数量
-    int cnt = uids.size();
-    // 3. 准备 IN 占位符
-
-    String inClause = uids.stream().map(u -> "?").collect(Collectors.joining(","));
-
-    // 4. 从模板中取出 SQL，然后替换占位注释
-    String raw = SqlTemplates.get("mailbox.moveEmails");
-    String sql = String.format(raw, inClause);
-    // 5. 按顺序组装参数：cnt, destMailboxId, srcMailboxId, 然后是每个 uid
-    List<Object> params = new ArrayList<>();
-    params.add(cnt);
-    params.add(destMailboxId);
-    params.add(cnt);
-    params.add(srcMailboxId);
-    params.addAll(uids);
-    params.add(destMailboxId);
-    // 6. 执行
-    Db.updateBySql(sql, params.toArray());
+    if (uids.isEmpty()) {
+      return;
+    }
+    store.moveMessages(srcMailboxId, uids, destMailboxId);
   }
 
   public long highest_modseq(long mailboxId) {
-    String sql = "select highest_modseq from mw_mailbox where id=?";
-    return Db.queryLong(sql, mailboxId);
+    return store.highestModseq(mailboxId);
   }
 
   public List<Long> listUids(Long userId, Long mailBoxId) {
-    String sql = SqlTemplates.get("mailbox.listUids");
-    return Db.queryListLong(sql, userId, mailBoxId);
+    return store.listUids(userId, mailBoxId);
   }
 
   public Row status(Long boxId) {
-    String sql = SqlTemplates.get("mailbox.status");
-    return Db.findFirst(sql, boxId, boxId, boxId, boxId);
+    return store.status(boxId);
   }
 
 }
\ No newline at end of file
@@ -1,49 +1,136 @@
 package com.tio.mail.wing.service;
 
-import com.litongjava.db.activerecord.Db;
 import com.litongjava.db.activerecord.Row;
-import com.litongjava.template.SqlTemplates;
 import com.litongjava.tio.utils.digest.Sha256Utils;
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.tio.mail.wing.cache.AuthResultCache;
+import com.tio.mail.wing.cache.CacheRegistry;
+import com.tio.mail.wing.cache.LoginThrottle;
+import com.tio.mail.wing.cache.LruTtlCache;
+import com.tio.mail.wing.cache.RowSnapshot;
+import com.tio.mail.wing.db.SqlTemplateCache;
+import com.tio.mail.wing.db.TimedDb;
 
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
 public class MwUserService {
+
+  private final AuthResultCache authCache = new AuthResultCache(EnvUtils.getInt("mail.auth.cache.size", 10000),
+      //
+      EnvUtils.getInt("mail.auth.cache.ttl.seconds", 60) * 1000L);
+
+  private final LoginThrottle loginThrottle = new LoginThrottle(EnvUtils.getInt("mail.auth.throttle.max.failures", 5),
+      //
+      EnvUtils.getInt("mail.auth.throttle.window.seconds", 300) * 1000L,
+      //
+      EnvUtils.getInt("mail.auth.throttle.lockout.seconds", 300) * 1000L, 100000);
+
+  /** 用户在本服务之外维护，以下缓存没有失效通知，只按 TTL 过期 */
+  private final int metaCacheSize = EnvUtils.getInt("mail.cache.meta.size", 50000);
+  private final long metaCacheTtl = EnvUtils.getInt("mail.cache.meta.ttl.seconds", 600) * 1000L;
+
+  /** username -> 用户行（不含 password_hash）的只读快照 */
+  private final LruTtlCache<String, RowSnapshot> usersByName = CacheRegistry.register(new LruTtlCache<>("user.byName", metaCacheSize, metaCacheTtl));
+
+  /** 已确认存在的用户ID */
+  private final LruTtlCache<Long, Boolean> existingUserIds = CacheRegistry.register(new LruTtlCache<>("user.existsById", metaCacheSize, metaCacheTtl));
+
+  /** 确认不存在的用户名（外部收件人），TTL 较短，避免新建用户后长时间被当成外部地址 */
+  private final LruTtlCache<String, Boolean> missingUsers = CacheRegistry.register(new LruTtlCache<>("user.missing", metaCacheSize,
+      //
+      EnvUtils.getInt("mail.cache.meta.negative.ttl.seconds", 30) * 1000L));
+
+  /**
+   * 认证用户，不区分客户端来源
+   */
+  public Long authenticate(String username, String password) {
+    return authenticate(username, password, null);
+  }
+
   /**
    * 认证用户
+   * 先查认证缓存，已缓存的正确凭据不受限流影响；未命中时检查该来源的失败限流，再访问数据库并校验密码哈希。
+   * 用户在本服务之外维护，缓存没有失效通知：改密码或删除用户后，旧凭据最多还能在 mail.auth.cache.ttl.seconds 内登录。
    * @param username 用户名
    * @param password 密码
+   * @param clientIp 客户端 IP，失败限流按 (用户名, IP) 计数
    * @return 是否成功
    */
-  public Long authenticate(String username, String password) {
+  public Long authenticate(String username, String password, String clientIp) {
+    if (username == null || password == null) {
+      return null;
+    }
+    Long cachedUserId = authCache.get(username, password);
+    if (cachedUserId != null) {
+      return cachedUserId;
+    }
+    if (loginThrottle.isBlocked(username, clientIp)) {
+      log.warn("Authentication for {} from {} rejected: too many failed attempts", username, clientIp);
+      return null;
+    }
+
     String sql = "select id,password_hash from mw_user where username=? and deleted=0";
-    Row row = Db.findFirst(sql, username);
+    Row row = TimedDb.findFirst("user.authenticate", sql, username);
     if (row == null) {
+      loginThrottle.recordFailure(username, clientIp);
       return null;
     }
     String user_password_hash = row.getString("password_hash");
     if (user_password_hash != null) {
       if (Sha256Utils.checkPassword(password, user_password_hash)) {
-        return row.getLong("id");
+        Long userId = row.getLong("id");
+        authCache.put(username, password, userId);
+        loginThrottle.recordSuccess(username, clientIp);
+        return userId;
       }
     }
+    loginThrottle.recordFailure(username, clientIp);
     return null;
 
   }
 
   public boolean userExists(String username) {
-    String sql = "select count(1) from mw_user where username=? and deleted=0";
-    return Db.existsBySql(sql, username);
+    return getUserByUsername(username) != null;
   }
 
   public boolean userExists(Long userId) {
+    if (existingUserIds.get(userId) != null) {
+      return true;
+    }
     String sql = "select count(1) from mw_user where id=? and deleted=0";
-    return Db.existsBySql(sql, userId);
+    boolean exists = TimedDb.existsBySql("user.existsById", sql, userId);
+    if (exists) {
+      existingUserIds.put(userId, Boolean.TRUE);
+    }
+    return exists;
   }
 
   public Long getUserIdByUsername(String username) {
-    String sql = "select id from mw_user where username=? and deleted=0";
-    return Db.queryLong(sql, username);
+    Row user = getUserByUsername(username);
+    return user == null ? null : user.getLong("id");
   }
 
+  /**
+   * 根据用户名获取用户行，结果在进程内缓存，每次返回新的 Row。
+   * 缓存的行去掉了 password_hash，认证请走 {@link #authenticate(String, String)}。
+   */
   public Row getUserByUsername(String username) {
-    return Db.findFirst(SqlTemplates.get("mailbox.user.findByUsername"), username);
+    RowSnapshot cached = usersByName.get(username);
+    if (cached != null) {
+      return cached.toRow();
+    }
+    if (missingUsers.get(username) != null) {
+      return null;
+    }
+    Row user = TimedDb.findFirst("mailbox.user.findByUsername", SqlTemplateCache.get("mailbox.user.findByUsername"), username);
+    if (user == null) {
+      missingUsers.put(username, Boolean.TRUE);
+      return null;
+    }
+    user.remove("password_hash");
+    usersByName.put(username, RowSnapshot.of(user));
+    existingUserIds.put(user.getLong("id"), Boolean.TRUE);
+    return user;
   }
-}
\ No newline at end of file
+}
@@ -1,9 +1,15 @@
 package com.tio.mail.wing.service;
 
-import java.util.List;
-
 import com.litongjava.jfinal.aop.Aop;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.tio.mail.wing.handler.Pop3BodyWriter;
 import com.tio.mail.wing.handler.Pop3SessionContext;
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.model.Pop3Maildrop;
+import com.tio.mail.wing.packet.Pop3Packet;
+import com.tio.mail.wing.trace.ProtocolTracer;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -12,6 +18,8 @@ public class Pop3Service {
 
   private final MwUserService userService = Aop.get(MwUserService.class);
   private final MailService mailboxService = Aop.get(MailService.class);
+  private final ImapService imapService = Aop.get(ImapService.class);
+  private final int bodyChunkChars = EnvUtils.getInt("mail.server.pop3.body.chunk.chars", 64 * 1024);
 
   /**
    * 处理授权阶段命令，返回一次性可发送的 POP3 响应字符串
@@ -46,10 +54,11 @@ public class Pop3Service {
       } else if (parts.length < 2) {
         resp.append("-ERR Password required.\r\n");
       } else {
-        Long userId = userService.authenticate(username, parts[1]);
+        Long userId = userService.authenticate(username, parts[1], sessionContext.getClientIp());
         if (userId != null) {
-          sessionContext.setState(Pop3SessionContext.State.TRANSACTION);
           sessionContext.setUserId(userId);
+          sessionContext.setMaildrop(mailboxService.loadMaildrop(userId));
+          sessionContext.setState(Pop3SessionContext.State.TRANSACTION);
           resp.append("+OK Mailbox open.\r\n");
         } else {
           sessionContext.setUsername(null);
@@ -67,22 +76,19 @@ public class Pop3Service {
     }
 
     String result = resp.toString();
-    log.info("POP3 >>>\n{}", result.trim());
     return result;
   }
 
   /**
    * 处理事务阶段命令，返回一次性可发送的 POP3 响应字符串
    */
-  public String handleTransactionState(String command, String[] parts, Pop3SessionContext sessionContext) {
+  public String handleTransactionState(String command, String[] parts, Pop3SessionContext sessionContext, ChannelContext channelContext) {
     StringBuilder resp = new StringBuilder();
-    String username = sessionContext.getUsername();
-    Long userId = sessionContext.getUserId();
+    Pop3Maildrop maildrop = sessionContext.getMaildrop();
 
     switch (command) {
     case "STAT":
-      int[] stat = mailboxService.getStat(username);
-      resp.append("+OK ").append(stat[0]).append(" ").append(stat[1]).append("\r\n");
+      resp.append("+OK ").append(maildrop.undeletedCount()).append(" ").append(maildrop.undeletedSize()).append("\r\n");
       break;
 
     case "TOP":
@@ -98,45 +104,51 @@ public class Pop3Service {
       try {
         int msgId = Integer.parseInt(topArgs[0]);
         int lines = Integer.parseInt(topArgs[1]);
-        String content = mailboxService.getMessageContent(username, msgId);
-        if (content == null) {
-          resp.append("-ERR No such message.\r\n");
-        } else {
-          resp.append("+OK Top of message follows\r\n");
-          // 头+前几行正文
-          String[] contentLines = content.split("\r\n");
-          boolean inBody = false;
-          int bodyCount = 0;
-          for (String line : contentLines) {
-            resp.append(line).append("\r\n");
-            if (!inBody && line.isEmpty())
-              inBody = true;
-            if (inBody && !line.isEmpty())
-              bodyCount++;
-            if (inBody && bodyCount >= lines)
-              break;
-          }
-          resp.append(".\r\n");
+        if (lines < 0) {
+          resp.append("-ERR Invalid arguments for TOP command.\r\n");
+          break;
         }
+        // 头部 + 前 lines 行正文
+        return sendMessage(channelContext, sessionContext, msgId, lines, "+OK Top of message follows\r\n");
       } catch (NumberFormatException e) {
         resp.append("-ERR Invalid arguments for TOP command.\r\n");
       }
       break;
 
     case "LIST":
-      List<Integer> sizes = mailboxService.listMessages(userId);
-      resp.append("+OK ").append(sizes.size()).append(" messages\r\n");
-      for (int i = 0; i < sizes.size(); i++) {
-        resp.append(i + 1).append(" ").append(sizes.get(i)).append("\r\n");
+      if (parts.length > 1) {
+        int msgId = parseMessageNumber(parts[1], maildrop);
+        if (msgId < 0) {
+          resp.append("-ERR No such message.\r\n");
+        } else {
+          resp.append("+OK ").append(msgId).append(" ").append(maildrop.size(msgId)).append("\r\n");
+        }
+        break;
+      }
+      resp.append("+OK ").append(maildrop.undeletedCount()).append(" messages\r\n");
+      for (int i = 1; i <= maildrop.count(); i++) {
+        if (maildrop.exists(i)) {
+          resp.append(i).append(" ").append(maildrop.size(i)).append("\r\n");
+        }
       }
       resp.append(".\r\n");
       break;
 
     case "UIDL":
-      List<Long> uids = mailboxService.listUids(userId);
+      if (parts.length > 1) {
+        int msgId = parseMessageNumber(parts[1], maildrop);
+        if (msgId < 0) {
+          resp.append("-ERR No such message.\r\n");
+        } else {
+          resp.append("+OK ").append(msgId).append(" ").append(maildrop.uid(msgId)).append("\r\n");
+        }
+        break;
+      }
       resp.append("+OK Unique-ID listing follows\r\n");
-      for (int i = 0; i < uids.size(); i++) {
-        resp.append(i + 1).append(" ").append(uids.get(i)).append("\r\n");
+      for (int i = 1; i <= maildrop.count(); i++) {
+        if (maildrop.exists(i)) {
+          resp.append(i).append(" ").append(maildrop.uid(i)).append("\r\n");
+        }
       }
       resp.append(".\r\n");
       break;
@@ -147,23 +159,22 @@ public class Pop3Service {
         break;
       }
       try {
-        int msgId = Integer.parseInt(parts[1]);
-        String content = mailboxService.getMessageContent(username, msgId);
-        if (content == null) {
-          resp.append("-ERR No such message.\r\n");
-        } else {
-          resp.append("+OK Message ").append(msgId).append(" follows\r\n");
-          // 邮件全文
-          resp.append(content).append("\r\n.\r\n");
-        }
+        int msgId = Integer.parseInt(parts[1].trim());
+        return sendMessage(channelContext, sessionContext, msgId, -1, "+OK Message " + msgId + " follows\r\n");
       } catch (NumberFormatException e) {
         resp.append("-ERR Invalid message ID.\r\n");
       }
       break;
 
     case "DELE":
-      // 标记删除逻辑（此示例暂不真正删除）
-      resp.append("+OK Message marked for deletion.\r\n");
+      // 只在快照中标记，QUIT 时才真正删除
+      if (parts.length < 2) {
+        resp.append("-ERR Message ID required.\r\n");
+      } else if (maildrop.markDeleted(parseMessageNumber(parts[1], maildrop))) {
+        resp.append("+OK Message marked for deletion.\r\n");
+      } else {
+        resp.append("-ERR No such message.\r\n");
+      }
       break;
 
     case "NOOP":
@@ -171,8 +182,8 @@ public class Pop3Service {
       break;
 
     case "RSET":
-      // 取消删除标记逻辑
-      resp.append("+OK Deletion marks removed.\r\n");
+      maildrop.reset();
+      resp.append("+OK maildrop has ").append(maildrop.count()).append(" messages (").append(maildrop.undeletedSize()).append(" octets)\r\n");
       break;
 
     case "QUIT":
@@ -183,18 +194,71 @@ public class Pop3Service {
     }
 
     String result = resp.toString();
-    log.info("POP3 >>>\n{}", result.trim());
     return result;
   }
 
   /**
-   * 处理 QUIT，返回一次性可发送的 POP3 响应字符串
+   * RETR / TOP：状态行和邮件内容按块读取、字节填充后直接写到连接，阻塞发送使读取速度跟随客户端接收速度。
+   *
+   * @param maxBodyLines 正文行数，-1 表示全文
+   * @return 邮件不存在时返回 -ERR 响应，已写出时返回 null
+   */
+  private String sendMessage(ChannelContext channelContext, Pop3SessionContext sessionContext, int msgId, int maxBodyLines,
+      String status) {
+    Pop3Maildrop maildrop = sessionContext.getMaildrop();
+    if (!maildrop.exists(msgId)) {
+      return "-ERR No such message.\r\n";
+    }
+    Pop3BodyWriter writer = new Pop3BodyWriter(chunk -> Tio.bSend(channelContext, new Pop3Packet(chunk)), bodyChunkChars,
+        maxBodyLines);
+    writer.status(status);
+    if (!mailboxService.readRawContent(maildrop.mailId(msgId), maildrop.contentId(msgId), maildrop.size(msgId),
+        bodyChunkChars, writer::write)) {
+      return "-ERR No such message.\r\n";
+    }
+    ProtocolTracer.out(channelContext, "POP3", sessionContext.getUsername(), status);
+    writer.finish();
+    return null;
+  }
+
+  /**
+   * @return 快照中的消息编号，无法解析或不存在时返回 -1
+   */
+  private int parseMessageNumber(String arg, Pop3Maildrop maildrop) {
+    try {
+      int msgId = Integer.parseInt(arg.trim());
+      return maildrop.exists(msgId) ? msgId : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * 处理 QUIT，返回一次性可发送的 POP3 响应字符串。
+   * 从 TRANSACTION 状态退出时进入 UPDATE 状态，把 DELE 标记的邮件一次性删除，
+   * 并通知选中 INBOX 的 IMAP 连接；删除失败时返回 -ERR，邮件保持不变 (RFC 1939)。
    */
   public String handleQuit(Pop3SessionContext sessionContext) {
+    boolean inTransaction = sessionContext.getState() == Pop3SessionContext.State.TRANSACTION;
     sessionContext.setState(Pop3SessionContext.State.UPDATE);
-    // 这里执行真正的删除操作（本系统暂不删除邮件）
-    String result = "+OK tio-mail-wing POP3 server signing off.\r\n";
-    log.info("POP3 >>>\n{}", result.trim());
-    return result;
+    Pop3Maildrop maildrop = sessionContext.getMaildrop();
+    if (!inTransaction || maildrop == null) {
+      return "+OK tio-mail-wing POP3 server signing off.\r\n";
+    }
+
+    long[] mailIds = maildrop.deletedMailIds();
+    if (mailIds.length == 0) {
+      return "+OK tio-mail-wing POP3 server signing off.\r\n";
+    }
+    Long userId = sessionContext.getUserId();
+    MessageSet expunged;
+    try {
+      expunged = mailboxService.expungeMails(userId, maildrop.getMailboxId(), mailIds);
+    } catch (Exception e) {
+      log.error("POP3 expunge failed, user={}, mails={}", userId, mailIds.length, e);
+      return "-ERR Some deleted messages not removed.\r\n";
+    }
+    imapService.notifyExpunged(userId, maildrop.getMailboxId(), expunged);
+    return "+OK tio-mail-wing POP3 server signing off (" + maildrop.undeletedCount() + " messages left).\r\n";
   }
 }
@@ -53,7 +53,7 @@ public class SmtpService {
         return "334 " + challenge + "\r\n";
       } else if (session.getState() == SmtpSessionContext.State.AUTH_WAIT_PASSWORD) {
         String username = session.getUsername();
-        Long userId = userService.authenticate(username, decoded);
+        Long userId = userService.authenticate(username, decoded, session.getClientIp());
         if (userId != null) {
           session.setAuthenticated(true);
           session.setUserId(userId);
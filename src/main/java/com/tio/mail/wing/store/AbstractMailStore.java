@@ -0,0 +1,58 @@
+package com.tio.mail.wing.store;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.tio.mail.wing.model.MessageSet;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 监听器的注册和通知，单个监听器抛出的异常只记录日志，不影响变更结果和其它监听器
+ */
+@Slf4j
+public abstract class AbstractMailStore implements MailStore {
+
+  private final List<MailStoreListener> listeners = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void addListener(MailStoreListener listener) {
+    listeners.add(listener);
+  }
+
+  protected void fireAppend(long userId, long mailboxId, long uid) {
+    for (MailStoreListener l : listeners) {
+      try {
+        l.onAppend(userId, mailboxId, uid);
+      } catch (Exception e) {
+        log.error("Mail store listener failed on append, mailbox {} uid {}", mailboxId, uid, e);
+      }
+    }
+  }
+
+  protected void fireExpunge(long mailboxId, MessageSet uids) {
+    if (uids.isEmpty()) {
+      return;
+    }
+    for (MailStoreListener l : listeners) {
+      try {
+        l.onExpunge(mailboxId, uids);
+      } catch (Exception e) {
+        log.error("Mail store listener failed on expunge, mailbox {} uids {}", mailboxId, uids, e);
+      }
+    }
+  }
+
+  protected void fireFlags(long mailboxId, MessageSet uids) {
+    if (uids.isEmpty()) {
+      return;
+    }
+    for (MailStoreListener l : listeners) {
+      try {
+        l.onFlags(mailboxId, uids);
+      } catch (Exception e) {
+        log.error("Mail store listener failed on flags, mailbox {} uids {}", mailboxId, uids, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,1201 @@
+package com.tio.mail.wing.store;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+import com.litongjava.db.activerecord.Row;
+import com.litongjava.tio.utils.digest.Sha256Utils;
+import com.litongjava.tio.utils.snowflake.SnowflakeIdUtils;
+import com.tio.mail.wing.consts.MailBoxName;
+import com.tio.mail.wing.consts.StoreMode;
+import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.model.Pop3Maildrop;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 嵌入式实现：单个只追加的日志文件 (dir/mail.log) 加内存索引，适合单节点小规模部署和测试，没有网络往返。
+ * <p>
+ * 每次变更追加一条记录 [int 长度][byte 类型][内容][int CRC32]，启动时按顺序重放重建索引；
+ * 末尾不完整或校验失败的记录（写入中途进程退出）被截掉。邮件原文只存在日志中，索引记录其文件位置，读取时按位置读文件。
+ * 按 SHA-256 去重的内容在无人引用后成为死数据，启动时死数据超过存活数据且超过 compactMinBytes 则重写日志。
+ * <p>
+ * 读操作持读锁，变更持写锁，监听器在释放写锁之后通知。fsync 为 true 时每次变更后强制刷盘，否则交给操作系统。
+ * 内容不压缩；用户和认证仍在 PostgreSQL 中，邮箱只按 user_id 关联。
+ * 用户的 inbox 和 trash 在第一次访问时自动创建。
+ */
+@Slf4j
+public class EmbeddedMailStore extends AbstractMailStore implements Closeable {
+
+  private static final int MAGIC = 0x4d574c31; // "MWL1"
+  private static final int HEADER_BYTES = 4;
+  /** 长度 + 类型 */
+  private static final int RECORD_HEAD = 5;
+
+  private static final byte MAILBOX = 1;
+  private static final byte CONTENT = 2;
+  private static final byte APPEND = 3;
+  private static final byte FLAGS = 4;
+  private static final byte EXPUNGE = 5;
+  private static final byte MOVE = 6;
+  private static final byte MAILBOX_STATE = 7;
+
+  private static final String RECENT = "\\Recent";
+  private static final String DELETED = "\\Deleted";
+  private static final String SEEN = "\\Seen";
+
+  private final Path file;
+  private final boolean fsync;
+  private final long compactMinBytes;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private FileChannel channel;
+  /** 下一条记录的写入位置 */
+  private long end;
+
+  private final Map<Long, Mailbox> mailboxes = new HashMap<>();
+  private final Map<String, Mailbox> mailboxesByName = new HashMap<>();
+  private final Map<Long, Mail> mails = new HashMap<>();
+  /** 存活和死亡的内容都保留位置，已 EXPUNGE 邮件的内容在重启前仍可按内容 ID 读取 */
+  private final Map<Long, Content> contents = new HashMap<>();
+  /** 只含仍被引用的内容，用于去重 */
+  private final Map<String, Content> contentsByHash = new HashMap<>();
+
+  private static class Mailbox {
+    final long id;
+    final long userId;
+    final long tenantId;
+    final String name;
+    long uidNext = 1;
+    long highestModseq;
+    final TreeMap<Long, Mail> byUid = new TreeMap<>();
+
+    Mailbox(long id, long userId, long tenantId, String name) {
+      this.id = id;
+      this.userId = userId;
+      this.tenantId = tenantId;
+      this.name = name;
+    }
+  }
+
+  private static class Mail {
+    final long id;
+    final Content content;
+    final long internalDate;
+    Mailbox mailbox;
+    long uid;
+    Set<String> flags = new HashSet<>(4);
+
+    Mail(long id, Mailbox mailbox, long uid, Content content, long internalDate) {
+      this.id = id;
+      this.mailbox = mailbox;
+      this.uid = uid;
+      this.content = content;
+      this.internalDate = internalDate;
+    }
+  }
+
+  private static class Content {
+    final long id;
+    final String hash;
+    final long offset;
+    final int length;
+    int refs;
+
+    Content(long id, String hash, long offset, int length) {
+      this.id = id;
+      this.hash = hash;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /**
+   * 打开或创建 dir/mail.log 并重放
+   */
+  public EmbeddedMailStore(File dir, boolean fsync, long compactMinBytes) {
+    this.file = new File(dir, "mail.log").toPath();
+    this.fsync = fsync;
+    this.compactMinBytes = compactMinBytes;
+    try {
+      Files.createDirectories(dir.toPath());
+      open();
+      long live = liveBytes();
+      long dead = end - live;
+      if (dead > live && dead > compactMinBytes) {
+        compact();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open mail store " + file, e);
+    }
+    log.info("Opened mail store {}: {} mailboxes, {} mails, {} bytes", file, mailboxes.size(), mails.size(), end);
+  }
+
+  @Override
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      if (channel != null) {
+        channel.close();
+        channel = null;
+      }
+    } catch (IOException e) {
+      log.warn("Failed to close mail store {}", file, e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // ---------- 邮箱 ----------
+
+  @Override
+  public Row findMailbox(long userId, String name) {
+    Mailbox box = mailbox(userId, name);
+    return box == null ? null : Row.by("id", box.id).set("user_id", box.userId).set("name", box.name).set("uid_validity", box.id);
+  }
+
+  @Override
+  public Row findMailboxById(long userId, long mailboxId) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      if (box == null || box.userId != userId) {
+        return null;
+      }
+      return Row.by("id", box.id).set("uid_validity", box.id).set("uid_next", box.uidNext);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public List<String> listMailboxNames(long userId) {
+    mailbox(userId, MailBoxName.INBOX);
+    mailbox(userId, MailBoxName.TRASH);
+    lock.readLock().lock();
+    try {
+      List<String> names = new ArrayList<>();
+      for (Mailbox box : mailboxes.values()) {
+        if (box.userId == userId) {
+          names.add(box.name);
+        }
+      }
+      return names;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long createMailbox(long userId, long tenantId, String name) {
+    lock.writeLock().lock();
+    try {
+      if (mailboxesByName.containsKey(nameKey(userId, name))) {
+        throw new IllegalStateException("Mailbox already exists: " + name);
+      }
+      return createMailboxLocked(userId, tenantId, name).id;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public long highestModseq(long mailboxId) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      return box == null ? 0 : box.highestModseq;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Row status(long mailboxId) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      long messages = 0;
+      long unseen = 0;
+      long recent = 0;
+      if (box != null) {
+        for (Mail m : box.byUid.values()) {
+          if (m.flags.contains(DELETED)) {
+            continue;
+          }
+          messages++;
+          if (!m.flags.contains(SEEN)) {
+            unseen++;
+          }
+          if (m.flags.contains(RECENT)) {
+            recent++;
+          }
+        }
+      }
+      return Row.by("uidnext", box == null ? null : box.uidNext).set("messages", messages).set("unseen", unseen).set("recent", recent);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int[] stat(long mailboxId) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      if (box == null) {
+        return new int[] { 0, 0 };
+      }
+      int count = 0;
+      long size = 0;
+      for (Mail m : box.byUid.values()) {
+        if (!m.flags.contains(DELETED)) {
+          count++;
+          size += m.content.length;
+        }
+      }
+      return new int[] { count, (int) size };
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // ---------- 投递 ----------
+
+  @Override
+  public boolean append(long userId, long tenantId, String username, long mailboxId, String mailboxName, String rawContent) {
+    String hash = Sha256Utils.digestToHex(rawContent);
+    long uid;
+    lock.writeLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      if (box == null) {
+        log.error("Mailbox {} not found, cannot save email for {}", mailboxId, username);
+        return false;
+      }
+      Content content = contentsByHash.get(hash);
+      if (content == null) {
+        byte[] raw = rawContent.getBytes(StandardCharsets.UTF_8);
+        long contentId = SnowflakeIdUtils.id();
+        Record r = new Record(CONTENT).writeLong(contentId).writeUTF(hash).writeInt(raw.length).write(raw);
+        long start = write(r);
+        content = applyContent(contentId, hash, start + RECORD_HEAD + r.size() - raw.length, raw.length);
+      }
+      long mailId = SnowflakeIdUtils.id();
+      uid = box.uidNext;
+      long now = System.currentTimeMillis();
+      write(new Record(APPEND).writeLong(mailId).writeLong(mailboxId).writeLong(content.id).writeLong(uid).writeLong(now));
+      sync();
+      applyAppend(mailId, box, content, uid, now);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    log.info("Saved new email for {} in mailbox {} with UID {}", username, mailboxName, uid);
+    fireAppend(userId, mailboxId, uid);
+    return true;
+  }
+
+  // ---------- 查询 ----------
+
+  @Override
+  public List<Email> listMessages(long mailboxId) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      if (box == null) {
+        return Collections.emptyList();
+      }
+      List<Email> list = new ArrayList<>(box.byUid.size());
+      for (Mail m : box.byUid.values()) {
+        list.add(toEmail(m));
+      }
+      return list;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public List<Email> listFlags(long mailboxId) {
+    return listMessages(mailboxId);
+  }
+
+  @Override
+  public List<Email> listSearchFlags(long mailboxId) {
+    return listMessages(mailboxId);
+  }
+
+  @Override
+  public Email findByUid(long mailboxId, long uid) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      Mail m = box == null ? null : box.byUid.get(uid);
+      return m == null ? null : toEmail(m);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public List<Email> findByUids(long mailboxId, MessageSet uids) {
+    lock.readLock().lock();
+    try {
+      List<Email> list = new ArrayList<>();
+      for (Mail m : targets(mailboxId, uids)) {
+        if (!m.flags.contains(DELETED)) {
+          list.add(toEmail(m));
+        }
+      }
+      return list;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public List<Email> findBySeqs(long mailboxId, MessageSet seqs) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      if (box == null || seqs.isEmpty()) {
+        return Collections.emptyList();
+      }
+      List<Email> list = new ArrayList<>();
+      long seq = 0;
+      for (Mail m : box.byUid.values()) {
+        if (seqs.contains(++seq)) {
+          list.add(toEmail(m));
+        }
+      }
+      return list;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long countMessages(long mailboxId) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      return box == null ? 0 : box.byUid.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long[] loadUids(long mailboxId) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      if (box == null) {
+        return new long[0];
+      }
+      long[] uids = new long[box.byUid.size()];
+      int i = 0;
+      for (Long uid : box.byUid.keySet()) {
+        uids[i++] = uid;
+      }
+      return uids;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public List<Long> listUids(long userId, long mailboxId) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      if (box == null || box.userId != userId) {
+        return Collections.emptyList();
+      }
+      List<Long> uids = new ArrayList<>(box.byUid.size());
+      for (Mail m : box.byUid.values()) {
+        if (!m.flags.contains(DELETED)) {
+          uids.add(m.uid);
+        }
+      }
+      return uids;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Pop3Maildrop loadMaildrop(long mailboxId) {
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      List<Mail> list = new ArrayList<>();
+      if (box != null) {
+        for (Mail m : box.byUid.values()) {
+          if (!m.flags.contains(DELETED)) {
+            list.add(m);
+          }
+        }
+      }
+      int n = list.size();
+      long[] mailIds = new long[n];
+      long[] contentIds = new long[n];
+      long[] uids = new long[n];
+      int[] sizes = new int[n];
+      for (int i = 0; i < n; i++) {
+        Mail m = list.get(i);
+        mailIds[i] = m.id;
+        contentIds[i] = m.content.id;
+        uids[i] = m.uid;
+        sizes[i] = m.content.length;
+      }
+      return new Pop3Maildrop(mailboxId, mailIds, contentIds, uids, sizes);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // ---------- 原文 ----------
+
+  @Override
+  public Map<Long, String> loadBodies(Collection<Long> contentIds) {
+    List<Content> found = new ArrayList<>(contentIds.size());
+    lock.readLock().lock();
+    try {
+      for (Long id : contentIds) {
+        Content c = contents.get(id);
+        if (c != null) {
+          found.add(c);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    // 内容写入后位置不变，按位置读文件不需要持锁
+    Map<Long, String> bodies = new HashMap<>(found.size() * 2);
+    for (Content c : found) {
+      bodies.put(c.id, new String(readBytes(c.offset, c.length), StandardCharsets.UTF_8));
+    }
+    return bodies;
+  }
+
+  @Override
+  public boolean readBody(long mailId, int chunkChars, Predicate<String> chunkConsumer) {
+    Content c;
+    lock.readLock().lock();
+    try {
+      Mail m = mails.get(mailId);
+      if (m == null) {
+        return false;
+      }
+      c = m.content;
+    } finally {
+      lock.readLock().unlock();
+    }
+    try (Reader reader = new InputStreamReader(new RegionInputStream(c.offset, c.length), StandardCharsets.UTF_8)) {
+      char[] buf = new char[chunkChars];
+      while (true) {
+        int n = 0;
+        int r;
+        while (n < buf.length && (r = reader.read(buf, n, buf.length - n)) > 0) {
+          n += r;
+        }
+        if (n == 0 || !chunkConsumer.test(new String(buf, 0, n)) || n < buf.length) {
+          return true;
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read mail " + mailId + " from " + file, e);
+    }
+  }
+
+  // ---------- 标志 ----------
+
+  @Override
+  public void addFlag(Collection<Long> mailIds, String flag) {
+    if (mailIds.isEmpty()) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      List<Mail> changed = new ArrayList<>();
+      for (Long id : mailIds) {
+        Mail m = mails.get(id);
+        if (m != null && !m.flags.contains(flag)) {
+          changed.add(m);
+        }
+      }
+      writeFlags(changed, flags -> flags.add(flag));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public List<Email> storeFlags(long mailboxId, MessageSet uids, StoreMode mode, Set<String> flags, boolean silent) {
+    if (uids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Email> result = silent ? Collections.emptyList() : new ArrayList<>();
+    lock.writeLock().lock();
+    try {
+      List<Mail> targets = targets(mailboxId, uids);
+      List<Mail> changed = new ArrayList<>();
+      for (Mail m : targets) {
+        if (changes(m.flags, mode, flags)) {
+          changed.add(m);
+        }
+      }
+      writeFlags(changed, current -> apply(current, mode, flags));
+      if (!silent) {
+        for (Mail m : targets) {
+          result.add(toEmail(m));
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    fireFlags(mailboxId, uids);
+    return result;
+  }
+
+  @Override
+  public void clearRecent(long mailboxId) {
+    lock.writeLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      if (box == null) {
+        return;
+      }
+      List<Mail> changed = new ArrayList<>();
+      for (Mail m : box.byUid.values()) {
+        if (m.flags.contains(RECENT)) {
+          changed.add(m);
+        }
+      }
+      writeFlags(changed, flags -> flags.remove(RECENT));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // ---------- 删除和移动 ----------
+
+  @Override
+  public MessageSet expungeMails(long mailboxId, long[] mailIds) {
+    if (mailIds.length == 0) {
+      return MessageSet.EMPTY;
+    }
+    MessageSet expunged;
+    lock.writeLock().lock();
+    try {
+      Mailbox box = mailboxes.get(mailboxId);
+      if (box == null) {
+        return MessageSet.EMPTY;
+      }
+      List<Mail> targets = new ArrayList<>(mailIds.length);
+      for (long id : mailIds) {
+        Mail m = mails.get(id);
+        if (m != null && m.mailbox == box) {
+          targets.add(m);
+        }
+      }
+      // 与 mailbox.expungeByIds 一致，即使没有目标也推进 highest_modseq
+      expunged = expunge(box, targets);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    fireExpunge(mailboxId, expunged);
+    return expunged;
+  }
+
+  @Override
+  public MessageSet expungeDeleted(long mailboxId, MessageSet uids) {
+    MessageSet expunged;
+    lock.writeLock().lock();
+    try {
+      List<Mail> targets = new ArrayList<>();
+      for (Mail m : targets(mailboxId, uids)) {
+        if (m.flags.contains(DELETED)) {
+          targets.add(m);
+        }
+      }
+      if (targets.isEmpty()) {
+        return MessageSet.EMPTY;
+      }
+      expunged = expunge(mailboxes.get(mailboxId), targets);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    fireExpunge(mailboxId, expunged);
+    return expunged;
+  }
+
+  @Override
+  public void moveMessages(long srcMailboxId, MessageSet uids, long destMailboxId) {
+    if (uids.isEmpty()) {
+      return;
+    }
+    MessageSet moved;
+    lock.writeLock().lock();
+    try {
+      Mailbox dest = mailboxes.get(destMailboxId);
+      List<Mail> targets = targets(srcMailboxId, uids);
+      if (dest == null || targets.isEmpty()) {
+        return;
+      }
+      Record r = new Record(MOVE).writeLong(destMailboxId).writeInt(targets.size());
+      long[] oldUids = new long[targets.size()];
+      long uid = dest.uidNext;
+      for (int i = 0; i < oldUids.length; i++) {
+        Mail m = targets.get(i);
+        oldUids[i] = m.uid;
+        r.writeLong(m.id).writeLong(uid++);
+      }
+      write(r);
+      sync();
+      uid = dest.uidNext;
+      for (Mail m : targets) {
+        applyMove(m, dest, uid++);
+      }
+      moved = MessageSet.ofSorted(oldUids, oldUids.length);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    fireExpunge(srcMailboxId, moved);
+  }
+
+  // ---------- 内部：变更，调用方持写锁 ----------
+
+  private Mailbox mailbox(long userId, String name) {
+    String key = nameKey(userId, name);
+    lock.readLock().lock();
+    try {
+      Mailbox box = mailboxesByName.get(key);
+      if (box != null || !isDefault(name)) {
+        return box;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    lock.writeLock().lock();
+    try {
+      Mailbox box = mailboxesByName.get(key);
+      return box != null ? box : createMailboxLocked(userId, 0, name);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static boolean isDefault(String name) {
+    return MailBoxName.INBOX.equals(name) || MailBoxName.TRASH.equals(name);
+  }
+
+  private static String nameKey(long userId, String name) {
+    return userId + "/" + name;
+  }
+
+  private Mailbox createMailboxLocked(long userId, long tenantId, String name) {
+    long id = SnowflakeIdUtils.id();
+    write(new Record(MAILBOX).writeLong(id).writeLong(userId).writeLong(tenantId).writeUTF(name));
+    sync();
+    log.info("Created mailbox '{}' (id={}) for user {}", name, id, userId);
+    return applyMailbox(id, userId, tenantId, name);
+  }
+
+  /**
+   * 记录修改后的完整标志集合，重放时直接覆盖，不依赖修改前的状态
+   */
+  private void writeFlags(List<Mail> changed, Consumer<Set<String>> change) {
+    if (changed.isEmpty()) {
+      return;
+    }
+    List<Set<String>> updated = new ArrayList<>(changed.size());
+    Record r = new Record(FLAGS).writeInt(changed.size());
+    for (Mail m : changed) {
+      Set<String> flags = new HashSet<>(m.flags);
+      change.accept(flags);
+      updated.add(flags);
+      r.writeLong(m.id).writeInt(flags.size());
+      for (String flag : flags) {
+        r.writeUTF(flag);
+      }
+    }
+    write(r);
+    sync();
+    for (int i = 0; i < changed.size(); i++) {
+      changed.get(i).flags = updated.get(i);
+    }
+  }
+
+  private MessageSet expunge(Mailbox box, List<Mail> targets) {
+    long modseq = box.highestModseq + 1;
+    Record r = new Record(EXPUNGE).writeLong(box.id).writeLong(modseq).writeInt(targets.size());
+    for (Mail m : targets) {
+      r.writeLong(m.id);
+    }
+    write(r);
+    sync();
+    box.highestModseq = modseq;
+    long[] uids = new long[targets.size()];
+    for (int i = 0; i < uids.length; i++) {
+      uids[i] = targets.get(i).uid;
+      applyExpunge(targets.get(i));
+    }
+    Arrays.sort(uids);
+    return MessageSet.ofSorted(uids, uids.length);
+  }
+
+  /**
+   * UID 区间内的有效邮件，按 UID 升序；调用方持读锁或写锁
+   */
+  private List<Mail> targets(long mailboxId, MessageSet uids) {
+    Mailbox box = mailboxes.get(mailboxId);
+    if (box == null || uids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Mail> list = new ArrayList<>();
+    long[] los = uids.getLos();
+    long[] his = uids.getHis();
+    for (int i = 0; i < los.length; i++) {
+      NavigableMap<Long, Mail> range = box.byUid.subMap(los[i], true, his[i], true);
+      list.addAll(range.values());
+    }
+    return list;
+  }
+
+  private static boolean changes(Set<String> current, StoreMode mode, Set<String> flags) {
+    switch (mode) {
+    case ADD:
+      return !current.containsAll(flags);
+    case REMOVE:
+      for (String flag : flags) {
+        if (current.contains(flag)) {
+          return true;
+        }
+      }
+      return false;
+    default:
+      Set<String> next = new HashSet<>(current);
+      apply(next, mode, flags);
+      return !next.equals(current);
+    }
+  }
+
+  /**
+   * 与 mailbox.store.* 一致：FLAGS 替换时保留 \Recent
+   */
+  private static void apply(Set<String> current, StoreMode mode, Set<String> flags) {
+    switch (mode) {
+    case ADD:
+      current.addAll(flags);
+      break;
+    case REMOVE:
+      current.removeAll(flags);
+      break;
+    default:
+      current.removeIf(flag -> !flags.contains(flag) && !RECENT.equals(flag));
+      current.addAll(flags);
+    }
+  }
+
+  private Email toEmail(Mail m) {
+    Email email = new Email();
+    email.setId(m.id);
+    email.setUid(m.uid);
+    email.setContentId(m.content.id);
+    email.setSize(m.content.length);
+    email.setInternalDate(OffsetDateTime.ofInstant(Instant.ofEpochMilli(m.internalDate), ZoneId.systemDefault()));
+    email.setFlags(new HashSet<>(m.flags));
+    return email;
+  }
+
+  // ---------- 内部：索引，写入和重放共用 ----------
+
+  private Mailbox applyMailbox(long id, long userId, long tenantId, String name) {
+    Mailbox box = new Mailbox(id, userId, tenantId, name);
+    mailboxes.put(id, box);
+    mailboxesByName.put(nameKey(userId, name), box);
+    return box;
+  }
+
+  private Content applyContent(long id, String hash, long offset, int length) {
+    Content c = new Content(id, hash, offset, length);
+    contents.put(id, c);
+    contentsByHash.put(hash, c);
+    return c;
+  }
+
+  private void applyAppend(long mailId, Mailbox box, Content content, long uid, long internalDate) {
+    Mail m = new Mail(mailId, box, uid, content, internalDate);
+    m.flags.add(RECENT);
+    content.refs++;
+    mails.put(mailId, m);
+    box.byUid.put(uid, m);
+    box.uidNext = Math.max(box.uidNext, uid + 1);
+  }
+
+  private void applyExpunge(Mail m) {
+    mails.remove(m.id);
+    m.mailbox.byUid.remove(m.uid);
+    if (--m.content.refs == 0) {
+      contentsByHash.remove(m.content.hash, m.content);
+    }
+  }
+
+  private void applyMove(Mail m, Mailbox dest, long uid) {
+    m.mailbox.byUid.remove(m.uid);
+    m.mailbox = dest;
+    m.uid = uid;
+    dest.byUid.put(uid, m);
+    dest.uidNext = Math.max(dest.uidNext, uid + 1);
+  }
+
+  private long liveBytes() {
+    long live = 0;
+    for (Content c : contentsByHash.values()) {
+      live += c.length;
+    }
+    return live;
+  }
+
+  // ---------- 内部：日志文件 ----------
+
+  /**
+   * 一条日志记录的内容，写入时补上长度、类型和校验
+   */
+  private static class Record {
+    final byte type;
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    final DataOutputStream out = new DataOutputStream(bytes);
+
+    Record(byte type) {
+      this.type = type;
+    }
+
+    Record writeLong(long v) {
+      try {
+        out.writeLong(v);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return this;
+    }
+
+    Record writeInt(int v) {
+      try {
+        out.writeInt(v);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return this;
+    }
+
+    Record writeUTF(String v) {
+      try {
+        out.writeUTF(v);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return this;
+    }
+
+    Record write(byte[] v) {
+      bytes.write(v, 0, v.length);
+      return this;
+    }
+
+    int size() {
+      return bytes.size();
+    }
+  }
+
+  /**
+   * @return 记录的起始位置
+   */
+  private long write(Record r) {
+    byte[] payload = r.bytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(r.type);
+    crc.update(payload, 0, payload.length);
+    ByteBuffer buf = ByteBuffer.allocate(RECORD_HEAD + payload.length + 4);
+    buf.putInt(payload.length + 1).put(r.type).put(payload).putInt((int) crc.getValue());
+    buf.flip();
+    long start = end;
+    try {
+      long pos = start;
+      while (buf.hasRemaining()) {
+        pos += channel.write(buf, pos);
+      }
+    } catch (IOException e) {
+      // 未推进 end，下一条记录覆盖写了一半的记录
+      throw new UncheckedIOException("Failed to write mail store " + file, e);
+    }
+    end = start + buf.limit();
+    return start;
+  }
+
+  private void sync() {
+    if (!fsync) {
+      return;
+    }
+    try {
+      channel.force(false);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to sync mail store " + file, e);
+    }
+  }
+
+  private byte[] readBytes(long offset, int length) {
+    byte[] bytes = new byte[length];
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    try {
+      while (buf.hasRemaining()) {
+        if (channel.read(buf, offset + buf.position()) < 0) {
+          throw new IOException("Unexpected end of file at " + (offset + buf.position()));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read mail store " + file, e);
+    }
+    return bytes;
+  }
+
+  private void open() throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (channel.size() == 0) {
+      channel.write((ByteBuffer) ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).flip(), 0);
+      channel.force(true);
+    }
+    end = replay();
+    if (end < channel.size()) {
+      log.warn("Truncating {} bytes of incomplete records at the end of {}", channel.size() - end, file);
+      channel.truncate(end);
+    }
+  }
+
+  /**
+   * @return 最后一条完整记录之后的位置
+   */
+  private long replay() throws IOException {
+    long size = channel.size();
+    // 不关闭流，关闭会同时关闭通道
+    InputStream in = Channels.newInputStream(channel.position(0));
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a mail store log: " + file);
+    }
+    long pos = HEADER_BYTES;
+    CRC32 crc = new CRC32();
+    while (pos + RECORD_HEAD + 4 <= size) {
+      int length = data.readInt();
+      if (length < 1 || pos + 4 + length + 4 > size) {
+        break;
+      }
+      byte[] record = new byte[length];
+      data.readFully(record);
+      int expected = data.readInt();
+      crc.reset();
+      crc.update(record, 0, length);
+      if ((int) crc.getValue() != expected) {
+        break;
+      }
+      apply(record, pos);
+      pos += 4 + length + 4;
+    }
+    return pos;
+  }
+
+  private void apply(byte[] record, long start) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1));
+    switch (record[0]) {
+    case MAILBOX:
+      applyMailbox(in.readLong(), in.readLong(), in.readLong(), in.readUTF());
+      break;
+    case CONTENT: {
+      long id = in.readLong();
+      String hash = in.readUTF();
+      int length = in.readInt();
+      applyContent(id, hash, start + 4 + record.length - length, length);
+      break;
+    }
+    case APPEND: {
+      long mailId = in.readLong();
+      Mailbox box = mailboxes.get(in.readLong());
+      Content content = contents.get(in.readLong());
+      applyAppend(mailId, box, content, in.readLong(), in.readLong());
+      break;
+    }
+    case FLAGS:
+      for (int i = in.readInt(); i > 0; i--) {
+        Mail m = mails.get(in.readLong());
+        int n = in.readInt();
+        Set<String> flags = new HashSet<>(Math.max(4, n * 2));
+        for (int j = 0; j < n; j++) {
+          flags.add(in.readUTF());
+        }
+        if (m != null) {
+          m.flags = flags;
+        }
+      }
+      break;
+    case EXPUNGE: {
+      Mailbox box = mailboxes.get(in.readLong());
+      box.highestModseq = in.readLong();
+      for (int i = in.readInt(); i > 0; i--) {
+        Mail m = mails.get(in.readLong());
+        if (m != null) {
+          applyExpunge(m);
+        }
+      }
+      break;
+    }
+    case MOVE: {
+      Mailbox dest = mailboxes.get(in.readLong());
+      for (int i = in.readInt(); i > 0; i--) {
+        Mail m = mails.get(in.readLong());
+        long uid = in.readLong();
+        if (m != null) {
+          applyMove(m, dest, uid);
+        }
+      }
+      break;
+    }
+    case MAILBOX_STATE: {
+      Mailbox box = mailboxes.get(in.readLong());
+      box.uidNext = in.readLong();
+      box.highestModseq = in.readLong();
+      break;
+    }
+    default:
+      throw new IOException("Unknown record type " + record[0] + " at " + start + " in " + file);
+    }
+  }
+
+  /**
+   * 只写入当前状态：邮箱、仍被引用的内容、有效邮件及其标志，写完后替换原文件并重新打开
+   */
+  private void compact() throws IOException {
+    long before = end;
+    Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+    Files.deleteIfExists(tmp);
+    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      FileChannel old = channel;
+      channel = out;
+      end = 0;
+      out.write((ByteBuffer) ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).flip(), 0);
+      end = HEADER_BYTES;
+      for (Mailbox box : mailboxes.values()) {
+        write(new Record(MAILBOX).writeLong(box.id).writeLong(box.userId).writeLong(box.tenantId).writeUTF(box.name));
+      }
+      for (Content c : contentsByHash.values()) {
+        byte[] raw = readBytes(old, c.offset, c.length);
+        write(new Record(CONTENT).writeLong(c.id).writeUTF(c.hash).writeInt(raw.length).write(raw));
+      }
+      for (Mail m : mails.values()) {
+        write(new Record(APPEND).writeLong(m.id).writeLong(m.mailbox.id).writeLong(m.content.id).writeLong(m.uid).writeLong(m.internalDate));
+        Record r = new Record(FLAGS).writeInt(1).writeLong(m.id).writeInt(m.flags.size());
+        for (String flag : m.flags) {
+          r.writeUTF(flag);
+        }
+        write(r);
+      }
+      for (Mailbox box : mailboxes.values()) {
+        write(new Record(MAILBOX_STATE).writeLong(box.id).writeLong(box.uidNext).writeLong(box.highestModseq));
+      }
+      out.force(true);
+      old.close();
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    mailboxes.clear();
+    mailboxesByName.clear();
+    mails.clear();
+    contents.clear();
+    contentsByHash.clear();
+    open();
+    log.info("Compacted mail store {} from {} to {} bytes", file, before, end);
+  }
+
+  private static byte[] readBytes(FileChannel from, long offset, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    while (buf.hasRemaining()) {
+      if (from.read(buf, offset + buf.position()) < 0) {
+        throw new IOException("Unexpected end of file at " + (offset + buf.position()));
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * 按位置读取日志中的一段，不改变通道的位置，可多线程同时读取
+   */
+  private class RegionInputStream extends InputStream {
+    private long pos;
+    private final long limit;
+
+    RegionInputStream(long offset, int length) {
+      this.pos = offset;
+      this.limit = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (pos >= limit) {
+        return -1;
+      }
+      int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, limit - pos)), pos);
+      if (n < 0) {
+        throw new IOException("Unexpected end of file at " + pos);
+      }
+      pos += n;
+      return n;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package com.tio.mail.wing.store;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.litongjava.db.activerecord.Row;
+import com.tio.mail.wing.consts.StoreMode;
+import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.model.Pop3Maildrop;
+
+/**
+ * 邮件存储引擎：邮箱、邮件、标志、UID 分配和变更事件。
+ * 服务层 (MailService、MailBoxService、MailFlagService、MailSaveService) 只通过此接口读写邮件数据，
+ * 用户和认证仍由 MwUserService 管理。
+ * 由 mail.store.type 选择实现：pg ({@link PgMailStore}) 或 embedded ({@link EmbeddedMailStore})，见 {@link MailStores}。
+ * <p>
+ * "有效邮件" 指未被 EXPUNGE 的邮件；带 \Deleted 标志但尚未 EXPUNGE 的邮件仍在 IMAP 会话视图中，
+ * 各方法是否排除它们与原 SQL 模板一致，在方法上注明。
+ * 返回的 Email 只含元数据和内容 ID，原文由 {@link #loadBodies(Collection)} 按内容 ID 读取。
+ */
+public interface MailStore {
+
+  // ---------- 邮箱 ----------
+
+  /**
+   * @return 含 id、user_id、name、uid_validity，不存在时返回 null
+   */
+  Row findMailbox(long userId, String name);
+
+  /**
+   * @return 含 id、uid_validity 和最新的 uid_next，不存在时返回 null
+   */
+  Row findMailboxById(long userId, long mailboxId);
+
+  List<String> listMailboxNames(long userId);
+
+  /**
+   * @return 新邮箱 ID，同时用作 UIDVALIDITY
+   */
+  long createMailbox(long userId, long tenantId, String name);
+
+  long highestModseq(long mailboxId);
+
+  /**
+   * IMAP STATUS：uidnext、messages、unseen、recent，均不计带 \Deleted 的邮件
+   */
+  Row status(long mailboxId);
+
+  /**
+   * POP3 STAT：不带 \Deleted 的邮件数和总字节数
+   */
+  int[] stat(long mailboxId);
+
+  // ---------- 投递 ----------
+
+  /**
+   * 写入一封邮件：按内容去重，分配 UID，设置 \Recent；成功后通知监听器
+   *
+   * @return 写入失败时返回 false
+   */
+  boolean append(long userId, long tenantId, String username, long mailboxId, String mailboxName, String rawContent);
+
+  // ---------- 查询 ----------
+
+  /**
+   * 有效邮件的元数据和标志，按 UID 升序
+   */
+  List<Email> listMessages(long mailboxId);
+
+  /**
+   * 有效邮件的 ID、UID、接收时间和标志，按 UID 升序
+   */
+  List<Email> listFlags(long mailboxId);
+
+  /**
+   * SEARCH 的候选：尚未 EXPUNGE 的全部邮件（包括带 \Deleted 的）的 ID、UID、接收时间和标志，按 UID 升序
+   */
+  List<Email> listSearchFlags(long mailboxId);
+
+  Email findByUid(long mailboxId, long uid);
+
+  /**
+   * @param uids 已解析 * 的 UID 集合；不含带 \Deleted 的邮件，按 UID 升序
+   */
+  List<Email> findByUids(long mailboxId, MessageSet uids);
+
+  /**
+   * @param seqs 已解析 * 的序号集合，序号按有效邮件的 UID 顺序计算
+   */
+  List<Email> findBySeqs(long mailboxId, MessageSet seqs);
+
+  /**
+   * 有效邮件数，即最大序号
+   */
+  long countMessages(long mailboxId);
+
+  /**
+   * 有效邮件的 UID，升序，用于 IMAP 会话的 UID 索引
+   */
+  long[] loadUids(long mailboxId);
+
+  /**
+   * POP3 UIDL：不带 \Deleted 的邮件 UID，升序；邮箱不属于该用户时为空
+   */
+  List<Long> listUids(long userId, long mailboxId);
+
+  /**
+   * POP3 会话快照：不带 \Deleted 的邮件 ID、内容 ID、UID 和大小
+   */
+  Pop3Maildrop loadMaildrop(long mailboxId);
+
+  // ---------- 原文 ----------
+
+  /**
+   * @return 内容 ID 到原文，不存在的 ID 不出现在结果中
+   */
+  Map<Long, String> loadBodies(Collection<Long> contentIds);
+
+  /**
+   * 按块读取单封邮件原文，每块最多 chunkChars 个字符
+   *
+   * @param chunkConsumer 返回 false 时停止读取
+   * @return 邮件不存在或已 EXPUNGE 时返回 false
+   */
+  boolean readBody(long mailId, int chunkChars, Predicate<String> chunkConsumer);
+
+  // ---------- 标志 ----------
+
+  /**
+   * 给多封邮件添加同一个标志，用于 FETCH 隐式设置 \Seen，不通知监听器
+   */
+  void addFlag(Collection<Long> mailIds, String flag);
+
+  /**
+   * @param uids 已换算为 UID 的消息集合
+   * @return silent 时返回空列表，否则为每封目标邮件的 ID、UID 和修改后的标志，按 UID 升序
+   */
+  List<Email> storeFlags(long mailboxId, MessageSet uids, StoreMode mode, Set<String> flags, boolean silent);
+
+  void clearRecent(long mailboxId);
+
+  // ---------- 删除和移动 ----------
+
+  /**
+   * POP3 UPDATE：删除给定邮件并推进 highest_modseq
+   *
+   * @return 实际被删除的 UID，升序
+   */
+  MessageSet expungeMails(long mailboxId, long[] mailIds);
+
+  /**
+   * IMAP EXPUNGE：删除 UID 区间内带 \Deleted 的邮件，没有目标时不推进 highest_modseq
+   *
+   * @return 实际被删除的 UID，升序
+   */
+  MessageSet expungeDeleted(long mailboxId, MessageSet uids);
+
+  /**
+   * 把 UID 区间内的有效邮件移到目标邮箱，按原 UID 顺序在目标邮箱中分配新 UID
+   */
+  void moveMessages(long srcMailboxId, MessageSet uids, long destMailboxId);
+
+  // ---------- 变更事件 ----------
+
+  void addListener(MailStoreListener listener);
+}
@@ -0,0 +1,27 @@
+package com.tio.mail.wing.store;
+
+import com.tio.mail.wing.model.MessageSet;
+
+/**
+ * 存储变更事件，在执行变更的线程上、变更提交之后调用；监听器不应抛出异常，也不应长时间阻塞
+ */
+public interface MailStoreListener {
+
+  /**
+   * 新邮件写入邮箱
+   */
+  default void onAppend(long userId, long mailboxId, long uid) {
+  }
+
+  /**
+   * 邮件被 EXPUNGE 或移出邮箱
+   */
+  default void onExpunge(long mailboxId, MessageSet uids) {
+  }
+
+  /**
+   * 邮件标志被修改，uids 为修改涉及的 UID 区间
+   */
+  default void onFlags(long mailboxId, MessageSet uids) {
+  }
+}
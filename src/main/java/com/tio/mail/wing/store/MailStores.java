@@ -0,0 +1,53 @@
+package com.tio.mail.wing.store;
+
+import java.io.File;
+
+import com.litongjava.tio.utils.environment.EnvUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按 mail.store.type 创建全局唯一的 {@link MailStore}：
+ * pg (默认) 使用 PostgreSQL；embedded 使用 mail.store.embedded.dir 下的日志文件，进程退出时关闭。
+ */
+@Slf4j
+public class MailStores {
+
+  public static final String PG = "pg";
+  public static final String EMBEDDED = "embedded";
+
+  private static volatile MailStore store;
+
+  public static String type() {
+    return EnvUtils.get("mail.store.type", PG);
+  }
+
+  public static MailStore get() {
+    MailStore s = store;
+    if (s != null) {
+      return s;
+    }
+    synchronized (MailStores.class) {
+      if (store == null) {
+        store = create(type());
+      }
+      return store;
+    }
+  }
+
+  private static MailStore create(String type) {
+    if (EMBEDDED.equals(type)) {
+      File dir = new File(EnvUtils.get("mail.store.embedded.dir", "data/store"));
+      boolean fsync = EnvUtils.getBoolean("mail.store.embedded.fsync", true);
+      long compactMinBytes = EnvUtils.getInt("mail.store.embedded.compact.min.mb", 64) * 1024L * 1024L;
+      EmbeddedMailStore embedded = new EmbeddedMailStore(dir, fsync, compactMinBytes);
+      Runtime.getRuntime().addShutdownHook(new Thread(embedded::close, "mw-store-close"));
+      return embedded;
+    }
+    if (!PG.equals(type)) {
+      throw new IllegalArgumentException("Unknown mail.store.type: " + type);
+    }
+    log.info("Using PostgreSQL mail store");
+    return new PgMailStore();
+  }
+}
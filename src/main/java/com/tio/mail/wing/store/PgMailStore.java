@@ -0,0 +1,324 @@
+package com.tio.mail.wing.store;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import com.litongjava.db.activerecord.Db;
+import com.litongjava.db.activerecord.Row;
+import com.litongjava.jfinal.aop.Aop;
+import com.litongjava.tio.utils.snowflake.SnowflakeIdUtils;
+import com.tio.mail.wing.consts.StoreMode;
+import com.tio.mail.wing.db.PgArrays;
+import com.tio.mail.wing.db.SqlTemplateCache;
+import com.tio.mail.wing.db.TimedDb;
+import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.model.Pop3Maildrop;
+import com.tio.mail.wing.service.MailBodyService;
+import com.tio.mail.wing.service.MailFlagService;
+import com.tio.mail.wing.service.MailSaveAtom;
+import com.tio.mail.wing.utils.MailBodyCodec;
+
+/**
+ * PostgreSQL 实现：mw_mailbox、mw_mail、mw_mail_message、mw_mail_flag，语句见 sql-templates/mailbox.sql。
+ * 内容压缩、字典和流式解压仍由 {@link MailBodyService} 负责。
+ */
+public class PgMailStore extends AbstractMailStore {
+
+  private final MailFlagService mailFlagService = Aop.get(MailFlagService.class);
+  private final MailBodyService mailBodyService = Aop.get(MailBodyService.class);
+
+  @Override
+  public Row findMailbox(long userId, String name) {
+    String sql = "SELECT id, user_id, name, uid_validity FROM mw_mailbox WHERE user_id = ? AND name = ? AND deleted = 0";
+    return TimedDb.findFirst("mailbox.findByName", sql, userId, name);
+  }
+
+  @Override
+  public Row findMailboxById(long userId, long mailboxId) {
+    String sql = "SELECT id, uid_validity, uid_next FROM mw_mailbox WHERE user_id = ? AND id = ? AND deleted = 0";
+    return TimedDb.findFirst("mailbox.findById", sql, userId, mailboxId);
+  }
+
+  @Override
+  public List<String> listMailboxNames(long userId) {
+    String sql = "SELECT name FROM mw_mailbox WHERE user_id = ? AND deleted = 0";
+    List<Row> rows = TimedDb.find("mailbox.listNames", sql, userId);
+    return rows.stream().map(r -> r.getStr("name")).collect(Collectors.toList());
+  }
+
+  @Override
+  public long createMailbox(long userId, long tenantId, String name) {
+    long mailboxId = SnowflakeIdUtils.id();
+    Row newMailbox = Row.by("id", mailboxId).set("user_id", userId).set("name", name)
+        //
+        .set("uid_validity", mailboxId).set("uid_next", 1).set("creator", "system").set("updater", "system")
+        //
+        .set("tenant_id", tenantId);
+    TimedDb.save("mw_mailbox", "id", newMailbox);
+    return mailboxId;
+  }
+
+  @Override
+  public long highestModseq(long mailboxId) {
+    String sql = "select highest_modseq from mw_mailbox where id=?";
+    return TimedDb.queryLong("mailbox.highestModseq", sql, mailboxId);
+  }
+
+  @Override
+  public Row status(long mailboxId) {
+    String sql = SqlTemplateCache.get("mailbox.status");
+    return TimedDb.findFirst("mailbox.status", sql, mailboxId, mailboxId, mailboxId, mailboxId);
+  }
+
+  @Override
+  public int[] stat(long mailboxId) {
+    String sql = SqlTemplateCache.get("mailbox.getStat");
+    Row statRow = TimedDb.findFirst("mailbox.getStat", sql, mailboxId);
+    if (statRow == null) {
+      return new int[] { 0, 0 };
+    }
+    return new int[] { statRow.getLong("message_count").intValue(), statRow.getBigDecimal("total_size").intValue() };
+  }
+
+  @Override
+  public boolean append(long userId, long tenantId, String username, long mailboxId, String mailboxName, String rawContent) {
+    MailSaveAtom atom = new MailSaveAtom(userId, tenantId, username, mailboxId, mailboxName, rawContent);
+    if (!Db.tx(atom)) {
+      return false;
+    }
+    fireAppend(userId, mailboxId, atom.getUid());
+    return true;
+  }
+
+  @Override
+  public List<Email> listMessages(long mailboxId) {
+    String sql = SqlTemplateCache.get("mailbox.getActiveMessages");
+    return toEmails(TimedDb.find("mailbox.getActiveMessages", sql, mailboxId));
+  }
+
+  @Override
+  public List<Email> listFlags(long mailboxId) {
+    String sql = SqlTemplateCache.get("mailbox.getActiveMailFlags");
+    return toEmails(TimedDb.find("mailbox.getActiveMailFlags", sql, mailboxId));
+  }
+
+  @Override
+  public List<Email> listSearchFlags(long mailboxId) {
+    String sql = SqlTemplateCache.get("mailbox.searchFlags");
+    return toEmails(TimedDb.find("mailbox.searchFlags", sql, mailboxId));
+  }
+
+  @Override
+  public Email findByUid(long mailboxId, long uid) {
+    String sql = SqlTemplateCache.get("mailbox.getMessageByUid");
+    Row row = TimedDb.findFirst("mailbox.getMessageByUid", sql, mailboxId, uid);
+    return row == null ? null : mailFlagService.rowToEmailWithAggregatedFlags(row);
+  }
+
+  @Override
+  public List<Email> findByUids(long mailboxId, MessageSet uids) {
+    if (uids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    String sql = SqlTemplateCache.get("mailbox.findEmails.baseQuery");
+    return toEmails(TimedDb.find("mailbox.findEmails.baseQuery", sql, mailboxId, PgArrays.ofLongs(uids.getLos()), PgArrays.ofLongs(uids.getHis())));
+  }
+
+  @Override
+  public List<Email> findBySeqs(long mailboxId, MessageSet seqs) {
+    if (seqs.isEmpty()) {
+      return Collections.emptyList();
+    }
+    String sql = SqlTemplateCache.get("mailbox.findEmails.BySeqSet");
+    return toEmails(TimedDb.find("mailbox.findEmails.BySeqSet", sql, mailboxId, PgArrays.ofLongs(seqs.getLos()), PgArrays.ofLongs(seqs.getHis())));
+  }
+
+  @Override
+  public long countMessages(long mailboxId) {
+    Long count = TimedDb.queryLong("mailbox.countMessages", SqlTemplateCache.get("mailbox.countMessages"), mailboxId);
+    return count == null ? 0L : count;
+  }
+
+  @Override
+  public long[] loadUids(long mailboxId) {
+    List<Long> list = TimedDb.queryListLong("mailbox.uidIndex", SqlTemplateCache.get("mailbox.uidIndex"), mailboxId);
+    long[] uids = new long[list.size()];
+    for (int i = 0; i < uids.length; i++) {
+      uids[i] = list.get(i);
+    }
+    return uids;
+  }
+
+  @Override
+  public List<Long> listUids(long userId, long mailboxId) {
+    String sql = SqlTemplateCache.get("mailbox.listUids");
+    return TimedDb.queryListLong("mailbox.listUids", sql, userId, mailboxId);
+  }
+
+  @Override
+  public Pop3Maildrop loadMaildrop(long mailboxId) {
+    String sql = SqlTemplateCache.get("mailbox.pop3Maildrop");
+    List<Row> rows = TimedDb.find("mailbox.pop3Maildrop", sql, mailboxId);
+    int n = rows.size();
+    long[] mailIds = new long[n];
+    long[] contentIds = new long[n];
+    long[] uids = new long[n];
+    int[] sizes = new int[n];
+    for (int i = 0; i < n; i++) {
+      Row r = rows.get(i);
+      mailIds[i] = r.getLong("id");
+      contentIds[i] = r.getLong("message_id");
+      uids[i] = r.getLong("uid");
+      sizes[i] = r.getInt("size_in_bytes");
+    }
+    return new Pop3Maildrop(mailboxId, mailIds, contentIds, uids, sizes);
+  }
+
+  @Override
+  public Map<Long, String> loadBodies(Collection<Long> contentIds) {
+    if (contentIds.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    String sql = SqlTemplateCache.get("mailbox.bodies.byIds");
+    List<Row> rows = TimedDb.find("mailbox.bodies.byIds", sql, PgArrays.ofLongs(contentIds));
+    Map<Long, String> bodies = new HashMap<>(rows.size() * 2);
+    for (Row row : rows) {
+      bodies.put(row.getLong("id"), mailBodyService.decode(row));
+    }
+    return bodies;
+  }
+
+  /**
+   * 首块确认邮件存在并取得内容 ID，之后按内容 ID 读取，读取期间邮件被其它会话删除也不会截断
+   */
+  @Override
+  public boolean readBody(long mailId, int chunkChars, Predicate<String> chunkConsumer) {
+    String sql = SqlTemplateCache.get("mailbox.rawContentHead");
+    Row row = TimedDb.findFirst("mailbox.rawContentHead", sql, chunkChars, mailId);
+    if (row == null) {
+      return false;
+    }
+    long messageId = row.getLong("message_id");
+    if (MailBodyService.codecOf(row) != MailBodyCodec.RAW) {
+      mailBodyService.readCompressed(messageId, row.getLong("dict_id"), chunkChars, chunkConsumer);
+      return true;
+    }
+    String chunk = row.getStr("chunk");
+    sql = SqlTemplateCache.get("mailbox.rawContentChunk");
+    // substr 按字符计数，offset 与参数都用 int 以匹配 substr(text, integer, integer)
+    int offset = 1;
+    while (chunk != null && chunkConsumer.test(chunk) && chunk.codePointCount(0, chunk.length()) == chunkChars) {
+      offset += chunkChars;
+      row = TimedDb.findFirst("mailbox.rawContentChunk", sql, offset, chunkChars, messageId);
+      chunk = row == null ? null : row.getStr("chunk");
+    }
+    return true;
+  }
+
+  @Override
+  public void addFlag(Collection<Long> mailIds, String flag) {
+    if (mailIds.isEmpty()) {
+      return;
+    }
+    String sql = SqlTemplateCache.get("mailbox.flags.addToMails");
+    TimedDb.updateBySql("mailbox.flags.addToMails", sql, flag, PgArrays.ofLongs(mailIds));
+  }
+
+  /**
+   * 整个集合的修改在一条语句内完成；silent 为 false 时再用一条语句读回每封邮件的 UID 和修改后的标志
+   */
+  @Override
+  public List<Email> storeFlags(long mailboxId, MessageSet uids, StoreMode mode, Set<String> flags, boolean silent) {
+    if (uids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    String los = PgArrays.ofLongs(uids.getLos());
+    String his = PgArrays.ofLongs(uids.getHis());
+    String flagArray = PgArrays.ofTexts(flags);
+
+    switch (mode) {
+    case ADD:
+      if (!flags.isEmpty()) {
+        TimedDb.updateBySql("mailbox.store.add", SqlTemplateCache.get("mailbox.store.add"), mailboxId, los, his, flagArray);
+      }
+      break;
+    case REMOVE:
+      if (!flags.isEmpty()) {
+        TimedDb.updateBySql("mailbox.store.remove", SqlTemplateCache.get("mailbox.store.remove"), mailboxId, los, his, flagArray);
+      }
+      break;
+    default:
+      TimedDb.updateBySql("mailbox.store.replace", SqlTemplateCache.get("mailbox.store.replace"), mailboxId, los, his, flagArray, flagArray);
+    }
+    fireFlags(mailboxId, uids);
+
+    if (silent) {
+      return Collections.emptyList();
+    }
+    return toEmails(TimedDb.find("mailbox.store.flags", SqlTemplateCache.get("mailbox.store.flags"), mailboxId, los, his));
+  }
+
+  @Override
+  public void clearRecent(long mailboxId) {
+    String sql = SqlTemplateCache.get("mailbox.flags.clearRecent");
+    TimedDb.updateBySql("mailbox.flags.clearRecent", sql, mailboxId);
+  }
+
+  /**
+   * 一条语句逻辑删除给定邮件并推进邮箱的 highest_modseq，二者在同一事务中完成
+   */
+  @Override
+  public MessageSet expungeMails(long mailboxId, long[] mailIds) {
+    if (mailIds.length == 0) {
+      return MessageSet.EMPTY;
+    }
+    String sql = SqlTemplateCache.get("mailbox.expungeByIds");
+    MessageSet uids = toUidSet(TimedDb.find("mailbox.expungeByIds", sql, mailboxId, mailboxId, PgArrays.ofLongs(mailIds)));
+    fireExpunge(mailboxId, uids);
+    return uids;
+  }
+
+  /**
+   * 通过 \Deleted 的部分索引找到目标，与推进 highest_modseq 在同一条语句中完成
+   */
+  @Override
+  public MessageSet expungeDeleted(long mailboxId, MessageSet uids) {
+    String sql = SqlTemplateCache.get("mailbox.expungeDeleted");
+    MessageSet expunged = toUidSet(TimedDb.find("mailbox.expungeDeleted", sql, mailboxId, PgArrays.ofLongs(uids.getLos()),
+        PgArrays.ofLongs(uids.getHis()), mailboxId));
+    fireExpunge(mailboxId, expunged);
+    return expunged;
+  }
+
+  @Override
+  public void moveMessages(long srcMailboxId, MessageSet uids, long destMailboxId) {
+    if (uids.isEmpty()) {
+      return;
+    }
+    String sql = SqlTemplateCache.get("mailbox.moveEmails");
+    List<Row> rows = TimedDb.find("mailbox.moveEmails", sql, srcMailboxId, PgArrays.ofLongs(uids.getLos()), PgArrays.ofLongs(uids.getHis()),
+        destMailboxId, destMailboxId);
+    fireExpunge(srcMailboxId, toUidSet(rows));
+  }
+
+  private List<Email> toEmails(List<Row> rows) {
+    return rows.stream().map(mailFlagService::rowToEmailWithAggregatedFlags).collect(Collectors.toList());
+  }
+
+  private MessageSet toUidSet(List<Row> rows) {
+    long[] uids = new long[rows.size()];
+    for (int i = 0; i < uids.length; i++) {
+      uids[i] = rows.get(i).getLong("uid");
+    }
+    Arrays.sort(uids);
+    return MessageSet.ofSorted(uids, uids.length);
+  }
+}
@@ -0,0 +1,258 @@
+package com.tio.mail.wing.trace;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.utils.environment.EnvUtils;
+
+/**
+ * 协议跟踪。
+ * 默认关闭，可按用户名、客户端 IP 打开，也可以全局打开后按连接采样。
+ * 记录时只做截断和脱敏，事件放入有界缓冲区，由后台线程批量写入 "mail.trace" 日志，
+ * 协议处理线程不做任何日志 IO；缓冲区满时丢弃新事件并计数。
+ * 未打开任何跟踪时，调用开销只是一次 volatile 读。
+ */
+public class ProtocolTracer {
+
+  public static final String IN = "<<<";
+  public static final String OUT = ">>>";
+
+  private static final Logger traceLog = LoggerFactory.getLogger("mail.trace");
+  private static final String CTX_KEY = "protocolTrace";
+  private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+  private static final Set<String> users = ConcurrentHashMap.newKeySet();
+  private static final Set<String> clients = ConcurrentHashMap.newKeySet();
+  private static volatile boolean all = EnvUtils.getBoolean("mail.trace.enabled", false);
+  private static volatile double sampleRate = Double.parseDouble(EnvUtils.getStr("mail.trace.sample.rate", "1.0"));
+  private static final int maxLength = EnvUtils.getInt("mail.trace.max.length", 256);
+
+  /** 任一跟踪条件打开时为 true，作为快速判断 */
+  private static volatile boolean active;
+
+  private static final ArrayBlockingQueue<TraceEvent> buffer = new ArrayBlockingQueue<>(EnvUtils.getInt("mail.trace.buffer.size", 8192));
+  private static final AtomicLong dropped = new AtomicLong();
+  private static volatile Thread writer;
+
+  static {
+    addAll(users, EnvUtils.getStr("mail.trace.users"));
+    addAll(clients, EnvUtils.getStr("mail.trace.clients"));
+    refresh();
+  }
+
+  public static void in(ChannelContext ctx, String protocol, String username, String line) {
+    if (active && isTraced(ctx, username)) {
+      record(ctx, protocol, IN, username, redact(line));
+    }
+  }
+
+  public static void out(ChannelContext ctx, String protocol, String username, String text) {
+    if (active && isTraced(ctx, username)) {
+      record(ctx, protocol, OUT, username, text);
+    }
+  }
+
+  /**
+   * 认证续行（Base64 用户名/密码）等内容整体脱敏
+   */
+  public static void inSecret(ChannelContext ctx, String protocol, String username) {
+    if (active && isTraced(ctx, username)) {
+      record(ctx, protocol, IN, username, "***");
+    }
+  }
+
+  public static boolean isTraced(ChannelContext ctx, String username) {
+    if (!active) {
+      return false;
+    }
+    if (username != null && users.contains(username)) {
+      return true;
+    }
+    Object flag = ctx.get(CTX_KEY);
+    if (flag == null) {
+      // 按连接决定一次，采样到的连接完整记录，便于还原会话
+      boolean traced = clients.contains(clientIp(ctx)) || (all && ThreadLocalRandom.current().nextDouble() < sampleRate);
+      flag = traced;
+      ctx.set(CTX_KEY, flag);
+    }
+    return (Boolean) flag;
+  }
+
+  public static void enableUser(String username) {
+    users.add(username);
+    refresh();
+  }
+
+  public static void disableUser(String username) {
+    users.remove(username);
+    refresh();
+  }
+
+  /**
+   * 按客户端 IP 打开，只影响之后建立的连接
+   */
+  public static void enableClient(String ip) {
+    clients.add(ip);
+    refresh();
+  }
+
+  public static void disableClient(String ip) {
+    clients.remove(ip);
+    refresh();
+  }
+
+  public static void setAll(boolean enabled, double rate) {
+    sampleRate = rate;
+    all = enabled;
+    refresh();
+  }
+
+  public static long getDropped() {
+    return dropped.get();
+  }
+
+  public static Set<String> getUsers() {
+    return Collections.unmodifiableSet(users);
+  }
+
+  public static Set<String> getClients() {
+    return Collections.unmodifiableSet(clients);
+  }
+
+  /**
+   * 隐藏命令行中的密码：IMAP LOGIN、POP3 PASS 和 APOP、AUTH 的初始响应
+   */
+  public static String redact(String line) {
+    String[] parts = line.split("\\s+", 4);
+    if (parts.length >= 2) {
+      String first = parts[0].toUpperCase();
+      if ("PASS".equals(first)) {
+        return parts[0] + " ***";
+      }
+      // POP3: APOP name digest
+      if ("APOP".equals(first) && parts.length >= 3) {
+        return parts[0] + " " + parts[1] + " ***";
+      }
+      // SMTP: AUTH PLAIN <base64>
+      if ("AUTH".equals(first) && parts.length >= 3) {
+        return parts[0] + " " + parts[1] + " ***";
+      }
+      if (parts.length >= 3) {
+        String second = parts[1].toUpperCase();
+        // IMAP: tag LOGIN user password
+        if ("LOGIN".equals(second)) {
+          return parts[0] + " " + parts[1] + " " + parts[2] + " ***";
+        }
+        // IMAP: tag AUTHENTICATE PLAIN <base64> (SASL-IR)
+        if ("AUTHENTICATE".equals(second) && parts.length >= 4) {
+          return parts[0] + " " + parts[1] + " " + parts[2] + " ***";
+        }
+      }
+    }
+    return line;
+  }
+
+  private static void record(ChannelContext ctx, String protocol, String direction, String username, String text) {
+    if (text == null) {
+      return;
+    }
+    String s = text;
+    if (s.length() > maxLength) {
+      s = s.substring(0, maxLength) + "...(" + text.length() + " chars)";
+    }
+    TraceEvent event = new TraceEvent(System.currentTimeMillis(), ctx.getId(), protocol, direction, username, s);
+    if (!buffer.offer(event)) {
+      dropped.incrementAndGet();
+      return;
+    }
+    ensureWriter();
+  }
+
+  private static void ensureWriter() {
+    if (writer != null) {
+      return;
+    }
+    synchronized (ProtocolTracer.class) {
+      if (writer == null) {
+        Thread t = new Thread(ProtocolTracer::drain, "mw-trace-writer");
+        t.setDaemon(true);
+        t.start();
+        writer = t;
+      }
+    }
+  }
+
+  private static void drain() {
+    List<TraceEvent> batch = new ArrayList<>(256);
+    while (true) {
+      try {
+        TraceEvent first = buffer.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        buffer.drainTo(batch, 255);
+        for (TraceEvent e : batch) {
+          traceLog.info("{} {} {} {} {} {}", TIME_FORMAT.format(Instant.ofEpochMilli(e.time)), e.connectionId, e.protocol, e.username == null ? "-" : e.username, e.direction, e.text.trim());
+        }
+        batch.clear();
+      } catch (InterruptedException e) {
+        return;
+      } catch (Throwable e) {
+        batch.clear();
+        traceLog.error("Trace writer error", e);
+      }
+    }
+  }
+
+  private static void refresh() {
+    active = all || !users.isEmpty() || !clients.isEmpty();
+  }
+
+  private static String clientIp(ChannelContext ctx) {
+    return ctx.getClientNode() == null ? "" : ctx.getClientNode().getIp();
+  }
+
+  private static void addAll(Set<String> set, String csv) {
+    if (csv == null) {
+      return;
+    }
+    for (String s : csv.split(",")) {
+      if (!s.trim().isEmpty()) {
+        set.add(s.trim());
+      }
+    }
+  }
+
+  private static class TraceEvent {
+    final long time;
+    final String connectionId;
+    final String protocol;
+    final String direction;
+    final String username;
+    final String text;
+
+    TraceEvent(long time, String connectionId, String protocol, String direction, String username, String text) {
+      this.time = time;
+      this.connectionId = connectionId;
+      this.protocol = protocol;
+      this.direction = direction;
+      this.username = username;
+      this.text = text;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.tio.mail.wing.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 邮件内容的存储编码 (mw_mail_message.body_codec)：
+ * RAW 为 raw_content 中的原文，DEFLATE / DEFLATE_DICT 为 body_data 中的 raw deflate 数据，
+ * 后者使用租户的预置字典 (mw_mail_dict)。字典在压缩前设置，解压时同样预先设置，不写入数据流。
+ */
+public final class MailBodyCodec {
+
+  public static final int RAW = 0;
+  public static final int DEFLATE = 1;
+  public static final int DEFLATE_DICT = 2;
+
+  /** deflate 窗口为 32K，更长的字典只有末尾 32K 有效 */
+  public static final int MAX_DICT_SIZE = 32 * 1024;
+
+  private MailBodyCodec() {
+  }
+
+  public static byte[] compress(byte[] raw, byte[] dict, int level) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      if (dict != null) {
+        deflater.setDictionary(dict);
+      }
+      deflater.setInput(raw);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+      byte[] buf = new byte[8192];
+      while (!deflater.finished()) {
+        int n = deflater.deflate(buf);
+        out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * 边读边解压，关闭时释放 Inflater
+   */
+  public static InputStream decompress(InputStream compressed, byte[] dict) {
+    Inflater inflater = new Inflater(true);
+    if (dict != null) {
+      inflater.setDictionary(dict);
+    }
+    return new InflaterInputStream(compressed, inflater, 8192) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          inflater.end();
+        }
+      }
+    };
+  }
+
+  public static String decompressToString(byte[] compressed, byte[] dict, int sizeHint) {
+    try (InputStream in = decompress(new ByteArrayInputStream(compressed), dict)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(sizeHint, 64));
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Corrupt compressed mail body", e);
+    }
+  }
+
+  /**
+   * 由样本邮件生成预置字典：取在至少两封样本中出现的行，按 出现次数 x 长度 选出收益最高的行，
+   * 收益高的放在末尾（离待压缩数据最近，引用距离最短）。
+   */
+  public static byte[] trainDictionary(List<String> samples, int maxSize) {
+    Map<String, Integer> docFreq = new HashMap<>();
+    for (String sample : samples) {
+      Set<String> seen = new HashSet<>();
+      int from = 0;
+      int len = sample.length();
+      while (from < len) {
+        int eol = sample.indexOf('\n', from);
+        int end = eol < 0 ? len : eol;
+        int trimmed = end > from && sample.charAt(end - 1) == '\r' ? end - 1 : end;
+        if (trimmed - from >= 8 && trimmed - from <= 512) {
+          String line = sample.substring(from, trimmed);
+          if (seen.add(line)) {
+            docFreq.merge(line, 1, Integer::sum);
+          }
+        }
+        from = end + 1;
+      }
+    }
+
+    List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+    for (Map.Entry<String, Integer> e : docFreq.entrySet()) {
+      if (e.getValue() >= 2) {
+        candidates.add(e);
+      }
+    }
+    candidates.sort((a, b) -> Long.compare(score(b), score(a)));
+
+    List<byte[]> chosen = new ArrayList<>();
+    int total = 0;
+    for (Map.Entry<String, Integer> e : candidates) {
+      byte[] line = (e.getKey() + "\r\n").getBytes(StandardCharsets.UTF_8);
+      if (total + line.length > maxSize) {
+        continue;
+      }
+      chosen.add(line);
+      total += line.length;
+    }
+
+    byte[] dict = new byte[total];
+    int pos = 0;
+    for (int i = chosen.size() - 1; i >= 0; i--) {
+      byte[] line = chosen.get(i);
+      System.arraycopy(line, 0, dict, pos, line.length);
+      pos += line.length;
+    }
+    return dict;
+  }
+
+  private static long score(Map.Entry<String, Integer> e) {
+    return (long) e.getValue() * (e.getKey().length() + 2);
+  }
+}
@@ -0,0 +1,22 @@
+package com.tio.mail.wing.executor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程工厂的 Java 21 版本，打包在多版本 JAR 的 META-INF/versions/21 下。
+ */
+public class VirtualThreads {
+
+  public static boolean isSupported() {
+    return true;
+  }
+
+  public static Thread newThread(String name, Runnable task) {
+    return Thread.ofVirtual().name(name).unstarted(task);
+  }
+
+  public static ExecutorService newThreadPerTaskExecutor() {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mw-vt-", 0).factory());
+  }
+}
@@ -1,18 +1,55 @@
 --# mail.baseColumns
--- 邮件实例和消息的核心字段
+-- 邮件实例的元数据和内容 ID，不含邮件原文；需要原文时由 MailBodyService.loadBodies 按内容 ID 从缓存或 mailbox.bodies.byIds 补齐
 m.id,
 m.uid,
 m.internal_date,
-msg.raw_content,
+m.message_id,
 msg.size_in_bytes
 
 --# mailbox.user.findByUsername
 -- 根据用户名查找未删除的用户ID
 SELECT * FROM mw_user WHERE username = ? AND deleted = 0;
 
---# mailbox.message.findByHash
--- 根据内容哈希查找已存在的邮件消息
-SELECT id FROM mw_mail_message WHERE content_hash = ?;
+--# mailbox.message.acquireByHash
+-- 根据内容哈希查找已存在的邮件消息并增加引用计数。
+-- 行锁与后台清理的 ref_count <= 0 条件互斥：清理已锁定该行时等其提交后返回空，由调用方新建消息
+UPDATE mw_mail_message SET ref_count = ref_count + 1 WHERE content_hash = ? RETURNING id;
+
+--# mailbox.gc.purgeMails
+-- 后台清理：删除一批超过保留期的逻辑删除邮件及其标志，并释放对消息的引用
+-- 参数：保留秒数, 批大小
+WITH purged AS (
+  DELETE FROM mw_mail
+   WHERE id IN (
+     SELECT id FROM mw_mail
+      WHERE deleted = 1 AND update_time < CURRENT_TIMESTAMP - (? * INTERVAL '1 second')
+      ORDER BY update_time
+      LIMIT ?
+      FOR UPDATE SKIP LOCKED
+   )
+  RETURNING id, message_id
+), flags AS (
+  DELETE FROM mw_mail_flag f USING purged p WHERE f.mail_id = p.id
+), released AS (
+  UPDATE mw_mail_message msg
+     SET ref_count = msg.ref_count - r.n
+    FROM (SELECT message_id, COUNT(*) AS n FROM purged GROUP BY message_id) r
+   WHERE msg.id = r.message_id
+)
+SELECT COUNT(*) FROM purged;
+
+--# mailbox.gc.purgeMessages
+-- 后台清理：删除一批引用计数为 0 的消息；正被投递引用的行已加锁，跳过，条件在锁后重新判断
+-- 参数：批大小
+DELETE FROM mw_mail_message
+ WHERE id IN (
+   SELECT id FROM mw_mail_message
+    WHERE ref_count <= 0
+    ORDER BY id
+    LIMIT ?
+    FOR UPDATE SKIP LOCKED
+ )
+   AND ref_count <= 0;
 
 --# mailbox.updateUidNextAndGet
 -- 原子性地将uid_next加1，并返回更新前的uid_next值作为新邮件的UID
@@ -33,27 +70,75 @@ JOIN
 WHERE
   m.mailbox_id = ? AND m.uid = ? AND m.deleted = 0
 
---# mailbox.flags.addBatch
-INSERT INTO mw_mail_flag (id,mail_id, flag) VALUES (?,?,?) ON CONFLICT (mail_id, flag) DO NOTHING;
-
---# mailbox.flags.removeBatch
--- 批量删除标志，%s 会被Java代码动态替换为占位符 ?, ?, ...
-DELETE FROM mw_mail_flag WHERE mail_id = ? AND flag IN (%s);
+--# mailbox.flags.addToMails
+-- 给多封邮件添加同一个标志，邮件 ID 以 bigint[] 绑定，语句形状固定
+INSERT INTO mw_mail_flag (mail_id, flag)
+SELECT m.id, ? FROM unnest(?::bigint[]) AS m(id)
+ON CONFLICT (mail_id, flag) DO NOTHING;
 
 --# mailbox.flags.clearRecent
 -- 清除指定邮箱的所有 \Recent 标志
 DELETE FROM mw_mail_flag WHERE flag = '\Recent' AND mail_id IN (SELECT id FROM mw_mail WHERE mailbox_id = ?);
 
+--# mailbox.store.targets
+-- STORE 的目标邮件：序号集合已在会话的 UID 索引中换算为 UID 区间
+-- 参数：mailbox_id, 区间起点数组, 区间终点数组
+WITH targets AS (
+  SELECT m.id, m.uid
+  FROM mw_mail m
+  WHERE m.mailbox_id = ? AND m.deleted = 0
+    AND EXISTS (SELECT 1 FROM unnest(?::bigint[], ?::bigint[]) AS r(lo, hi) WHERE m.uid BETWEEN r.lo AND r.hi)
+)
+
+--# mailbox.store.add
+-- +FLAGS：整个消息集合一条语句
+--#include(mailbox.store.targets)
+INSERT INTO mw_mail_flag (mail_id, flag)
+SELECT t.id, f.flag FROM targets t CROSS JOIN unnest(?::text[]) AS f(flag)
+ON CONFLICT (mail_id, flag) DO NOTHING;
+
+--# mailbox.store.remove
+-- -FLAGS：整个消息集合一条语句
+--#include(mailbox.store.targets)
+DELETE FROM mw_mail_flag mf
+USING targets t
+WHERE mf.mail_id = t.id AND mf.flag = ANY(?::text[]);
+
+--# mailbox.store.replace
+-- FLAGS：删除列表之外的标志（\Recent 由服务器维护，不受 STORE 影响）并补齐列表中的标志
+--#include(mailbox.store.targets)
+, removed AS (
+  DELETE FROM mw_mail_flag mf
+  USING targets t
+  WHERE mf.mail_id = t.id AND mf.flag <> ALL(?::text[]) AND mf.flag <> '\Recent'
+)
+INSERT INTO mw_mail_flag (mail_id, flag)
+SELECT t.id, f.flag FROM targets t CROSS JOIN unnest(?::text[]) AS f(flag)
+ON CONFLICT (mail_id, flag) DO NOTHING;
+
+--# mailbox.store.flags
+-- STORE 之后读取每封目标邮件的 UID 和标志，不读取邮件内容
+--#include(mailbox.store.targets)
+SELECT
+  t.id, t.uid,
+  COALESCE(ARRAY_AGG(f.flag) FILTER (WHERE f.flag IS NOT NULL), '{}') AS flags
+FROM targets t
+LEFT JOIN mw_mail_flag f ON f.mail_id = t.id
+GROUP BY t.id, t.uid
+ORDER BY t.uid;
+
 --# mailbox.findEmails.baseQuery
+-- 只取元数据和内容 ID，需要原文时由 MailBodyService.loadBodies 从缓存或 mailbox.bodies.byIds 补齐
 SELECT
   m.id, m.uid, m.internal_date,
-  msg.raw_content, msg.size_in_bytes,
+  m.message_id, msg.size_in_bytes,
   ARRAY_AGG(mf.flag) FILTER (WHERE mf.flag IS NOT NULL) as flags
 FROM mw_mail m
 JOIN mw_mail_message msg ON m.message_id = msg.id
 LEFT JOIN mw_mail_flag mf ON m.id = mf.mail_id
 WHERE m.mailbox_id = ?
-  AND (%s)
+  -- UID 区间以两个 bigint[] 绑定：起点数组和终点数组
+  AND EXISTS (SELECT 1 FROM unnest(?::bigint[], ?::bigint[]) AS r(lo, hi) WHERE m.uid BETWEEN r.lo AND r.hi)
   AND NOT EXISTS (
     SELECT 1 FROM mw_mail_flag del_mf WHERE del_mf.mail_id = m.id AND del_mf.flag = '\Deleted'
   )
@@ -79,13 +164,13 @@ WITH ranked_emails AS (
 )
 SELECT
   r.id, r.uid, r.internal_date,
-  msg.raw_content, msg.size_in_bytes,
+  r.message_id, msg.size_in_bytes,
   ARRAY_AGG(mf.flag) FILTER (WHERE mf.flag IS NOT NULL) as flags
 FROM ranked_emails r
 JOIN mw_mail_message msg ON r.message_id = msg.id
 LEFT JOIN mw_mail_flag mf ON r.id = mf.mail_id
 WHERE %s -- 动态序号条件占位符
-GROUP BY r.id, r.uid, r.internal_date, msg.id
+GROUP BY r.id, r.uid, r.internal_date, r.message_id, msg.id
 ORDER BY r.uid ASC;
 
 --# mailbox.getMaxUid
@@ -104,6 +189,98 @@ WHERE m.mailbox_id = ?
     SELECT 1 FROM mw_mail_flag del_mf WHERE del_mf.mail_id = m.id AND del_mf.flag = '\Deleted'
   );
   
+--# mailbox.pop3Maildrop
+-- POP3 会话快照：只取邮件 ID、内容 ID、UID 和大小，不读取邮件内容
+SELECT m.id, m.message_id, m.uid, msg.size_in_bytes
+FROM mw_mail m
+JOIN mw_mail_message msg ON m.message_id = msg.id
+WHERE m.mailbox_id = ? AND m.deleted = 0
+  AND NOT EXISTS (
+    SELECT 1 FROM mw_mail_flag del_mf WHERE del_mf.mail_id = m.id AND del_mf.flag = '\Deleted'
+  )
+ORDER BY m.uid ASC;
+
+--# mailbox.expungeByIds
+-- POP3 QUIT：一条语句逻辑删除会话中标记的邮件，并推进邮箱的 highest_modseq
+-- 参数：mailbox_id, mailbox_id, 邮件 ID 数组
+WITH bumped AS (
+  UPDATE mw_mailbox
+     SET highest_modseq = highest_modseq + 1, update_time = CURRENT_TIMESTAMP
+   WHERE id = ?
+  RETURNING highest_modseq
+)
+UPDATE mw_mail m
+   SET deleted = 1, modseq = b.highest_modseq, update_time = CURRENT_TIMESTAMP
+  FROM bumped b
+ WHERE m.mailbox_id = ? AND m.id = ANY(?::bigint[]) AND m.deleted = 0
+RETURNING m.uid;
+
+--# mailbox.expungeDeleted
+-- EXPUNGE / UID EXPUNGE / CLOSE：按邮箱 ID 删除 UID 区间内带 \Deleted 标志的邮件，
+-- 目标经 idx_mail_flag_deleted 部分索引查找，不扫描整个邮箱；有目标时才推进 highest_modseq
+-- 参数：mailbox_id, 区间起点数组, 区间终点数组, mailbox_id
+WITH targets AS (
+  SELECT m.id
+  FROM mw_mail_flag f
+  JOIN mw_mail m ON m.id = f.mail_id
+  WHERE f.flag = '\Deleted'
+    AND m.mailbox_id = ? AND m.deleted = 0
+    AND EXISTS (SELECT 1 FROM unnest(?::bigint[], ?::bigint[]) AS r(lo, hi) WHERE m.uid BETWEEN r.lo AND r.hi)
+), bumped AS (
+  UPDATE mw_mailbox
+     SET highest_modseq = highest_modseq + 1, update_time = CURRENT_TIMESTAMP
+   WHERE id = ? AND EXISTS (SELECT 1 FROM targets)
+  RETURNING highest_modseq
+)
+UPDATE mw_mail m
+   SET deleted = 1, modseq = b.highest_modseq, update_time = CURRENT_TIMESTAMP
+  FROM bumped b, targets t
+ WHERE m.id = t.id
+RETURNING m.uid;
+
+--# mailbox.rawContentHead
+-- POP3 RETR/TOP 流式读取的首块，同时确认邮件存在并返回内容 ID 和存储编码；压缩存储时 chunk 为空
+-- 参数：块长度（字符）, 邮件 ID
+SELECT m.message_id, msg.body_codec, msg.dict_id, substr(msg.raw_content, 1, ?) AS chunk
+FROM mw_mail m
+JOIN mw_mail_message msg ON m.message_id = msg.id
+WHERE m.id = ? AND m.deleted = 0;
+
+--# mailbox.bodies.byIds
+-- 按内容 ID 批量读取邮件原文，只读取缓存未命中的
+-- 参数：内容 ID 数组
+SELECT id, raw_content, body_codec, body_data, dict_id, size_in_bytes
+FROM mw_mail_message
+WHERE id = ANY(?::bigint[]);
+
+--# mailbox.rawContentChunk
+-- 参数：起始位置（从 1 开始）, 块长度（字符）, 内容 ID
+SELECT substr(raw_content, ?, ?) AS chunk
+FROM mw_mail_message
+WHERE id = ?;
+
+--# mailbox.bodyDataChunk
+-- 压缩存储的消息按块读取，body_data 使用 EXTERNAL 存储，只读取所需的 TOAST 块
+-- 参数：起始位置（从 1 开始）, 块长度（字节）, 内容 ID
+SELECT substring(body_data FROM ? FOR ?) AS chunk
+FROM mw_mail_message
+WHERE id = ?;
+
+--# mailbox.dict.latestByTenant
+SELECT id, dict FROM mw_mail_dict WHERE tenant_id = ? ORDER BY id DESC LIMIT 1;
+
+--# mailbox.dict.byId
+SELECT dict FROM mw_mail_dict WHERE id = ?;
+
+--# mailbox.dict.samples
+-- 训练租户字典的样本：最近的邮件消息
+-- 参数：tenant_id, 样本数
+SELECT raw_content, body_codec, body_data, dict_id, size_in_bytes
+FROM mw_mail_message
+WHERE tenant_id = ?
+ORDER BY id DESC
+LIMIT ?;
+
 --# mailbox.baseRankedEmailsCTE
 -- 这个SQL块现在既可以被独立获取，也可以被其他块包含
 -- 它定义了一个公共表表达式（CTE）
@@ -138,6 +315,23 @@ WHERE
 ORDER BY
   m.uid ASC
   
+--# mailbox.searchFlags
+-- SEARCH 的候选集合：尚未 EXPUNGE 的全部邮件，包括带 \Deleted 的，标志在应用层匹配
+SELECT
+  m.id,
+  m.uid,
+  m.internal_date,
+  COALESCE(
+    (SELECT ARRAY_AGG(f.flag) FROM mw_mail_flag f WHERE f.mail_id = m.id),
+    '{}'
+  ) as flags
+FROM
+  mw_mail m
+WHERE
+  m.mailbox_id = ? AND m.deleted = 0
+ORDER BY
+  m.uid ASC
+
 --# mailbox.getActiveMessages
 -- 获取一个邮箱中所有未删除的邮件，包含聚合后的标志
 SELECT
@@ -164,7 +358,7 @@ ORDER BY
 --#include(mailbox.baseRankedEmailsCTE)
 SELECT
   r.id, r.uid, r.internal_date, r.seq_num,
-  msg.raw_content, msg.size_in_bytes,
+  r.message_id, msg.size_in_bytes,
   ARRAY_AGG(mf.flag) FILTER (WHERE mf.flag IS NOT NULL) as flags
 FROM ranked_emails r
 
@@ -175,7 +369,7 @@ FROM (
         m.id,
         m.uid,
         m.internal_date,
-        msg.raw_content,
+        m.message_id,
         msg.size_in_bytes,
         ROW_NUMBER() OVER (ORDER BY m.uid ASC) AS seq_num,
         COALESCE(
@@ -192,59 +386,27 @@ FROM (
     WHERE m.mailbox_id = ?
       AND m.deleted = 0
 ) AS subquery
-WHERE %s;
-
---# mailbox.getExpungeSeqNums
--- 获取指定用户、指定邮箱中所有标记为 \Deleted 的邮件原始序号（seq_num）
-WITH ranked_emails AS (
-  SELECT
-    m.id,
-    ROW_NUMBER() OVER (ORDER BY m.uid ASC) AS seq_num
-  FROM mw_mail m
-  JOIN mw_mailbox b ON m.mailbox_id = b.id
-  JOIN mw_user u    ON b.user_id    = u.id
-  WHERE u.username = ?
-    AND b.name     = ?
-    AND m.deleted  = 0
-)
-SELECT r.seq_num
-FROM ranked_emails r
-WHERE EXISTS (
-  SELECT 1
-  FROM mw_mail_flag f
-  WHERE f.mail_id = r.id
-    AND f.flag    = '\\Deleted'
-);
-
---# mailbox.expunge
--- 逻辑删除所有已标记 \Deleted 的邮件实例
-UPDATE mw_mail m
-SET deleted = 1
-FROM mw_mailbox b, mw_user u
-WHERE m.mailbox_id = b.id
-  AND b.user_id    = u.id
-  AND u.username   = ?
-  AND b.name       = ?
-  AND EXISTS (
-    SELECT 1
-    FROM mw_mail_flag f
-    WHERE f.mail_id = m.id
-      AND f.flag    = '\\Deleted'
-  );
+-- 序号区间以两个 bigint[] 绑定：起点数组和终点数组
+WHERE EXISTS (SELECT 1 FROM unnest(?::bigint[], ?::bigint[]) AS r(lo, hi) WHERE seq_num BETWEEN r.lo AND r.hi);
 
+--# mailbox.countMessages
+-- 邮箱中的邮件数，即最大序号，用于处理序号集合中的 * 通配符
+SELECT COUNT(*) FROM mw_mail WHERE mailbox_id = ? AND deleted = 0;
 
 --# mailbox.moveEmails
-WITH newuids AS (
-  UPDATE mw_mailbox mb
-     SET uid_next = uid_next + ?
-   WHERE mb.id = ?
- RETURNING mb.uid_next - ? AS start_uid
-),
-moved AS (
-  SELECT id, ROW_NUMBER() OVER (ORDER BY uid) - 1 AS idx
+-- UID 区间以两个 bigint[] 绑定；目标邮箱的 uid_next 按实际移动的邮件数递增；返回邮件在源邮箱中的 UID
+WITH moved AS (
+  SELECT id, uid, ROW_NUMBER() OVER (ORDER BY uid) - 1 AS idx
     FROM mw_mail
    WHERE mailbox_id = ?
-     AND uid IN (%s)
+     AND deleted = 0
+     AND EXISTS (SELECT 1 FROM unnest(?::bigint[], ?::bigint[]) AS r(lo, hi) WHERE uid BETWEEN r.lo AND r.hi)
+),
+newuids AS (
+  UPDATE mw_mailbox mb
+     SET uid_next = uid_next + (SELECT COUNT(*) FROM moved)
+   WHERE mb.id = ?
+ RETURNING mb.uid_next - (SELECT COUNT(*) FROM moved) AS start_uid
 )
 UPDATE mw_mail m
    SET mailbox_id = ?,
@@ -252,7 +414,11 @@ UPDATE mw_mail m
   FROM moved mv
   CROSS JOIN newuids nu
  WHERE m.id = mv.id
-RETURNING mv.idx, m.id, m.uid;  
+RETURNING mv.uid;
+
+--# mailbox.uidIndex
+-- IMAP 会话的 UID 索引：序号 i 对应第 i 个 UID
+SELECT uid FROM mw_mail WHERE mailbox_id = ? AND deleted = 0 ORDER BY uid ASC;
 
 --# mailbox.listUids
 SELECT m.uid
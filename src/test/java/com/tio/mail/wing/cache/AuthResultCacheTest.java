@@ -0,0 +1,35 @@
+package com.tio.mail.wing.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AuthResultCacheTest {
+
+  @Test
+  public void testCacheHit() {
+    AuthResultCache cache = new AuthResultCache(100, 60_000);
+    cache.put("user1@litong.xyz", "00000000", 1001L);
+
+    assertEquals(Long.valueOf(1001L), cache.get("user1@litong.xyz", "00000000"));
+    // 密码不一致不能命中
+    assertNull(cache.get("user1@litong.xyz", "11111111"));
+    assertNull(cache.get("user2@litong.xyz", "00000000"));
+  }
+
+  @Test
+  public void testThrottle() {
+    LoginThrottle throttle = new LoginThrottle(3, 60_000, 60_000, 100);
+    throttle.recordFailure("user1@litong.xyz", "10.0.0.1");
+    throttle.recordFailure("user1@litong.xyz", "10.0.0.1");
+    assertFalse(throttle.isBlocked("user1@litong.xyz", "10.0.0.1"));
+    throttle.recordFailure("user1@litong.xyz", "10.0.0.1");
+    assertTrue(throttle.isBlocked("user1@litong.xyz", "10.0.0.1"));
+    // 只锁定失败的来源
+    assertFalse(throttle.isBlocked("user1@litong.xyz", "10.0.0.2"));
+    assertFalse(throttle.isBlocked("user2@litong.xyz", "10.0.0.1"));
+  }
+}
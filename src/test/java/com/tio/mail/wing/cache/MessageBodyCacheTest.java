@@ -0,0 +1,70 @@
+package com.tio.mail.wing.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MessageBodyCacheTest {
+
+  private static String body(char c, int bytes) {
+    StringBuilder sb = new StringBuilder(bytes);
+    for (int i = 0; i < bytes; i++) {
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testByteWeightedEviction() {
+    MessageBodyCache cache = new MessageBodyCache("test", 1000, 80, 1000, false);
+    for (long id = 1; id <= 5; id++) {
+      cache.put(id, body('a', 300));
+    }
+    // 按字节计容量：最多容纳 3 封 300 字节的邮件，最早放入的先淘汰
+    assertEquals(3, cache.size());
+    assertEquals(900, cache.bytes());
+    assertEquals(2, cache.getEvictions());
+    assertNull(cache.get(1));
+    assertNotNull(cache.get(5));
+  }
+
+  @Test
+  public void testScanDoesNotFlushProtected() {
+    MessageBodyCache cache = new MessageBodyCache("test", 1000, 80, 1000, false);
+    cache.put(1, body('a', 200));
+    cache.put(2, body('b', 200));
+    // 再次命中，进入保护段
+    assertNotNull(cache.get(1));
+    assertNotNull(cache.get(2));
+
+    for (long id = 100; id < 120; id++) {
+      cache.put(id, body('x', 200));
+    }
+    assertEquals(body('a', 200), cache.get(1));
+    assertEquals(body('b', 200), cache.get(2));
+    assertTrue(cache.bytes() <= 1000);
+  }
+
+  @Test
+  public void testOversizedAndOffHeap() {
+    MessageBodyCache cache = new MessageBodyCache("test", 10_000, 80, 100, true);
+    cache.put(1, body('a', 101));
+    assertNull(cache.get(1));
+    assertFalse(cache.accepts(101));
+
+    String utf8 = "Subject: 你好\r\n\r\n正文\r\n";
+    cache.put(2, utf8);
+    assertEquals(utf8, cache.get(2));
+    assertEquals(utf8, cache.get(2));
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    cache.remove(2);
+    assertNull(cache.get(2));
+    assertEquals(0, cache.bytes());
+  }
+}
@@ -0,0 +1,25 @@
+package com.tio.mail.wing.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.litongjava.db.activerecord.Row;
+
+public class RowSnapshotTest {
+
+  @Test
+  public void testCallerChangesDoNotLeakIntoCache() {
+    Row row = Row.by("id", 1L).set("tenant_id", 7L);
+    RowSnapshot snapshot = RowSnapshot.of(row);
+    row.set("id", 2L);
+
+    Row first = snapshot.toRow();
+    first.remove("tenant_id");
+    Row second = snapshot.toRow();
+    assertEquals(1L, (long) second.getLong("id"));
+    assertEquals(7L, (long) second.getLong("tenant_id"));
+    assertNull(first.getLong("tenant_id"));
+  }
+}
@@ -0,0 +1,167 @@
+package com.tio.mail.wing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.postgresql.ds.PGPoolingDataSource;
+
+import com.litongjava.db.activerecord.ActiveRecordPlugin;
+import com.litongjava.db.activerecord.Db;
+import com.litongjava.db.activerecord.dialect.PostgreSqlDialect;
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.tio.mail.wing.consts.MailBoxName;
+import com.tio.mail.wing.service.MailSaveAtom;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/**
+ * 测试和基准测试用的嵌入式 PostgreSQL：在本地目录中启动真实的 PostgreSQL 进程，
+ * 执行 db/schema.sql 和 db/init.sql，并以它启动 ActiveRecord，Db/TimedDb/SqlTemplates 的调用与线上一致。
+ * 不使用 H2 的 PostgreSQL 兼容模式，因为模板中用到了 bigint[] 参数、ANY、ON CONFLICT 和带 RETURNING 的 CTE。
+ * 同一 JVM 中只启动一次，进程退出时关闭。
+ *
+ * <pre>
+ * EmbeddedMailDb db = EmbeddedMailDb.start();
+ * db.reset();
+ * List&lt;String&gt; users = db.seed(10, 1000, 4096);
+ * </pre>
+ */
+public final class EmbeddedMailDb {
+
+  /** 与 db/init.sql 中初始化用户相同的密码 00000000 */
+  public static final String PASSWORD = "00000000";
+
+  private static final long SEED_USER_BASE = 100000;
+  private static EmbeddedMailDb instance;
+
+  private final EmbeddedPostgres postgres;
+  private final PGPoolingDataSource dataSource;
+
+  private EmbeddedMailDb(EmbeddedPostgres postgres, PGPoolingDataSource dataSource) {
+    this.postgres = postgres;
+    this.dataSource = dataSource;
+  }
+
+  /**
+   * 数据目录由 mail.test.db.dir 指定，默认 target/embedded-pg，每次启动时清空
+   */
+  public static synchronized EmbeddedMailDb start() {
+    if (instance != null) {
+      return instance;
+    }
+    String dir = EnvUtils.get("mail.test.db.dir", "target/embedded-pg");
+    try {
+      EmbeddedPostgres postgres = EmbeddedPostgres.builder().setDataDirectory(new File(dir)).setCleanDataDirectory(true).start();
+
+      // 驱动自带的连接池足以供测试使用，不依赖线上的连接池实现
+      PGPoolingDataSource dataSource = new PGPoolingDataSource();
+      dataSource.setServerNames(new String[] { "localhost" });
+      dataSource.setPortNumbers(new int[] { postgres.getPort() });
+      dataSource.setDatabaseName("postgres");
+      dataSource.setUser("postgres");
+      dataSource.setMaxConnections(EnvUtils.getInt("mail.test.db.pool.size", 8));
+
+      try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+        st.execute(read("db/schema.sql"));
+        st.execute(read("db/init.sql"));
+      }
+
+      ActiveRecordPlugin arp = new ActiveRecordPlugin(dataSource);
+      arp.setDialect(new PostgreSqlDialect());
+      arp.start();
+
+      instance = new EmbeddedMailDb(postgres, dataSource);
+      Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "embedded-pg-shutdown"));
+      return instance;
+    } catch (IOException | SQLException e) {
+      throw new IllegalStateException("Failed to start embedded PostgreSQL in " + dir, e);
+    }
+  }
+
+  private static String read(String path) throws IOException {
+    return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+  }
+
+  public int getPort() {
+    return postgres.getPort();
+  }
+
+  /**
+   * 清空邮件相关表（db/truncate.sql），保留用户和邮箱；邮箱的 uid_next 恢复为 1
+   */
+  public void reset() {
+    try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+      st.execute(read("db/truncate.sql"));
+      st.execute("UPDATE mw_mailbox SET uid_next = 1, highest_modseq = 0");
+    } catch (IOException | SQLException e) {
+      throw new IllegalStateException("Failed to reset embedded database", e);
+    }
+  }
+
+  /**
+   * 创建 users 个用户 seed{n}@litong.xyz（已存在则跳过），各自带 inbox 和 trash，
+   * 并通过 MailSaveAtom 向每个收件箱写入 mailsPerUser 封约 bodyBytes 字节的邮件，内容由固定种子生成。
+   *
+   * @return 用户名，按编号排列
+   */
+  public List<String> seed(int users, int mailsPerUser, int bodyBytes) {
+    Db.updateBySql("INSERT INTO mw_user (id, username, password_hash, creator, updater, tenant_id) "
+        + "SELECT ? + g, 'seed' || g || '@litong.xyz', (SELECT password_hash FROM mw_user WHERE id = 1001), 'seed', 'seed', 1 "
+        + "FROM generate_series(1, ?) g ON CONFLICT (id) DO NOTHING", SEED_USER_BASE, users);
+    Db.updateBySql("INSERT INTO mw_mailbox (id, user_id, name, uid_validity, creator, updater, tenant_id) "
+        + "SELECT u.id * 100 + b.n, u.id, b.name, u.id * 100 + b.n, 'seed', 'seed', 1 FROM mw_user u "
+        + "CROSS JOIN (VALUES (1, 'inbox'), (2, 'trash')) AS b(n, name) WHERE u.id > ? AND u.id <= ? ON CONFLICT (id) DO NOTHING",
+        SEED_USER_BASE, SEED_USER_BASE + users);
+
+    Random random = new Random(42);
+    List<String> usernames = new ArrayList<>(users);
+    for (int u = 1; u <= users; u++) {
+      long userId = SEED_USER_BASE + u;
+      String username = "seed" + u + "@litong.xyz";
+      usernames.add(username);
+      long inboxId = userId * 100 + 1;
+      for (int i = 0; i < mailsPerUser; i++) {
+        Db.tx(new MailSaveAtom(userId, 1, username, inboxId, MailBoxName.INBOX, syntheticMail(username, i, bodyBytes, random)));
+      }
+    }
+    return usernames;
+  }
+
+  /**
+   * Message-ID 中带用户和序号，保证每封内容不同，不会被按内容哈希去重
+   */
+  public static String syntheticMail(String to, int i, int bodyBytes, Random random) {
+    StringBuilder sb = new StringBuilder(bodyBytes + 512);
+    sb.append("Message-ID: <seed.").append(i).append('.').append(to).append('.').append(Long.toHexString(random.nextLong())).append(">\r\n");
+    sb.append("Date: Mon, 6 Oct 2025 08:00:00 +0000\r\n");
+    sb.append("From: \"Sender ").append(i % 13).append("\" <sender").append(i % 13).append("@example.com>\r\n");
+    sb.append("To: ").append(to).append("\r\n");
+    sb.append("Subject: Seed message ").append(i).append("\r\n");
+    sb.append("MIME-Version: 1.0\r\n");
+    sb.append("Content-Type: text/plain; charset=UTF-8\r\n\r\n");
+    int start = sb.length();
+    int line = 0;
+    while (sb.length() - start < bodyBytes) {
+      sb.append("Line ").append(line++).append(" of the seed message, value ").append(random.nextInt(100000)).append(".\r\n");
+    }
+    return sb.toString();
+  }
+
+  private void close() {
+    dataSource.close();
+    try {
+      postgres.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package com.tio.mail.wing.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+
+public class PgArraysTest {
+
+  @Test
+  public void testLiterals() {
+    assertEquals("{}", PgArrays.ofLongs(new long[0]));
+    assertEquals("{1,5,10}", PgArrays.ofLongs(new long[] { 1, 5, 10 }));
+    assertEquals("{1,2}", PgArrays.ofLongs(Arrays.asList(1L, 2L)));
+    LinkedHashSet<String> flags = new LinkedHashSet<>(Arrays.asList("\\Seen", "$Label\"1\""));
+    assertEquals("{\"\\\\Seen\",\"$Label\\\"1\\\"\"}", PgArrays.ofTexts(flags));
+  }
+}
@@ -0,0 +1,17 @@
+package com.tio.mail.wing.db;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TimedDbTest {
+
+  @Test
+  public void testShapeOf() {
+    assertEquals("[]", TimedDb.shapeOf(null));
+    assertEquals("[Long, String]", TimedDb.shapeOf(new Object[] { 1L, "INBOX" }));
+    assertEquals("[Long x4]", TimedDb.shapeOf(new Object[] { 1L, 2L, 3L, 4L }));
+    assertEquals("[Long, String(>1K), null]", TimedDb.shapeOf(new Object[] { 1L, new String(new char[2000]), null }));
+    assertEquals("[Long[](3)]", TimedDb.shapeOf(new Object[] { new Long[] { 1L, 2L, 3L } }));
+  }
+}
@@ -0,0 +1,71 @@
+package com.tio.mail.wing.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+/**
+ * COMPRESS=DEFLATE 编解码的正确性验证。不同压缩级别的开销对比见 HandlerCodecBenchmark。
+ */
+public class ImapDeflateCodecTest {
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    ImapDeflateCodec server = new ImapDeflateCodec(6);
+    ImapDeflateCodec client = new ImapDeflateCodec(6);
+    server.activateDeflate();
+
+    // 模拟客户端一次发来的多条命令，且最后一条被拆成两个 TCP 包
+    byte[] part1 = server.deflate("a1 NOOP\r\na2 UID FETCH 1:* (FLAGS)\r\na3 LOG".getBytes(StandardCharsets.UTF_8));
+    byte[] part2 = server.deflate("OUT\r\n".getBytes(StandardCharsets.UTF_8));
+
+    client.inflate(ByteBuffer.wrap(part1));
+    List<String> lines = client.drainLines("UTF-8");
+    assertEquals(2, lines.size());
+    assertEquals("a1 NOOP", lines.get(0));
+    assertEquals("a2 UID FETCH 1:* (FLAGS)", lines.get(1));
+
+    client.inflate(ByteBuffer.wrap(part2));
+    lines = client.drainLines("UTF-8");
+    assertEquals(1, lines.size());
+    assertEquals("a3 LOGOUT", lines.get(0));
+
+    server.end();
+    client.end();
+  }
+
+  @Test
+  public void testPendingLimitAppliesToIncompleteTail() throws Exception {
+    ImapDeflateCodec server = new ImapDeflateCodec(6);
+    server.activateDeflate();
+
+    // 一次解压出的完整行合计超过上限，不应报错
+    StringBuilder sb = new StringBuilder();
+    int count = 0;
+    while (sb.length() <= 2 * 1024 * 1024) {
+      sb.append("a").append(count++).append(" NOOP\r\n");
+    }
+    ImapDeflateCodec client = new ImapDeflateCodec(6);
+    client.inflate(ByteBuffer.wrap(server.deflate(sb.toString().getBytes(StandardCharsets.UTF_8))));
+    assertEquals(count, client.drainLines("UTF-8").size());
+
+    // 不换行的尾部超过上限时报错
+    char[] tail = new char[1024 * 1024 + 1];
+    Arrays.fill(tail, 'x');
+    try {
+      client.inflate(ByteBuffer.wrap(server.deflate(new String(tail).getBytes(StandardCharsets.UTF_8))));
+      fail("expected DataFormatException");
+    } catch (DataFormatException expected) {
+    }
+
+    server.end();
+    client.end();
+  }
+}
@@ -0,0 +1,117 @@
+package com.tio.mail.wing.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.tio.mail.wing.handler.ImapPipeline.CommandClass;
+import com.tio.mail.wing.packet.ImapPacket;
+
+public class ImapPipelineTest {
+
+  @Test
+  public void testClassify() {
+    assertFalse(ImapPipeline.classify("a1 STATUS \"INBOX\" (UIDNEXT MESSAGES)").barrier);
+    assertFalse(ImapPipeline.classify("a2 UID FETCH 1:10 (FLAGS BODY.PEEK[HEADER])").writes);
+    assertTrue(ImapPipeline.classify("a3 UID FETCH 1:10 (BODY[])").writes);
+    assertTrue(ImapPipeline.classify("a4 FETCH 1 RFC822").writes);
+    assertFalse(ImapPipeline.classify("a5 FETCH 1 (RFC822.SIZE RFC822.HEADER)").writes);
+    assertTrue(ImapPipeline.classify("a6 SELECT INBOX").barrier);
+    assertTrue(ImapPipeline.classify("a7 EXPUNGE").barrier);
+    // 刷新 UID 索引的命令
+    assertTrue(ImapPipeline.classify("a8 CHECK").barrier);
+    assertTrue(ImapPipeline.classify("a9 NOOP").barrier);
+    // AUTHENTICATE 的续行没有命令名，按屏障处理
+    assertTrue(ImapPipeline.classify("dXNlcg==").barrier);
+  }
+
+  @Test
+  public void testConflicts() {
+    CommandClass peek1 = ImapPipeline.classify("a1 UID FETCH 1:10 (FLAGS)");
+    CommandClass peek2 = ImapPipeline.classify("a2 UID FETCH 5:20 (FLAGS)");
+    CommandClass store = ImapPipeline.classify("a3 UID STORE 8 +FLAGS (\\Seen)");
+    CommandClass storeOther = ImapPipeline.classify("a4 UID STORE 30:* +FLAGS (\\Seen)");
+    CommandClass seqStore = ImapPipeline.classify("a5 STORE 100 +FLAGS (\\Seen)");
+
+    assertFalse(peek1.conflictsWith(peek2));
+    assertTrue(peek1.conflictsWith(store));
+    assertFalse(peek1.conflictsWith(storeOther));
+    assertFalse(store.conflictsWith(storeOther));
+    // 序号和 UID 不可比较
+    assertTrue(peek1.conflictsWith(seqStore));
+
+    // SEARCH 和 UID SEARCH 一致：彼此及与只读 FETCH 并发，与任何 STORE 串行
+    CommandClass search = ImapPipeline.classify("a6 SEARCH UNSEEN");
+    CommandClass uidSearch = ImapPipeline.classify("a7 UID SEARCH UNSEEN");
+    assertFalse(search.barrier);
+    assertFalse(uidSearch.barrier);
+    assertFalse(search.conflictsWith(uidSearch));
+    assertFalse(search.conflictsWith(peek1));
+    assertTrue(search.conflictsWith(storeOther));
+    assertTrue(uidSearch.conflictsWith(seqStore));
+  }
+
+  @Test
+  public void testResponsesInSubmissionOrder() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      runOrdering(executor);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void runOrdering(ExecutorService executor) throws InterruptedException {
+    List<String> written = Collections.synchronizedList(new ArrayList<>());
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch allWritten = new CountDownLatch(5);
+    ImapPipeline pipeline = new ImapPipeline(executor, true, packet -> {
+      written.add(packet.getLine());
+      allWritten.countDown();
+    });
+    CountDownLatch release = new CountDownLatch(1);
+
+    // a1 阻塞直到 a3 执行完；a2 与 a1 重叠必须等 a1，a3 不重叠可以先执行；a4 CHECK 刷新索引，要等所有命令；a5 序号 FETCH 要等 a4
+    pipeline.submit("a1 STORE 1:5 +FLAGS (\\Seen)", line -> {
+      await(release);
+      return reply(line, events);
+    });
+    pipeline.submit("a2 FETCH 3 (FLAGS)", line -> reply(line, events));
+    pipeline.submit("a3 FETCH 10 (FLAGS)", line -> {
+      ImapPacket packet = reply(line, events);
+      release.countDown();
+      return packet;
+    });
+    pipeline.submit("a4 CHECK", line -> reply(line, events));
+    pipeline.submit("a5 FETCH 1 (FLAGS)", line -> reply(line, events));
+
+    assertTrue(allWritten.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("a3", "a1", "a2", "a4", "a5"), events);
+    assertEquals(Arrays.asList("a1 OK\r\n", "a2 OK\r\n", "a3 OK\r\n", "a4 OK\r\n", "a5 OK\r\n"), written);
+  }
+
+  private static ImapPacket reply(String line, List<String> events) {
+    String tag = line.split(" ", 2)[0];
+    events.add(tag);
+    return new ImapPacket(tag + " OK\r\n");
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.tio.mail.wing.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class Pop3BodyWriterTest {
+
+  private static final String MAIL = "Subject: t\r\nFrom: a@b\r\n\r\nline1\r\n.dot\r\n\r\nline4\r\n";
+
+  @Test
+  public void testRetrDotStuffing() {
+    StringBuilder out = new StringBuilder();
+    Pop3BodyWriter writer = new Pop3BodyWriter(out::append, 1024, -1);
+    writer.status("+OK\r\n");
+    // 按小块送入，"." 恰好落在块首
+    assertTrue(writer.write(MAIL.substring(0, 35)));
+    assertTrue(writer.write(MAIL.substring(35)));
+    writer.finish();
+    assertEquals("+OK\r\nSubject: t\r\nFrom: a@b\r\n\r\nline1\r\n..dot\r\n\r\nline4\r\n.\r\n", out.toString());
+  }
+
+  @Test
+  public void testTopStopsAfterBodyLines() {
+    StringBuilder out = new StringBuilder();
+    Pop3BodyWriter writer = new Pop3BodyWriter(out::append, 1024, 2);
+    assertFalse(writer.write(MAIL));
+    writer.finish();
+    assertEquals("Subject: t\r\nFrom: a@b\r\n\r\nline1\r\n..dot\r\n.\r\n", out.toString());
+
+    out.setLength(0);
+    writer = new Pop3BodyWriter(out::append, 1024, 0);
+    assertFalse(writer.write(MAIL));
+    writer.finish();
+    assertEquals("Subject: t\r\nFrom: a@b\r\n\r\n.\r\n", out.toString());
+  }
+
+  @Test
+  public void testBareLfAndMissingFinalNewline() {
+    List<String> chunks = new ArrayList<>();
+    Pop3BodyWriter writer = new Pop3BodyWriter(chunks::add, 8, -1);
+    writer.write("A: b\n\n.x\nend");
+    writer.finish();
+    assertEquals("A: b\r\n\r\n..x\r\nend\r\n.\r\n", String.join("", chunks));
+    assertEquals(2, chunks.size());
+  }
+}
@@ -0,0 +1,68 @@
+package com.tio.mail.wing.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBucketBounds() {
+    long[] values = { 0, 1, 31, 32, 33, 63, 64, 100, 1000, 123456, 1L << 30, (1L << 42) - 1 };
+    for (long v : values) {
+      int index = LatencyHistogram.indexOf(v);
+      long lower = LatencyHistogram.lowerBoundOf(index);
+      assertTrue(v + " >= " + lower, v >= lower);
+      assertTrue(v + " < next bucket", v < LatencyHistogram.lowerBoundOf(index + 1) || index == LatencyHistogram.indexOf((1L << 42) - 1));
+    }
+  }
+
+  @Test
+  public void testQuantiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Random random = new Random(7);
+    for (int i = 0; i < 100000; i++) {
+      // 1ms ~ 101ms 均匀分布
+      histogram.record(1000 + random.nextInt(100000));
+    }
+    assertEquals(100000, histogram.getCount());
+    long p50 = histogram.quantile(0.5);
+    long p99 = histogram.quantile(0.99);
+    assertTrue(Math.abs(p50 - 51000) < 51000 * 0.04);
+    assertTrue(Math.abs(p99 - 100000) < 100000 * 0.04);
+  }
+
+  @Test
+  public void testScrape() {
+    MwMetrics.CommandScope scope = MwMetrics.begin("IMAP", "UID FETCH");
+    MwMetrics.addDbNanos(2_000_000);
+    scope.end();
+    MwMetrics.begin("IMAP", "bad\"name").end();
+    String text = MwMetrics.scrape();
+    assertTrue(text.contains("mw_commands_total{protocol=\"IMAP\",command=\"UID FETCH\"} 1"));
+    assertTrue(text.contains("mw_commands_total{protocol=\"IMAP\",command=\"OTHER\"} 1"));
+    assertTrue(text.contains("mw_command_db_seconds_count{protocol=\"IMAP\",command=\"UID FETCH\"} 1"));
+  }
+
+  @Test
+  public void testScopeAcrossPackets() {
+    // SMTP DATA：DATA 到 "." 之间的多个数据包只记一次命令
+    MwMetrics.CommandScope scope = MwMetrics.begin("SMTP", "DATA");
+    scope.suspend();
+    for (int i = 0; i < 3; i++) {
+      scope.resume();
+      MwMetrics.addDbNanos(1_000_000);
+      scope.suspend();
+    }
+    MwMetrics.addDbNanos(5_000_000);
+    scope.resume();
+    scope.end();
+    String text = MwMetrics.scrape();
+    assertTrue(text.contains("mw_commands_total{protocol=\"SMTP\",command=\"DATA\"} 1"));
+    assertTrue(text.contains("mw_command_db_seconds_count{protocol=\"SMTP\",command=\"DATA\"} 1"));
+    assertTrue(text.contains("mw_command_db_seconds_sum{protocol=\"SMTP\",command=\"DATA\"} 0.003"));
+  }
+}
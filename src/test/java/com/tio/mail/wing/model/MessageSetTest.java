@@ -0,0 +1,80 @@
+package com.tio.mail.wing.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MessageSetTest {
+
+  @Test
+  public void testParseMergesAndSorts() {
+    MessageSet set = MessageSet.parse("9,1:3,4,7:5,20");
+    assertEquals("1:7,9,20", set.toString());
+    assertEquals(3, set.rangeCount());
+    assertTrue(set.contains(1));
+    assertFalse(set.contains(8));
+    assertTrue(set.contains(9));
+    assertFalse(set.contains(10));
+    assertTrue(set.contains(20));
+    assertFalse(set.contains(0));
+  }
+
+  @Test
+  public void testStar() {
+    MessageSet set = MessageSet.parse("3,10:*");
+    assertTrue(set.hasStar());
+    assertEquals("3,10:12", set.resolveStar(12).toString());
+    // n 大于最大值时 n:* 等价于 max:n
+    assertEquals("3,8:10", set.resolveStar(8).toString());
+    assertEquals("5", MessageSet.parse("*").resolveStar(5).toString());
+    assertEquals("3,10:*", set.resolveStarOpen(12).toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectZero() {
+    MessageSet.parse("0:4");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectGarbage() {
+    MessageSet.parse("1,,2");
+  }
+
+  @Test
+  public void testIntersects() {
+    assertTrue(MessageSet.parse("1:10").intersects(MessageSet.parse("5:20")));
+    assertFalse(MessageSet.parse("1:4,8").intersects(MessageSet.parse("5:7,9:*")));
+    assertTrue(MessageSet.parse("1:4,8").intersects(MessageSet.parse("5:7,8:*")));
+  }
+
+  @Test
+  public void testUidIndex() {
+    UidIndex index = new UidIndex(new long[] { 3, 4, 7, 10, 11 });
+    assertEquals(3, index.seqOf(7));
+    assertEquals(0, index.seqOf(5));
+
+    // 序号 2:3 -> UID 4:7，序号 5:* -> UID 11，超出邮件数的序号忽略
+    MessageSet uids = index.toUids(MessageSet.parse("2:3,5:*,9"), false);
+    assertArrayEquals(new long[] { 4, 11 }, uids.getLos());
+    assertArrayEquals(new long[] { 7, 11 }, uids.getHis());
+
+    assertEquals("11:*", index.toUids(MessageSet.parse("*"), true).toString());
+    assertTrue(UidIndex.EMPTY.toUids(MessageSet.parse("1:*"), false).isEmpty());
+
+    MessageSet removed = MessageSet.parse("4,10:12");
+    assertArrayEquals(new int[] { 5, 4, 2 }, index.seqsDescending(removed));
+    UidIndex left = index.remove(removed);
+    assertEquals(2, left.size());
+    assertEquals(7, left.uidAt(2));
+
+    // 新邮件加入视图后，序号 6 和 * 都指向它
+    UidIndex grown = index.append(15);
+    assertEquals(6, grown.size());
+    assertEquals("15", grown.toUids(MessageSet.parse("6"), false).toString());
+    assertEquals("15", grown.toUids(MessageSet.parse("*"), false).toString());
+    assertTrue(grown.append(12) == grown);
+  }
+}
@@ -0,0 +1,81 @@
+package com.tio.mail.wing.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SearchCriteriaTest {
+
+  // 会话视图中有 UID 1..4，UID 5 是索引建立之后新到的邮件
+  private static final UidIndex INDEX = new UidIndex(new long[] { 1, 2, 3, 4 });
+
+  private static Email mail(long uid, int day, String... flags) {
+    Email e = new Email();
+    e.setUid(uid);
+    e.setInternalDate(OffsetDateTime.of(2024, 3, day, 12, 0, 0, 0, ZoneOffset.UTC));
+    e.getFlags().addAll(Arrays.asList(flags));
+    return e;
+  }
+
+  private static final List<Email> MAILS = Arrays.asList(
+      //
+      mail(1, 1, "\\Seen"), mail(2, 2, "\\Seen", "\\Deleted"), mail(3, 3), mail(4, 4, "\\Deleted", "\\Flagged"),
+      mail(5, 5, "\\Recent"));
+
+  private static String search(String criteria) {
+    SearchCriteria c = SearchCriteria.parse(criteria, INDEX);
+    List<Long> uids = new ArrayList<>();
+    for (Email e : MAILS) {
+      if (c.matches(e)) {
+        uids.add(e.getUid());
+      }
+    }
+    return uids.toString();
+  }
+
+  @Test
+  public void testNotDeleted() {
+    assertEquals("[1, 3, 5]", search("1:* NOT DELETED"));
+    assertEquals("[1, 3, 5]", search("UNDELETED"));
+    assertEquals("[2, 4]", search("DELETED"));
+  }
+
+  @Test
+  public void testSetsAndFlags() {
+    assertEquals("[3, 4, 5]", search("UNSEEN"));
+    assertEquals("[5]", search("NEW"));
+    // * 结尾的集合包含新到的邮件
+    assertEquals("[2]", search("2"));
+    assertEquals("[3, 4, 5]", search("3:*"));
+    assertEquals("[3, 4, 5]", search("UID 3:*"));
+    assertEquals("[1, 4]", search("OR SEEN FLAGGED NOT (SEEN DELETED)"));
+    assertEquals("[1, 3]", search("CHARSET UTF-8 UID 1:4 NOT DELETED"));
+  }
+
+  @Test
+  public void testDates() {
+    assertEquals("[1, 2]", search("BEFORE 3-Mar-2024"));
+    assertEquals("[3]", search("ON \"3-MAR-2024\""));
+    assertEquals("[4, 5]", search("SINCE 4-Mar-2024"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedKey() {
+    SearchCriteria.parse("SUBJECT hello", INDEX);
+  }
+
+  @Test
+  public void testSeqsMissingFrom() {
+    UidIndex newer = new UidIndex(new long[] { 2, 4, 6 });
+    // 被删除的 UID 1、3 按降序给出序号
+    assertEquals("[3, 1]", Arrays.toString(INDEX.seqsMissingFrom(newer)));
+    assertEquals("[]", Arrays.toString(INDEX.seqsMissingFrom(INDEX)));
+    assertEquals("1,3", INDEX.uidsMissingFrom(newer).toString());
+  }
+}
@@ -0,0 +1,74 @@
+package com.tio.mail.wing.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.litongjava.db.activerecord.Db;
+import com.litongjava.jfinal.aop.Aop;
+import com.tio.mail.wing.consts.MailBoxName;
+import com.tio.mail.wing.db.EmbeddedMailDb;
+import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.model.Pop3Maildrop;
+
+/**
+ * 在嵌入式 PostgreSQL 上验证存储层，不依赖外部数据库
+ */
+public class MailStorageTest {
+
+  private static final int MAILS = 50;
+  private static List<String> users;
+
+  @BeforeClass
+  public static void setUp() {
+    EmbeddedMailDb db = EmbeddedMailDb.start();
+    db.reset();
+    users = db.seed(3, MAILS, 4096);
+  }
+
+  @Test
+  public void testListAndLoadBodies() {
+    MailService mailService = Aop.get(MailService.class);
+    List<Email> emails = mailService.getActiveMessagesByUsername(users.get(0));
+    assertEquals(MAILS, emails.size());
+
+    Aop.get(MailBodyService.class).loadBodies(emails);
+    for (Email e : emails) {
+      assertTrue(e.getRawContent().contains("Subject: Seed message "));
+      assertEquals(e.getRawContent().getBytes(StandardCharsets.UTF_8).length, e.getSize());
+    }
+  }
+
+  @Test
+  public void testStatAndMaildrop() {
+    MailService mailService = Aop.get(MailService.class);
+    int[] stat = mailService.getStat(users.get(1));
+    assertEquals(MAILS, stat[0]);
+
+    Long userId = Aop.get(MwUserService.class).getUserIdByUsername(users.get(1));
+    Pop3Maildrop maildrop = mailService.loadMaildrop(userId);
+    assertEquals(MAILS, maildrop.count());
+    assertEquals(stat[1], maildrop.undeletedSize());
+  }
+
+  @Test
+  public void testSaveAppendsToInbox() {
+    // 单独的用户，不影响其它用例的邮件数
+    String username = users.get(2);
+    Long userId = Aop.get(MwUserService.class).getUserIdByUsername(username);
+    Long inboxId = Aop.get(MailBoxService.class).getMailboxIdByName(userId, MailBoxName.INBOX);
+    Random random = new Random(7);
+    int n = 20;
+    for (int i = 0; i < n; i++) {
+      String raw = EmbeddedMailDb.syntheticMail(username, MAILS + i, 4096, random);
+      assertTrue(Db.tx(new MailSaveAtom(userId, 1, username, inboxId, MailBoxName.INBOX, raw)));
+    }
+    assertEquals(MAILS + n, Aop.get(MailService.class).getActiveMessages(inboxId).size());
+  }
+}
@@ -0,0 +1,213 @@
+package com.tio.mail.wing.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tio.mail.wing.consts.MailBoxName;
+import com.tio.mail.wing.consts.StoreMode;
+import com.tio.mail.wing.model.Email;
+import com.tio.mail.wing.model.MessageSet;
+import com.tio.mail.wing.model.Pop3Maildrop;
+
+public class EmbeddedMailStoreTest {
+
+  private static final long USER = 1001;
+
+  private File dir;
+  private EmbeddedMailStore store;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("mail-store").toFile();
+    // 不压缩，重放原始日志
+    store = new EmbeddedMailStore(dir, false, Long.MAX_VALUE);
+  }
+
+  @After
+  public void tearDown() {
+    store.close();
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  private long inbox() {
+    return store.findMailbox(USER, MailBoxName.INBOX).getLong("id");
+  }
+
+  private static String mail(int i) {
+    return "Subject: Test " + i + "\r\n\r\nBody " + i + " 你好\r\n";
+  }
+
+  @Test
+  public void testAppendAndFlags() {
+    long inbox = inbox();
+    assertNull(store.findMailbox(USER, "Archive"));
+    List<Long> appended = new ArrayList<>();
+    store.addListener(new MailStoreListener() {
+      @Override
+      public void onAppend(long userId, long mailboxId, long uid) {
+        appended.add(uid);
+      }
+    });
+    for (int i = 1; i <= 3; i++) {
+      assertTrue(store.append(USER, 1, "user", inbox, MailBoxName.INBOX, mail(i)));
+    }
+    // 相同内容去重，仍是独立的邮件
+    assertTrue(store.append(USER, 1, "user", inbox, MailBoxName.INBOX, mail(1)));
+    assertEquals(4, appended.size());
+    assertEquals(5L, (long) store.findMailboxById(USER, inbox).getLong("uid_next"));
+
+    List<Email> emails = store.listMessages(inbox);
+    assertEquals(4, emails.size());
+    assertEquals(emails.get(0).getContentId(), emails.get(3).getContentId());
+    assertTrue(emails.get(0).getFlags().contains("\\Recent"));
+
+    store.storeFlags(inbox, MessageSet.parse("2"), StoreMode.ADD, Collections.singleton("\\Deleted"), true);
+    List<Email> stored = store.storeFlags(inbox, MessageSet.parse("1"), StoreMode.REPLACE, Collections.singleton("\\Seen"), false);
+    // FLAGS 替换保留 \Recent
+    assertTrue(stored.get(0).getFlags().contains("\\Recent"));
+    assertTrue(stored.get(0).getFlags().contains("\\Seen"));
+
+    // 带 \Deleted 的邮件在 EXPUNGE 前仍有序号，但不计入 STAT 和 UID 查询
+    assertEquals(4, store.countMessages(inbox));
+    assertEquals(3, store.stat(inbox)[0]);
+    assertEquals(3, store.findByUids(inbox, MessageSet.parse("1:4")).size());
+    assertEquals(2L, store.findBySeqs(inbox, MessageSet.parse("2")).get(0).getUid());
+    assertEquals(2L, (long) store.status(inbox).getLong("unseen"));
+
+    store.clearRecent(inbox);
+    assertEquals(0L, (long) store.status(inbox).getLong("recent"));
+  }
+
+  @Test
+  public void testExpungeAndMove() {
+    long inbox = inbox();
+    long trash = store.findMailbox(USER, MailBoxName.TRASH).getLong("id");
+    for (int i = 1; i <= 4; i++) {
+      store.append(USER, 1, "user", inbox, MailBoxName.INBOX, mail(i));
+    }
+    List<MessageSet> expunged = new ArrayList<>();
+    store.addListener(new MailStoreListener() {
+      @Override
+      public void onExpunge(long mailboxId, MessageSet uids) {
+        expunged.add(uids);
+      }
+    });
+
+    assertTrue(store.expungeDeleted(inbox, MessageSet.parse("1:4")).isEmpty());
+    assertEquals(0, store.highestModseq(inbox));
+
+    store.storeFlags(inbox, MessageSet.parse("2,3"), StoreMode.ADD, Collections.singleton("\\Deleted"), true);
+    assertEquals("3", store.expungeDeleted(inbox, MessageSet.parse("3:4")).toString());
+    assertEquals("2", store.expungeDeleted(inbox, MessageSet.parse("1:4")).toString());
+    assertEquals(2, store.highestModseq(inbox));
+
+    Pop3Maildrop maildrop = store.loadMaildrop(inbox);
+    assertEquals(2, maildrop.count());
+    assertEquals("1", store.expungeMails(inbox, new long[] { maildrop.mailId(1) }).toString());
+    assertEquals(3, store.highestModseq(inbox));
+
+    store.moveMessages(inbox, MessageSet.parse("1:10"), trash);
+    assertArrayEquals(new long[0], store.loadUids(inbox));
+    assertArrayEquals(new long[] { 1 }, store.loadUids(trash));
+    assertEquals(4, expunged.size());
+    assertEquals("4", expunged.get(3).toString());
+  }
+
+  @Test
+  public void testReopenReplaysLog() {
+    long inbox = inbox();
+    for (int i = 1; i <= 3; i++) {
+      store.append(USER, 1, "user", inbox, MailBoxName.INBOX, mail(i));
+    }
+    store.storeFlags(inbox, MessageSet.parse("1"), StoreMode.ADD, Collections.singleton("\\Seen"), true);
+    store.storeFlags(inbox, MessageSet.parse("3"), StoreMode.ADD, Collections.singleton("\\Deleted"), true);
+    store.expungeDeleted(inbox, MessageSet.parse("1:3"));
+    long archive = store.createMailbox(USER, 1, "Archive");
+    store.moveMessages(inbox, MessageSet.parse("2"), archive);
+    store.close();
+
+    store = new EmbeddedMailStore(dir, false, Long.MAX_VALUE);
+    assertEquals(inbox, inbox());
+    assertNotNull(store.findMailbox(USER, "Archive"));
+    assertArrayEquals(new long[] { 1 }, store.loadUids(inbox));
+    assertArrayEquals(new long[] { 1 }, store.loadUids(archive));
+    assertEquals(4L, (long) store.findMailboxById(USER, inbox).getLong("uid_next"));
+    assertEquals(1, store.highestModseq(inbox));
+
+    Email first = store.findByUid(inbox, 1);
+    assertTrue(first.getFlags().contains("\\Seen"));
+    Map<Long, String> bodies = store.loadBodies(Collections.singleton(first.getContentId()));
+    assertEquals(mail(1), bodies.get(first.getContentId()));
+
+    StringBuilder sb = new StringBuilder();
+    assertTrue(store.readBody(first.getId(), 7, chunk -> {
+      sb.append(chunk);
+      return true;
+    }));
+    assertEquals(mail(1), sb.toString());
+  }
+
+  @Test
+  public void testCompactOnOpen() {
+    long inbox = inbox();
+    for (int i = 1; i <= 3; i++) {
+      store.append(USER, 1, "user", inbox, MailBoxName.INBOX, mail(i));
+    }
+    store.storeFlags(inbox, MessageSet.parse("1:2"), StoreMode.ADD, Collections.singleton("\\Deleted"), true);
+    store.expungeDeleted(inbox, MessageSet.parse("1:3"));
+    store.close();
+    long before = new File(dir, "mail.log").length();
+
+    store = new EmbeddedMailStore(dir, false, 0);
+    assertTrue(new File(dir, "mail.log").length() < before);
+    assertArrayEquals(new long[] { 3 }, store.loadUids(inbox));
+    assertEquals(4L, (long) store.findMailboxById(USER, inbox).getLong("uid_next"));
+    assertEquals(1, store.highestModseq(inbox));
+    Email e = store.findByUid(inbox, 3);
+    assertEquals(mail(3), store.loadBodies(Collections.singleton(e.getContentId())).get(e.getContentId()));
+    assertTrue(e.getFlags().contains("\\Recent"));
+  }
+
+  @Test
+  public void testTruncatedTailIsDropped() throws IOException {
+    long inbox = inbox();
+    store.append(USER, 1, "user", inbox, MailBoxName.INBOX, mail(1));
+    store.append(USER, 1, "user", inbox, MailBoxName.INBOX, mail(2));
+    store.close();
+
+    // 模拟最后一条记录写到一半时进程退出
+    File log = new File(dir, "mail.log");
+    try (RandomAccessFile f = new RandomAccessFile(log, "rw")) {
+      f.setLength(f.length() - 3);
+    }
+
+    store = new EmbeddedMailStore(dir, false, Long.MAX_VALUE);
+    assertArrayEquals(new long[] { 1 }, store.loadUids(inbox));
+    assertTrue(store.append(USER, 1, "user", inbox, MailBoxName.INBOX, mail(3)));
+    store.close();
+
+    store = new EmbeddedMailStore(dir, false, Long.MAX_VALUE);
+    assertArrayEquals(new long[] { 1, 2 }, store.loadUids(inbox));
+    assertFalse(store.readBody(-1, 16, chunk -> true));
+  }
+}
@@ -0,0 +1,19 @@
+package com.tio.mail.wing.trace;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ProtocolTracerTest {
+
+  @Test
+  public void testRedact() {
+    assertEquals("a1 LOGIN user@litong.xyz ***", ProtocolTracer.redact("a1 LOGIN user@litong.xyz secret"));
+    assertEquals("a2 AUTHENTICATE PLAIN ***", ProtocolTracer.redact("a2 AUTHENTICATE PLAIN AHVzZXIAc2VjcmV0"));
+    assertEquals("PASS ***", ProtocolTracer.redact("PASS secret"));
+    assertEquals("APOP user@litong.xyz ***", ProtocolTracer.redact("APOP user@litong.xyz c4c9334bac560ecc979e58001b3e22fb"));
+    assertEquals("AUTH PLAIN ***", ProtocolTracer.redact("AUTH PLAIN AHVzZXIAc2VjcmV0"));
+    assertEquals("AUTH LOGIN", ProtocolTracer.redact("AUTH LOGIN"));
+    assertEquals("a3 UID FETCH 1:* (FLAGS)", ProtocolTracer.redact("a3 UID FETCH 1:* (FLAGS)"));
+  }
+}
@@ -0,0 +1,57 @@
+package com.tio.mail.wing.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MailBodyCodecTest {
+
+  private static String mail(int i) {
+    return "Message-ID: <" + i + "@litong.xyz>\r\n" + "MIME-Version: 1.0\r\n" + "Content-Type: text/html; charset=UTF-8\r\n"
+        + "From: notice@litong.xyz\r\n" + "Subject: 第 " + i + " 号通知\r\n\r\n"
+        + "<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\"></head>\r\n"
+        + "<body><table width=\"100%\" cellpadding=\"0\" cellspacing=\"0\"><tr><td>订单 " + i + " 已发货</td></tr></table>\r\n"
+        + ".leading dot line\r\n</body></html>\r\n";
+  }
+
+  @Test
+  public void testRoundTripWithDictionary() throws Exception {
+    List<String> samples = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      samples.add(mail(i));
+    }
+    byte[] dict = MailBodyCodec.trainDictionary(samples, MailBodyCodec.MAX_DICT_SIZE);
+    assertTrue(dict.length > 0 && dict.length <= MailBodyCodec.MAX_DICT_SIZE);
+
+    byte[] raw = mail(1000).getBytes(StandardCharsets.UTF_8);
+    byte[] plain = MailBodyCodec.compress(raw, null, 6);
+    byte[] withDict = MailBodyCodec.compress(raw, dict, 6);
+    assertTrue(withDict.length < plain.length);
+    assertEquals(mail(1000), MailBodyCodec.decompressToString(withDict, dict, raw.length));
+    assertEquals(mail(1000), MailBodyCodec.decompressToString(plain, null, 0));
+
+    // 逐字节送入压缩数据，模拟按块读取
+    try (InputStream in = MailBodyCodec.decompress(new ByteArrayInputStream(withDict) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 1));
+      }
+    }, dict)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[7];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+      assertEquals(mail(1000), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+  }
+}